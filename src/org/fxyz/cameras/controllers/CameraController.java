@@ -20,7 +20,6 @@ package org.fxyz.cameras.controllers;
 
 import org.fxyz.utils.AnimationPreference;
 import javafx.animation.Animation;
-import javafx.animation.AnimationTimer;
 import javafx.animation.KeyFrame;
 import javafx.animation.Timeline;
 import javafx.animation.Transition;
@@ -36,6 +35,8 @@ import javafx.scene.input.ScrollEvent;
 import javafx.util.Duration;
 import org.fxyz.cameras.AdvancedCamera;
 import org.fxyz.extras.Transformable;
+import org.fxyz.utils.FrameScheduler;
+import org.fxyz.utils.FrameScheduler.Priority;
 
 /**
  *
@@ -47,7 +48,7 @@ public abstract class CameraController implements Transformable {
     private Scene scene;
     private SubScene subScene;
     private double previousX, previousY, speed = 1.0;
-    private AnimationTimer timer;
+    private FrameScheduler.Task timer;
     private Timeline timeline;
     private Transition transition;
     private boolean enable;
@@ -62,16 +63,13 @@ public abstract class CameraController implements Transformable {
                 timeline.setCycleCount(Animation.INDEFINITE);
                 break;
             case TIMER:
-                timer = new AnimationTimer() {
-                    @Override
-                    public void handle(long l) {
-                        if (enable) {
-                            initialize();
-                            enable = false;
-                        }
-                        update();
+                timer = FrameScheduler.getDefault().createTask("CameraController", Priority.CRITICAL, () -> {
+                    if (enable) {
+                        initialize();
+                        enable = false;
                     }
-                };
+                    update();
+                });
                 break;
             case TRANSITION:
                 transition = new Transition() {
@@ -0,0 +1,262 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.extras;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import javafx.geometry.Bounds;
+import javafx.scene.Node;
+import javafx.scene.shape.Shape3D;
+import javafx.scene.transform.Affine;
+import javafx.scene.transform.Transform;
+import org.fxyz.extras.BillboardBehavior.BillboardMode;
+
+/**
+ * Keeps all the started billboards oriented towards their other node, with one 
+ * single update per frame of BillboardBehavior.timer.
+ * 
+ * Every billboard gets its own Affine. The scene position of each other node 
+ * (usually the camera) is read once per frame, shared by all its billboards, 
+ * and the billboards whose position relative to it and mode didn't change 
+ * since the last frame are skipped. The math is done with primitives, and the
+ * affine is set with one single call.
+ * 
+ * The other node of a billboard is read when it's started.
+ *
+ * @author jpereda
+ */
+public final class BillboardManager {
+    
+    private static final BillboardManager INSTANCE = new BillboardManager();
+    
+    public static BillboardManager getInstance() {
+        return INSTANCE;
+    }
+    
+    private static class Camera {
+        private final Node node;
+        private double x, y, z;
+        private long frame = -1;
+        private int users;
+
+        Camera(Node node) {
+            this.node = node;
+        }
+    }
+    
+    private static class Entry {
+        private final BillboardBehavior<?> billboard;
+        private final Node node;
+        private final Camera camera;
+        private final Affine affine = new Affine();
+        private int index;
+        // last center and camera position, to skip unchanged billboards
+        private double cX = Double.NaN, cY, cZ, camX, camY, camZ;
+        private BillboardMode mode;
+
+        Entry(BillboardBehavior<?> billboard, Camera camera) {
+            this.billboard = billboard;
+            this.node = billboard.getBillboardNode();
+            this.camera = camera;
+        }
+    }
+    
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<BillboardBehavior<?>, Entry> billboards = new IdentityHashMap<>();
+    private final Map<Node, Camera> cameras = new IdentityHashMap<>();
+    private final Callable<Void> update = () -> {
+        update();
+        return null;
+    };
+    private long frame;
+    private int updated;
+    
+    private BillboardManager() {
+    }
+    
+    /**
+     * Adds the Affine transform to the node of the billboard, and starts the 
+     * timer if it's the first one
+     * @param billboard 
+     */
+    public void add(BillboardBehavior<?> billboard) {
+        if (billboards.containsKey(billboard)) {
+            return;
+        }
+        Camera camera = cameras.computeIfAbsent(billboard.getOther(), Camera::new);
+        camera.users++;
+        Entry entry = new Entry(billboard, camera);
+        entry.index = entries.size();
+        entries.add(entry);
+        billboards.put(billboard, entry);
+        entry.node.getTransforms().add(entry.affine);
+        if (entries.size() == 1) {
+            BillboardBehavior.timer.addUpdate(update);
+            BillboardBehavior.timer.start();
+        }
+    }
+    
+    /**
+     * Removes the Affine transform from the node of the billboard, and stops the
+     * timer if it was the last one
+     * @param billboard 
+     */
+    public void remove(BillboardBehavior<?> billboard) {
+        Entry entry = billboards.remove(billboard);
+        if (entry == null) {
+            return;
+        }
+        // swap with the last one
+        Entry last = entries.remove(entries.size() - 1);
+        if (last != entry) {
+            last.index = entry.index;
+            entries.set(entry.index, last);
+        }
+        entry.node.getTransforms().remove(entry.affine);
+        if (--entry.camera.users == 0) {
+            cameras.remove(entry.camera.node);
+        }
+        if (entries.isEmpty()) {
+            BillboardBehavior.timer.stop();
+            BillboardBehavior.timer.removeUpdate(update);
+        }
+    }
+    
+    public boolean contains(BillboardBehavior<?> billboard) {
+        return billboards.containsKey(billboard);
+    }
+    
+    public int size() {
+        return entries.size();
+    }
+    
+    /**
+     * 
+     * @return The number of billboards updated in the last frame
+     */
+    public int getUpdatedCount() {
+        return updated;
+    }
+    
+    /**
+     * Updates all the billboards, called once per frame by the timer
+     */
+    public void update() {
+        frame++;
+        int count = 0;
+        for (int i = 0; i < entries.size(); i++) {
+            if (update(entries.get(i))) {
+                count++;
+            }
+        }
+        updated = count;
+    }
+    
+    /**
+     * Updates a single billboard, if it was added
+     * @param billboard 
+     */
+    public void update(BillboardBehavior<?> billboard) {
+        Entry entry = billboards.get(billboard);
+        if (entry != null) {
+            frame++;
+            update(entry);
+        }
+    }
+    
+    private boolean update(Entry entry) {
+        Camera camera = entry.camera;
+        if (camera.frame != frame) {
+            Transform cam = camera.node.getLocalToSceneTransform();
+            camera.x = cam.getTx();
+            camera.y = cam.getTy();
+            camera.z = cam.getTz();
+            camera.frame = frame;
+        }
+        
+        double cX, cY, cZ;
+        if (!(entry.node instanceof Shape3D)) {
+            Bounds b = entry.node.getBoundsInLocal();
+            cX = b.getWidth() / 2;
+            cY = b.getHeight() / 2;
+            cZ = b.getDepth() / 2;
+        } else {
+            Transform self = entry.node.getLocalToSceneTransform();
+            cX = self.getTx();
+            cY = self.getTy();
+            cZ = self.getTz();
+        }
+        BillboardMode mode = entry.billboard.getBillboardMode();
+        if (cX == entry.cX && cY == entry.cY && cZ == entry.cZ && mode == entry.mode
+                && camera.x == entry.camX && camera.y == entry.camY && camera.z == entry.camZ) {
+            return false;
+        }
+        entry.cX = cX;
+        entry.cY = cY;
+        entry.cZ = cZ;
+        entry.camX = camera.x;
+        entry.camY = camera.y;
+        entry.camZ = camera.z;
+        entry.mode = mode;
+        
+        // forward: from the camera to the billboard
+        double fx = cX - camera.x, fy = cY - camera.y, fz = cZ - camera.z;
+        double d = Math.sqrt(fx * fx + fy * fy + fz * fz);
+        if (d > 0) {
+            fx /= d;
+            fy /= d;
+            fz /= d;
+        }
+        // right = UP x forward
+        double rx = fz, rz = -fx;
+        d = Math.sqrt(rx * rx + rz * rz);
+        if (d > 0) {
+            rx /= d;
+            rz /= d;
+        }
+        // up = forward x right
+        double ux = fy * rz, uy = fz * rx - fx * rz, uz = -fy * rx;
+        d = Math.sqrt(ux * ux + uy * uy + uz * uz);
+        if (d > 0) {
+            ux /= d;
+            uy /= d;
+            uz /= d;
+        }
+        
+        double mxx, mxy, mxz, myx, myy, myz, mzx, mzy, mzz;
+        if (mode == BillboardMode.CYLINDRICAL) {
+            // rotation on Y axis only, with forward on the XZ plane
+            mxx = rx; mxy = 0; mxz = -rz;
+            myx = 0;  myy = 1; myz = 0;
+            mzx = rz; mzy = 0; mzz = rx;
+        } else {
+            mxx = rx; mxy = ux; mxz = fx;
+            myx = 0;  myy = uy; myz = fy;
+            mzx = rz; mzy = uz; mzz = fz;
+        }
+        entry.affine.setToTransform(
+                mxx, mxy, mxz, cX * (1 - mxx) - cY * mxy - cZ * mxz,
+                myx, myy, myz, cY * (1 - myy) - cX * myx - cZ * myz,
+                mzx, mzy, mzz, cZ * (1 - mzz) - cX * mzx - cY * mzy);
+        return true;
+    }
+}
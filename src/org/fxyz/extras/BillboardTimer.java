@@ -19,6 +19,7 @@
 
 package org.fxyz.extras;
 
+import org.fxyz.utils.FrameScheduler.Priority;
 import org.fxyz.utils.UpdateableTimer;
 
 /**
@@ -28,7 +29,7 @@ import org.fxyz.utils.UpdateableTimer;
 public final class BillboardTimer extends UpdateableTimer{
 
     public BillboardTimer() {
-        super(1);
+        super(1, false, Priority.HIGH);
     }    
     
 }
@@ -19,7 +19,6 @@
 
 package org.fxyz.extras;
 
-import javafx.animation.AnimationTimer;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.geometry.Rectangle2D;
@@ -31,6 +30,8 @@ import javafx.scene.image.WritableImage;
 import javafx.scene.transform.Affine;
 import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Transform;
+import org.fxyz.utils.FrameScheduler;
+import org.fxyz.utils.FrameScheduler.Priority;
 
 /** 
  * 
@@ -71,7 +72,7 @@ public class Skybox extends Group{
     private WritableImage convertedImage;
     
     private final PerspectiveCamera camera;
-    private AnimationTimer timer;
+    private FrameScheduler.Task timer;
     private final SkyboxImageType imageType;
 
     public Skybox(Image singleImg, double size, PerspectiveCamera camera) {
@@ -258,17 +259,14 @@ public class Skybox extends Group{
     }
     
     private void startTimer(){
-        timer = new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                Transform ct = (camera != null) ? camera.getLocalToSceneTransform() : null;
-                if(ct != null){
-                    affine.setTx(ct.getTx());
-                    affine.setTy(ct.getTy());
-                    affine.setTz(ct.getTz());
-                }
+        timer = FrameScheduler.getDefault().createTask("Skybox", Priority.HIGH, () -> {
+            Transform ct = (camera != null) ? camera.getLocalToSceneTransform() : null;
+            if(ct != null){
+                affine.setTx(ct.getTx());
+                affine.setTy(ct.getTy());
+                affine.setTz(ct.getTz());
             }
-        };
+        });
         timer.start();
     }
     
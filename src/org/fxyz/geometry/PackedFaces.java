@@ -0,0 +1,223 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fxyz.geometry;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable packed storage of triangles, as consecutive p0, p1, p2 indices.
+ *
+ * Used for both vertex and texture indices of a mesh, it avoids keeping one
+ * Face3 per triangle. asList() returns a live view for code working with Face3,
+ * where get(i) returns a copy.
+ *
+ * @author jpereda
+ */
+public class PackedFaces {
+
+    public static final int STRIDE = 3;
+
+    private int[] data;
+    private int size;
+    private final List<Face3> view = new FaceList();
+
+    public PackedFaces() {
+        this(64);
+    }
+
+    public PackedFaces(int initialCapacity) {
+        data = new int[STRIDE*Math.max(initialCapacity,1)];
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size==0; }
+
+    public void clear() { size=0; }
+
+    /*
+    Drops the last faces, keeping the first newSize
+    */
+    public void truncate(int newSize){
+        if(newSize<0 || newSize>size){
+            throw new IndexOutOfBoundsException("Size: "+newSize+", current size: "+size);
+        }
+        size=newSize;
+    }
+
+    public void ensureCapacity(int faces){
+        if(data.length<STRIDE*faces){
+            data=Arrays.copyOf(data, STRIDE*Math.max(faces, 2*size));
+        }
+    }
+
+    /*
+    Adds a new face and returns its index
+    */
+    public int add(int p0, int p1, int p2){
+        if(data.length==STRIDE*size){
+            data=Arrays.copyOf(data, 2*data.length);
+        }
+        int i=STRIDE*size;
+        data[i]=p0;
+        data[i+1]=p1;
+        data[i+2]=p2;
+        return size++;
+    }
+
+    public int add(Face3 f){
+        return add(f.p0, f.p1, f.p2);
+    }
+
+    public void set(int index, int p0, int p1, int p2){
+        int i=STRIDE*index;
+        data[i]=p0;
+        data[i+1]=p1;
+        data[i+2]=p2;
+    }
+
+    public int getP0(int index) { return data[STRIDE*index]; }
+    public int getP1(int index) { return data[STRIDE*index+1]; }
+    public int getP2(int index) { return data[STRIDE*index+2]; }
+
+    /*
+    Returns a new Face3 with the face at index
+    */
+    public Face3 get(int index){
+        int i=STRIDE*index;
+        return new Face3(data[i], data[i+1], data[i+2]);
+    }
+
+    /*
+    Direct access to the backing array. Only the first STRIDE*size() ints
+    are valid, and the array is replaced when it grows
+    */
+    public int[] getData() {
+        return data;
+    }
+
+    /*
+    Replaces the content with the indices of a TriangleMesh faces array
+    (p0,t0,p1,t1,p2,t2), starting at offset: 0 for vertices, 1 for textures
+    */
+    public void setAll(int[] meshFaces, int offset){
+        int n=meshFaces.length/6;
+        size=0;
+        ensureCapacity(n);
+        for(int i=0; i<n; i++){
+            int j=STRIDE*i;
+            data[j]=meshFaces[6*i+offset];
+            data[j+1]=meshFaces[6*i+2+offset];
+            data[j+2]=meshFaces[6*i+4+offset];
+        }
+        size=n;
+    }
+
+    /*
+    Replaces the content with faces given as (p0,p1,p2) triplets
+    */
+    public void setAll(int[] faces){
+        int n=faces.length/STRIDE;
+        size=0;
+        ensureCapacity(n);
+        System.arraycopy(faces, 0, data, 0, STRIDE*n);
+        size=n;
+    }
+
+    public void setAll(PackedFaces faces){
+        size=0;
+        ensureCapacity(faces.size);
+        System.arraycopy(faces.data, 0, data, 0, STRIDE*faces.size);
+        size=faces.size;
+    }
+
+    /*
+    Live view of the faces as a List of Face3
+    */
+    public List<Face3> asList() {
+        return view;
+    }
+
+    private class FaceList extends AbstractList<Face3> implements RandomAccess {
+
+        @Override
+        public Face3 get(int index) {
+            rangeCheck(index);
+            return PackedFaces.this.get(index);
+        }
+
+        @Override
+        public Face3 set(int index, Face3 f) {
+            rangeCheck(index);
+            Face3 old=PackedFaces.this.get(index);
+            PackedFaces.this.set(index, f.p0, f.p1, f.p2);
+            return old;
+        }
+
+        @Override
+        public void add(int index, Face3 f) {
+            if(index!=size){
+                throw new UnsupportedOperationException("Faces can only be appended");
+            }
+            PackedFaces.this.add(f);
+            modCount++;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends Face3> c) {
+            ensureCapacity(size+c.size());
+            c.forEach(PackedFaces.this::add);
+            modCount++;
+            return !c.isEmpty();
+        }
+
+        @Override
+        public Face3 remove(int index) {
+            if(index!=size-1){
+                throw new UnsupportedOperationException("Only the last face can be removed");
+            }
+            Face3 old=PackedFaces.this.get(index);
+            size--;
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            PackedFaces.this.clear();
+            modCount++;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private void rangeCheck(int index){
+            if(index<0 || index>=size){
+                throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+            }
+        }
+    }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fxyz.geometry;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Growable packed storage of vertices, as consecutive x, y, z, f floats.
+ *
+ * It replaces a List of Point3D as the backing store of a mesh: no object is
+ * kept per vertex. asList() returns a live view for code working with Point3D,
+ * where get(i) returns a copy, so changes on that copy are not stored back:
+ * use set(i,p) or the primitive setters instead.
+ *
+ * @author jpereda
+ */
+public class PackedPoints {
+
+    public static final int STRIDE = 4;
+
+    private float[] data;
+    private int size;
+    private final List<Point3D> view = new PointList();
+
+    public PackedPoints() {
+        this(64);
+    }
+
+    public PackedPoints(int initialCapacity) {
+        data = new float[STRIDE*Math.max(initialCapacity,1)];
+    }
+
+    public int size() { return size; }
+
+    public boolean isEmpty() { return size==0; }
+
+    public void clear() { size=0; }
+
+    /*
+    Drops the last points, keeping the first newSize
+    */
+    public void truncate(int newSize){
+        if(newSize<0 || newSize>size){
+            throw new IndexOutOfBoundsException("Size: "+newSize+", current size: "+size);
+        }
+        size=newSize;
+    }
+
+    /*
+    Resizes to the given number of points, growing the array if needed. New 
+    points are not initialized: they are meant to be written through getData()
+    */
+    public void setSize(int points){
+        if(points<0){
+            throw new IndexOutOfBoundsException("Size: "+points);
+        }
+        ensureCapacity(points);
+        size=points;
+    }
+
+    public void ensureCapacity(int points){
+        if(data.length<STRIDE*points){
+            data=Arrays.copyOf(data, STRIDE*Math.max(points, 2*size));
+        }
+    }
+
+    /*
+    Adds a new vertex and returns its index
+    */
+    public int add(float x, float y, float z, float f){
+        if(data.length==STRIDE*size){
+            data=Arrays.copyOf(data, 2*data.length);
+        }
+        int i=STRIDE*size;
+        data[i]=x;
+        data[i+1]=y;
+        data[i+2]=z;
+        data[i+3]=f;
+        return size++;
+    }
+
+    public int add(Point3D p){
+        return add(p.x, p.y, p.z, p.f);
+    }
+
+    public void set(int index, float x, float y, float z, float f){
+        int i=STRIDE*index;
+        data[i]=x;
+        data[i+1]=y;
+        data[i+2]=z;
+        data[i+3]=f;
+    }
+
+    public void set(int index, Point3D p){
+        set(index, p.x, p.y, p.z, p.f);
+    }
+
+    public float getX(int index) { return data[STRIDE*index]; }
+    public float getY(int index) { return data[STRIDE*index+1]; }
+    public float getZ(int index) { return data[STRIDE*index+2]; }
+    public float getF(int index) { return data[STRIDE*index+3]; }
+
+    public void setF(int index, float f) { data[STRIDE*index+3]=f; }
+
+    /*
+    Returns a new Point3D with the vertex at index
+    */
+    public Point3D get(int index){
+        int i=STRIDE*index;
+        return new Point3D(data[i], data[i+1], data[i+2], data[i+3]);
+    }
+
+    /*
+    Direct access to the backing array. Only the first STRIDE*size() floats
+    are valid, and the array is replaced when it grows
+    */
+    public float[] getData() {
+        return data;
+    }
+
+    /*
+    Replaces the content with the points (x,y,z) and f arrays of a MeshHelper
+    */
+    public void setAll(float[] points, float[] f){
+        int n=points.length/3;
+        size=0;
+        ensureCapacity(n);
+        for(int i=0; i<n; i++){
+            int j=STRIDE*i;
+            data[j]=points[3*i];
+            data[j+1]=points[3*i+1];
+            data[j+2]=points[3*i+2];
+            data[j+3]=f!=null && i<f.length?f[i]:0f;
+        }
+        size=n;
+    }
+
+    /*
+    Returns x, y, z coordinates, as required by TriangleMesh
+    */
+    public float[] toPoints(){
+        return toPoints(1f);
+    }
+
+    public float[] toPoints(float factor){
+        float[] points=new float[3*size];
+        for(int i=0; i<size; i++){
+            int j=STRIDE*i;
+            points[3*i]=factor*data[j];
+            points[3*i+1]=factor*data[j+1];
+            points[3*i+2]=factor*data[j+2];
+        }
+        return points;
+    }
+
+    public float[] toF(){
+        float[] f=new float[size];
+        for(int i=0; i<size; i++){
+            f[i]=data[STRIDE*i+3];
+        }
+        return f;
+    }
+
+    /*
+    Live view of the vertices as a List of Point3D
+    */
+    public List<Point3D> asList() {
+        return view;
+    }
+
+    private class PointList extends AbstractList<Point3D> implements RandomAccess {
+
+        @Override
+        public Point3D get(int index) {
+            rangeCheck(index);
+            return PackedPoints.this.get(index);
+        }
+
+        @Override
+        public Point3D set(int index, Point3D p) {
+            rangeCheck(index);
+            Point3D old=PackedPoints.this.get(index);
+            PackedPoints.this.set(index, p);
+            return old;
+        }
+
+        @Override
+        public void add(int index, Point3D p) {
+            if(index!=size){
+                throw new UnsupportedOperationException("Points can only be appended");
+            }
+            PackedPoints.this.add(p);
+            modCount++;
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends Point3D> c) {
+            ensureCapacity(size+c.size());
+            c.forEach(PackedPoints.this::add);
+            modCount++;
+            return !c.isEmpty();
+        }
+
+        @Override
+        public Point3D remove(int index) {
+            if(index!=size-1){
+                throw new UnsupportedOperationException("Only the last point can be removed");
+            }
+            Point3D old=PackedPoints.this.get(index);
+            size--;
+            modCount++;
+            return old;
+        }
+
+        @Override
+        public void clear() {
+            PackedPoints.this.clear();
+            modCount++;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        private void rangeCheck(int index){
+            if(index<0 || index>=size){
+                throw new IndexOutOfBoundsException("Index: "+index+", Size: "+size);
+            }
+        }
+    }
+}
@@ -19,13 +19,18 @@
 package org.fxyz.shapes.complex.cloth;
 
 import static java.lang.Math.sqrt;
-import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.BiFunction;
 import java.util.logging.Logger;
-import java.util.stream.IntStream;
+import javafx.animation.AnimationTimer;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
@@ -36,8 +41,6 @@ import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.ObservableFloatArray;
 import javafx.collections.ObservableIntegerArray;
-import javafx.concurrent.ScheduledService;
-import javafx.concurrent.Task;
 import javafx.event.EventHandler;
 import javafx.scene.image.Image;
 import javafx.scene.input.MouseEvent;
@@ -48,9 +51,7 @@ import javafx.scene.shape.MeshView;
 import javafx.scene.shape.ObservableFaceArray;
 import javafx.scene.shape.TriangleMesh;
 import javafx.scene.transform.Affine;
-import javafx.util.Duration;
 import org.fxyz.geometry.Point3D;
-import org.fxyz.utils.FloatCollector;
 
 /**
  *
@@ -76,13 +77,18 @@ public class ClothMesh extends MeshView {
     private static final int DEFAULT_CONSTRAINT_ACCURACY = 8;
     private static final int DEFAULT_ITERATIONS = 5;
     
+    private static final double DEFAULT_FIXED_TIME_STEP = 0.16;
+    private static final int DEFAULT_SUBSTEPS = 1;
+    private static final int DEFAULT_MAX_STEPS_PER_TICK = 5;
+    
     private static final double DEFAULT_POINT_MASS = 1.0;
 
     //==========================================================================
     private final ClothTimer timer = new ClothTimer();
+    private final PositionBuffer buffer = new PositionBuffer();
     private TriangleMesh mesh = new TriangleMesh();
     private final PhongMaterial material = new PhongMaterial();
-    private final List<WeightedPoint> points = new ArrayList<>();
+    private ClothSolver solver = new ClothSolver();
     private final Affine affine = new Affine();
 
     private BiFunction<Integer, TriangleMesh, int[]> faceValues = (index, m) -> {
@@ -226,15 +232,10 @@ public class ClothMesh extends MeshView {
                 PickResult pr = me.getPickResult();
                 if (pr.getIntersectedFace() != -1) {
                     int[] vals = faceValues.apply(pr.getIntersectedFace(), mesh);
-                    if (me.isControlDown()) {
-                        points.get(vals[0]).setOldPosition(points.get(vals[0]).getOldPosition().add(0, 0, 25));
-                        points.get(vals[2]).setOldPosition(points.get(vals[2]).getOldPosition().add(0, 0, 25));
-                        points.get(vals[4]).setOldPosition(points.get(vals[4]).getOldPosition().add(0, 0, 25));
-                    } else {
-                        points.get(vals[0]).setOldPosition(points.get(vals[0]).getOldPosition().add(0, 0, -25));
-                        points.get(vals[2]).setOldPosition(points.get(vals[2]).getOldPosition().add(0, 0, -25));
-                        points.get(vals[4]).setOldPosition(points.get(vals[4]).getOldPosition().add(0, 0, -25));
-                    }
+                    float dz = me.isControlDown() ? -25 : 25;
+                    solver.displace(vals[0], 0, 0, dz);
+                    solver.displace(vals[2], 0, 0, dz);
+                    solver.displace(vals[4], 0, 0, dz);
                 }
             }
         });
@@ -244,21 +245,23 @@ public class ClothMesh extends MeshView {
      */
 
     /**
-     *
+     * Sets the latest positions published by the simulation into the mesh
      */
     private void updatePoints() {
-        float[] pts = this.points.stream()
-                .flatMapToDouble(wp -> {
-                    return wp.getPosition().getCoordinates();
-                })
-                .collect(() -> new FloatCollector(this.points.size() * 3), FloatCollector::add, FloatCollector::join)
-                .toArray();
-
-        mesh.getPoints().setAll(pts, 0, pts.length);
+        float[] pts = buffer.acquire();
+        if (pts != null) {
+            int size = 3 * solver.getNumParticles();
+            if (mesh.getPoints().size() == size) {
+                mesh.getPoints().set(0, pts, 0, size);
+            } else {
+                mesh.getPoints().setAll(pts, 0, size);
+            }
+            buffer.release(pts);
+        }
     }
 
     /**
-     *
+     * Called on every pulse of the FX thread while the simulation runs
      */
     public void updateUI() {
         updatePoints();
@@ -284,6 +287,9 @@ public class ClothMesh extends MeshView {
                 sDivY = (divsY - 1);
         double xDist = (width / divsX),
                 yDist = (height / divsY);
+        // fixed seed, so every run starts from the same state
+        Random random = new Random(divsX * 31 + divsY);
+        solver = new ClothSolver(divsX * divsY, divsX * divsY * ((shear ? 4 : 2) + (bend ? 2 : 0)));
         //build Points and TexCoords        
         for (int Y = 0; Y <= sDivY; Y++) {
 
@@ -295,32 +301,22 @@ public class ClothMesh extends MeshView {
                 float currX = (float) X / sDivX;
                 float fx = (1 - currX) * minX + currX * maxX;
 
-                //create point: parent, mass, x, y, z
-                WeightedPoint p = new WeightedPoint(this, getPerPointMass(), fx, fy, Math.random());
-
                 //Pin Points in place
-                if (Y == 0 && X == 0 || (X == 0 && Y == sDivY)) {
-                    p.setAnchored(true);
-                    p.setForceAffected(false);
-                } else {
-                    p.setForceAffected(true);
-                }
-                if (((Y < 5) && (X == 0)) || ((Y > sDivY - 5) && X == 0)) {
-                    p.setMass(100);
-                }
+                boolean anchored = Y == 0 && X == 0 || (X == 0 && Y == sDivY);
+                double mass = ((Y < 5) && (X == 0)) || ((Y > sDivY - 5) && X == 0) ? 100 : getPerPointMass();
+                
+                //create point: x, y, z, mass
+                int p = solver.addParticle(fx, fy, random.nextFloat(), mass, anchored);
+                
                 // stabilLinks 
                 if (X != 0) {
-                    p.attatchTo((points.get(points.size() - 1)), xDist, getStretchStrength());
-                    //log.log(Level.INFO, "\nLINK-INFO\nOther Index: {0}, This Index: {1}\nLink Distance: {2}\nStiffness: {3}\n", new Object[]{(points.size() - 2), points.indexOf(p),(width / divsX), stiffness});
+                    solver.addLink(p, p - 1, xDist, getStretchStrength());
                 }
                 if (Y != 0) {
-                    p.attatchTo((points.get((Y - 1) * (divsX) + X)), yDist, getStretchStrength());
-                    //log.log(Level.INFO, "\nLINK-INFO\nOther Index: {0}, This Index: {1}\nLink Distance: {2}\nStiffness: {3}\n", new Object[]{((Y - 1) * (divsX) + X), points.indexOf(p),(height / divsY), stiffness});
+                    solver.addLink(p, (Y - 1) * (divsX) + X, yDist, getStretchStrength());
                 }
-                //add to points
-                points.add(p);
                 // add Point data into Mesh
-                mesh.getPoints().addAll(p.position.x, p.position.y, p.position.z);
+                mesh.getPoints().addAll(solver.getX(p), solver.getY(p), solver.getZ(p));
                 // add texCoords
                 mesh.getTexCoords().addAll(currX, currY);
             }
@@ -329,14 +325,14 @@ public class ClothMesh extends MeshView {
         if (shear) {
             for (int Y = 0; Y <= sDivY; Y++) {
                 for (int X = 0; X <= sDivX; X++) {
-                    WeightedPoint p = points.get(Y * divsX + X);
+                    int p = Y * divsX + X;
                     // top left(xy) to right(xy + 1)
                     if (X < (divsX - 1) && Y < (divsY - 1)) {
-                        p.attatchTo((points.get(((Y + 1) * (divsX) + (X + 1)))), sqrt((xDist * xDist) + (yDist * yDist)), getShearStrength());
+                        solver.addLink(p, ((Y + 1) * (divsX) + (X + 1)), sqrt((xDist * xDist) + (yDist * yDist)), getShearStrength());
                     }
                     // index(xy) to left(x - 1(y + 1))
                     if (Y != 0 && X != (divsX - 1)) {
-                        p.attatchTo((points.get(((Y - 1) * divsX + (X + 1)))), sqrt((xDist * xDist) + (yDist * yDist)), getShearStrength());
+                        solver.addLink(p, ((Y - 1) * divsX + (X + 1)), sqrt((xDist * xDist) + (yDist * yDist)), getShearStrength());
                     }
                 }
             }
@@ -345,18 +341,22 @@ public class ClothMesh extends MeshView {
         if (bend) {
             for (int Y = 0; Y <= sDivY; Y++) {
                 for (int X = 0; X <= sDivX; X++) {
-                    WeightedPoint p = points.get(Y * divsX + X);
+                    int p = Y * divsX + X;
                     //skip every other
                     if (X < (divsX - 2)) {
-                        p.attatchTo((points.get((Y * divsX + (X + 2)))), xDist * 2, getBendStrength());
+                        solver.addLink(p, (Y * divsX + (X + 2)), xDist * 2, getBendStrength());
                     }
                     if (Y < (divsY - 2)) {
-                        p.attatchTo((points.get((Y + 2) * divsX + X)), xDist * 2, getBendStrength());
+                        solver.addLink(p, (Y + 2) * divsX + X, xDist * 2, getBendStrength());
                     }
-                    p.setOldPosition(p.getPosition());
                 }
             }
         }
+        // colour the links before the first step
+        solver.build();
+        // default forces: gusts on every (divsX - 1)th point, and a steady wind
+        solver.getForceFields().add(ForceField.wind(ParticleSet.every(divsX - 1), 5, -1, 1));
+        solver.getForceFields().add(ForceField.wind(ParticleSet.all(), 4.8f, 1, -1));
         // build faces
         for (int Y = 0; Y < sDivY; Y++) {
             for (int X = 0; X < sDivX; X++) {
@@ -585,6 +585,59 @@ public class ClothMesh extends MeshView {
     public final IntegerProperty iterationsProperty() {
         return iterations;
     }
+    //==========================================================================
+    /**
+     * Simulated time of each fixed step. The simulation advances 10 units per
+     * second, so the default, 0.16, makes one step every 16 ms
+     */
+    private final DoubleProperty fixedTimeStep = new SimpleDoubleProperty(this, "fixedTimeStep", DEFAULT_FIXED_TIME_STEP);
+
+    public final double getFixedTimeStep() {
+        return fixedTimeStep.get();
+    }
+
+    public final void setFixedTimeStep(double value) {
+        fixedTimeStep.set(value);
+    }
+
+    public final DoubleProperty fixedTimeStepProperty() {
+        return fixedTimeStep;
+    }
+    //==========================================================================
+    /**
+     * Number of solver steps each fixed step is split into
+     */
+    private final IntegerProperty substeps = new SimpleIntegerProperty(this, "substeps", DEFAULT_SUBSTEPS);
+
+    public final int getSubsteps() {
+        return substeps.get();
+    }
+
+    public final void setSubsteps(int value) {
+        substeps.set(value);
+    }
+
+    public final IntegerProperty substepsProperty() {
+        return substeps;
+    }
+    //==========================================================================
+    /**
+     * Maximum number of fixed steps run on a tick to catch up. Beyond that,
+     * the time is dropped and the simulation slows down
+     */
+    private final IntegerProperty maxStepsPerTick = new SimpleIntegerProperty(this, "maxStepsPerTick", DEFAULT_MAX_STEPS_PER_TICK);
+
+    public final int getMaxStepsPerTick() {
+        return maxStepsPerTick.get();
+    }
+
+    public final void setMaxStepsPerTick(int value) {
+        maxStepsPerTick.set(value);
+    }
+
+    public final IntegerProperty maxStepsPerTickProperty() {
+        return maxStepsPerTick;
+    }
     
     /**=========================================================================
      * Starts the Cloth Simulation
@@ -728,7 +781,7 @@ public class ClothMesh extends MeshView {
     }
     
     public void setPointsMass(int index, double m){
-        points.get(index).setMass(m);        
+        solver.setMass(index, m);        
     }
     
     public DoubleProperty perPointMassProperty() {
@@ -757,10 +810,19 @@ public class ClothMesh extends MeshView {
     
     
     /*==========================================================================
-     Points List
+     Solver with the particles and links
+     */
+    public final ClothSolver getSolver() {
+        return solver;
+    }
+    
+    /**
+     * Force fields applied on every step. They can be added or removed while
+     * the simulation runs
+     * @return the list of fields of the solver
      */
-    protected final List<WeightedPoint> getPointList() {
-        return points;
+    public final List<ForceField> getForceFields() {
+        return solver.getForceFields();
     }
     
     //End ClothMesh=============================================================
@@ -771,28 +833,40 @@ public class ClothMesh extends MeshView {
      *************************************************************************
      */
     /**
-     * Timer to handle Cloth updates
+     * Timer to handle Cloth updates.
+     * 
+     * The simulation runs on its own thread, ticking every 16 ms: the elapsed
+     * time is accumulated and consumed in steps of fixedTimeStep, each one
+     * integrated in substeps solver steps. What is left in the accumulator is
+     * used to interpolate between the last two steps, and the result is 
+     * published to the FX thread, that picks it up on its next pulse. A slow
+     * frame only delays the rendering, never the simulation.
      */
-    private class ClothTimer extends ScheduledService<Void> {
+    private class ClothTimer {
 
         private final long ONE_NANO = 1000000000L;
         private final double ONE_NANO_INV = 1f / 1000000000L;
+        // simulation time units per second
+        private final double TIME_SCALE = 10.0;
+        private final long TICK_NANOS = 16000000L;
 
         private long startTime, previousTime;
-        private double deltaTime;
-        private final double fixedDeltaTime = 0.16;
-        private int leftOverDeltaTime, timeStepAmt;
+        private double deltaTime, accumulator;
+        private int timeStepAmt;
+        private float[] previous;
 
-        private final NanoThreadFactory tf;
-        private boolean paused;
+        private final ScheduledExecutorService executor;
+        private ScheduledFuture<?> future;
+        private final AnimationTimer renderer;
 
         public ClothTimer() {
-            super();
-
-            this.setPeriod(Duration.millis(16));
-
-            this.tf = new NanoThreadFactory();
-            this.setExecutor(Executors.newSingleThreadExecutor(tf));
+            this.executor = Executors.newSingleThreadScheduledExecutor(new NanoThreadFactory());
+            this.renderer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    updateUI();
+                }
+            };
         }
 
         /**
@@ -810,14 +884,6 @@ public class ClothMesh extends MeshView {
             return System.nanoTime() - startTime;
         }
 
-        /**
-         *
-         * @return one nano second
-         */
-        private long getOneSecondAsNano() {
-            return ONE_NANO;
-        }
-
         /**
          *
          * @return deltaTime
@@ -826,93 +892,86 @@ public class ClothMesh extends MeshView {
             return deltaTime;
         }
 
+        public boolean isRunning() {
+            return future != null;
+        }
+
         /**
-         *
-         * @return updates Timers clock values
+         * Adds the elapsed time to the accumulator, and returns the number of
+         * fixed steps to run, at most maxStepsPerTick. Time that can't be
+         * simulated in those steps is dropped
          */
-        private void updateTimer() {
-            deltaTime = (getTime() - previousTime) * (10.0f / ONE_NANO);
-            previousTime = getTime();
-            timeStepAmt = (int) ((deltaTime + leftOverDeltaTime) / fixedDeltaTime);
-            timeStepAmt = Math.min(timeStepAmt, 5);
-            leftOverDeltaTime = (int) (deltaTime - (timeStepAmt * fixedDeltaTime));
+        private int updateTimer(double fixedDeltaTime) {
+            long time = getTime();
+            deltaTime = (time - previousTime) * (TIME_SCALE / ONE_NANO);
+            previousTime = time;
+            accumulator += deltaTime;
+            timeStepAmt = (int) (accumulator / fixedDeltaTime);
+            if (timeStepAmt > getMaxStepsPerTick()) {
+                timeStepAmt = getMaxStepsPerTick();
+                accumulator = timeStepAmt * fixedDeltaTime;
+            }
+            accumulator -= timeStepAmt * fixedDeltaTime;
+            return timeStepAmt;
         }
 
-        @Override
-        protected Task<Void> createTask() {
-            return new Task<Void>() {
-                @Override
-                protected Void call() throws Exception {
-                    updateTimer();
-                    
-                    IntStream.range(0, getIterations()).forEach(i->{});
-                    points.parallelStream().filter(p->{return points.indexOf(p) % (getDivisionsX() - 1) == 0;}).forEach(p -> {
-                        p.applyForce(new Point3D(5,-1,1));
-                    });
-                    for (int i = 0; i < getConstraintAccuracy(); i++) {
-                        points.parallelStream().forEach(WeightedPoint::solveConstraints);
+        private void tick() {
+            try {
+                double fixedDeltaTime = getFixedTimeStep();
+                int substeps = Math.max(1, getSubsteps());
+                int steps = updateTimer(fixedDeltaTime);
+                int size = 3 * solver.getNumParticles();
+                if (previous == null || previous.length < size) {
+                    previous = Arrays.copyOf(solver.getPositions(), size);
+                }
+                for (int s = 0; s < steps; s++) {
+                    System.arraycopy(solver.getPositions(), 0, previous, 0, size);
+                    for (int i = 0; i < substeps; i++) {
+                        solver.step(fixedDeltaTime / substeps, getConstraintAccuracy());
                     }
-                    points.parallelStream().forEach(p -> {
-                        p.applyForce(new Point3D(4.8f,1,-1));
-                        p.updatePhysics(deltaTime, 1);                        
-                    });
-
-                    return null;
                 }
-            };
-        }
-
-        @Override
-        protected void failed() {
-            getException().printStackTrace(System.err);
-
-        }
-
-        @Override
-        protected void succeeded() {
-            super.succeeded();
-            updateUI();
-        }
-
-        @Override
-        protected void cancelled() {
-            super.cancelled();
-            reset();
+                // state between the last two steps, at the time left over
+                float alpha = (float) (accumulator / fixedDeltaTime);
+                float[] current = solver.getPositions();
+                float[] render = buffer.back(size);
+                for (int i = 0; i < size; i++) {
+                    render[i] = previous[i] + (current[i] - previous[i]) * alpha;
+                }
+                buffer.publish();
+            } catch (Throwable t) {
+                t.printStackTrace(System.err);
+            }
         }
 
-        @Override
         public void start() {
             if (isRunning()) {
                 return;
             }
-            super.start();
             if (startTime <= 0) {
                 startTime = System.nanoTime();
             }
-
+            previousTime = getTime();
+            future = executor.scheduleAtFixedRate(this::tick, 0, TICK_NANOS, TimeUnit.NANOSECONDS);
+            renderer.start();
         }
 
         protected void pause() {
-            paused = true;
             if (isRunning()) {
-                if (cancel()) {
-                    cancelled();
-                }
+                future.cancel(false);
+                future = null;
             }
+            renderer.stop();
         }
 
-        @Override
-        public void reset() {
-            super.reset();
-            if (!paused) {
-                startTime = System.nanoTime();
-                previousTime = getTime();
-            }
+        public void cancel() {
+            pause();
+            startTime = 0;
+            accumulator = 0;
         }
 
         @Override
         public String toString() {
-            return "ClothTimer{" + "startTime=" + startTime + ", previousTime=" + previousTime + ", deltaTime=" + deltaTime + ", fixedDeltaTime=" + fixedDeltaTime + ", leftOverDeltaTime=" + leftOverDeltaTime + ", timeStepAmt=" + timeStepAmt + '}';
+            return "ClothTimer{" + "startTime=" + startTime + ", previousTime=" + previousTime + ", deltaTime=" + deltaTime + ", fixedDeltaTime=" + getFixedTimeStep() + ", accumulator=" + accumulator + ", timeStepAmt=" + timeStepAmt + '}';
         }
 
         /*==========================================================================
@@ -933,4 +992,54 @@ public class ClothMesh extends MeshView {
         }
     }//End ClothTimer===========================================================
 
+    /**
+     * Hands positions from the simulation thread to the FX thread without locks.
+     * 
+     * The simulation fills the back buffer and publishes it; the FX thread takes
+     * the latest published one, if any, and gives it back when the mesh is 
+     * updated. At most three arrays are ever in use, and a buffer is never
+     * written while it is being read.
+     */
+    private static class PositionBuffer {
+
+        private float[] back;
+        private final AtomicReference<float[]> latest = new AtomicReference<>();
+        private final AtomicReference<float[]> released = new AtomicReference<>();
+
+        /*
+        simulation thread: array to write the next positions to
+        */
+        float[] back(int size) {
+            if (back == null || back.length < size) {
+                float[] free = released.getAndSet(null);
+                back = free != null && free.length >= size ? free : new float[size];
+            }
+            return back;
+        }
+
+        /*
+        simulation thread: makes the back buffer the latest one. If the FX thread
+        didn't take the previous one yet, it is reused as back buffer
+        */
+        void publish() {
+            back = latest.getAndSet(back);
+            if (back == null) {
+                back = released.getAndSet(null);
+            }
+        }
+
+        /*
+        FX thread: latest positions, or null if nothing new was published
+        */
+        float[] acquire() {
+            return latest.getAndSet(null);
+        }
+
+        /*
+        FX thread: returns the array once the mesh is updated
+        */
+        void release(float[] buffer) {
+            released.set(buffer);
+        }
+    }
 }
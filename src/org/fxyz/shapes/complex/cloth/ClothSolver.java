@@ -0,0 +1,423 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.complex.cloth;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.IntConsumer;
+import java.util.stream.IntStream;
+
+/**
+ * Verlet cloth solver working on flat arrays.
+ *
+ * Particles are kept as x,y,z floats in positions, oldPositions and forces,
+ * with their mass and inverse mass (0 for anchored particles). Links are pairs
+ * of particle indices with rest length and stiffness.
+ *
+ * Links are graph coloured when the solver is built: no two links of the same
+ * colour share a particle, so each colour is solved in parallel without locks
+ * and without races, and the result doesn't depend on the number of threads.
+ *
+ * External forces are added by the ForceField stage, before each step.
+ *
+ * @author Jason Pollastrini aka jdub1581
+ */
+public class ClothSolver {
+
+    private static final int PARALLEL_THRESHOLD = 4096;
+    private static final int CHUNK = 1024;
+
+    // particles
+    private int numParticles;
+    private float[] positions, oldPositions, anchors, forces;
+    private float[] mass, invMass;
+    private boolean[] anchored;
+
+    // links, sorted by colour once built
+    private int numLinks;
+    private int[] linkA, linkB;
+    private float[] restLength, stiffness;
+    private int[] colorOffsets = new int[]{0};
+    private boolean built;
+
+    private final List<ForceField> forceFields = new CopyOnWriteArrayList<>();
+    private double time;
+
+    // displacements requested from other threads, applied at the next step
+    private final ConcurrentLinkedQueue<float[]> displacements = new ConcurrentLinkedQueue<>();
+
+    public ClothSolver() {
+        this(64, 256);
+    }
+
+    public ClothSolver(int particles, int links) {
+        particles=Math.max(particles,1);
+        links=Math.max(links,1);
+        positions = new float[3*particles];
+        oldPositions = new float[3*particles];
+        anchors = new float[3*particles];
+        forces = new float[3*particles];
+        mass = new float[particles];
+        invMass = new float[particles];
+        anchored = new boolean[particles];
+        linkA = new int[links];
+        linkB = new int[links];
+        restLength = new float[links];
+        stiffness = new float[links];
+    }
+
+    /*==========================================================================
+     Setup
+     */
+
+    /**
+     * Adds a particle at rest
+     * @param x
+     * @param y
+     * @param z
+     * @param m mass of the particle
+     * @param anchor if true the particle stays at this position
+     * @return index of the particle
+     */
+    public int addParticle(float x, float y, float z, double m, boolean anchor){
+        if(invMass.length==numParticles){
+            int capacity=2*numParticles;
+            positions=Arrays.copyOf(positions, 3*capacity);
+            oldPositions=Arrays.copyOf(oldPositions, 3*capacity);
+            anchors=Arrays.copyOf(anchors, 3*capacity);
+            forces=Arrays.copyOf(forces, 3*capacity);
+            mass=Arrays.copyOf(mass, capacity);
+            invMass=Arrays.copyOf(invMass, capacity);
+            anchored=Arrays.copyOf(anchored, capacity);
+        }
+        int i=numParticles++;
+        setPosition(i, x, y, z);
+        this.mass[i]=(float)m;
+        setAnchored(i, anchor);
+        return i;
+    }
+
+    /**
+     * Adds a distance constraint between two particles
+     * @param a index of the first particle
+     * @param b index of the second particle
+     * @param distance rest length
+     * @param strength stiffness, from 0 to 1
+     * @return index of the link
+     */
+    public int addLink(int a, int b, double distance, double strength){
+        if(linkA.length==numLinks){
+            int capacity=2*numLinks;
+            linkA=Arrays.copyOf(linkA, capacity);
+            linkB=Arrays.copyOf(linkB, capacity);
+            restLength=Arrays.copyOf(restLength, capacity);
+            stiffness=Arrays.copyOf(stiffness, capacity);
+        }
+        linkA[numLinks]=a;
+        linkB[numLinks]=b;
+        restLength[numLinks]=(float)distance;
+        stiffness[numLinks]=(float)strength;
+        built=false;
+        return numLinks++;
+    }
+
+    /**
+     * Colours the links: each link gets the lowest colour not used yet by any
+     * of its particles, then links are sorted by colour, keeping their order
+     * within the colour.
+     * Called on the first step after links are added.
+     */
+    public void build(){
+        int[] color=new int[numLinks];
+        int numColors=0;
+        // colours used by each particle, 64 per word
+        long[][] used=new long[1][numParticles];
+        for(int l=0; l<numLinks; l++){
+            int a=linkA[l], b=linkB[l];
+            int c=0;
+            while(true){
+                int word=c>>>6;
+                if(word==used.length){
+                    used=Arrays.copyOf(used, word+1);
+                    used[word]=new long[numParticles];
+                }
+                long free=~(used[word][a]|used[word][b]);
+                if(free!=0L){
+                    c=(word<<6)+Long.numberOfTrailingZeros(free);
+                    break;
+                }
+                c=(word+1)<<6;
+            }
+            used[c>>>6][a]|=1L<<(c&63);
+            used[c>>>6][b]|=1L<<(c&63);
+            color[l]=c;
+            numColors=Math.max(numColors,c+1);
+        }
+
+        colorOffsets=new int[numColors+1];
+        for(int l=0; l<numLinks; l++){
+            colorOffsets[color[l]+1]++;
+        }
+        for(int c=0; c<numColors; c++){
+            colorOffsets[c+1]+=colorOffsets[c];
+        }
+        int[] next=Arrays.copyOf(colorOffsets, numColors);
+        int[] a=new int[numLinks], b=new int[numLinks];
+        float[] r=new float[numLinks], s=new float[numLinks];
+        for(int l=0; l<numLinks; l++){
+            int j=next[color[l]]++;
+            a[j]=linkA[l];
+            b[j]=linkB[l];
+            r[j]=restLength[l];
+            s[j]=stiffness[l];
+        }
+        linkA=a;
+        linkB=b;
+        restLength=r;
+        stiffness=s;
+        built=true;
+    }
+
+    /*==========================================================================
+     Simulation
+     */
+
+    /**
+     * One step: applies the force fields, satisfies the constraints iterations
+     * times, then integrates the accumulated forces with Verlet over dt, and
+     * clears them
+     * @param dt time step
+     * @param iterations number of constraint passes
+     */
+    public void step(double dt, int iterations){
+        applyDisplacements();
+        for(ForceField field : forceFields){
+            field.apply(this, dt);
+        }
+        solveConstraints(iterations);
+        integrate(dt);
+        time+=dt;
+    }
+
+    public void solveConstraints(int iterations){
+        if(!built){
+            build();
+        }
+        for(int it=0; it<iterations; it++){
+            for(int c=0; c<colorOffsets.length-1; c++){
+                forRange(colorOffsets[c], colorOffsets[c+1], this::solveLinks);
+            }
+        }
+    }
+
+    private void solveLinks(int from, int to){
+        final float[] p=positions;
+        for(int l=from; l<to; l++){
+            int a=3*linkA[l], b=3*linkB[l];
+            float w1=invMass[linkA[l]], w2=invMass[linkB[l]];
+            if(w1+w2==0f){
+                continue;
+            }
+            float dx=p[a]-p[b], dy=p[a+1]-p[b+1], dz=p[a+2]-p[b+2];
+            float d=(float)Math.sqrt(dx*dx+dy*dy+dz*dz);
+            if(d==0f){
+                continue;
+            }
+            float difference=(restLength[l]-d)/d;
+            float s1=w1/(w1+w2)*stiffness[l]*difference;
+            float s2=stiffness[l]*difference-s1;
+            p[a]+=dx*s1;
+            p[a+1]+=dy*s1;
+            p[a+2]+=dz*s1;
+            p[b]-=dx*s2;
+            p[b+1]-=dy*s2;
+            p[b+2]-=dz*s2;
+        }
+    }
+
+    public void integrate(double dt){
+        final float halfDtSq=(float)(0.5*dt*dt);
+        forRange(0, numParticles, (from, to)->{
+            final float[] p=positions, o=oldPositions, f=forces;
+            for(int i=from; i<to; i++){
+                int j=3*i;
+                if(invMass[i]==0f){
+                    p[j]=o[j]=anchors[j];
+                    p[j+1]=o[j+1]=anchors[j+1];
+                    p[j+2]=o[j+2]=anchors[j+2];
+                } else {
+                    float w=invMass[i]*halfDtSq;
+                    for(int k=j; k<j+3; k++){
+                        float next=p[k]+(p[k]-o[k])+f[k]*w;
+                        o[k]=p[k];
+                        p[k]=next;
+                    }
+                }
+                f[j]=f[j+1]=f[j+2]=0f;
+            }
+        });
+    }
+
+    @FunctionalInterface
+    private interface RangeTask {
+        void run(int from, int to);
+    }
+
+    private static void forRange(int from, int to, RangeTask task){
+        if(to-from<PARALLEL_THRESHOLD){
+            task.run(from, to);
+        } else {
+            int chunks=(to-from+CHUNK-1)/CHUNK;
+            IntStream.range(0, chunks).parallel()
+                    .forEach(c->task.run(from+c*CHUNK, Math.min(to, from+(c+1)*CHUNK)));
+        }
+    }
+
+    /*==========================================================================
+     Forces
+     */
+
+    /*
+    Fields applied on each step, in order. It can be modified from any thread
+    */
+    public List<ForceField> getForceFields() {
+        return forceFields;
+    }
+
+    /*
+    Simulated time, sum of the steps
+    */
+    public double getTime() {
+        return time;
+    }
+
+    /**
+     * Calls action with each index of the set, in parallel chunks for large sets
+     * @param particles set of particles
+     * @param action receives the particle index
+     */
+    public void forEach(ParticleSet particles, IntConsumer action){
+        forRange(0, particles.size(numParticles), (from, to)->{
+            for(int k=from; k<to; k++){
+                action.accept(particles.get(k));
+            }
+        });
+    }
+
+    /**
+     * Adds a force to the particle, for the next integration. Anchored
+     * particles ignore forces
+     * @param i index of the particle
+     * @param fx
+     * @param fy
+     * @param fz
+     */
+    public void applyForce(int i, float fx, float fy, float fz){
+        forces[3*i]+=fx;
+        forces[3*i+1]+=fy;
+        forces[3*i+2]+=fz;
+    }
+
+    /**
+     * Moves back the previous position of the particle, what gives it a velocity
+     * of (dx, dy, dz) per step. It can be called from any thread: it is applied
+     * at the start of the next step
+     * @param i index of the particle
+     * @param dx
+     * @param dy
+     * @param dz
+     */
+    public void displace(int i, float dx, float dy, float dz){
+        displacements.add(new float[]{i, dx, dy, dz});
+    }
+
+    private void applyDisplacements(){
+        float[] d;
+        while((d=displacements.poll())!=null){
+            int j=3*(int)d[0];
+            oldPositions[j]-=d[1];
+            oldPositions[j+1]-=d[2];
+            oldPositions[j+2]-=d[3];
+        }
+    }
+
+    /*==========================================================================
+     Particles
+     */
+
+    public int getNumParticles() { return numParticles; }
+    public int getNumLinks() { return numLinks; }
+
+    public int getNumColors() {
+        if(!built){
+            build();
+        }
+        return colorOffsets.length-1;
+    }
+
+    /*
+    Direct access to the positions, x,y,z per particle. Only the first
+    3*getNumParticles() floats are valid
+    */
+    public float[] getPositions() {
+        return positions;
+    }
+
+    public float[] getOldPositions() {
+        return oldPositions;
+    }
+
+    public void setPosition(int i, float x, float y, float z){
+        int j=3*i;
+        positions[j]=oldPositions[j]=anchors[j]=x;
+        positions[j+1]=oldPositions[j+1]=anchors[j+1]=y;
+        positions[j+2]=oldPositions[j+2]=anchors[j+2]=z;
+    }
+
+    public float getX(int i) { return positions[3*i]; }
+    public float getY(int i) { return positions[3*i+1]; }
+    public float getZ(int i) { return positions[3*i+2]; }
+
+    public double getMass(int i) { return mass[i]; }
+
+    public void setMass(int i, double m){
+        mass[i]=(float)m;
+        invMass[i]=anchored[i] || m<=0?0f:(float)(1d/m);
+    }
+
+    public boolean isAnchored(int i) { return anchored[i]; }
+
+    /**
+     * Anchors the particle at its current position, or releases it
+     * @param i index of the particle
+     * @param anchor
+     */
+    public void setAnchored(int i, boolean anchor){
+        anchored[i]=anchor;
+        if(anchor){
+            int j=3*i;
+            anchors[j]=positions[j];
+            anchors[j+1]=positions[j+1];
+            anchors[j+2]=positions[j+2];
+        }
+        setMass(i, mass[i]);
+    }
+}
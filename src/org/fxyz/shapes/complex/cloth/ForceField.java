@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.complex.cloth;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Stage of forces applied to the particles of a ClothSolver before each step.
+ *
+ * Fields act on a ParticleSet, so the cost is linear in the number of
+ * particles affected. Large sets are split in chunks and applied in parallel:
+ * a field only writes the forces of its own particles.
+ *
+ * @author Jason Pollastrini aka jdub1581
+ */
+@FunctionalInterface
+public interface ForceField {
+
+    /**
+     * Adds the forces of the field to the solver
+     * @param solver the cloth solver
+     * @param dt duration of the next step
+     */
+    void apply(ClothSolver solver, double dt);
+
+    /**
+     * @param particles particles affected
+     * @param fx
+     * @param fy
+     * @param fz
+     * @return constant force, like a steady wind
+     */
+    public static ForceField wind(ParticleSet particles, float fx, float fy, float fz){
+        return (solver, dt)->solver.forEach(particles, i->solver.applyForce(i, fx, fy, fz));
+    }
+
+    /**
+     * @param particles particles affected
+     * @param gx
+     * @param gy
+     * @param gz
+     * @return force proportional to the mass of each particle
+     */
+    public static ForceField gravity(ParticleSet particles, float gx, float gy, float gz){
+        return (solver, dt)->solver.forEach(particles, i->{
+            float m=(float)solver.getMass(i);
+            solver.applyForce(i, m*gx, m*gy, m*gz);
+        });
+    }
+
+    /**
+     * @param particles particles affected
+     * @param k drag coefficient
+     * @return force opposed to the velocity of each particle, -k*v
+     */
+    public static ForceField drag(ParticleSet particles, float k){
+        return (solver, dt)->{
+            final float[] p=solver.getPositions(), o=solver.getOldPositions();
+            final float c=(float)(-k/dt);
+            solver.forEach(particles, i->{
+                int j=3*i;
+                solver.applyForce(i, c*(p[j]-o[j]), c*(p[j+1]-o[j+1]), c*(p[j+2]-o[j+2]));
+            });
+        };
+    }
+
+    /**
+     * Forces requested from any thread, like user interaction, that are applied
+     * once, on the next step
+     */
+    public static class Impulses implements ForceField {
+
+        private final ConcurrentLinkedQueue<float[]> queue = new ConcurrentLinkedQueue<>();
+
+        public void add(int index, float fx, float fy, float fz){
+            queue.add(new float[]{index, fx, fy, fz});
+        }
+
+        @Override
+        public void apply(ClothSolver solver, double dt) {
+            float[] f;
+            while((f=queue.poll())!=null){
+                solver.applyForce((int)f[0], f[1], f[2], f[3]);
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.complex.cloth;
+
+import java.util.Arrays;
+
+/**
+ * Set of particle indices a ForceField acts on: a range, every n-th particle of
+ * a range, or an explicit set of indices, kept sorted and without duplicates.
+ *
+ * Ranges are open ended: to is clamped to the number of particles of the solver.
+ *
+ * @author Jason Pollastrini aka jdub1581
+ */
+public final class ParticleSet {
+
+    private final int from, to, step;
+    private final int[] indices;
+
+    private ParticleSet(int from, int to, int step, int[] indices) {
+        this.from = from;
+        this.to = to;
+        this.step = step;
+        this.indices = indices;
+    }
+
+    public static ParticleSet all(){
+        return new ParticleSet(0, Integer.MAX_VALUE, 1, null);
+    }
+
+    public static ParticleSet range(int from, int to){
+        return new ParticleSet(from, to, 1, null);
+    }
+
+    /**
+     * @param from first index
+     * @param to last index, excluded
+     * @param step distance between indices
+     * @return from, from+step, from+2*step... below to
+     */
+    public static ParticleSet range(int from, int to, int step){
+        if(step<1){
+            throw new IllegalArgumentException("step must be positive: "+step);
+        }
+        return new ParticleSet(from, to, step, null);
+    }
+
+    public static ParticleSet every(int step){
+        return range(0, Integer.MAX_VALUE, step);
+    }
+
+    public static ParticleSet of(int... indices){
+        int[] sorted=Arrays.stream(indices).sorted().distinct().toArray();
+        return new ParticleSet(0, sorted.length, 1, sorted);
+    }
+
+    /**
+     * @param numParticles number of particles of the solver
+     * @return number of indices of the set below numParticles
+     */
+    public int size(int numParticles){
+        if(indices!=null){
+            int k=Arrays.binarySearch(indices, numParticles);
+            return k>=0?k:-k-1;
+        }
+        int end=Math.min(to, numParticles);
+        return end<=from?0:(end-from+step-1)/step;
+    }
+
+    /**
+     * @param k position in the set
+     * @return k-th particle index
+     */
+    public int get(int k){
+        return indices!=null?indices[k]:from+k*step;
+    }
+
+    @Override
+    public String toString() {
+        return indices!=null?"ParticleSet{" + "indices=" + Arrays.toString(indices) + '}'
+                :"ParticleSet{" + "from=" + from + ", to=" + to + ", step=" + step + '}';
+    }
+}
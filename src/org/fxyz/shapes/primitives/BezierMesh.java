@@ -78,11 +78,9 @@ public class BezierMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh(){   
-        setMesh(null);
-        mesh=createBezier(getSpline(), (float) getWireRadius(), 
+        commitMesh(createBezier(getSpline(), (float) getWireRadius(), 
             getLengthDivisions(), getWireDivisions(), getLengthCrop(), getWireCrop(),
-            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset());
-        setMesh(mesh);
+            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset()));
     }
     
     private final ObjectProperty<BezierHelper> spline = new SimpleObjectProperty<BezierHelper>(){
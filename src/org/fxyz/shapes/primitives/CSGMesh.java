@@ -19,15 +19,14 @@
 package org.fxyz.shapes.primitives;
 
 import eu.mihosoft.vrl.v3d.CSG;
+import eu.mihosoft.vrl.v3d.Polygon;
 import eu.mihosoft.vrl.v3d.Vertex;
-import java.util.ArrayList;
 import java.util.List;
 import javafx.scene.DepthTest;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.TriangleMesh;
-import org.fxyz.geometry.Face3;
-import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.helper.VertexWelder;
 
 /**
  *
@@ -49,47 +48,34 @@ public class CSGMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh() {
-        setMesh(null);
-        mesh=createCSGMesh();
-        setMesh(mesh);
+        commitMesh(createCSGMesh());
     }
     
     private TriangleMesh createCSGMesh(){
-        List<Vertex> vertices = new ArrayList<>();
-        List<List<Integer>> indices = new ArrayList<>();
+        List<Polygon> polygons = primitive.getPolygons();
+        VertexWelder welder = new VertexWelder(VertexWelder.DEFAULT_EPSILON, 2*polygons.size());
 
-        listVertices.clear();
-        primitive.getPolygons().forEach(p -> {
-            List<Integer> polyIndices = new ArrayList<>();
-            
-            p.vertices.forEach(v -> {
-                if (!vertices.contains(v)) {
-                    vertices.add(v);
-                    listVertices.add(new Point3D((float)v.pos.x, (float)v.pos.y, (float)v.pos.z));
-                    polyIndices.add(vertices.size());
-                } else {
-                    polyIndices.add(vertices.indexOf(v) + 1);
-                }
-            });
-
-            indices.add(polyIndices);
-            
-        });
+        packedFaces.clear();
+        packedTextures.clear();
+        int[] polyIndices = new int[16];
+        for(Polygon p : polygons){
+            int n = p.vertices.size();
+            if(polyIndices.length<n){
+                polyIndices = new int[2*n];
+            }
+            for(int i=0; i<n; i++){
+                Vertex v = p.vertices.get(i);
+                polyIndices[i] = welder.add(v.pos.x, v.pos.y, v.pos.z);
+            }
+            for (int i = 0; i < n - 2; i++) {
+                packedTextures.add(0, 0, 0);
+                packedFaces.add(polyIndices[0], polyIndices[i + 1], polyIndices[i + 2]);
+            }
+        }
+        packedVertices.setAll(welder.getPoints(), null);
         
         textureCoords=new float[]{0f,0f};
-        listTextures.clear();
-        listFaces.clear();
-        indices.forEach(pVerts-> {
-            int index1 = pVerts.get(0);
-            for (int i = 0; i < pVerts.size() - 2; i++) {
-                int index2 = pVerts.get(i + 1);
-                int index3 = pVerts.get(i + 2);
-
-                listTextures.add(new Face3(0, 0, 0));
-                listFaces.add(new Face3(index1-1, index2-1, index3-1));
-            }
-        });
-        int[] faceSmoothingGroups = new int[listFaces.size()];
+        int[] faceSmoothingGroups = new int[packedFaces.size()];
         smoothingGroups=faceSmoothingGroups;
         
         return createMesh();
@@ -86,11 +86,9 @@ public class CurvedSpringMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh(){   
-        setMesh(null);
-        mesh=createSpring((float) getMajorRadius(), (float) getMinorRadius(), (float) getWireRadius(), (float) getPitch(), (float) getLength(),
+        commitMesh(createSpring((float) getMajorRadius(), (float) getMinorRadius(), (float) getWireRadius(), (float) getPitch(), (float) getLength(),
             getLengthDivisions(), getWireDivisions(), getLengthCrop(), getWireCrop(),
-            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset());
-        setMesh(mesh);
+            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset()));
     }
     
     private final DoubleProperty majorRadius = new SimpleDoubleProperty(DEFAULT_MAJOR_RADIUS){
@@ -18,11 +18,6 @@
  */
 package org.fxyz.shapes.primitives;
 
-import java.util.HashMap;
-import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
@@ -30,7 +25,6 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.geometry.Point2D;
 import javafx.scene.DepthTest;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
@@ -41,10 +35,9 @@ import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Transform;
 import javafx.scene.transform.Translate;
 import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.helper.MeshSubdivider;
 import org.fxyz.shapes.primitives.helper.TriangleMeshHelper;
 import org.fxyz.shapes.primitives.helper.TriangleMeshHelper.SectionType;
-import org.fxyz.geometry.Face3;
-import org.fxyz.utils.FloatCollector;
 
 /**
  *
@@ -217,15 +210,12 @@ public class FrustumMesh extends TexturedMesh {
     
     @Override
     protected final void updateMesh() {
-        setMesh(null);
-        mesh=createFrustum((float)getMajorRadius(), (float)getMinorRadius(), (float)getHeight(), getLevel());
-        setMesh(mesh);
+        commitMesh(createFrustum((float)getMajorRadius(), (float)getMinorRadius(), (float)getHeight(), getLevel()));
     }
     
     private int numVertices, numTexCoords, numFaces;
     private float[] points0, texCoord0;
     private int[] faces0;
-    private List<Point2D> texCoord1;
     
    /*
         cylinder mesh is generated on (0,h/2,0) -> (0,-h/2,0) local coordinates
@@ -380,93 +370,53 @@ public class FrustumMesh extends TexturedMesh {
         }
         
         final float h=height;
-        List<Point3D> points1 = IntStream.range(0, numVertices)
-                .mapToObj(i -> {
-                    Point3D p=new Point3D(points0[3*i], points0[3*i+1], points0[3*i+2]);
-                    // f = h of local cylinder from 0 on top (ini) to 1 on bottom (end)
-                    p.f=(h/2-unTransform(p).y)/h;
-                    return p;
-                })
-                .collect(Collectors.toList());
         
         if(level>0 && m0!=null){
             texCoord0=new float[numTexCoords*m0.getTexCoordElementSize()];
             m0.getTexCoords().toArray(texCoord0);
         }
         
-        texCoord1 = IntStream.range(0, numTexCoords)
-                    .mapToObj(i -> new Point2D(texCoord0[2*i], texCoord0[2*i+1]))
-                    .collect(Collectors.toList());
-        
         if(level>0 && m0!=null){
             faces0=new int[numFaces*m0.getFaceElementSize()];
             m0.getFaces().toArray(faces0);
         }
-        
-        List<Face3> faces1 = IntStream.range(0, numFaces)
-                    .mapToObj(i -> new Face3(faces0[6*i], faces0[6*i+2], faces0[6*i+4]))
-                    .collect(Collectors.toList());
-
-        index.set(points1.size());
-        map.clear();
-        listVertices.clear();
-        listFaces.clear();
-        listVertices.addAll(points1);
-        
-        faces1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,points1.get(v1),v2,points1.get(v2));
-                int b = getMiddle(v2,points1.get(v2),v3,points1.get(v3));
-                int c = getMiddle(v3,points1.get(v3),v1,points1.get(v1));
 
-                listFaces.add(new Face3(v1,a,c));
-                listFaces.add(new Face3(v2,b,a));
-                listFaces.add(new Face3(v3,c,b));
-                listFaces.add(new Face3(a,b,c));
-            } else {
-                listFaces.add(new Face3(v1,v2,v3));
+        // faces and texture faces of level-1, as (p0,p1,p2) triplets
+        int[] f1=new int[3*numFaces];
+        int[] t1=new int[3*numFaces];
+        for(int i=0; i<numFaces; i++){
+            for(int k=0; k<3; k++){
+                f1[3*i+k]=faces0[6*i+2*k];
+                t1[3*i+k]=faces0[6*i+2*k+1];
             }
-        });
-        map.clear();
-        numVertices=listVertices.size();
-        numFaces=listFaces.size();
-        
-        List<Face3> textures1;
-        if(level==0){
-            textures1= IntStream.range(0, faces0.length/6)
-                    .mapToObj(i -> new Face3(faces0[6*i+1], faces0[6*i+3], faces0[6*i+5]))
-                    .collect(Collectors.toList());
-        } else {
-            textures1 = listTextures.stream().map(t->t).collect(Collectors.toList());
         }
-
-        index.set(texCoord1.size());
-        listTextures.clear();
-        AtomicInteger kk=new AtomicInteger();
-        textures1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,texCoord1.get(v1),v2,texCoord1.get(v2));
-                int b = getMiddle(v2,texCoord1.get(v2),v3,texCoord1.get(v3));
-                int c = getMiddle(v3,texCoord1.get(v3),v1,texCoord1.get(v1));
-
-                listTextures.add(new Face3(v1,a,c));
-                listTextures.add(new Face3(v2,b,a));
-                listTextures.add(new Face3(v3,c,b));
-                listTextures.add(new Face3(a,b,c));
-            } else {
-                listTextures.add(new Face3(v1,v2,v3));
+        MeshSubdivider vertices=null;
+        if(level>0){
+            // texture indices of level-1, the mesh faces may not have them
+            System.arraycopy(packedTextures.getData(), 0, t1, 0, t1.length);
+            vertices=MeshSubdivider.subdivide(f1, numFaces, numVertices);
+            points0=vertices.interpolate(points0, 3);
+            f1=vertices.getFaces();
+            MeshSubdivider textures=MeshSubdivider.subdivide(t1, numFaces, numTexCoords);
+            texCoord0=textures.interpolate(texCoord0, 2);
+            t1=textures.getFaces();
+        }
+        packedVertices.setAll(points0, null);
+        for(int i=0; i<numVertices; i++){
+            // f = h of local cylinder from 0 on top (ini) to 1 on bottom (end)
+            packedVertices.setF(i, (h/2-unTransform(packedVertices.get(i)).y)/h);
+        }
+        if(level>0){
+            // new vertices, on the surface of the cylinder
+            int[] edges=vertices.getEdges();
+            for(int m=0; m<vertices.getNumMidpoints(); m++){
+                packedVertices.set(numVertices+m, middle(packedVertices.get(edges[2*m]), packedVertices.get(edges[2*m+1])));
             }
-        });
-        map.clear();
-        
-        texCoord0=texCoord1.stream().flatMapToDouble(p->DoubleStream.of(p.getX(),p.getY()))
-                .collect(()->new FloatCollector(texCoord1.size()*2), FloatCollector::add, FloatCollector::join).toArray();
+        }
+        packedFaces.setAll(f1);
+        packedTextures.setAll(t1);
+        numVertices=packedVertices.size();
+        numFaces=packedFaces.size();
         numTexCoords=texCoord0.length/2;
         textureCoords=texCoord0;
         if(level==getLevel()){
@@ -505,15 +455,11 @@ public class FrustumMesh extends TexturedMesh {
         return p;
     }
     
-    private final AtomicInteger index = new AtomicInteger();
-    private final HashMap<String, Integer> map = new HashMap<>();
-
-    private int getMiddle(int v1, Point3D p1, int v2, Point3D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
-        }
 
+    private double radius(double y){
+        return majorRadius.get()+(minorRadius.get()-majorRadius.get())*(height.get()/2d-y)/height.get();
+    }
+    private Point3D middle(Point3D p1, Point3D p2){
         Point3D p3 = p1.add(p2).multiply(0.5f);
         if(getSectionType().equals(SectionType.CIRCLE)){
             if(inCircle(p1) && inCircle(p2)){
@@ -527,29 +473,11 @@ public class FrustumMesh extends TexturedMesh {
         }
         // f = h of local cylinder from 0 on top (ini) to 1 on bottom (end)
         p3.f=(float)((height.get()/2d-unTransform(p3).y)/height.get());
-        listVertices.add(p3);
-        
-        map.put(key,index.get());
-        return index.getAndIncrement();
+        return p3;
     }
     
-    private double radius(double y){
-        return majorRadius.get()+(minorRadius.get()-majorRadius.get())*(height.get()/2d-y)/height.get();
-    }
     private boolean inCircle(Point3D p){
         Point3D p2=unTransform(p);
         return p2.x*p2.x+p2.z*p2.z>0.99*Math.pow(radius(p2.y),2);
     }
-    
-    private int getMiddle(int v1, Point2D p1, int v2, Point2D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
-        }
-
-        texCoord1.add(p1.add(p2).multiply(0.5f));
-
-        map.put(key,index.get());
-        return index.getAndIncrement();
-    }
 }
@@ -19,24 +19,20 @@
 package org.fxyz.shapes.primitives;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import javafx.beans.property.FloatProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleFloatProperty;
 import javafx.beans.property.SimpleIntegerProperty;
-import javafx.geometry.Point2D;
 import javafx.scene.DepthTest;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.TriangleMesh;
-import org.fxyz.geometry.Face3;
 import org.fxyz.geometry.Point3D;
-import org.fxyz.utils.FloatCollector;
+import org.fxyz.shapes.primitives.helper.MeshCache;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+import org.fxyz.shapes.primitives.helper.MeshSubdivider;
 import org.fxyz.shapes.primitives.helper.TriangleMeshHelper.TextureType;
 
 /**
@@ -80,9 +76,20 @@ public class IcosahedronMesh extends TexturedMesh {
     
     @Override
     protected final void updateMesh(){       
-        setMesh(null);
-        mesh=createSphere(level.get(), diameter.get());
-        setMesh(mesh);
+        // the vertices are on the unit sphere for any diameter
+        List<Object> key=MeshCache.key(IcosahedronMesh.class, level.get());
+        MeshHelper sphere=MeshCache.get(key);
+        if(sphere==null){
+            createSphere(level.get());
+            sphere=packMesh();
+            MeshCache.put(key, sphere);
+        }
+        float[] texCoords=sphere.getTexCoords();
+        areaMesh.setWidth(Math.PI*diameter.get());
+        areaMesh.setHeight(Math.PI*diameter.get());
+        rectMesh.setWidth((int)Math.sqrt(texCoords.length));
+        rectMesh.setHeight(texCoords.length/((int)Math.sqrt(texCoords.length)));
+        updateMesh(sphere);
     }
     private final FloatProperty diameter = new SimpleFloatProperty(SPHERE_DIAMETER);
 
@@ -165,12 +172,11 @@ public class IcosahedronMesh extends TexturedMesh {
     private int numVertices, numTexCoords, numFaces;
     private float[] points0, texCoord0;
     private int[] faces0;
-    private List<Point2D> texCoord1;
     
-    private TriangleMesh createSphere(int level, float diameter) {
+    private TriangleMesh createSphere(int level) {
         TriangleMesh m0=null;
         if(level>0){
-            m0= createSphere(level-1, diameter);
+            m0= createSphere(level-1);
         }
         
         // read vertices from level-1
@@ -182,10 +188,6 @@ public class IcosahedronMesh extends TexturedMesh {
             m0.getPoints().toArray(points0);
         }
 
-        List<Point3D> points1 = IntStream.range(0, numVertices)
-                        .mapToObj(i -> new Point3D(points0[3*i], points0[3*i+1], points0[3*i+2]))
-                        .collect(Collectors.toList());
-
         // read textures from level -1
         if(level==0){
             texCoord0 = baseTexCoords;
@@ -194,10 +196,6 @@ public class IcosahedronMesh extends TexturedMesh {
             texCoord0=new float[numTexCoords*m0.getTexCoordElementSize()];
             m0.getTexCoords().toArray(texCoord0);
         }
-
-        texCoord1 = IntStream.range(0, numTexCoords)
-                    .mapToObj(i -> new Point2D(texCoord0[2*i], texCoord0[2*i+1]))
-                    .collect(Collectors.toList());
         
         // read faces from level -1
         if(level==0){
@@ -211,106 +209,52 @@ public class IcosahedronMesh extends TexturedMesh {
             faces0=new int[numFaces*m0.getFaceElementSize()];
             m0.getFaces().toArray(faces0);
         }
-        
-        List<Face3> faces1 = IntStream.range(0, numFaces)
-                    .mapToObj(i -> new Face3(faces0[6*i], faces0[6*i+2], faces0[6*i+4]))
-                    .collect(Collectors.toList());
 
-        index.set(points1.size());
-        map.clear();
-        listVertices.clear();
-        listFaces.clear();
-        listVertices.addAll(points1);
-        
-        faces1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,points1.get(v1),v2,points1.get(v2));
-                int b = getMiddle(v2,points1.get(v2),v3,points1.get(v3));
-                int c = getMiddle(v3,points1.get(v3),v1,points1.get(v1));
-
-                listFaces.add(new Face3(v1,a,c));
-                listFaces.add(new Face3(v2,b,a));
-                listFaces.add(new Face3(v3,c,b));
-                listFaces.add(new Face3(a,b,c));
-            } else {
-                listFaces.add(new Face3(v1,v2,v3));
+        // faces and texture faces of level-1, as (p0,p1,p2) triplets
+        int[] f1=new int[3*numFaces];
+        int[] t1=new int[3*numFaces];
+        for(int i=0; i<numFaces; i++){
+            for(int k=0; k<3; k++){
+                f1[3*i+k]=faces0[6*i+2*k];
+                t1[3*i+k]=faces0[6*i+2*k+1];
             }
-        });
-        map.clear();
-        numVertices=listVertices.size();
-        numFaces=listFaces.size();
-        
-        List<Face3> textures1;
-        if(level==0){
-            textures1= IntStream.range(0, faces0.length/6)
-                    .mapToObj(i -> new Face3(faces0[6*i+1], faces0[6*i+3], faces0[6*i+5]))
-                    .collect(Collectors.toList());
-        } else {
-            textures1 = listTextures.stream().map(t->t).collect(Collectors.toList());
         }
-        
-        index.set(texCoord1.size());
-        listTextures.clear();
-        textures1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,texCoord1.get(v1),v2,texCoord1.get(v2));
-                int b = getMiddle(v2,texCoord1.get(v2),v3,texCoord1.get(v3));
-                int c = getMiddle(v3,texCoord1.get(v3),v1,texCoord1.get(v1));
-
-                listTextures.add(new Face3(v1,a,c));
-                listTextures.add(new Face3(v2,b,a));
-                listTextures.add(new Face3(v3,c,b));
-                listTextures.add(new Face3(a,b,c));
-            } else {
-                listTextures.add(new Face3(v1,v2,v3));
-            }
-        });
-        map.clear();
-
-        texCoord0=texCoord1.stream().flatMapToDouble(p->DoubleStream.of(p.getX(),p.getY()))
-                .collect(()->new FloatCollector(texCoord1.size()*2), FloatCollector::add, FloatCollector::join).toArray();
+        if(level>0){
+            // texture indices of level-1, the mesh faces may not have them
+            System.arraycopy(packedTextures.getData(), 0, t1, 0, t1.length);
+            MeshSubdivider vertices=MeshSubdivider.subdivide(f1, numFaces, numVertices);
+            points0=vertices.interpolate(points0, 3);
+            normalize(points0, numVertices, vertices.getNumVertices());
+            f1=vertices.getFaces();
+            MeshSubdivider textures=MeshSubdivider.subdivide(t1, numFaces, numTexCoords);
+            texCoord0=textures.interpolate(texCoord0, 2);
+            t1=textures.getFaces();
+        }
+        packedVertices.setAll(points0, null);
+        packedFaces.setAll(f1);
+        packedTextures.setAll(t1);
+        numVertices=packedVertices.size();
+        numFaces=packedFaces.size();
         numTexCoords=texCoord0.length/2;
         textureCoords=texCoord0;
-        if(level==getLevel()){
-            areaMesh.setWidth(Math.PI*diameter);
-            areaMesh.setHeight(Math.PI*diameter);
-            rectMesh.setWidth((int)Math.sqrt(texCoord0.length));
-            rectMesh.setHeight(texCoord0.length/((int)Math.sqrt(texCoord0.length)));
-        }
         return createMesh();
     }
     
-    private final AtomicInteger index = new AtomicInteger();
-    private final HashMap<String, Integer> map = new HashMap<>();
-
-    private int getMiddle(int v1, Point3D p1, int v2, Point3D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
-        }
-
-        listVertices.add(p1.add(p2).multiply(0.5f).normalize());
-
-        map.put(key,index.get());
-        return index.getAndIncrement();
-    }
-    
-    private int getMiddle(int v1, Point2D p1, int v2, Point2D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
+    /*
+    Moves the points [from, to) to the unit sphere, as Point3D.normalize does
+    */
+    private static void normalize(float[] points, int from, int to){
+        for(int i=from; i<to; i++){
+            float x=points[3*i], y=points[3*i+1], z=points[3*i+2];
+            float mag=(float)Math.sqrt(x*x+y*y+z*z);
+            if(mag==0f){
+                points[3*i]=points[3*i+1]=points[3*i+2]=0f;
+            } else {
+                points[3*i]=x/mag;
+                points[3*i+1]=y/mag;
+                points[3*i+2]=z/mag;
+            }
         }
-
-        texCoord1.add(p1.add(p2).multiply(0.5f));
-
-        map.put(key,index.get());
-        return index.getAndIncrement();
     }
 
 }
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.primitives;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.DrawMode;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+import org.fxyz.utils.MeshReader;
+
+/**
+ * A mesh loaded from an OBJ, STL, PLY or FXM file (see MeshReader), with all 
+ * the texture modes of TexturedMesh. The f values of the vertices, read from 
+ * PLY files, can be used with setTextureModeVertices1D.
+ *
+ * @author jpereda
+ */
+public class ImportedMesh extends TexturedMesh {
+
+    private final MeshHelper meshHelper;
+    
+    public ImportedMesh(Path path) throws IOException {
+        this(MeshReader.read(path));
+    }
+    
+    public ImportedMesh(MeshHelper meshHelper){
+        this.meshHelper=meshHelper;
+        
+        updateMesh();
+        setCullFace(CullFace.BACK);
+        setDrawMode(DrawMode.FILL);
+    }
+
+    @Override
+    protected final void updateMesh() {
+        updateMesh(meshHelper);
+    }
+    
+    public MeshHelper getMeshHelper(){
+        return meshHelper;
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.primitives;
+
+import java.util.List;
+import javafx.scene.DepthTest;
+import javafx.scene.shape.CullFace;
+import javafx.scene.shape.DrawMode;
+import javafx.scene.shape.TriangleMesh;
+import org.fxyz.geometry.PackedPoints;
+import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+
+/**
+ * One single mesh with copies of a template mesh placed on a list of positions.
+ * 
+ * Every instance takes a fixed slice of the mesh: the template vertices, faces 
+ * and smoothing groups, at index*stride, while all the instances share the 
+ * template texture coordinates. The joined mesh is built once, and then each 
+ * instance can be moved, recolored, added or removed by writing only its slice, 
+ * without rebuilding the rest of the mesh.
+ * 
+ * The value f of the position is used for all the vertices of the instance, so 
+ * it can be colored with setTextureModeVertices1D. To recolor a single instance 
+ * in constant time, set minGlobal/maxGlobal, otherwise all the faces are mapped 
+ * again to the new extremes.
+ *
+ * @author jpereda
+ */
+public class InstancedMesh extends TexturedMesh {
+
+    private final float[] templatePoints;
+    private final float[] templateTexCoords;
+    private final int[] templateFaces;
+    private final int[] templateSmoothingGroups;
+    private final int vertexStride, faceStride;
+    
+    // x, y, z, f of every instance
+    private final PackedPoints instances = new PackedPoints();
+    
+    public InstancedMesh(TriangleMesh template, List<Point3D> positions){
+        templatePoints=template.getPoints().toArray(null);
+        templateTexCoords=template.getTexCoords().toArray(null);
+        templateFaces=template.getFaces().toArray(null);
+        templateSmoothingGroups=template.getFaceSmoothingGroups().toArray(null);
+        vertexStride=templatePoints.length/3;
+        faceStride=templateFaces.length/6;
+        
+        instances.ensureCapacity(positions.size());
+        positions.forEach(instances::add);
+        
+        updateMesh();
+        setCullFace(CullFace.BACK);
+        setDrawMode(DrawMode.FILL);
+        setDepthTest(DepthTest.ENABLE);
+    }
+
+    @Override
+    protected final void updateMesh() {
+        int n=instances.size();
+        float[] points=new float[3*vertexStride*n];
+        float[] f=new float[vertexStride*n];
+        int[] faces=new int[6*faceStride*n];
+        int[] groups=new int[templateSmoothingGroups.length>0?faceStride*n:0];
+        for(int i=0; i<n; i++){
+            float x=instances.getX(i), y=instances.getY(i), z=instances.getZ(i);
+            for(int j=0; j<vertexStride; j++){
+                int k=3*(i*vertexStride+j);
+                points[k]=templatePoints[3*j]+x;
+                points[k+1]=templatePoints[3*j+1]+y;
+                points[k+2]=templatePoints[3*j+2]+z;
+                f[i*vertexStride+j]=instances.getF(i);
+            }
+            int offset=i*vertexStride;
+            for(int j=0; j<templateFaces.length; j++){
+                faces[6*faceStride*i+j]=templateFaces[j]+(j%2==0?offset:0);
+            }
+            if(groups.length>0){
+                System.arraycopy(templateSmoothingGroups, 0, groups, i*faceStride, faceStride);
+            }
+        }
+        updateMesh(new MeshHelper(points, templateTexCoords, faces, groups, f));
+    }
+    
+    public int getNumInstances(){
+        return instances.size();
+    }
+    
+    public int getVertexStride(){
+        return vertexStride;
+    }
+    
+    public int getFaceStride(){
+        return faceStride;
+    }
+    
+    public Point3D getPosition(int index){
+        checkIndex(index);
+        return instances.get(index);
+    }
+    
+    /*
+    Moves the instance at index, writing only its vertices
+    */
+    public void setPosition(int index, float x, float y, float z){
+        checkIndex(index);
+        instances.set(index, x, y, z, instances.getF(index));
+        writeVertices(index);
+        updateVertexRange(index*vertexStride, (index+1)*vertexStride);
+    }
+    
+    /*
+    Sets the value of the instance at index, used by the vertex coloring
+    */
+    public void setF(int index, float f){
+        checkIndex(index);
+        instances.setF(index, f);
+        for(int j=index*vertexStride; j<(index+1)*vertexStride; j++){
+            packedVertices.setF(j, f);
+        }
+        updateFaceRange(index*faceStride, (index+1)*faceStride);
+    }
+    
+    /*
+    Moves and sets the value of the instance at index
+    */
+    public void set(int index, Point3D p){
+        checkIndex(index);
+        instances.set(index, p);
+        writeVertices(index);
+        updateVertexRange(index*vertexStride, (index+1)*vertexStride);
+        updateFaceRange(index*faceStride, (index+1)*faceStride);
+    }
+    
+    /*
+    Moves all the instances at once, given x, y, z of each one
+    */
+    public void setPositions(float[] points){
+        int n=Math.min(points.length/3, instances.size());
+        for(int i=0; i<n; i++){
+            instances.set(i, points[3*i], points[3*i+1], points[3*i+2], instances.getF(i));
+            writeVertices(i);
+        }
+        updateVertexRange(0, n*vertexStride);
+    }
+    
+    /*
+    Sets the values of all the instances at once, with one single update of the
+    faces
+    */
+    public void setF(float[] values){
+        int n=Math.min(values.length, instances.size());
+        for(int i=0; i<n; i++){
+            float f=values[i];
+            instances.setF(i, f);
+            for(int j=i*vertexStride; j<(i+1)*vertexStride; j++){
+                packedVertices.setF(j, f);
+            }
+        }
+        invalidateFaces();
+    }
+    
+    /*
+    Adds a new instance at the end of the mesh, and returns its index
+    */
+    public int add(Point3D p){
+        int index=instances.add(p);
+        int offset=index*vertexStride;
+        packedVertices.ensureCapacity(offset+vertexStride);
+        for(int j=0; j<vertexStride; j++){
+            packedVertices.add(0f, 0f, 0f, 0f);
+        }
+        writeVertices(index);
+        packedFaces.ensureCapacity((index+1)*faceStride);
+        packedTextures.ensureCapacity((index+1)*faceStride);
+        for(int j=0; j<faceStride; j++){
+            packedFaces.add(templateFaces[6*j]+offset, templateFaces[6*j+2]+offset, templateFaces[6*j+4]+offset);
+            packedTextures.add(templateFaces[6*j+1], templateFaces[6*j+3], templateFaces[6*j+5]);
+        }
+        if(mesh!=null){
+            updateVertexRange(offset, offset+vertexStride);
+            if(templateSmoothingGroups.length>0){
+                mesh.getFaceSmoothingGroups().addAll(templateSmoothingGroups);
+            }
+            updateFaceRange(index*faceStride, (index+1)*faceStride);
+        }
+        return index;
+    }
+    
+    /*
+    Removes the instance at index. The last instance is moved to its slice, 
+    taking that index, and the mesh is truncated by one slice
+    */
+    public void remove(int index){
+        checkIndex(index);
+        int last=instances.size()-1;
+        if(index!=last){
+            instances.set(index, instances.getX(last), instances.getY(last), 
+                    instances.getZ(last), instances.getF(last));
+            writeVertices(index);
+        }
+        instances.truncate(last);
+        packedVertices.truncate(last*vertexStride);
+        packedFaces.truncate(last*faceStride);
+        packedTextures.truncate(last*faceStride);
+        if(mesh!=null){
+            if(templateSmoothingGroups.length>0){
+                mesh.getFaceSmoothingGroups().resize(last*faceStride);
+            }
+            if(index!=last){
+                updateVertexRange(index*vertexStride, (index+1)*vertexStride);
+                updateFaceRange(index*faceStride, (index+1)*faceStride);
+            } else {
+                updateVertexRange(0, 0);
+                updateFaceRange(0, 0);
+            }
+        }
+    }
+    
+    private void writeVertices(int index){
+        float x=instances.getX(index), y=instances.getY(index), z=instances.getZ(index);
+        float f=instances.getF(index);
+        for(int j=0; j<vertexStride; j++){
+            packedVertices.set(index*vertexStride+j, templatePoints[3*j]+x, 
+                    templatePoints[3*j+1]+y, templatePoints[3*j+2]+z, f);
+        }
+    }
+    
+    private void checkIndex(int index){
+        if(index<0 || index>=instances.size()){
+            throw new IndexOutOfBoundsException("Index: "+index+", Size: "+instances.size());
+        }
+    }
+}
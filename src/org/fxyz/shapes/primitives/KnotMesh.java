@@ -26,7 +26,6 @@ import javafx.scene.DepthTest;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.TriangleMesh;
-import org.fxyz.geometry.Face3;
 import org.fxyz.geometry.Point3D;
 import org.fxyz.shapes.primitives.helper.KnotHelper;
 
@@ -87,11 +86,9 @@ public class KnotMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh(){   
-        setMesh(null);
-        mesh=createSpring((float) getMajorRadius(), (float) getMinorRadius(), (float) getWireRadius(), (float) getP(), (float) getQ(), (float) getLength(),
+        commitMesh(createSpring((float) getMajorRadius(), (float) getMinorRadius(), (float) getWireRadius(), (float) getP(), (float) getQ(), (float) getLength(),
             getLengthDivisions(), getWireDivisions(), getLengthCrop(), getWireCrop(),
-            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset());
-        setMesh(mesh);
+            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset()));
     }
     
     private final DoubleProperty majorRadius = new SimpleDoubleProperty(DEFAULT_MAJOR_RADIUS){
@@ -395,9 +392,12 @@ public class KnotMesh extends TexturedMesh {
             int subDivLength, int subDivWire, int cropLength, int cropWire,
             float startAngle, float xOffset, float yOffset, float zOffset) {
  
-        listVertices.clear();
-        listTextures.clear();
-        listFaces.clear();
+        packedVertices.clear();
+        packedTextures.clear();
+        packedFaces.clear();
+        packedVertices.ensureCapacity((subDivLength+1)*(subDivWire+1));
+        packedTextures.ensureCapacity(2*subDivLength*subDivWire);
+        packedFaces.ensureCapacity(2*subDivLength*subDivWire);
         
         int numDivLength = subDivLength + 1-2*cropLength;
         int numDivWire = subDivWire + 1-2*cropWire;
@@ -415,7 +415,7 @@ public class KnotMesh extends TexturedMesh {
                     float du = (float) (((double)u)*2d*Math.PI / ((double)subDivWire));
                     double pol = polygonalSection(du);
                     float cu=(float)(a*pol*Math.cos(du)), su=(float)(a*pol*Math.sin(du)); 
-                    listVertices.add(knot.getS(t, cu, su));
+                    packedVertices.add(knot.getS(t, cu, su));
                 }
             }
         }
@@ -430,8 +430,8 @@ public class KnotMesh extends TexturedMesh {
                 int p01 = p00 + 1;
                 int p10 = p00 + numDivWire;
                 int p11 = p10 + 1;
-                listTextures.add(new Face3(p00,p01,p11));
-                listTextures.add(new Face3(p11,p10,p00));            
+                packedTextures.add(p00,p01,p11);
+                packedTextures.add(p11,p10,p00);            
             }
         }
         
@@ -446,8 +446,8 @@ public class KnotMesh extends TexturedMesh {
                     p01-=subDivWire;
                     p11-=subDivWire;
                 }
-                listFaces.add(new Face3(p00,p01,p11));
-                listFaces.add(new Face3(p11,p10,p00));            
+                packedFaces.add(p00,p01,p11);
+                packedFaces.add(p11,p10,p00);            
             }
         }
         
@@ -18,12 +18,12 @@
  */
 package org.fxyz.shapes.primitives;
 
-import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
-import java.util.stream.Collectors;
+import java.util.function.ToDoubleFunction;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
@@ -41,7 +41,6 @@ import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.TriangleMesh;
 import org.fxyz.geometry.Point3D;
-import org.fxyz.shapes.primitives.helper.MeshHelper;
 import org.fxyz.shapes.primitives.helper.TextureMode;
 import org.fxyz.utils.Palette.ColorPalette;
 import org.fxyz.utils.Patterns;
@@ -200,40 +199,117 @@ public class ScatterMesh extends Group implements TextureMode {
         updateTransforms();
     }
     
-    private AtomicInteger index;
+    private InstancedMesh instances;
     private void createDots() {
         if(!joinSegments.get()){
-            List<TexturedMesh> dots=new ArrayList<>();
-            index=new AtomicInteger();
             scatterData.get().forEach(point3d->{
 //                TexturedMesh dot = new CuboidMesh(height.get(), height.get(), height.get(), level.get(), point3d);
-                TexturedMesh dot = new TetrahedraMesh(height.get(), level.get(), point3d);
-                dot.setCullFace(CullFace.BACK);
-                dot.setDrawMode(DrawMode.FILL);
-                dot.setDepthTest(DepthTest.ENABLE);
-                dot.setId(""+index.getAndIncrement());
-                dots.add(dot);
+                meshes.add(createDot(point3d));
             });
-            meshes.addAll(dots);
         } else {
-//            TexturedMesh dot = new CuboidMesh(height.get(), height.get(), height.get(), level.get(), scatterData.get().get(0));
-            TexturedMesh dot = new TetrahedraMesh(height.get(), level.get(), scatterData.get().get(0));
-            dot.setCullFace(CullFace.BACK);
-            dot.setDrawMode(DrawMode.FILL);
-            dot.setDepthTest(DepthTest.ENABLE);
-            dot.setId("0");
             /*
-            Combine new polyMesh with previous polyMesh into one single polyMesh
+            Join all the dots into one single mesh, with one slice per point 
+            that can be updated without rebuilding the mesh
             */
-            MeshHelper mh = new MeshHelper((TriangleMesh)dot.getMesh());
-//            TexturedMesh dot1 = new CuboidMesh(height.get(), height.get(), height.get(), level.get(), null);
-            TexturedMesh dot1 = new TetrahedraMesh(height.get(), level.get(), null);
-            MeshHelper mh1 = new MeshHelper((TriangleMesh)dot1.getMesh());
-            mh.addMesh(mh1,scatterData.get().stream().skip(1).collect(Collectors.toList()));
-            dot.updateMesh(mh);
-            meshes.add(dot);
+//            TexturedMesh dot = new CuboidMesh(height.get(), height.get(), height.get(), level.get(), null);
+            TexturedMesh dot = new TetrahedraMesh(height.get(), level.get(), null);
+            instances = new InstancedMesh((TriangleMesh)dot.getMesh(), scatterData.get());
+            instances.setId("0");
+            meshes.add(instances);
         }
     }
+    
+    /*
+    Single point updates
+    
+    With joinSegments, these only write the slice of the point in the joined mesh.
+    They don't modify the list of scatterData, which is only used to build the 
+    whole mesh again. When a point is removed, the last one takes its index.
+    */
+    public int getNumPoints(){
+        return joinSegments.get()?instances.getNumInstances():meshes.size();
+    }
+    
+    public void setPoint(int index, Point3D point){
+        if(joinSegments.get()){
+            instances.set(index, point);
+        } else {
+            ((TetrahedraMesh)meshes.get(index)).setCenter(point);
+        }
+    }
+    
+    public void setF(int index, float f){
+        if(joinSegments.get()){
+            instances.setF(index, f);
+        } else {
+            setF(meshes.get(index), f);
+        }
+    }
+    
+    /*
+    Moves all the points, given x, y, z of each one, i.e. from a FramePlayer
+    */
+    public void setPositions(float[] points){
+        if(joinSegments.get()){
+            instances.setPositions(points);
+        } else {
+            for(int i=0; i<Math.min(points.length/3, meshes.size()); i++){
+                ((TetrahedraMesh)meshes.get(i)).setCenter(new Point3D(points[3*i], points[3*i+1], points[3*i+2]));
+            }
+        }
+    }
+    
+    /*
+    Sets the values of all the points, one per point
+    */
+    public void setF(float[] values){
+        if(joinSegments.get()){
+            instances.setF(values);
+        } else {
+            for(int i=0; i<Math.min(values.length, meshes.size()); i++){
+                setF(meshes.get(i), values[i]);
+            }
+        }
+    }
+    
+    public int addPoint(Point3D point){
+        if(joinSegments.get()){
+            return instances.add(point);
+        }
+        TexturedMesh dot = createDot(point);
+        meshes.add(dot);
+        getChildren().add(dot);
+        return meshes.size()-1;
+    }
+    
+    public void removePoint(int index){
+        if(joinSegments.get()){
+            instances.remove(index);
+            return;
+        }
+        int last=meshes.size()-1;
+        TexturedMesh dot = meshes.get(index);
+        if(index!=last){
+            TexturedMesh lastDot = meshes.get(last);
+            lastDot.setId(""+index);
+            meshes.set(index, lastDot);
+        }
+        meshes.remove(last);
+        getChildren().remove(dot);
+    }
+    
+    private TexturedMesh createDot(Point3D point){
+        TexturedMesh dot = new TetrahedraMesh(height.get(), level.get(), point);
+        dot.setCullFace(CullFace.BACK);
+        dot.setDrawMode(DrawMode.FILL);
+        dot.setDepthTest(DepthTest.ENABLE);
+        dot.setId(""+meshes.size());
+        return dot;
+    }
+    
+    private void setF(TexturedMesh dot, float f){
+        dot.updateF(Collections.nCopies(dot.listVertices.size(), f));
+    }
 
     @Override
     public void setTextureModeNone() {
@@ -290,6 +366,36 @@ public class ScatterMesh extends Group implements TextureMode {
         meshes.stream().forEach(m->m.setTextureModeVertices1D(colors, function, min, max));
     }
 
+    @Override
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices3D(colors, dens));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices3D(ColorPalette palette, int colors, ToDoubleFunction<Point3D> dens) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices3D(palette, colors, dens));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens, double min, double max) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices3D(colors, dens, min, max));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices1D(colors, function));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices1D(ColorPalette palette, int colors, DoubleUnaryOperator function) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices1D(palette, colors, function));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function, double min, double max) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices1D(colors, function, min, max));
+    }
+
     @Override
     public void setTextureModeFaces(int colors) {
         meshes.stream().forEach(m->m.setTextureModeFaces(colors));
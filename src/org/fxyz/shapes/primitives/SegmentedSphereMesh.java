@@ -18,6 +18,7 @@
  */
 package org.fxyz.shapes.primitives;
 
+import java.util.List;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
@@ -34,6 +35,8 @@ import javafx.scene.transform.Transform;
 import javafx.scene.transform.Translate;
 import org.fxyz.geometry.Face3;
 import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.helper.MeshCache;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
 
 /**
  * SegmentedTorusMesh is based in TorusMesh, but allows cutting the torus in two 
@@ -79,17 +82,31 @@ public class SegmentedSphereMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh(){       
-        setMesh(null);
-        mesh=createSegmentedSphere(
-            getRadiusDivisions(), 
-            getRadiusCropX(),
-            getRadiusCropY(),
-            (float) getRadius(), 
-            (float) getTubeStartAngleOffset(), 
-            (float)getxOffset(),
-            (float)getyOffset(), 
-            (float)getzOffset());
-        setMesh(mesh);
+        a = new Affine();
+        if(center.get()!=null){            
+            a=a.createConcatenation(new Translate(center.get().x,center.get().y,center.get().z));
+        }
+        int subDivY=getRadiusDivisions(), cropX=getRadiusCropX(), cropY=getRadiusCropY();
+        // sphere of unit radius, shared by all the meshes with the same divisions
+        List<Object> key=MeshCache.key(SegmentedSphereMesh.class, subDivY, cropX, cropY, 
+                (float)getxOffset(), (float)getyOffset(), (float)getzOffset());
+        MeshHelper unit=MeshCache.get(key);
+        if(unit==null){
+            createSegmentedSphere(subDivY, cropX, cropY, 1f, 
+                (float) getTubeStartAngleOffset(), 
+                (float)getxOffset(),
+                (float)getyOffset(), 
+                (float)getzOffset());
+            unit=packMesh();
+            MeshCache.put(key, unit);
+        }
+        float radius=(float)getRadius();
+        int subDivX=subDivY;
+        areaMesh.setWidth((1-2*cropX/subDivX)*2d*Math.PI*radius);
+        areaMesh.setHeight((1-2*cropY/subDivY)*2d*Math.PI*radius);
+        rectMesh.setWidth(subDivX-2*cropX);
+        rectMesh.setHeight(subDivY-2*cropY);
+        updateMesh(MeshCache.transform(unit, radius, center.get()));
     }
     
     private final IntegerProperty radiusDivisions = new SimpleIntegerProperty(DEFAULT_DIVISIONS) {
@@ -308,12 +325,6 @@ public class SegmentedSphereMesh extends TexturedMesh {
         int numDivX = subDivX + 1-2*cropX;
         float pointX, pointY, pointZ;
         
-        areaMesh.setWidth((1-2*cropX/subDivX)*2d*Math.PI*radius);
-        areaMesh.setHeight((1-2*cropY/subDivY)*2d*Math.PI*radius);
-        a = new Affine();
-        if(center.get()!=null){            
-            a=a.createConcatenation(new Translate(center.get().x,center.get().y,center.get().z));
-        }
         // Create points
         for (int y = cropY; y <= subDivY-cropY; y++) {
             float dy = (float) y / subDivY;
@@ -323,8 +334,7 @@ public class SegmentedSphereMesh extends TexturedMesh {
                     pointX = (float) ((radius*Math.sin((-1d+dy)*Math.PI))*(Math.cos((-1d+2d*dx)*Math.PI)+ xOffset));
                     pointZ = (float) ((radius*Math.sin((-1d+dy)*Math.PI))*(Math.sin((-1d+2d*dx)*Math.PI)+ yOffset));
                     pointY = (float) (radius*Math.cos((-1d+dy)*Math.PI)*zOffset);
-                    Point3D ta = transform(pointX, pointY, pointZ);
-                    listVertices.add(ta);
+                    listVertices.add(new Point3D(pointX, pointY, pointZ));
                 }
             }
         }
@@ -72,8 +72,7 @@ public class SegmentedTorusMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh(){       
-        setMesh(null);
-        mesh=createTorus(
+        commitMesh(createTorus(
             getMajorRadiusDivisions(), 
             getMinorRadiusDivisions(), 
             getMajorRadiusCrop(),
@@ -82,8 +81,7 @@ public class SegmentedTorusMesh extends TexturedMesh {
             (float) getTubeStartAngleOffset(), 
             (float)getxOffset(),
             (float)getyOffset(), 
-            (float)getzOffset());
-        setMesh(mesh);
+            (float)getzOffset()));
     }
     
     private final IntegerProperty majorRadiusDivisions = new SimpleIntegerProperty(DEFAULT_MAJOR_DIVISIONS) {
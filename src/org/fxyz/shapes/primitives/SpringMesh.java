@@ -86,11 +86,9 @@ public class SpringMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh(){   
-        setMesh(null);
-        mesh=createSpring((float) getMeanRadius(), (float) getWireRadius(), (float) getPitch(), (float) getLength(),
+        commitMesh(createSpring((float) getMeanRadius(), (float) getWireRadius(), (float) getPitch(), (float) getLength(),
             getLengthDivisions(), getWireDivisions(), getLengthCrop(), getWireCrop(),
-            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset());
-        setMesh(mesh);
+            (float) getTubeStartAngleOffset(), (float)getxOffset(),(float)getyOffset(), (float)getzOffset()));
         
     }
     
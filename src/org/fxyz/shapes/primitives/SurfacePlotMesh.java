@@ -18,7 +18,9 @@
  */
 package org.fxyz.shapes.primitives;
 
+import java.util.function.DoubleBinaryOperator;
 import java.util.function.Function;
+import java.util.stream.IntStream;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
@@ -30,15 +32,32 @@ import javafx.scene.DepthTest;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.TriangleMesh;
-import org.fxyz.geometry.Face3;
-import org.fxyz.geometry.Point3D;
+import org.fxyz.geometry.PackedPoints;
 
 /**
  * SurfacePlotMesh to plot 2D functions z = f(x,y)
+ * 
+ * The function can be given as a primitive (x,y) -> double function, that is 
+ * evaluated without boxing. The grid is sampled in parallel by rows, so the 
+ * function must be safe to call from several threads.
+ * 
+ * Faces and texture coordinates only depend on the divisions, and are kept 
+ * while only the function or its scale change: then only the vertices of the
+ * mesh are updated.
+ * 
+ * The plotted area is centered at (centerX, centerY), while the mesh is always 
+ * centered at the origin. Samples of the function are kept, so when the area
+ * is panned by whole cells, or zoomed by powers of two, the function is only
+ * evaluated on the nodes that were not in the previous grid. setViewport 
+ * changes center and ranges at once. Call resample() if the function itself 
+ * changes over time.
  */
 public class SurfacePlotMesh extends TexturedMesh {
 
-    private static final Function<Point2D,Number> DEFAULT_FUNCTION = p->Math.sin(p.magnitude())/p.magnitude();
+    private static final Function<Point2D,Number> DEFAULT_FUNCTION = function2DOf((x,y)->{
+        double r=Math.sqrt(x*x+y*y);
+        return Math.sin(r)/r;
+    });
     
     private static final double DEFAULT_X_RANGE = 10; // -5 +5
     private static final double DEFAULT_Y_RANGE = 10; // -5 +5
@@ -62,6 +81,22 @@ public class SurfacePlotMesh extends TexturedMesh {
         this(function,rangeX,rangeY,DEFAULT_X_DIVISIONS, DEFAULT_Y_DIVISIONS,functionScale);
     }
 
+    public SurfacePlotMesh(DoubleBinaryOperator function) {
+        this(function2DOf(function));
+    }
+
+    public SurfacePlotMesh(DoubleBinaryOperator function, double rangeX, double rangeY) {
+        this(function2DOf(function),rangeX,rangeY);
+    }
+
+    public SurfacePlotMesh(DoubleBinaryOperator function, double rangeX, double rangeY, double functionScale) {
+        this(function2DOf(function),rangeX,rangeY,functionScale);
+    }
+
+    public SurfacePlotMesh(DoubleBinaryOperator function, double rangeX, double rangeY, int divisionsX, int divisionsY, double functionScale) {
+        this(function2DOf(function),rangeX,rangeY,divisionsX,divisionsY,functionScale);
+    }
+
     public SurfacePlotMesh(Function<Point2D,Number> function, double rangeX, double rangeY, int divisionsX, int divisionsY, double functionScale) {
         setFunction2D(function);
         setRangeX(rangeX);
@@ -78,13 +113,18 @@ public class SurfacePlotMesh extends TexturedMesh {
 
     @Override
     protected final void updateMesh(){       
-        setMesh(null);
-        mesh=createPlotMesh(
-            getFunction2D(), 
-            getRangeX(),getRangeY(),
-            getDivisionsX(),getDivisionsY(), 
-            getFunctionScale());
-        setMesh(mesh);
+        int divisionsX=getDivisionsX(), divisionsY=getDivisionsY();
+        double rangeX=getRangeX(), rangeY=getRangeY();
+        boolean sameGrid=divisionsX==topologyX && divisionsY==topologyY && 
+                rangeX==areaMesh.getWidth() && rangeY==areaMesh.getHeight();
+        
+        sample(getFunction2D(), getCenterX(), getCenterY(), rangeX, rangeY, divisionsX, divisionsY, getFunctionScale());
+        if(sameGrid && mesh!=null && getMesh()==mesh){
+            // only the heights have changed
+            commitVertices();
+            return;
+        }
+        commitMesh(createPlotMesh(rangeX, rangeY, divisionsX, divisionsY));
     }
     
     private final ObjectProperty<Function<Point2D, Number>> function2D = new SimpleObjectProperty<Function<Point2D, Number>>(DEFAULT_FUNCTION){
@@ -104,6 +144,10 @@ public class SurfacePlotMesh extends TexturedMesh {
         function2D.set(value);
     }
 
+    public final void setFunction2D(DoubleBinaryOperator value) {
+        function2D.set(function2DOf(value));
+    }
+
     public ObjectProperty function2DProperty() {
         return function2D;
     }
@@ -111,7 +155,7 @@ public class SurfacePlotMesh extends TexturedMesh {
     private final DoubleProperty rangeX = new SimpleDoubleProperty(DEFAULT_X_RANGE){
         @Override
         protected void invalidated() {
-            if(mesh!=null){
+            if(mesh!=null && !updatingViewport){
                 updateMesh();
             }
         }
@@ -132,7 +176,7 @@ public class SurfacePlotMesh extends TexturedMesh {
     private final DoubleProperty rangeY = new SimpleDoubleProperty(DEFAULT_Y_RANGE){
         @Override
         protected void invalidated() {
-            if(mesh!=null){
+            if(mesh!=null && !updatingViewport){
                 updateMesh();
             }
         }
@@ -150,6 +194,69 @@ public class SurfacePlotMesh extends TexturedMesh {
         return rangeY;
     }
     
+    private boolean updatingViewport;
+    
+    /*
+    Sets the plotted area with one single update of the mesh, instead of one
+    per property
+    */
+    public void setViewport(double centerX, double centerY, double rangeX, double rangeY){
+        updatingViewport=true;
+        try {
+            setCenterX(centerX);
+            setCenterY(centerY);
+            setRangeX(rangeX);
+            setRangeY(rangeY);
+        } finally {
+            updatingViewport=false;
+        }
+        if(mesh!=null){
+            updateMesh();
+        }
+    }
+    
+    private final DoubleProperty centerX = new SimpleDoubleProperty(0d){
+        @Override
+        protected void invalidated() {
+            if(mesh!=null && !updatingViewport){
+                updateMesh();
+            }
+        }
+    };
+
+    public double getCenterX() {
+        return centerX.get();
+    }
+
+    public final void setCenterX(double value) {
+        centerX.set(value);
+    }
+
+    public DoubleProperty centerXProperty() {
+        return centerX;
+    }
+    
+    private final DoubleProperty centerY = new SimpleDoubleProperty(0d){
+        @Override
+        protected void invalidated() {
+            if(mesh!=null && !updatingViewport){
+                updateMesh();
+            }
+        }
+    };
+
+    public double getCenterY() {
+        return centerY.get();
+    }
+
+    public final void setCenterY(double value) {
+        centerY.set(value);
+    }
+
+    public DoubleProperty centerYProperty() {
+        return centerY;
+    }
+    
     private final IntegerProperty divisionsX = new SimpleIntegerProperty(DEFAULT_X_DIVISIONS){
         @Override
         protected void invalidated() {
@@ -191,7 +298,14 @@ public class SurfacePlotMesh extends TexturedMesh {
     public IntegerProperty divisionsYProperty() {
         return divisionsY;
     }
-    private final DoubleProperty functionScale = new SimpleDoubleProperty(DEFAULT_FUNCTION_SCALE);
+    private final DoubleProperty functionScale = new SimpleDoubleProperty(DEFAULT_FUNCTION_SCALE){
+        @Override
+        protected void invalidated() {
+            if(mesh!=null){
+                updateMesh();
+            }
+        }
+    };
 
     public double getFunctionScale() {
         return functionScale.get();
@@ -206,41 +320,156 @@ public class SurfacePlotMesh extends TexturedMesh {
     }
     
     
-    private TriangleMesh createPlotMesh(Function<Point2D,Number> function2D, double rangeX, double rangeY, int divisionsX, int divisionsY, double scale) {
+    /*
+    Function of points as a primitive function of x, y: the ones given by 
+    function2DOf are unwrapped, any other one is boxed
+    */
+    public static Function<Point2D,Number> function2DOf(DoubleBinaryOperator function){
+        return function instanceof Function2D?(Function2D)function:new Function2D(function);
+    }
+    
+    private static DoubleBinaryOperator sampler(Function<Point2D,Number> function){
+        return function instanceof Function2D?(Function2D)function:
+                (x,y)->function.apply(new Point2D(x,y)).doubleValue();
+    }
     
-        listVertices.clear();
-        listTextures.clear();
-        listFaces.clear();
+    private static class Function2D implements Function<Point2D,Number>, DoubleBinaryOperator {
         
+        private final DoubleBinaryOperator function;
+
+        Function2D(DoubleBinaryOperator function) {
+            this.function = function;
+        }
+
+        @Override
+        public Number apply(Point2D p) {
+            return function.applyAsDouble(p.getX(), p.getY());
+        }
+
+        @Override
+        public double applyAsDouble(double x, double y) {
+            return function.applyAsDouble(x, y);
+        }
+    }
+    
+    // divisions of the faces and texture coordinates of the mesh
+    private int topologyX=-1, topologyY=-1;
+    
+    /*
+    Samples of the function on the last grid, as floats before functionScale,
+    and that grid. values and previousValues are swapped on each sampling
+    */
+    private float[] values, previousValues;
+    private Function<Point2D,Number> sampledFunction;
+    private double sampledCenterX, sampledCenterY, sampledRangeX, sampledRangeY;
+    private int sampledDivisionsX, sampledDivisionsY;
+    
+    // nodes closer than this fraction of a cell to a sampled node reuse its value
+    private static final double LATTICE_TOLERANCE = 1e-4;
+    
+    /*
+    Evaluates the function again on the whole grid
+    */
+    public void resample(){
+        sampledFunction=null;
+        if(mesh!=null){
+            updateMesh();
+        }
+    }
+    
+    /*
+    Writes the grid points with their heights directly in packedVertices, 
+    one task per row. The function is only evaluated on the nodes that are 
+    not on the previous grid
+    */
+    private void sample(Function<Point2D,Number> function2D, double centerX, double centerY, 
+            double rangeX, double rangeY, int divisionsX, int divisionsY, double scale) {
         int numDivX = divisionsX + 1;
-        float pointY;
+        int numPoints = numDivX*(divisionsY+1);
+        packedVertices.setSize(numPoints);
+        float[] data = packedVertices.getData();
+        float fScale = (float)scale;
         
-        areaMesh.setWidth(rangeX);
-        areaMesh.setHeight(rangeY);
+        // index of each row and column in the previous grid, or -1 
+        int[] previousX = null, previousY = null;
+        if(function2D==sampledFunction && values!=null){
+            previousX = lattice(centerX, rangeX, divisionsX, sampledCenterX, sampledRangeX, sampledDivisionsX);
+            previousY = lattice(centerY, rangeY, divisionsY, sampledCenterY, sampledRangeY, sampledDivisionsY);
+        }
+        float[] swap = previousValues;
+        previousValues = values;
+        values = swap!=null && swap.length>=numPoints?swap:new float[numPoints];
+        final int[] mapX = previousX, mapY = previousY;
+        final float[] newValues = values, oldValues = previousValues;
+        final int oldNumDivX = sampledDivisionsX + 1;
+        DoubleBinaryOperator function = sampler(function2D);
         
-        // Create points
-        for (int y = 0; y <= divisionsY; y++) {
+        IntStream.rangeClosed(0, divisionsY).parallel().forEach(y->{
             float dy = (float)(-rangeY/2d + ((float)y /(float)divisionsY)*rangeY);
-            for (int x = 0; x <= divisionsX; x++) {
+            int row = mapY!=null?mapY[y]:-1;
+            int i = y*numDivX;
+            for (int x = 0; x <= divisionsX; x++, i++) {
                 float dx = (float)(-rangeX/2d + ((float)x /(float)divisionsX)*rangeX);
-                    pointY = (float)scale*function2D.apply(new Point2D(dx,dy)).floatValue();
-                    listVertices.add(new Point3D(dx, pointY, dy));
+                float value;
+                if(row>=0 && mapX[x]>=0){
+                    value = oldValues[row*oldNumDivX+mapX[x]];
+                } else {
+                    value = (float)function.applyAsDouble(centerX+dx, centerY+dy);
+                }
+                newValues[i] = value;
+                int j = PackedPoints.STRIDE*i;
+                data[j] = dx;
+                data[j+1] = fScale*value;
+                data[j+2] = dy;
+                data[j+3] = 0f;
             }
+        });
+        
+        sampledFunction = function2D;
+        sampledCenterX = centerX;
+        sampledCenterY = centerY;
+        sampledRangeX = rangeX;
+        sampledRangeY = rangeY;
+        sampledDivisionsX = divisionsX;
+        sampledDivisionsY = divisionsY;
+    }
+    
+    /*
+    For each node of one axis of the new grid, the index of the node of the 
+    previous grid at the same coordinate, or -1. Pans by whole cells and zooms 
+    by powers of two keep many of them
+    */
+    private static int[] lattice(double center, double range, int divisions, 
+            double oldCenter, double oldRange, int oldDivisions){
+        int[] map = new int[divisions+1];
+        double oldStep = oldRange/oldDivisions;
+        double oldStart = oldCenter-oldRange/2d;
+        for(int i=0; i<=divisions; i++){
+            double c = center-range/2d+((double)i/divisions)*range;
+            long j = Math.round((c-oldStart)/oldStep);
+            map[i] = j>=0 && j<=oldDivisions && 
+                    Math.abs(oldStart+j*oldStep-c)<=LATTICE_TOLERANCE*Math.abs(oldStep)?(int)j:-1;
+        }
+        return map;
+    }
+    
+    private TriangleMesh createPlotMesh(double rangeX, double rangeY, int divisionsX, int divisionsY) {
+    
+        areaMesh.setWidth(rangeX);
+        areaMesh.setHeight(rangeY);
+        
+        if(divisionsX==topologyX && divisionsY==topologyY){
+            return createMesh();
         }
+        packedTextures.clear();
+        packedFaces.clear();
+        packedFaces.ensureCapacity(2*divisionsX*divisionsY);
+        
+        int numDivX = divisionsX + 1;
+        
         // Create texture coordinates
         createTexCoords(divisionsX,divisionsY);
         
-        // Create textures indices
-        for (int y = 0; y < divisionsY; y++) {
-            for (int x = 0; x < divisionsX; x++) {
-                int p00 = y * numDivX + x;
-                int p01 = p00 + 1;
-                int p10 = p00 + numDivX;
-                int p11 = p10 + 1;
-                listTextures.add(new Face3(p00,p10,p11));                
-                listTextures.add(new Face3(p11,p01,p00));
-            }
-        }
         // Create faces indices
         for (int y = 0; y < divisionsY; y++) {
             for (int x = 0; x < divisionsX; x++) {
@@ -248,10 +477,14 @@ public class SurfacePlotMesh extends TexturedMesh {
                 int p01 = p00 + 1;
                 int p10 = p00 + numDivX;
                 int p11 = p10 + 1;
-                listFaces.add(new Face3(p00,p10,p11));                
-                listFaces.add(new Face3(p11,p01,p00));
+                packedFaces.add(p00,p10,p11);                
+                packedFaces.add(p11,p01,p00);
             }
         }
+        // Textures indices are the same as faces indices
+        packedTextures.setAll(packedFaces);
+        topologyX=divisionsX;
+        topologyY=divisionsY;
         return createMesh();
     }
 
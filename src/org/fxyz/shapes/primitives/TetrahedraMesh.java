@@ -19,11 +19,7 @@
 package org.fxyz.shapes.primitives;
 
 import java.util.Arrays;
-import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
@@ -31,7 +27,6 @@ import javafx.beans.property.ObjectProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
-import javafx.geometry.Point2D;
 import javafx.scene.DepthTest;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
@@ -40,9 +35,10 @@ import javafx.scene.transform.Affine;
 import javafx.scene.transform.NonInvertibleTransformException;
 import javafx.scene.transform.Transform;
 import javafx.scene.transform.Translate;
-import org.fxyz.geometry.Face3;
 import org.fxyz.geometry.Point3D;
-import org.fxyz.utils.FloatCollector;
+import org.fxyz.shapes.primitives.helper.MeshCache;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+import org.fxyz.shapes.primitives.helper.MeshSubdivider;
 
 /**
  *
@@ -145,15 +141,27 @@ public class TetrahedraMesh extends TexturedMesh {
     
     @Override
     protected final void updateMesh() {
-        setMesh(null);
-        mesh=createTetrahedra((float)getHeight(), getLevel());
-        setMesh(mesh);
+        a = new Affine();
+        if(center.get()!=null){
+            a=a.createConcatenation(new Translate(center.get().x,center.get().y,center.get().z));
+        }
+        // unit tetrahedra, shared by all the meshes with the same level
+        List<Object> key=MeshCache.key(TetrahedraMesh.class, getLevel());
+        MeshHelper unit=MeshCache.get(key);
+        if(unit==null){
+            createTetrahedra(1f, getLevel());
+            unit=packMesh();
+            MeshCache.put(key, unit);
+        }
+        float height=(float)getHeight();
+        areaMesh.setWidth(2f*height);
+        areaMesh.setHeight(height*Math.sqrt(3));
+        updateMesh(MeshCache.transform(unit, height, center.get()));
     }
     
     private int numVertices, numTexCoords, numFaces;
     private float[] points0, texCoord0;
     private int[] faces0;
-    private List<Point2D> texCoord1;
     private Transform a = new Affine();
     
     private TriangleMesh createTetrahedra(float height, int level){
@@ -164,11 +172,7 @@ public class TetrahedraMesh extends TexturedMesh {
         }
         
         if(level==0){
-            a = new Affine();
             float hw=height;        
-            if(center.get()!=null){
-                a=a.createConcatenation(new Translate(center.get().x,center.get().y,center.get().z));
-            }
             final float[] baseVertices = new float[]{
                 0f, 0f, 0.612372f*hw, 
                 -0.288675f*hw, -0.5f*hw, -0.204124f*hw, 
@@ -199,12 +203,6 @@ public class TetrahedraMesh extends TexturedMesh {
                 0, 3, 2
             );
             
-            for(int i=0; i<baseVertices.length/3; i++){
-                Point3D ta = transform(baseVertices[3*i],baseVertices[3*i+1],baseVertices[3*i+2]);
-                baseVertices[3*i]=ta.x;
-                baseVertices[3*i+1]=ta.y;
-                baseVertices[3*i+2]=ta.z;
-            }
             points0 = baseVertices; 
             numVertices=baseVertices.length/3;
             
@@ -222,94 +220,43 @@ public class TetrahedraMesh extends TexturedMesh {
             m0.getPoints().toArray(points0);
         }
         
-        
-        List<Point3D> points1 = IntStream.range(0, numVertices)
-                        .mapToObj(i -> new Point3D(points0[3*i], points0[3*i+1], points0[3*i+2]))
-                        .collect(Collectors.toList());
-        
         if(level>0 && m0!=null){
             texCoord0=new float[numTexCoords*m0.getTexCoordElementSize()];
             m0.getTexCoords().toArray(texCoord0);
         }
         
-        texCoord1 = IntStream.range(0, numTexCoords)
-                    .mapToObj(i -> new Point2D(texCoord0[2*i], texCoord0[2*i+1]))
-                    .collect(Collectors.toList());
-        
         if(level>0 && m0!=null){
             faces0=new int[numFaces*m0.getFaceElementSize()];
             m0.getFaces().toArray(faces0);
         }
-        
-        List<Face3> faces1 = IntStream.range(0, numFaces)
-                    .mapToObj(i -> new Face3(faces0[6*i], faces0[6*i+2], faces0[6*i+4]))
-                    .collect(Collectors.toList());
 
-        index.set(points1.size());
-        map.clear();
-        listVertices.clear();
-        listFaces.clear();
-        listVertices.addAll(points1);
-        
-        faces1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,points1.get(v1),v2,points1.get(v2));
-                int b = getMiddle(v2,points1.get(v2),v3,points1.get(v3));
-                int c = getMiddle(v3,points1.get(v3),v1,points1.get(v1));
-
-                listFaces.add(new Face3(v1,a,c));
-                listFaces.add(new Face3(v2,b,a));
-                listFaces.add(new Face3(v3,c,b));
-                listFaces.add(new Face3(a,b,c));
-            } else {
-                listFaces.add(new Face3(v1,v2,v3));
+        // faces and texture faces of level-1, as (p0,p1,p2) triplets
+        int[] f1=new int[3*numFaces];
+        int[] t1=new int[3*numFaces];
+        for(int i=0; i<numFaces; i++){
+            for(int k=0; k<3; k++){
+                f1[3*i+k]=faces0[6*i+2*k];
+                t1[3*i+k]=faces0[6*i+2*k+1];
             }
-        });
-        map.clear();
-        numVertices=listVertices.size();
-        numFaces=listFaces.size();
-        
-        List<Face3> textures1;
-        if(level==0){
-            textures1= IntStream.range(0, faces0.length/6)
-                    .mapToObj(i -> new Face3(faces0[6*i+1], faces0[6*i+3], faces0[6*i+5]))
-                    .collect(Collectors.toList());
-        } else {
-            textures1 = listTextures.stream().map(t->t).collect(Collectors.toList());
         }
-        
-        index.set(texCoord1.size());
-        listTextures.clear();
-        textures1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,texCoord1.get(v1),v2,texCoord1.get(v2));
-                int b = getMiddle(v2,texCoord1.get(v2),v3,texCoord1.get(v3));
-                int c = getMiddle(v3,texCoord1.get(v3),v1,texCoord1.get(v1));
-
-                listTextures.add(new Face3(v1,a,c));
-                listTextures.add(new Face3(v2,b,a));
-                listTextures.add(new Face3(v3,c,b));
-                listTextures.add(new Face3(a,b,c));
-            } else {
-                listTextures.add(new Face3(v1,v2,v3));
-            }
-        });
-        map.clear();
-
-        texCoord0=texCoord1.stream().flatMapToDouble(p->DoubleStream.of(p.getX(),p.getY()))
-                .collect(()->new FloatCollector(texCoord1.size()*2), FloatCollector::add, FloatCollector::join).toArray();
+        if(level>0){
+            // texture indices of level-1, the mesh faces may not have them
+            System.arraycopy(packedTextures.getData(), 0, t1, 0, t1.length);
+            MeshSubdivider vertices=MeshSubdivider.subdivide(f1, numFaces, numVertices);
+            points0=vertices.interpolate(points0, 3);
+            f1=vertices.getFaces();
+            MeshSubdivider textures=MeshSubdivider.subdivide(t1, numFaces, numTexCoords);
+            texCoord0=textures.interpolate(texCoord0, 2);
+            t1=textures.getFaces();
+        }
+        packedVertices.setAll(points0, null);
+        packedFaces.setAll(f1);
+        packedTextures.setAll(t1);
+        numVertices=packedVertices.size();
+        numFaces=packedFaces.size();
         numTexCoords=texCoord0.length/2;
         textureCoords=texCoord0;
         if(level==getLevel()){
-            areaMesh.setWidth(2f*height);
-            areaMesh.setHeight(height*Math.sqrt(3));
-            
             // 1<<j -> bitset, 00100. Otherwise: 000111 will mean they are shared
             smoothingGroups=IntStream.range(0,listFaces.size()).map(i->1<<(i/(listFaces.size()/4))).toArray();
             // smoothing groups based on 3DViewer -> same result
@@ -344,31 +291,4 @@ public class TetrahedraMesh extends TexturedMesh {
         }
         return p;
     }
-
-    private final AtomicInteger index = new AtomicInteger();
-    private final HashMap<String, Integer> map = new HashMap<>();
-
-    private int getMiddle(int v1, Point3D p1, int v2, Point3D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
-        }
-
-        listVertices.add(p1.add(p2).multiply(0.5f));
-
-        map.put(key,index.get());
-        return index.getAndIncrement();
-    }
-    
-    private int getMiddle(int v1, Point2D p1, int v2, Point2D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
-        }
-
-        texCoord1.add(p1.add(p2).multiply(0.5f));
-
-        map.put(key,index.get());
-        return index.getAndIncrement();
-    }
 }
@@ -22,7 +22,9 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -268,6 +270,7 @@ public class Text3DMesh extends Group implements TextureMode {
         offset=helper.getOffset();
 
         // 2. Create mesh for each LineSegment        
+        dispose();
         meshes=FXCollections.<TexturedMesh>observableArrayList();
         indLetters=new AtomicInteger();
         indSegments=new AtomicInteger();
@@ -280,6 +283,15 @@ public class Text3DMesh extends Group implements TextureMode {
         updateTransforms();
     }
     
+    /*
+    Releases the shared textures of the meshes of all the letters
+    */
+    public void dispose(){
+        if(meshes!=null){
+            meshes.forEach(TexturedMesh::dispose);
+        }
+    }
+    
     private AtomicInteger indSegments, indLetters;
     private Shape letterPath=new Path();
     private void createLetter(String letter) {
@@ -381,6 +393,36 @@ public class Text3DMesh extends Group implements TextureMode {
         meshes.stream().forEach(m->m.setTextureModeVertices1D(colors, function, min, max));
     }
 
+    @Override
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices3D(colors, dens));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices3D(ColorPalette palette, int colors, ToDoubleFunction<Point3D> dens) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices3D(palette, colors, dens));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens, double min, double max) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices3D(colors, dens, min, max));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices1D(colors, function));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices1D(ColorPalette palette, int colors, DoubleUnaryOperator function) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices1D(palette, colors, function));
+    }
+
+    @Override
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function, double min, double max) {
+        meshes.stream().forEach(m->m.setTextureModeDoubleVertices1D(colors, function, min, max));
+    }
+
     @Override
     public void setTextureModeFaces(int colors) {
         meshes.stream().forEach(m->m.setTextureModeFaces(colors));
@@ -21,12 +21,15 @@ package org.fxyz.shapes.primitives;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.function.ToDoubleFunction;
+import javafx.application.Platform;
+import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
@@ -39,7 +42,11 @@ import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Scale;
 import javafx.scene.transform.Translate;
 import org.fxyz.geometry.Face3;
+import org.fxyz.geometry.PackedFaces;
+import org.fxyz.geometry.PackedPoints;
 import org.fxyz.geometry.Point3D;
+import org.fxyz.geometry.Ray;
+import org.fxyz.shapes.primitives.helper.MeshBVH;
 import org.fxyz.shapes.primitives.helper.MeshHelper;
 import org.fxyz.shapes.primitives.helper.TextureMode;
 import org.fxyz.shapes.primitives.helper.TriangleMeshHelper;
@@ -50,6 +57,9 @@ import static org.fxyz.shapes.primitives.helper.TriangleMeshHelper.DEFAULT_DIFFU
 import static org.fxyz.shapes.primitives.helper.TriangleMeshHelper.DEFAULT_PATTERN;
 import static org.fxyz.shapes.primitives.helper.TriangleMeshHelper.DEFAULT_PATTERN_SCALE;
 import static org.fxyz.shapes.primitives.helper.TriangleMeshHelper.DEFAULT_UNIDIM_FUNCTION;
+import static org.fxyz.shapes.primitives.helper.TriangleMeshHelper.densityOf;
+import static org.fxyz.shapes.primitives.helper.TriangleMeshHelper.functionOf;
+import static org.fxyz.shapes.primitives.helper.TriangleMeshHelper.updateRange;
 import org.fxyz.shapes.primitives.helper.TriangleMeshHelper.SectionType;
 import org.fxyz.shapes.primitives.helper.TriangleMeshHelper.TextureType;
 import org.fxyz.utils.Palette.ColorPalette;
@@ -67,6 +77,21 @@ import org.fxyz.utils.Patterns.CarbonPatterns;
  * 
  * Any subclass must use mesh, listVertices and listFaces
  * 
+ * Vertices and faces are stored in packed primitive arrays (packedVertices, 
+ * packedFaces, packedTextures). listVertices, listFaces and listTextures are
+ * live views of them, so existing subclasses can still add Point3D and Face3
+ * objects, while large meshes can be generated by writing the packed arrays
+ * directly, without keeping any object per vertex or face.
+ * 
+ * Subclasses have to follow the contract of these views:
+ * - listVertices, listFaces and listTextures are final, so they can't be
+ *   reassigned: clear and fill them again instead
+ * - get(i) returns a copy, so changes on the returned Point3D or Face3 are
+ *   lost. The same goes for the point returned by getOrigin()
+ * - set(i, p) is the way to change an existing element
+ * - elements can only be added or removed at the end, any other index throws
+ *   an UnsupportedOperationException
+ * 
  * @author jpereda
  */
 public abstract class TexturedMesh extends MeshView implements TextureMode {
@@ -74,11 +99,23 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     private TriangleMeshHelper helper = new TriangleMeshHelper();
     protected TriangleMesh mesh;
     
-    protected List<Point3D> listVertices = new ArrayList<>();
-    protected final List<Face3> listTextures = new ArrayList<>();
-    protected final List<Face3> listFaces = new ArrayList<>();
+    protected final PackedPoints packedVertices = new PackedPoints();
+    protected final PackedFaces packedTextures = new PackedFaces();
+    protected final PackedFaces packedFaces = new PackedFaces();
+    
+    protected final List<Point3D> listVertices = packedVertices.asList();
+    protected final List<Face3> listTextures = packedTextures.asList();
+    protected final List<Face3> listFaces = packedFaces.asList();
     protected float[] textureCoords;
     protected int[] smoothingGroups;
+    private int[] facesBuffer;
+    private float[] pointsBuffer;
+    private int[] faceRangeBuffer;
+    private final int[] faceSlice=new int[6];
+    // faces highlighted by getIntersections, null if the mesh faces don't show them
+    private int[] intersectedFaces;
+    private MeshBVH bvh;
+    private float vertexFactor = 1f;
     
     protected final Rectangle rectMesh=new Rectangle(0,0);
     protected final Rectangle areaMesh=new Rectangle(0,0);
@@ -89,6 +126,16 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     
     protected TexturedMesh(){
         setMaterial(helper.getMaterial());
+        // the helper replaces its shared material when the texture changes
+        helper.materialProperty().addListener((obs, ov, nv)->setMaterial(nv));
+    }
+    
+    /*
+    Releases the material and the shared palette and pattern of the mesh, once
+    it's discarded
+    */
+    public void dispose(){
+        helper.dispose();
     }
     private final ObjectProperty<SectionType> sectionType = new SimpleObjectProperty<SectionType>(SectionType.CIRCLE){
 
@@ -118,147 +165,251 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
         @Override
         protected void invalidated() {
             if(mesh!=null){
-                updateTexture();
-                updateTextureOnFaces();
+                invalidateTexture();
+                invalidateFaces();
             }
         }
     };
 
     @Override
     public void setTextureModeNone() {
-        setTextureModeNone(Color.WHITE);
+        beginUpdate();
+        try {
+            setTextureModeNone(Color.WHITE);
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeNone(Color color) {
-        if(color!=null){
-            helper.setTextureType(TextureType.NONE);
-            helper.getMaterialWithColor(color);
+        beginUpdate();
+        try {
+            if(color!=null){
+                helper.setTextureType(TextureType.NONE);
+                helper.getMaterialWithColor(color);
+            }
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
         }
-        setTextureType(helper.getTextureType());
     }
     
     @Override
     public void setTextureModeNone(Color color, String image) {
-        if(color!=null){
-            helper.setTextureType(TextureType.NONE);
-            setMaterial(helper.getMaterialWithColor(color, image));
+        beginUpdate();
+        try {
+            if(color!=null){
+                helper.setTextureType(TextureType.NONE);
+                setMaterial(helper.getMaterialWithColor(color, image));
+            }
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
         }
-        setTextureType(helper.getTextureType());
     }
     
     @Override
     public void setTextureModeImage(String image) {
-        if(image!=null && !image.isEmpty()){
-            helper.setTextureType(TextureType.IMAGE);
-            helper.getMaterialWithImage(image);
-            setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            if(image!=null && !image.isEmpty()){
+                helper.setTextureType(TextureType.IMAGE);
+                helper.getMaterialWithImage(image);
+                setTextureType(helper.getTextureType());
+            }
+        } finally {
+            endUpdate();
         }
     }
     
     @Override
     public void setTextureModePattern(CarbonPatterns pattern, double scale) {
-        helper.setTextureType(TextureType.PATTERN);
-        patternScale.set(scale);
-        carbonPatterns.set(pattern);
-        helper.getMaterialWithPattern(pattern);
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.PATTERN);
+            patternScale.set(scale);
+            carbonPatterns.set(pattern);
+            helper.getMaterialWithPattern(pattern);
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeVertices3D(int colors, Function<Point3D, Number> dens) {
-        helper.setTextureType(TextureType.COLORED_VERTICES_3D);
-        setColors(colors);
-        createPalette(getColors());
-        setDensity(dens);
-        helper.setDensity(dens);
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_VERTICES_3D);
+            setColors(colors);
+            createPalette(getColors());
+            setDensity(dens);
+            helper.setDensity(dens);
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeVertices3D(ColorPalette palette, int colors, Function<Point3D, Number> dens) {
-        helper.setTextureType(TextureType.COLORED_VERTICES_3D);
-        setColors(colors);
-        setColorPalette(palette);
-        createPalette(getColors());
-        setDensity(dens);
-        helper.setDensity(dens);
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_VERTICES_3D);
+            setColors(colors);
+            setColorPalette(palette);
+            createPalette(getColors());
+            setDensity(dens);
+            helper.setDensity(dens);
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeVertices3D(int colors, Function<Point3D, Number> dens, double min, double max) {
-        helper.setTextureType(TextureType.COLORED_VERTICES_3D);
-        setMinGlobal(min);
-        setMaxGlobal(max);
-        setColors(colors);
-        createPalette(getColors());
-        setDensity(dens);
-        helper.setDensity(dens);
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_VERTICES_3D);
+            setMinGlobal(min);
+            setMaxGlobal(max);
+            setColors(colors);
+            createPalette(getColors());
+            setDensity(dens);
+            helper.setDensity(dens);
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeVertices1D(int colors, Function<Number, Number> function) {
-        helper.setTextureType(TextureType.COLORED_VERTICES_1D);
-        setColors(colors);
-        createPalette(getColors());
-        setFunction(function);
-        helper.setFunction(function);
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_VERTICES_1D);
+            setColors(colors);
+            createPalette(getColors());
+            setFunction(function);
+            helper.setFunction(function);
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeVertices1D(ColorPalette palette, int colors, Function<Number, Number> function) {
-        helper.setTextureType(TextureType.COLORED_VERTICES_1D);
-        setColors(colors);
-        setColorPalette(palette);
-        createPalette(getColors());
-        setFunction(function);
-        helper.setFunction(function);
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_VERTICES_1D);
+            setColors(colors);
+            setColorPalette(palette);
+            createPalette(getColors());
+            setFunction(function);
+            helper.setFunction(function);
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeVertices1D(int colors, Function<Number, Number> function, double min, double max) {
-        helper.setTextureType(TextureType.COLORED_VERTICES_1D);
-        setMinGlobal(min);
-        setMaxGlobal(max);
-        setColors(colors);
-        createPalette(getColors());
-        setFunction(function);
-        helper.setFunction(function);
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_VERTICES_1D);
+            setMinGlobal(min);
+            setMaxGlobal(max);
+            setColors(colors);
+            createPalette(getColors());
+            setFunction(function);
+            helper.setFunction(function);
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
+    }
+    
+    @Override
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens) {
+        setTextureModeVertices3D(colors, densityOf(dens));
+    }
+    
+    @Override
+    public void setTextureModeDoubleVertices3D(ColorPalette palette, int colors, ToDoubleFunction<Point3D> dens) {
+        setTextureModeVertices3D(palette, colors, densityOf(dens));
+    }
+    
+    @Override
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens, double min, double max) {
+        setTextureModeVertices3D(colors, densityOf(dens), min, max);
+    }
+    
+    @Override
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function) {
+        setTextureModeVertices1D(colors, functionOf(function));
+    }
+    
+    @Override
+    public void setTextureModeDoubleVertices1D(ColorPalette palette, int colors, DoubleUnaryOperator function) {
+        setTextureModeVertices1D(palette, colors, functionOf(function));
+    }
+    
+    @Override
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function, double min, double max) {
+        setTextureModeVertices1D(colors, functionOf(function), min, max);
     }
     
     @Override
     public void setTextureModeFaces(int colors) {
-        helper.setTextureType(TextureType.COLORED_FACES);
-        setColors(colors);
-        createPalette(getColors());
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_FACES);
+            setColors(colors);
+            createPalette(getColors());
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void setTextureModeFaces(ColorPalette palette, int colors) {
-        helper.setTextureType(TextureType.COLORED_FACES);
-        setColors(colors);
-        setColorPalette(palette);
-        createPalette(getColors());
-        setTextureType(helper.getTextureType());
+        beginUpdate();
+        try {
+            helper.setTextureType(TextureType.COLORED_FACES);
+            setColors(colors);
+            setColorPalette(palette);
+            createPalette(getColors());
+            setTextureType(helper.getTextureType());
+        } finally {
+            endUpdate();
+        }
     }
     
     @Override
     public void updateF(List<Number> values) {
-        listVertices=IntStream.range(0,values.size()).mapToObj(i->{
-            Point3D p=listVertices.get(i);
-            p.f=values.get(i).floatValue();
-            return p;
-        }).collect(Collectors.toList());
-        updateTextureOnFaces();
+        for(int i=0; i<values.size(); i++){
+            packedVertices.setF(i, values.get(i).floatValue());
+        }
+        invalidateFaces();
         
     }
     
+    /*
+    Sets the values f of the first values.length vertices, without boxing them
+    */
+    public void updateF(float[] values){
+        int n=Math.min(values.length, packedVertices.size());
+        for(int i=0; i<n; i++){
+            packedVertices.setF(i, values[i]);
+        }
+        invalidateFaces();
+    }
+    
     public TextureType getTextureType() {
         return textureType.get();
     }
@@ -275,7 +426,7 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
 
         @Override
         protected void invalidated() {
-            updateTexture();
+            invalidateTexture();
         }
         
     };
@@ -314,8 +465,8 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
         
         @Override protected void invalidated() {
             createPalette(getColors());
-            updateTexture();
-            updateTextureOnFaces();
+            invalidateTexture();
+            invalidateFaces();
         }
     };
 
@@ -371,7 +522,7 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
         
         @Override protected void invalidated() {
             helper.setDensity(density.get());
-            updateTextureOnFaces();
+            invalidateFaces();
         }
     };
     
@@ -391,7 +542,7 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
         
         @Override protected void invalidated() {
             helper.setFunction(function.get());
-            updateTextureOnFaces();
+            invalidateFaces();
         }
     };
 
@@ -444,38 +595,39 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     
     public void updateVertices(float factor){
         if(mesh!=null){
-            mesh.getPoints().setAll(helper.updateVertices(listVertices, factor));
+            vertexFactor=factor;
+            updateRange(mesh.getPoints(), helper.updateVertices(packedVertices, factor));
         }
     }
     private void updateTexture(){
         if(mesh!=null){
             switch(textureType.get()){
                 case NONE: 
-                    mesh.getTexCoords().setAll(0f,0f);
+                    updateRange(mesh.getTexCoords(), new float[]{0f,0f});
                     break;
                 case IMAGE: 
-                    mesh.getTexCoords().setAll(textureCoords);
+                    updateRange(mesh.getTexCoords(), textureCoords);
                     break;
                 case PATTERN: 
                     if(areaMesh.getHeight()>0 && areaMesh.getWidth()>0){
-                        mesh.getTexCoords().setAll(
+                        updateRange(mesh.getTexCoords(),
                             helper.updateTexCoordsWithPattern((int)rectMesh.getWidth(),
                                     (int)rectMesh.getHeight(),patternScale.get(),
                                     areaMesh.getHeight()/areaMesh.getWidth()));
                     } else {
-                        mesh.getTexCoords().setAll(
+                        updateRange(mesh.getTexCoords(),
                             helper.updateTexCoordsWithPattern((int)rectMesh.getWidth(),
                                     (int)rectMesh.getHeight(),patternScale.get()));
                     }
                     break;
                 case COLORED_VERTICES_1D:
-                    mesh.getTexCoords().setAll(helper.getTexturePaletteArray());
+                    updateRange(mesh.getTexCoords(), helper.getTexturePaletteArray());
                     break;
                 case COLORED_VERTICES_3D:
-                    mesh.getTexCoords().setAll(helper.getTexturePaletteArray());
+                    updateRange(mesh.getTexCoords(), helper.getTexturePaletteArray());
                     break;
                 case COLORED_FACES:
-                    mesh.getTexCoords().setAll(helper.getTexturePaletteArray());
+                    updateRange(mesh.getTexCoords(), helper.getTexturePaletteArray());
                     break;
             }
         }
@@ -484,47 +636,246 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     private void updateTextureOnFaces(){
         // textures for level
         if(mesh!=null){
+            intersectedFaces=null;
+            // the faces array is recycled between updates, TriangleMesh keeps a copy of it
             switch(textureType.get()){
                 case NONE: 
-                    mesh.getFaces().setAll(helper.updateFacesWithoutTexture(listFaces));
+                    facesBuffer=helper.updateFacesWithoutTexture(packedFaces,facesBuffer);
                     break;
                 case IMAGE: 
-                    if(listTextures.size()>0){
-                        mesh.getFaces().setAll(helper.updateFacesWithTextures(listFaces,listTextures));
+                    if(!packedTextures.isEmpty()){
+                        facesBuffer=helper.updateFacesWithTextures(packedFaces,packedTextures,facesBuffer);
                     } else { 
-                        mesh.getFaces().setAll(helper.updateFacesWithVertices(listFaces));
+                        facesBuffer=helper.updateFacesWithVertices(packedFaces,facesBuffer);
                     }
                     break;
                 case PATTERN: 
-                    mesh.getFaces().setAll(helper.updateFacesWithTextures(listFaces,listTextures));
+                    facesBuffer=helper.updateFacesWithTextures(packedFaces,packedTextures,facesBuffer);
                     break;
                 case COLORED_VERTICES_1D:
                     if(minGlobal.get()<maxGlobal.get()){
-                        mesh.getFaces().setAll(helper.updateFacesWithFunctionMap(listVertices, listFaces, minGlobal.get(),maxGlobal.get()));
+                        facesBuffer=helper.updateFacesWithFunctionMap(packedVertices, packedFaces, minGlobal.get(),maxGlobal.get(),facesBuffer);
                     } else {
 //                        int[] f = helper.updateFacesWithFunctionMap(listVertices, listFaces);
 //                        for(int i=0; i<f.length/6; i+=6){
 //                            System.out.println("i "+f[i+1]+" "+f[i+3]+" "+f[i+5]);
 //                        }
-                        mesh.getFaces().setAll(helper.updateFacesWithFunctionMap(listVertices, listFaces));
+                        facesBuffer=helper.updateFacesWithFunctionMap(packedVertices, packedFaces,facesBuffer);
                     }
                     break;
                 case COLORED_VERTICES_3D:
                     if(minGlobal.get()<maxGlobal.get()){
-                        mesh.getFaces().setAll(helper.updateFacesWithDensityMap(listVertices, listFaces, minGlobal.get(),maxGlobal.get()));
+                        facesBuffer=helper.updateFacesWithDensityMap(packedVertices, packedFaces, minGlobal.get(),maxGlobal.get(),facesBuffer);
                     } else {
-                        mesh.getFaces().setAll(helper.updateFacesWithDensityMap(listVertices, listFaces));
+                        facesBuffer=helper.updateFacesWithDensityMap(packedVertices, packedFaces,facesBuffer);
                     }
                     break;
                 case COLORED_FACES:
-                    mesh.getFaces().setAll(helper.updateFacesWithFaces(listFaces));
+                    facesBuffer=helper.updateFacesWithFaces(packedFaces,facesBuffer);
                     break;
             }
+            updateRange(mesh.getFaces(), facesBuffer);
         }
     }
     
-    protected abstract void updateMesh();
+    /*
+    Batched updates
+    
+    Changes on the texture properties only mark texture coordinates and/or faces
+    as dirty. They are committed to the mesh once, when the outermost batch 
+    (beginUpdate/endUpdate, or any setTextureMode* call) ends, so several changes
+    lead to one single update. With deferred updates, changes made on the FX 
+    application thread are committed once, on the next pulse.
+    */
+    private boolean texCoordsDirty, facesDirty, commitScheduled;
+    private int updateDepth;
+    
+    private final BooleanProperty deferredUpdates = new SimpleBooleanProperty(false);
+
+    public final boolean isDeferredUpdates() {
+        return deferredUpdates.get();
+    }
+
+    public final void setDeferredUpdates(boolean value) {
+        deferredUpdates.set(value);
+    }
+
+    public BooleanProperty deferredUpdatesProperty() {
+        return deferredUpdates;
+    }
+    
+    public final void beginUpdate(){
+        updateDepth++;
+    }
+    
+    public final void endUpdate(){
+        if(updateDepth>0 && --updateDepth==0){
+            requestCommit();
+        }
+    }
+    
+    private void invalidateTexture(){
+        texCoordsDirty=true;
+        requestCommit();
+    }
     
+    protected void invalidateFaces(){
+        facesDirty=true;
+        requestCommit();
+    }
+    
+    private void requestCommit(){
+        if(updateDepth>0 || (!texCoordsDirty && !facesDirty)){
+            return;
+        }
+        if(isDeferredUpdates() && Platform.isFxApplicationThread()){
+            if(!commitScheduled){
+                commitScheduled=true;
+                Platform.runLater(this::commitUpdates);
+            }
+        } else {
+            commitUpdates();
+        }
+    }
+    
+    /*
+    Writes all the pending changes to the mesh
+    */
+    public void commitUpdates(){
+        commitScheduled=false;
+        if(mesh==null){
+            texCoordsDirty=false;
+            facesDirty=false;
+            return;
+        }
+        if(texCoordsDirty){
+            texCoordsDirty=false;
+            updateTexture();
+        }
+        if(facesDirty){
+            facesDirty=false;
+            updateTextureOnFaces();
+        }
+    }
+    
+    /*
+    Range updates
+
+    Writes only the vertices [from, to) from packedVertices to the mesh points,
+    after resizing them to the current number of vertices, so meshes that change
+    a few vertices at a time don't have to rebuild the whole mesh.
+    */
+    protected void updateVertexRange(int from, int to){
+        if(mesh==null){
+            return;
+        }
+        bvh=null;
+        int size=3*packedVertices.size();
+        if(mesh.getPoints().size()!=size){
+            mesh.getPoints().resize(size);
+        }
+        if(from>=to){
+            return;
+        }
+        // the buffer is recycled between updates, TriangleMesh keeps a copy of it
+        if(pointsBuffer==null || pointsBuffer.length<3*(to-from)){
+            pointsBuffer=new float[3*(to-from)];
+        }
+        float[] p=pointsBuffer;
+        for(int i=from; i<to; i++){
+            int j=3*(i-from);
+            p[j]=packedVertices.getX(i)*vertexFactor;
+            p[j+1]=packedVertices.getY(i)*vertexFactor;
+            p[j+2]=packedVertices.getZ(i)*vertexFactor;
+        }
+        mesh.getPoints().set(3*from, p, 0, 3*(to-from));
+    }
+
+    /*
+    Writes all the vertices to the mesh when only their positions have changed
+    since the last createMesh, resetting the factor of updateVertices. Faces are
+    updated only if their texture depends on the vertices
+    */
+    protected void commitVertices(){
+        vertexFactor=1f;
+        updateVertexRange(0, packedVertices.size());
+        if(textureType.get()==TextureType.COLORED_VERTICES_1D ||
+                textureType.get()==TextureType.COLORED_VERTICES_3D){
+            invalidateFaces();
+        }
+    }
+
+    /*
+    Writes only the faces [from, to) to the mesh faces, after resizing them to the
+    current number of faces. When the texture of a face depends on all the mesh
+    (colors by faces, or vertex colors without fixed minGlobal/maxGlobal), all
+    the faces are updated instead
+    */
+    protected void updateFaceRange(int from, int to){
+        if(mesh==null){
+            return;
+        }
+        bvh=null;
+        int size=6*packedFaces.size();
+        boolean global=facesDirty || textureType.get()==TextureType.COLORED_FACES ||
+                ((textureType.get()==TextureType.COLORED_VERTICES_1D ||
+                  textureType.get()==TextureType.COLORED_VERTICES_3D) &&
+                        minGlobal.get()>=maxGlobal.get());
+        if(global){
+            invalidateFaces();
+            return;
+        }
+        intersectedFaces=null;
+        if(mesh.getFaces().size()!=size){
+            mesh.getFaces().resize(size);
+        }
+        if(from>=to){
+            return;
+        }
+        if(textureType.get()==TextureType.COLORED_VERTICES_1D ||
+                textureType.get()==TextureType.COLORED_VERTICES_3D){
+            helper.updateExtremes(minGlobal.get(), maxGlobal.get());
+        }
+        int[] f=packedFaces.getData();
+        int[] t=packedTextures.getData();
+        if(faceRangeBuffer==null || faceRangeBuffer.length<6*(to-from)){
+            faceRangeBuffer=new int[6*(to-from)];
+        }
+        int[] faces=faceRangeBuffer;
+        /*
+        In NONE mode, faces keep their own texture indices only while the mesh still
+        has the texture coordinates of the subclass: once the mode is committed,
+        they are replaced by the single (0,0) pair, and every index is 0
+        */
+        int textured=textureType.get()==TextureType.NONE && mesh.getTexCoords().size()<=2?
+                from:Math.min(packedTextures.size(), to);
+        for(int i=from; i<to; i++){
+            int j=6*(i-from);
+            for(int k=0; k<3; k++){
+                int p=f[3*i+k];
+                faces[j+2*k]=p;
+                switch(textureType.get()){
+                    case NONE:
+                        faces[j+2*k+1]=i<textured?t[3*i+k]:0;
+                        break;
+                    case IMAGE:
+                    case PATTERN:
+                        faces[j+2*k+1]=i<textured?t[3*i+k]:p;
+                        break;
+                    case COLORED_VERTICES_1D:
+                        faces[j+2*k+1]=helper.mapFunction(packedVertices.getF(p));
+                        break;
+                    case COLORED_VERTICES_3D:
+                        faces[j+2*k+1]=helper.mapDensity(packedVertices.get(p));
+                        break;
+                }
+            }
+        }
+        mesh.getFaces().set(6*from, faces, 0, 6*(to-from));
+    }
+
+    protected abstract void updateMesh();
+
     /*
     This method allows replacing the original mesh with one given by a TriangleMesh
     being set with MeshHelper.
@@ -532,9 +883,27 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     This allows combining several meshes into one, creating one single node.
     */
     protected void updateMesh(MeshHelper meshHelper){
-        setMesh(null);
-        mesh=createMesh(meshHelper);
-        setMesh(mesh);
+        commitMesh(createMesh(meshHelper));
+    }
+    
+    /*
+    Sets newMesh as the content of the mesh. If there is already a mesh, it is 
+    kept, and only the ranges of its arrays that are different are updated, 
+    instead of throwing it away.
+    */
+    protected void commitMesh(TriangleMesh newMesh){
+        texCoordsDirty=false;
+        facesDirty=false;
+        intersectedFaces=null;
+        if(mesh==null || mesh==newMesh || getMesh()!=mesh){
+            mesh=newMesh;
+            setMesh(mesh);
+            return;
+        }
+        updateRange(mesh.getPoints(), newMesh.getPoints().toArray(null));
+        updateRange(mesh.getTexCoords(), newMesh.getTexCoords().toArray(null));
+        updateRange(mesh.getFaces(), newMesh.getFaces().toArray(null));
+        updateRange(mesh.getFaceSmoothingGroups(), newMesh.getFaceSmoothingGroups().toArray(null));
     }
     
     protected void createTexCoords(int width, int height){
@@ -551,11 +920,11 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     
     protected MeshHelper precreateMesh() {
         MeshHelper mh = new MeshHelper();
-        mh.setPoints(helper.updateVertices(listVertices));
+        mh.setPoints(helper.updateVertices(packedVertices));
         switch (textureType.get()) {
             case NONE:
                 mh.setTexCoords(textureCoords);
-                mh.setFaces(helper.updateFacesWithTextures(listFaces, listTextures));
+                mh.setFaces(helper.updateFacesWithTextures(packedFaces, packedTextures));
                 break;
             case PATTERN:
                 if (areaMesh.getHeight() > 0 && areaMesh.getWidth() > 0) {
@@ -568,31 +937,31 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
                             helper.updateTexCoordsWithPattern((int) rectMesh.getWidth(),
                                     (int) rectMesh.getHeight(), patternScale.get()));
                 }
-                mh.setFaces(helper.updateFacesWithTextures(listFaces, listTextures));
+                mh.setFaces(helper.updateFacesWithTextures(packedFaces, packedTextures));
                 break;
             case IMAGE:
                 mh.setTexCoords(textureCoords);
-                if (listTextures.size() > 0) {
-                    mh.setFaces(helper.updateFacesWithTextures(listFaces, listTextures));
+                if (!packedTextures.isEmpty()) {
+                    mh.setFaces(helper.updateFacesWithTextures(packedFaces, packedTextures));
                 } else {
-                    mh.setFaces(helper.updateFacesWithVertices(listFaces));
+                    mh.setFaces(helper.updateFacesWithVertices(packedFaces));
                 }
                 break;
             case COLORED_VERTICES_1D:
                 mh.setTexCoords(helper.getTexturePaletteArray());
-                mh.setFaces(helper.updateFacesWithFunctionMap(listVertices, listFaces));
+                mh.setFaces(helper.updateFacesWithFunctionMap(packedVertices, packedFaces));
                 break;
             case COLORED_VERTICES_3D:
                 mh.setTexCoords(helper.getTexturePaletteArray());
-                mh.setFaces(helper.updateFacesWithDensityMap(listVertices, listFaces));
+                mh.setFaces(helper.updateFacesWithDensityMap(packedVertices, packedFaces));
                 break;
             case COLORED_FACES:
                 mh.setTexCoords(helper.getTexturePaletteArray());
-                mh.setFaces(helper.updateFacesWithFaces(listFaces));
+                mh.setFaces(helper.updateFacesWithFaces(packedFaces));
                 break;
         }
 
-        int[] faceSmoothingGroups = new int[listFaces.size()]; // 0 == hard edges
+        int[] faceSmoothingGroups = new int[packedFaces.size()]; // 0 == hard edges
         Arrays.fill(faceSmoothingGroups, 1); // 1: soft edges, all the faces in same surface
         if (smoothingGroups != null) {
 //            for(int i=0; i<smoothingGroups.length; i++){
@@ -607,39 +976,39 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     }
 
     protected TriangleMesh createMesh(MeshHelper mh) {
-        float[] points0=mh.getPoints();
-        float[] f = mh.getF();
-        listVertices.clear();
-        listVertices.addAll(IntStream.range(0, points0.length/3)
-                        .mapToObj(i -> new Point3D(points0[3*i], points0[3*i+1], points0[3*i+2],f[i]))
-                        .collect(Collectors.toList()));
+        packedVertices.setAll(mh.getPoints(), mh.getF());
         
         textureCoords=mh.getTexCoords();
         
         int[] faces0 = mh.getFaces();
-        listFaces.clear();
-        listFaces.addAll(IntStream.range(0, faces0.length/6)
-                        .mapToObj(i -> new Face3(faces0[6*i+0], faces0[6*i+2], faces0[6*i+4]))
-                        .collect(Collectors.toList()));
-        
-        listTextures.clear();
-//        listTextures.addAll(listFaces);  
-        listTextures.addAll(IntStream.range(0, faces0.length/6)
-                        .mapToObj(i -> new Face3(faces0[6*i+1], faces0[6*i+3], faces0[6*i+5]))
-                        .collect(Collectors.toList()));
+        packedFaces.setAll(faces0, 0);
+        packedTextures.setAll(faces0, 1);
         
         smoothingGroups=mh.getFaceSmoothingGroups();
         
         return createMesh();
     }
-    
+
+    /*
+    Geometry of the mesh regardless the texture mode, as createMesh(MeshHelper)
+    reads it. Texture coordinates and smoothing groups are not copied
+    */
+    protected MeshHelper packMesh(){
+        return new MeshHelper(packedVertices.toPoints(), textureCoords,
+                helper.updateFacesWithTextures(packedFaces, packedTextures), smoothingGroups, null);
+    }
+
     protected TriangleMesh createMesh(){
+        // geometry has changed
+        bvh=null;
+        vertexFactor=1f;
+        
         TriangleMesh triangleMesh = new TriangleMesh();
-        triangleMesh.getPoints().setAll(helper.updateVertices(listVertices));
+        triangleMesh.getPoints().setAll(helper.updateVertices(packedVertices));
         switch(textureType.get()){
             case NONE:
                 triangleMesh.getTexCoords().setAll(textureCoords);
-                triangleMesh.getFaces().setAll(helper.updateFacesWithTextures(listFaces,listTextures));
+                triangleMesh.getFaces().setAll(helper.updateFacesWithTextures(packedFaces,packedTextures));
                 break;
             case PATTERN: 
                 if(areaMesh.getHeight()>0 && areaMesh.getWidth()>0){
@@ -652,31 +1021,31 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
                         helper.updateTexCoordsWithPattern((int)rectMesh.getWidth(),
                                 (int)rectMesh.getHeight(),patternScale.get()));
                 }
-                triangleMesh.getFaces().setAll(helper.updateFacesWithTextures(listFaces,listTextures));
+                triangleMesh.getFaces().setAll(helper.updateFacesWithTextures(packedFaces,packedTextures));
                 break;
             case IMAGE: 
                 triangleMesh.getTexCoords().setAll(textureCoords);
-                if(listTextures.size()>0){
-                    triangleMesh.getFaces().setAll(helper.updateFacesWithTextures(listFaces,listTextures));
+                if(!packedTextures.isEmpty()){
+                    triangleMesh.getFaces().setAll(helper.updateFacesWithTextures(packedFaces,packedTextures));
                 } else { 
-                    triangleMesh.getFaces().setAll(helper.updateFacesWithVertices(listFaces));
+                    triangleMesh.getFaces().setAll(helper.updateFacesWithVertices(packedFaces));
                 }
                 break;
             case COLORED_VERTICES_1D:
                 triangleMesh.getTexCoords().setAll(helper.getTexturePaletteArray());
-                triangleMesh.getFaces().setAll(helper.updateFacesWithFunctionMap(listVertices, listFaces));
+                triangleMesh.getFaces().setAll(helper.updateFacesWithFunctionMap(packedVertices, packedFaces));
                 break;
             case COLORED_VERTICES_3D:
                 triangleMesh.getTexCoords().setAll(helper.getTexturePaletteArray());
-                triangleMesh.getFaces().setAll(helper.updateFacesWithDensityMap(listVertices, listFaces));
+                triangleMesh.getFaces().setAll(helper.updateFacesWithDensityMap(packedVertices, packedFaces));
                 break;
             case COLORED_FACES:
                 triangleMesh.getTexCoords().setAll(helper.getTexturePaletteArray());
-                triangleMesh.getFaces().setAll(helper.updateFacesWithFaces(listFaces));
+                triangleMesh.getFaces().setAll(helper.updateFacesWithFaces(packedFaces));
                 break;
         }
         
-        int[] faceSmoothingGroups = new int[listFaces.size()]; // 0 == hard edges
+        int[] faceSmoothingGroups = new int[packedFaces.size()]; // 0 == hard edges
         Arrays.fill(faceSmoothingGroups, 1); // 1: soft edges, all the faces in same surface
         if(smoothingGroups!=null){
 //            for(int i=0; i<smoothingGroups.length; i++){
@@ -687,7 +1056,7 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
             triangleMesh.getFaceSmoothingGroups().addAll(faceSmoothingGroups);
         }
         
-        System.out.println("nodes: "+listVertices.size()+", faces: "+listFaces.size());
+        System.out.println("nodes: "+packedVertices.size()+", faces: "+packedFaces.size());
 //        System.out.println("area: "+helper.getMeshArea(listVertices, listFaces));
         
         return triangleMesh;
@@ -756,21 +1125,94 @@ public abstract class TexturedMesh extends MeshView implements TextureMode {
     }
     
     public Point3D getOrigin(){
-        if(listVertices.size()>0){
-            return listVertices.get(0);
+        if(!packedVertices.isEmpty()){
+            return packedVertices.get(0);
         } 
         return new Point3D(0f,0f,0f);
     }
     
+    /*
+    Bounding volume hierarchy of the mesh, built on demand, and again after 
+    the geometry changes
+    */
+    public MeshBVH getBVH(){
+        if(bvh==null){
+            bvh=MeshBVH.build(packedVertices, packedFaces);
+        }
+        return bvh;
+    }
+    
+    /*
+    Returns the nearest face hit by the ray, with origin and direction in local 
+    coordinates of the shape, or null if there is no intersection. 
+    The hit includes the face index, the distance along direction and the 
+    barycentric coordinates of the point within the face
+    */
+    public MeshBVH.Hit pick(Point3D origin, Point3D direction){
+        if(packedFaces.isEmpty()){
+            return null;
+        }
+        // the hierarchy is built without the factor of updateVertices
+        float inv=1f/vertexFactor;
+        return getBVH().intersect(inv*origin.x, inv*origin.y, inv*origin.z, 
+                inv*direction.x, inv*direction.y, inv*direction.z, 0f, Float.MAX_VALUE);
+    }
+    
+    /*
+    Casts a batch of rays, in local coordinates of the shape, in parallel.
+    Returns the nearest hit of each ray, or null where it misses the mesh
+    */
+    public MeshBVH.Hit[] pick(List<Ray> rays){
+        if(packedFaces.isEmpty()){
+            return new MeshBVH.Hit[rays.size()];
+        }
+        float inv=1f/vertexFactor;
+        return getBVH().intersect(MeshBVH.origins(rays, inv), MeshBVH.directions(rays, inv));
+    }
+    
+    /*
+    For each ray, true if it hits the mesh with 0 < t < tMax, t being measured in 
+    units of its direction
+    */
+    public boolean[] occluded(List<Ray> rays, float tMax){
+        if(packedFaces.isEmpty()){
+            return new boolean[rays.size()];
+        }
+        float inv=1f/vertexFactor;
+        return getBVH().occluded(MeshBVH.origins(rays, inv), MeshBVH.directions(rays, inv), tMax);
+    }
+    
     public int getIntersections(Point3D origin, Point3D direction){
         setTextureModeFaces(10);
+        commitUpdates();
         
-        int[] faces= helper.updateFacesWithIntersections(origin, direction, listVertices, listFaces);
-        mesh.getFaces().setAll(faces);
-        long time=System.currentTimeMillis();
-        List<Face3> listIntersections = helper.getListIntersections(origin, direction, listVertices, listFaces);
-        System.out.println("t: "+(System.currentTimeMillis()-time));
-        listIntersections.forEach(System.out::println);
-        return listIntersections.size();        
+        List<Integer> intersected = new ArrayList<>();
+        getBVH().intersectAll(origin, direction, intersected::add);
+        int[] faces = intersected.stream().mapToInt(Integer::intValue).sorted().toArray();
+        
+        // only the faces that change texture are written to the mesh
+        if(intersectedFaces==null){
+            // faces without intersection, once until the faces are updated again
+            facesBuffer=helper.updateFacesWithoutTexture(packedFaces,facesBuffer);
+            updateRange(mesh.getFaces(), facesBuffer);
+        } else {
+            for(int i : intersectedFaces){
+                setFaceTexture(i, 0);
+            }
+        }
+        for(int i : faces){
+            setFaceTexture(i, 6);
+        }
+        intersectedFaces=faces;
+        return faces.length;        
+    }
+    
+    private void setFaceTexture(int face, int t){
+        int[] f=faceSlice;
+        f[0]=packedFaces.getP0(face);
+        f[2]=packedFaces.getP1(face);
+        f[4]=packedFaces.getP2(face);
+        f[1]=f[3]=f[5]=t;
+        mesh.getFaces().set(6*face, f, 0, 6);
     }
 }
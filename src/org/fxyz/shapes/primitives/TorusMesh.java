@@ -18,6 +18,7 @@
  */
 package org.fxyz.shapes.primitives;
 
+import java.util.List;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
 import javafx.beans.property.SimpleDoubleProperty;
@@ -25,6 +26,8 @@ import javafx.beans.property.SimpleIntegerProperty;
 import javafx.scene.DepthTest;
 import javafx.scene.shape.MeshView;
 import javafx.scene.shape.TriangleMesh;
+import org.fxyz.shapes.primitives.helper.MeshCache;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
 
 /**
  *
@@ -60,7 +63,8 @@ public class TorusMesh extends MeshView {
     }
 
     private void updateMesh(){       
-        setMesh(createTorus(
+        // there is no center to apply, so all the parameters are in the key
+        List<Object> key=MeshCache.key(TorusMesh.class, 
             getRadiusDivisions(), 
             getTubeDivisions(), 
             (float) getRadius(), 
@@ -68,10 +72,28 @@ public class TorusMesh extends MeshView {
             (float) getTubeStartAngleOffset(), 
             (float)getxOffset(),
             (float)getyOffset(), 
-            (float)getzOffset()));     
+            (float)getzOffset());
+        MeshHelper torus=MeshCache.get(key);
+        if(torus==null){
+            torus=createTorus(
+                getRadiusDivisions(), 
+                getTubeDivisions(), 
+                (float) getRadius(), 
+                (float) getTubeRadius(), 
+                (float) getTubeStartAngleOffset(), 
+                (float)getxOffset(),
+                (float)getyOffset(), 
+                (float)getzOffset());
+            MeshCache.put(key, torus);
+        }
+        TriangleMesh localTriangleMesh = new TriangleMesh();
+        localTriangleMesh.getPoints().setAll(torus.getPoints());
+        localTriangleMesh.getTexCoords().setAll(torus.getTexCoords());
+        localTriangleMesh.getFaces().setAll(torus.getFaces());
+        setMesh(localTriangleMesh);     
     }
     
-    private TriangleMesh createTorus(
+    private MeshHelper createTorus(
             int radiusDivisions,
             int tubeDivisions,
             float radius,
@@ -158,27 +180,14 @@ public class TorusMesh extends MeshView {
             }
         }
 
-        TriangleMesh localTriangleMesh = new TriangleMesh();
-        localTriangleMesh.getPoints().setAll(points);
-        localTriangleMesh.getTexCoords().setAll(texCoords);
-        localTriangleMesh.getFaces().setAll(faces);
-
-        return localTriangleMesh;
+        return new MeshHelper(points, texCoords, faces, null, null);
     }
 
     private final IntegerProperty radiusDivisions = new SimpleIntegerProperty(DEFAULT_DIVISIONS) {
 
         @Override
         protected void invalidated() {
-            setMesh(createTorus(
-                getRadiusDivisions(), 
-                getTubeDivisions(), 
-                (float) getRadius(), 
-                (float) getTubeRadius(), 
-                (float) getTubeStartAngleOffset(), 
-                (float)getxOffset(),
-                (float)getyOffset(), 
-                (float)getzOffset()));
+            updateMesh();
         }
 
     };
@@ -22,9 +22,8 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.Map;
 import java.util.stream.Collectors;
-import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.IntegerProperty;
@@ -33,14 +32,13 @@ import javafx.beans.property.SimpleDoubleProperty;
 import javafx.beans.property.SimpleIntegerProperty;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.geometry.Bounds;
-import javafx.geometry.Point2D;
 import javafx.scene.DepthTest;
 import javafx.scene.shape.CullFace;
 import javafx.scene.shape.DrawMode;
 import javafx.scene.shape.TriangleMesh;
 import org.fxyz.geometry.Face3;
 import org.fxyz.geometry.Point3D;
-import org.fxyz.utils.FloatCollector;
+import org.fxyz.shapes.primitives.helper.MeshSubdivider;
 import org.poly2tri.Poly2Tri;
 import org.poly2tri.polygon.Polygon;
 import org.poly2tri.polygon.PolygonPoint;
@@ -97,9 +95,7 @@ public class TriangulatedMesh extends TexturedMesh {
     
     @Override
     protected final void updateMesh(){   
-        setMesh(null);
-        mesh=createMesh(level.get());
-        setMesh(mesh);
+        commitMesh(createMesh(level.get()));
     }
     
     private final DoubleProperty height = new SimpleDoubleProperty(DEFAULT_HEIGHT){
@@ -189,7 +185,6 @@ public class TriangulatedMesh extends TexturedMesh {
     private int numVertices, numTexCoords, numFaces;
     private float[] points0, texCoord0;
     private int[] faces0;
-    private List<Point2D> texCoord1;
     
     private List<TriangulationPoint> points1;
     private final List<List<PolygonPoint>> holes=new ArrayList<>();
@@ -208,6 +203,8 @@ public class TriangulatedMesh extends TexturedMesh {
         }
         
         if(level==0){
+            holes.clear();
+            holePoints.clear();
             //check for duplicates or too close
             List<Integer> duplicates=IntStream.range(0, pointsExterior.size()).boxed()
                 .filter(i->pointsExterior.get(i).substract(pointsExterior.get(i==pointsExterior.size()-1?0:i+1)).magnitude()<100*EPSILON)
@@ -285,102 +282,86 @@ public class TriangulatedMesh extends TexturedMesh {
             
             int totalHolePoints=holePoints.stream().reduce(0, Integer::sum);
             int numPoints=extPoints+steinerPoints+totalHolePoints;
+            int size=points1.size();
 
-            FloatCollector pointsBottom = points1.stream()
-                    .flatMapToDouble(p->DoubleStream.of(p.getX(),p.getY(),0d))
-                    .collect(()->new FloatCollector(points1.size()*3),FloatCollector::add,FloatCollector::join);
-            FloatCollector pointsTop = points1.stream()
-                    .flatMapToDouble(p->DoubleStream.of(p.getX(),p.getY(),height.get()))
-                    .collect(()->new FloatCollector(points1.size()*3),FloatCollector::add,FloatCollector::join);
-            pointsBottom.join(pointsTop);
-            points0=pointsBottom.toArray();
+            // vertices and texture coordinates, bottom and top
+            points0=new float[6*size];
+            texCoord0=new float[4*size];
+            for(int i=0; i<size; i++){
+                TriangulationPoint p=points1.get(i);
+                points0[3*i]=points0[3*(size+i)]=(float)p.getX();
+                points0[3*i+1]=points0[3*(size+i)+1]=(float)p.getY();
+                points0[3*i+2]=0f;
+                points0[3*(size+i)+2]=(float)height.get();
+                texCoord0[2*i]=texCoord0[2*(size+i)]=(float)((p.getX()-minX)/(maxX-minX));
+                texCoord0[2*i+1]=texCoord0[2*(size+i)+1]=(float)((p.getY()-minY)/(maxY-minY));
+            }
             numVertices=points0.length/3;
-
-            FloatCollector texBottom = points1.stream()
-                    .flatMapToDouble(p->DoubleStream.of((p.getX()-minX)/(maxX-minX),(p.getY()-minY)/(maxY-minY)))
-                    .collect(()->new FloatCollector(points1.size()*2),FloatCollector::add,FloatCollector::join);
-            FloatCollector texTop = points1.stream()
-                    .flatMapToDouble(p->DoubleStream.of((p.getX()-minX)/(maxX-minX),(p.getY()-minY)/(maxY-minY)))
-                    .collect(()->new FloatCollector(points1.size()*2),FloatCollector::add,FloatCollector::join);
-            texBottom.join(texTop);
-            texCoord0=texBottom.toArray();
             numTexCoords=texCoord0.length/2;
             
-            texCoord1 = IntStream.range(0, numTexCoords)
-                    .mapToObj(i -> new Point2D(texCoord0[2*i], texCoord0[2*i+1]))
-                    .collect(Collectors.toList());
-            List<int[]> listIndices = tri.stream().map((DelaunayTriangle t)->{
-                int[] pIndex=new int[3];
+            // index of each point, built once: the first one wins for 
+            // duplicated coordinates
+            Map<TriangulationPoint,Integer> pointIndex = new HashMap<>(2*size);
+            for(int i=0; i<size; i++){
+                pointIndex.putIfAbsent(points1.get(i), i);
+            }
+            
+            // faces
+            int numWalls=extPoints;
+            for(List<PolygonPoint> hole:holes){
+                numWalls+=hole.size();
+            }
+            faces0=new int[12*tri.size()+12*(totalHolePoints>0?numWalls:extPoints)];
+            int f=0;
+            
+            // base
+            int[] pIndex=new int[3*tri.size()];
+            for(int t=0; t<tri.size(); t++){
                 for(int j=0; j<3; j++){
-                    final TriangulationPoint dt = t.points[j];
-                    int[] toArray = IntStream.range(0,points1.size())
-                            .filter(i->points1.get(i).equals(dt))
-                            .toArray();
-                    if(toArray.length>0){
-                        pIndex[j]=toArray[0];
+                    Integer index = pointIndex.get(tri.get(t).points[j]);
+                    if(index!=null){
+                        pIndex[3*t+j]=index;
                     } else {
                         System.out.println("Error "+points1);
                     }
                 }
-                return pIndex;
-            }).collect(Collectors.toList());
-            
-            // faces
-            
-            // base
-            IntStream streamBottom = listIndices.stream()
-                    .map(i->IntStream.of(i[0], i[0], i[2], i[2], i[1], i[1]))
-                    .flatMapToInt(i->i);
+                f=face(faces0, f, pIndex[3*t], pIndex[3*t+2], pIndex[3*t+1]);
+            }
             // top
-            IntStream streamTop = listIndices.stream()
-                    .map(i->IntStream.of(numPoints+i[0], numPoints+i[0], numPoints+i[1], numPoints+i[1], numPoints+i[2], numPoints+i[2]))
-                    .flatMapToInt(i->i);
+            for(int t=0; t<tri.size(); t++){
+                f=face(faces0, f, numPoints+pIndex[3*t], numPoints+pIndex[3*t+1], numPoints+pIndex[3*t+2]);
+            }
             
             // vertical, exterior
-            IntStream streamExtWalls = IntStream.range(0, extPoints-1)
-                    .mapToObj(i->IntStream.of(i,i,i+1,i+1,i+1+numPoints,i+1+numPoints,
-                                              i,i,i+1+numPoints,i+1+numPoints,i+numPoints,i+numPoints))
-                    .flatMapToInt(i->i);
+            for(int i=0; i<extPoints-1; i++){
+                f=face(faces0, f, i, i+1, i+1+numPoints);
+                f=face(faces0, f, i, i+1+numPoints, i+numPoints);
+            }
             // vertical, exterior, close polygon
-            IntStream streamExtWallsClose = IntStream.of(extPoints-1,extPoints-1,0,0,0+numPoints,0+numPoints,
-                    extPoints-1,extPoints-1,0+numPoints,0+numPoints,numPoints+extPoints-1,numPoints+extPoints-1);
+            f=face(faces0, f, extPoints-1, 0, numPoints);
+            f=face(faces0, f, extPoints-1, numPoints, numPoints+extPoints-1);
             if(totalHolePoints>0){
                 // vertical, interior
                 // holes
                 int acuHolePoints0=extPoints+steinerPoints, acuHolePoints1;
-                IntStream streamIntWalls=IntStream.empty();
                 for(List<PolygonPoint> hole:holes){
                     acuHolePoints1=acuHolePoints0+hole.size()-1;
-                    IntStream streamIntWallsHole = IntStream.range(acuHolePoints0, acuHolePoints1)
-                            .mapToObj(i->IntStream.of(i,i,i+1+numPoints,i+1+numPoints,i+1,i+1,
-                                                      i,i,i+numPoints,i+numPoints,i+1+numPoints,i+1+numPoints))
-                            .flatMapToInt(i->i);
-                    streamIntWalls=IntStream.concat(streamIntWalls,streamIntWallsHole);
+                    for(int i=acuHolePoints0; i<acuHolePoints1; i++){
+                        f=face(faces0, f, i, i+1+numPoints, i+1);
+                        f=face(faces0, f, i, i+numPoints, i+1+numPoints);
+                    }
                     acuHolePoints0=acuHolePoints1+1;
                 }
                 
                 // vertical, interior, close holes
                 // holes
                 acuHolePoints0=extPoints+steinerPoints;
-                IntStream streamIntWallsClose=IntStream.empty();
                 for(List<PolygonPoint> hole:holes){
                     acuHolePoints1=acuHolePoints0+hole.size()-1;
-                    IntStream streamIntWallsCloseHole = IntStream.of(acuHolePoints1,acuHolePoints1,
-                            numPoints+acuHolePoints0,numPoints+acuHolePoints0,
-                            acuHolePoints0,acuHolePoints0,
-                            acuHolePoints1,acuHolePoints1,
-                            numPoints+acuHolePoints1,numPoints+acuHolePoints1,
-                            numPoints+acuHolePoints0,numPoints+acuHolePoints0);
-                    streamIntWallsClose=IntStream.concat(streamIntWallsClose,streamIntWallsCloseHole);
+                    f=face(faces0, f, acuHolePoints1, numPoints+acuHolePoints0, acuHolePoints0);
+                    f=face(faces0, f, acuHolePoints1, numPoints+acuHolePoints1, numPoints+acuHolePoints0);
                     acuHolePoints0=acuHolePoints1+1;
                 }
-                faces0=IntStream.concat(streamBottom, 
-                    IntStream.concat(streamTop,IntStream.concat(streamExtWalls,
-                        IntStream.concat(streamExtWallsClose,IntStream.concat(streamIntWalls,streamIntWallsClose)
-                                )))).toArray(); 
-            } else {
-                faces0=IntStream.concat(streamBottom, 
-                    IntStream.concat(streamTop,IntStream.concat(streamExtWalls,streamExtWallsClose))).toArray();
             }
             
             numFaces=faces0.length/6;
@@ -393,72 +374,28 @@ public class TriangulatedMesh extends TexturedMesh {
             m0.getFaces().toArray(faces0);
         }
         
-        List<Point3D> points1 = IntStream.range(0, numVertices)
-                        .mapToObj(i -> new Point3D(points0[3*i], points0[3*i+1], points0[3*i+2]))
-                        .collect(Collectors.toList());
-        
-        texCoord1 = IntStream.range(0, numTexCoords)
-                    .mapToObj(i -> new Point2D(texCoord0[2*i], texCoord0[2*i+1]))
-                    .collect(Collectors.toList());
-        
-        List<Face3> faces1 = IntStream.range(0, numFaces)
-                    .mapToObj(i -> new Face3(faces0[6*i], faces0[6*i+2], faces0[6*i+4]))
-                    .collect(Collectors.toList());
-
-        index.set(points1.size());
-        map.clear();
-        listFaces.clear();
-        listVertices.clear();
-        listVertices.addAll(points1);
-
-        faces1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,points1.get(v1),v2,points1.get(v2));
-                int b = getMiddle(v2,points1.get(v2),v3,points1.get(v3));
-                int c = getMiddle(v3,points1.get(v3),v1,points1.get(v1));
-
-                listFaces.add(new Face3(v1,a,c));
-                listFaces.add(new Face3(v2,b,a));
-                listFaces.add(new Face3(v3,c,b));
-                listFaces.add(new Face3(a,b,c));
-            } else {
-                listFaces.add(new Face3(v1,v2,v3));
+        // faces and texture faces of level-1, as (p0,p1,p2) triplets
+        int[] f1=new int[3*numFaces];
+        int[] t1=new int[3*numFaces];
+        for(int i=0; i<numFaces; i++){
+            for(int k=0; k<3; k++){
+                f1[3*i+k]=faces0[6*i+2*k];
+                t1[3*i+k]=faces0[6*i+2*k+1];
             }
-        });
-        map.clear();
-        numVertices=listVertices.size();
-        numFaces=listFaces.size();
-         
-        List<Face3> textures1 = IntStream.range(0, faces0.length/6)
-                    .mapToObj(i -> new Face3(faces0[6*i+1], faces0[6*i+3], faces0[6*i+5]))
-                    .collect(Collectors.toList());
-
-        index.set(texCoord1.size());
-        listTextures.clear();
-        textures1.forEach(face->{
-            int v1=face.p0;
-            int v2=face.p1;
-            int v3=face.p2;
-            if(level>0){
-                int a = getMiddle(v1,texCoord1.get(v1),v2,texCoord1.get(v2));
-                int b = getMiddle(v2,texCoord1.get(v2),v3,texCoord1.get(v3));
-                int c = getMiddle(v3,texCoord1.get(v3),v1,texCoord1.get(v1));
-
-                listTextures.add(new Face3(v1,a,c));
-                listTextures.add(new Face3(v2,b,a));
-                listTextures.add(new Face3(v3,c,b));
-                listTextures.add(new Face3(a,b,c));
-            } else {
-                listTextures.add(new Face3(v1,v2,v3));
-            }
-        });
-        map.clear();
-
-        texCoord0=texCoord1.stream().flatMapToDouble(p->DoubleStream.of(p.getX(),p.getY()))
-                .collect(()->new FloatCollector(texCoord1.size()*2), FloatCollector::add, FloatCollector::join).toArray();
+        }
+        if(level>0){
+            MeshSubdivider vertices=MeshSubdivider.subdivide(f1, numFaces, numVertices);
+            points0=vertices.interpolate(points0, 3);
+            f1=vertices.getFaces();
+            MeshSubdivider textures=MeshSubdivider.subdivide(t1, numFaces, numTexCoords);
+            texCoord0=textures.interpolate(texCoord0, 2);
+            t1=textures.getFaces();
+        }
+        packedVertices.setAll(points0, null);
+        packedFaces.setAll(f1);
+        packedTextures.setAll(t1);
+        numVertices=packedVertices.size();
+        numFaces=packedFaces.size();
         numTexCoords=texCoord0.length/2;
         textureCoords=texCoord0;
         if(level==getLevel()){
@@ -472,33 +409,18 @@ public class TriangulatedMesh extends TexturedMesh {
         return createMesh();
     }
     
-    private final AtomicInteger index = new AtomicInteger();
-    private final HashMap<String, Integer> map = new HashMap<>();
-
-    private int getMiddle(int v1, Point3D p1, int v2, Point3D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
-        }
-
-        listVertices.add(p1.add(p2).multiply(0.5f));
-
-        map.put(key,index.get());
-        return index.getAndIncrement();
+    /*
+    Writes the face p0, p1, p2 at f, with texture indices equal to the vertex
+    ones, and returns the next position
+    */
+    private static int face(int[] faces, int f, int p0, int p1, int p2){
+        faces[f]=faces[f+1]=p0;
+        faces[f+2]=faces[f+3]=p1;
+        faces[f+4]=faces[f+5]=p2;
+        return f+6;
     }
     
-    private int getMiddle(int v1, Point2D p1, int v2, Point2D p2){
-        String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
-        if(map.get(key)!=null){
-            return map.get(key);
-        }
-
-        texCoord1.add(p1.add(p2).multiply(0.5f));
 
-        map.put(key,index.get());
-        return index.getAndIncrement();
-    }
-    
     private int[] getSmoothingGroups(List<Point3D> points, List<Face3> faces){
         return faces.stream().mapToInt(f->{
                 Point3D a = points.get(f.p0);
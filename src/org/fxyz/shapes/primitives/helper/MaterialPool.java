@@ -0,0 +1,205 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.primitives.helper;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import javafx.scene.image.Image;
+import javafx.scene.paint.Color;
+import javafx.scene.paint.PhongMaterial;
+import org.fxyz.utils.NormalMap;
+
+/**
+ * Shared materials for TriangleMeshHelper: meshes with the same configuration 
+ * (diffuse and specular colors, diffuse map, image url) share its maps 
+ * (images, palettes, patterns, normal maps) instead of building their own.
+ * 
+ * The pooled material itself is never handed out: every acquire call returns 
+ * a copy of it, so changing the material of a mesh doesn't change any other 
+ * mesh. A mesh that changes its configuration acquires the material of the new
+ * one and releases the old one, and the configuration is evicted when its last
+ * user releases it. Images given by url are loaded once, and shared as well.
+ *
+ * @author jpereda
+ */
+public final class MaterialPool {
+    
+    private static class Entry {
+        private final List<Object> key;
+        private final PhongMaterial material;
+        private final String url;
+        private int references;
+
+        Entry(List<Object> key, PhongMaterial material, String url) {
+            this.key = key;
+            this.material = material;
+            this.url = url;
+        }
+    }
+    
+    private static class ImageEntry {
+        private final Image image;
+        private int references;
+
+        ImageEntry(Image image) {
+            this.image = image;
+        }
+    }
+    
+    private static final Map<List<Object>, Entry> ENTRIES = new HashMap<>();
+    // acquired copies, and the configuration they come from
+    private static final Map<PhongMaterial, Entry> MATERIALS = new IdentityHashMap<>();
+    private static final Map<String, ImageEntry> IMAGES = new HashMap<>();
+    // references of the live materials to each texture
+    private static final Map<Image, Integer> TEXTURES = new IdentityHashMap<>();
+    
+    private MaterialPool(){}
+    
+    /*
+    Material with diffuse and specular colors and a diffuse map, without other maps
+    */
+    public static synchronized PhongMaterial acquire(Color diffuse, Color specular, Image diffuseMap){
+        List<Object> key = Arrays.asList(diffuse, specular, diffuseMap);
+        Entry entry = ENTRIES.get(key);
+        if(entry==null){
+            PhongMaterial material = new PhongMaterial();
+            material.setDiffuseColor(diffuse);
+            material.setSpecularColor(specular);
+            material.setDiffuseMap(diffuseMap);
+            entry = register(key, material, null);
+        }
+        return copy(entry);
+    }
+    
+    /*
+    Material with the image at url as diffuse map
+    */
+    public static synchronized PhongMaterial acquire(Color diffuse, Color specular, String url){
+        List<Object> key = Arrays.asList(diffuse, specular, url);
+        Entry entry = ENTRIES.get(key);
+        if(entry==null){
+            PhongMaterial material = new PhongMaterial();
+            material.setDiffuseColor(diffuse);
+            material.setSpecularColor(specular);
+            material.setDiffuseMap(acquireImage(url));
+            entry = register(key, material, url);
+        }
+        return copy(entry);
+    }
+    
+    /*
+    Shiny material with the image at url as diffuse map and its normal map as 
+    bump map
+    */
+    public static synchronized PhongMaterial acquireBumped(Color diffuse, String url){
+        List<Object> key = Arrays.asList(diffuse, url, NormalMap.class);
+        Entry entry = ENTRIES.get(key);
+        if(entry==null){
+            PhongMaterial material = new PhongMaterial(diffuse);
+            Image image = acquireImage(url);
+            material.setDiffuseMap(image);
+            material.setBumpMap(new NormalMap(image));
+            material.setSpecularPower(32);
+            material.setSpecularColor(Color.WHITE);
+            entry = register(key, material, url);
+        }
+        return copy(entry);
+    }
+    
+    /*
+    Releases a material returned by any acquire method
+    */
+    public static synchronized void release(PhongMaterial material){
+        Entry entry = MATERIALS.remove(material);
+        if(entry==null || --entry.references>0){
+            return;
+        }
+        ENTRIES.remove(entry.key);
+        removeTexture(entry.material.getDiffuseMap());
+        removeTexture(entry.material.getBumpMap());
+        if(entry.url!=null){
+            ImageEntry image = IMAGES.get(entry.url);
+            if(--image.references<=0){
+                IMAGES.remove(entry.url);
+            }
+        }
+    }
+    
+    /*
+    Counters: configurations and maps in use, and users of the configuration
+    of an acquired material
+    */
+    public static synchronized int getMaterialCount(){
+        return ENTRIES.size();
+    }
+    
+    public static synchronized int getTextureCount(){
+        return TEXTURES.size();
+    }
+    
+    public static synchronized int getReferenceCount(PhongMaterial material){
+        Entry entry = MATERIALS.get(material);
+        return entry!=null?entry.references:0;
+    }
+    
+    private static Entry register(List<Object> key, PhongMaterial material, String url){
+        Entry entry = new Entry(key, material, url);
+        ENTRIES.put(key, entry);
+        addTexture(material.getDiffuseMap());
+        addTexture(material.getBumpMap());
+        return entry;
+    }
+    
+    private static PhongMaterial copy(Entry entry){
+        PhongMaterial pooled = entry.material;
+        PhongMaterial material = new PhongMaterial(pooled.getDiffuseColor(), 
+                pooled.getDiffuseMap(), pooled.getSpecularMap(), pooled.getBumpMap(), 
+                pooled.getSelfIlluminationMap());
+        material.setSpecularColor(pooled.getSpecularColor());
+        material.setSpecularPower(pooled.getSpecularPower());
+        entry.references++;
+        MATERIALS.put(material, entry);
+        return material;
+    }
+    
+    private static Image acquireImage(String url){
+        ImageEntry entry = IMAGES.get(url);
+        if(entry==null){
+            entry = new ImageEntry(new Image(url));
+            IMAGES.put(url, entry);
+        }
+        entry.references++;
+        return entry.image;
+    }
+    
+    private static void addTexture(Image image){
+        if(image!=null){
+            TEXTURES.merge(image, 1, Integer::sum);
+        }
+    }
+    
+    private static void removeTexture(Image image){
+        if(image!=null && TEXTURES.merge(image, -1, Integer::sum)<=0){
+            TEXTURES.remove(image);
+        }
+    }
+}
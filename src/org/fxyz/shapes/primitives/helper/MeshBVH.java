@@ -0,0 +1,642 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.primitives.helper;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.IntConsumer;
+import org.fxyz.geometry.PackedFaces;
+import org.fxyz.geometry.PackedPoints;
+import org.fxyz.geometry.Point3D;
+import org.fxyz.geometry.Ray;
+
+/**
+ * Bounding volume hierarchy of the triangles of a mesh, to accelerate ray picking.
+ *
+ * The tree is built with the surface area heuristic (SAH), evaluated over a
+ * fixed number of bins, and flattened in depth first order into primitive arrays:
+ * the left child of a node is always the next node, and leaves reference a
+ * contiguous range of triangles. Triangles are stored in tree order as
+ * structure of arrays, vertex a plus both edges, as required by Möller-Trumbore,
+ * so a leaf is scanned over contiguous memory in each array.
+ *
+ * Besides single rays, batches of rays can be cast in parallel, for visibility
+ * or occlusion sweeps.
+ *
+ * The hierarchy is a snapshot of the geometry: it has to be built again when
+ * vertices or faces change.
+ *
+ * @author jpereda
+ */
+public class MeshBVH {
+
+    private static final int BINS = 16;
+    private static final int LEAF_SIZE = 4;
+    private static final int MAX_LEAF_SIZE = 16;
+    private static final int MAX_DEPTH = 64;
+    private static final float EPS = 0.000001f;
+    private static final int RAYS_PER_TASK = 256;
+
+    /*
+    Result of a ray query: the face index in the mesh, the ray parameter t
+    (the distance if the direction is normalized) and the barycentric coordinates
+    (u,v) of the hit, so the point is (1-u-v)*p0 + u*p1 + v*p2
+    */
+    public static class Hit {
+        public final int face;
+        public final float distance;
+        public final float u;
+        public final float v;
+
+        public Hit(int face, float distance, float u, float v) {
+            this.face = face;
+            this.distance = distance;
+            this.u = u;
+            this.v = v;
+        }
+
+        public Point3D getPoint(Point3D origin, Point3D direction){
+            return new Point3D(origin.x+distance*direction.x,
+                               origin.y+distance*direction.y,
+                               origin.z+distance*direction.z);
+        }
+
+        @Override
+        public String toString() {
+            return "Hit{" + "face=" + face + ", distance=" + distance + ", u=" + u + ", v=" + v + '}';
+        }
+    }
+
+    // nodes: bounds (minX,minY,minZ,maxX,maxY,maxZ), right child or first triangle, triangle count (0 for inner nodes)
+    private float[] nodeBounds;
+    private int[] nodeOffset;
+    private int[] nodeCount;
+    private int numNodes;
+    private int depth;
+
+    // triangles in tree order, as structure of arrays: vertex a, edge1=b-a,
+    // edge2=c-a, and their face index in the mesh
+    private final float[] ax, ay, az;
+    private final float[] e1x, e1y, e1z;
+    private final float[] e2x, e2y, e2z;
+    private final int[] faceIndex;
+
+    // build data
+    private float[] triBounds;
+    private float[] centroids;
+    private int[] order;
+    private final int[] binCount = new int[BINS];
+    private final float[] binBounds = new float[6*BINS];
+    private final float[] rightArea = new float[BINS];
+    private final int[] rightCount = new int[BINS];
+
+    private MeshBVH(int numFaces) {
+        ax = new float[numFaces];
+        ay = new float[numFaces];
+        az = new float[numFaces];
+        e1x = new float[numFaces];
+        e1y = new float[numFaces];
+        e1z = new float[numFaces];
+        e2x = new float[numFaces];
+        e2y = new float[numFaces];
+        e2z = new float[numFaces];
+        faceIndex = new int[numFaces];
+    }
+
+    public static MeshBVH build(PackedPoints points, PackedFaces faces){
+        int numFaces=faces.size();
+        MeshBVH bvh = new MeshBVH(numFaces);
+        bvh.build(points.getData(), faces.getData(), numFaces);
+        return bvh;
+    }
+
+    public int getNumNodes() { return numNodes; }
+    public int getNumFaces() { return faceIndex.length; }
+    public int getDepth() { return depth; }
+
+    private void build(float[] p, int[] f, int numFaces){
+        final int S=PackedPoints.STRIDE;
+        triBounds = new float[6*numFaces];
+        centroids = new float[3*numFaces];
+        order = new int[numFaces];
+        for(int i=0; i<numFaces; i++){
+            int a=S*f[3*i], b=S*f[3*i+1], c=S*f[3*i+2];
+            for(int k=0; k<3; k++){
+                float min=Math.min(p[a+k],Math.min(p[b+k],p[c+k]));
+                float max=Math.max(p[a+k],Math.max(p[b+k],p[c+k]));
+                triBounds[6*i+k]=min;
+                triBounds[6*i+3+k]=max;
+                centroids[3*i+k]=0.5f*(min+max);
+            }
+            order[i]=i;
+        }
+        int capacity=Math.max(1, 2*numFaces/LEAF_SIZE+1);
+        nodeBounds = new float[6*capacity];
+        nodeOffset = new int[capacity];
+        nodeCount = new int[capacity];
+        numNodes=0;
+        if(numFaces>0){
+            buildNode(0, numFaces, 1);
+        }
+
+        for(int i=0; i<numFaces; i++){
+            int face=order[i];
+            int a=S*f[3*face], b=S*f[3*face+1], c=S*f[3*face+2];
+            faceIndex[i]=face;
+            ax[i]=p[a];
+            ay[i]=p[a+1];
+            az[i]=p[a+2];
+            e1x[i]=p[b]-p[a];
+            e1y[i]=p[b+1]-p[a+1];
+            e1z[i]=p[b+2]-p[a+2];
+            e2x[i]=p[c]-p[a];
+            e2y[i]=p[c+1]-p[a+1];
+            e2z[i]=p[c+2]-p[a+2];
+        }
+        triBounds=null;
+        centroids=null;
+        order=null;
+    }
+
+    private int buildNode(int start, int end, int level){
+        depth=Math.max(depth,level);
+        int node=newNode();
+        float[] cb=new float[]{Float.MAX_VALUE,Float.MAX_VALUE,Float.MAX_VALUE,
+                              -Float.MAX_VALUE,-Float.MAX_VALUE,-Float.MAX_VALUE};
+        int nb=6*node;
+        for(int k=0; k<3; k++){
+            nodeBounds[nb+k]=Float.MAX_VALUE;
+            nodeBounds[nb+3+k]=-Float.MAX_VALUE;
+        }
+        for(int i=start; i<end; i++){
+            int t=order[i];
+            for(int k=0; k<3; k++){
+                nodeBounds[nb+k]=Math.min(nodeBounds[nb+k],triBounds[6*t+k]);
+                nodeBounds[nb+3+k]=Math.max(nodeBounds[nb+3+k],triBounds[6*t+3+k]);
+                cb[k]=Math.min(cb[k],centroids[3*t+k]);
+                cb[3+k]=Math.max(cb[3+k],centroids[3*t+k]);
+            }
+        }
+        int count=end-start;
+        int axis=0;
+        for(int k=1; k<3; k++){
+            if(cb[3+k]-cb[k]>cb[3+axis]-cb[axis]){
+                axis=k;
+            }
+        }
+        float cmin=cb[axis], extent=cb[3+axis]-cb[axis];
+        if(count<=LEAF_SIZE || level>=MAX_DEPTH || extent<=0f){
+            return makeLeaf(node, start, count);
+        }
+
+        // binned SAH along the largest axis of the centroids
+        float scale=BINS/extent;
+        Arrays.fill(binCount, 0);
+        for(int b=0; b<BINS; b++){
+            resetBounds(binBounds, 6*b);
+        }
+        for(int i=start; i<end; i++){
+            int t=order[i];
+            int b=bin(centroids[3*t+axis], cmin, scale);
+            binCount[b]++;
+            growBounds(binBounds, 6*b, triBounds, 6*t);
+        }
+        float[] acc=new float[6];
+        resetBounds(acc, 0);
+        int accCount=0;
+        for(int b=BINS-1; b>0; b--){
+            accCount+=binCount[b];
+            growBounds(acc, 0, binBounds, 6*b);
+            rightCount[b]=accCount;
+            rightArea[b]=area(acc, 0);
+        }
+        resetBounds(acc, 0);
+        accCount=0;
+        int bestSplit=-1;
+        float bestCost=Float.MAX_VALUE;
+        for(int b=0; b<BINS-1; b++){
+            accCount+=binCount[b];
+            growBounds(acc, 0, binBounds, 6*b);
+            if(accCount==0 || rightCount[b+1]==0){
+                continue;
+            }
+            float cost=accCount*area(acc, 0)+rightCount[b+1]*rightArea[b+1];
+            if(cost<bestCost){
+                bestCost=cost;
+                bestSplit=b;
+            }
+        }
+        float leafCost=count*area(nodeBounds, nb);
+        if(bestCost>=leafCost && count<=MAX_LEAF_SIZE){
+            return makeLeaf(node, start, count);
+        }
+
+        int mid;
+        if(bestSplit<0){
+            mid=start+count/2;
+        } else {
+            // partition in place: triangles in bins <= bestSplit go left
+            int i=start, j=end-1;
+            while(i<=j){
+                if(bin(centroids[3*order[i]+axis], cmin, scale)<=bestSplit){
+                    i++;
+                } else {
+                    int tmp=order[i];
+                    order[i]=order[j];
+                    order[j--]=tmp;
+                }
+            }
+            mid=i;
+            if(mid==start || mid==end){
+                mid=start+count/2;
+            }
+        }
+        nodeCount[node]=0;
+        buildNode(start, mid, level+1);
+        int right=buildNode(mid, end, level+1);
+        nodeOffset[node]=right;
+        return node;
+    }
+
+    private int newNode(){
+        if(numNodes==nodeOffset.length){
+            int capacity=2*numNodes;
+            nodeBounds=Arrays.copyOf(nodeBounds, 6*capacity);
+            nodeOffset=Arrays.copyOf(nodeOffset, capacity);
+            nodeCount=Arrays.copyOf(nodeCount, capacity);
+        }
+        return numNodes++;
+    }
+
+    private int makeLeaf(int node, int start, int count){
+        nodeOffset[node]=start;
+        nodeCount[node]=count;
+        return node;
+    }
+
+    private static int bin(float c, float min, float scale){
+        return Math.max(0,Math.min(BINS-1, (int)((c-min)*scale)));
+    }
+
+    private static void resetBounds(float[] b, int i){
+        b[i]=b[i+1]=b[i+2]=Float.MAX_VALUE;
+        b[i+3]=b[i+4]=b[i+5]=-Float.MAX_VALUE;
+    }
+
+    private static void growBounds(float[] b, int i, float[] other, int j){
+        for(int k=0; k<3; k++){
+            b[i+k]=Math.min(b[i+k],other[j+k]);
+            b[i+3+k]=Math.max(b[i+3+k],other[j+3+k]);
+        }
+    }
+
+    private static float area(float[] b, int i){
+        float dx=b[i+3]-b[i], dy=b[i+4]-b[i+1], dz=b[i+5]-b[i+2];
+        if(dx<0 || dy<0 || dz<0){
+            return 0f;
+        }
+        return dx*dy+dy*dz+dz*dx;
+    }
+
+    /*
+    Returns the nearest face hit by the ray from origin along direction, or null
+    */
+    public Hit intersect(Point3D origin, Point3D direction){
+        return intersect(origin.x, origin.y, origin.z, direction.x, direction.y, direction.z, 0f, Float.MAX_VALUE);
+    }
+
+    /*
+    Returns the nearest face hit by the ray for tMin < t < tMax, or null
+    */
+    public Hit intersect(float ox, float oy, float oz, float dx, float dy, float dz, float tMin, float tMax){
+        float[] hit=new float[]{tMax, 0f, 0f};
+        int face=traverse(ox, oy, oz, dx, dy, dz, tMin, hit, false, new int[depth+1]);
+        return face<0?null:new Hit(face, hit[0], hit[1], hit[2]);
+    }
+
+    /*
+    Batch queries. Rays are given as structure of arrays: origins and directions
+    hold x,y,z of ray i at 3*i. They are partitioned in blocks of RAYS_PER_TASK,
+    traversed in parallel, each block reusing its own scratch arrays.
+    */
+
+    /*
+    Nearest hit of every ray: faces[i] is the face index (-1 if missed) and
+    distances[i] the ray parameter t (Float.MAX_VALUE if missed)
+    */
+    public void intersect(float[] origins, float[] directions, int[] faces, float[] distances){
+        forEachRay(origins.length/3, (from, to)->{
+            float[] hit=new float[3];
+            int[] stack=new int[depth+1];
+            for(int r=from; r<to; r++){
+                hit[0]=Float.MAX_VALUE;
+                faces[r]=traverse(origins[3*r], origins[3*r+1], origins[3*r+2],
+                        directions[3*r], directions[3*r+1], directions[3*r+2], 0f, hit, false, stack);
+                distances[r]=hit[0];
+            }
+        });
+    }
+
+    /*
+    Nearest hit of every ray, or null where the ray misses the mesh
+    */
+    public Hit[] intersect(float[] origins, float[] directions){
+        Hit[] hits=new Hit[origins.length/3];
+        forEachRay(hits.length, (from, to)->{
+            float[] hit=new float[3];
+            int[] stack=new int[depth+1];
+            for(int r=from; r<to; r++){
+                hit[0]=Float.MAX_VALUE;
+                int face=traverse(origins[3*r], origins[3*r+1], origins[3*r+2],
+                        directions[3*r], directions[3*r+1], directions[3*r+2], 0f, hit, false, stack);
+                if(face>=0){
+                    hits[r]=new Hit(face, hit[0], hit[1], hit[2]);
+                }
+            }
+        });
+        return hits;
+    }
+
+    public Hit[] intersect(List<Ray> rays){
+        return intersect(origins(rays, 1f), directions(rays, 1f));
+    }
+
+    /*
+    For visibility tests: occluded[i] is true if ray i hits any face with
+    0 < t < tMax. With the direction set to target-origin and tMax slightly
+    below 1, it tells if the segment to the target is blocked. Traversal stops
+    at the first face found.
+    */
+    public boolean[] occluded(float[] origins, float[] directions, float tMax){
+        boolean[] occluded=new boolean[origins.length/3];
+        forEachRay(occluded.length, (from, to)->{
+            float[] hit=new float[3];
+            int[] stack=new int[depth+1];
+            for(int r=from; r<to; r++){
+                hit[0]=tMax;
+                occluded[r]=traverse(origins[3*r], origins[3*r+1], origins[3*r+2],
+                        directions[3*r], directions[3*r+1], directions[3*r+2], 0f, hit, true, stack)>=0;
+            }
+        });
+        return occluded;
+    }
+
+    public boolean[] occluded(List<Ray> rays, float tMax){
+        return occluded(origins(rays, 1f), directions(rays, 1f), tMax);
+    }
+
+    /*
+    Packs the origins or the directions of the rays as x,y,z floats, multiplied
+    by scale
+    */
+    public static float[] origins(List<Ray> rays, float scale){
+        float[] origins=new float[3*rays.size()];
+        for(int i=0; i<rays.size(); i++){
+            javafx.geometry.Point3D o=rays.get(i).getOrigin();
+            origins[3*i]=scale*(float)o.getX();
+            origins[3*i+1]=scale*(float)o.getY();
+            origins[3*i+2]=scale*(float)o.getZ();
+        }
+        return origins;
+    }
+
+    public static float[] directions(List<Ray> rays, float scale){
+        float[] directions=new float[3*rays.size()];
+        for(int i=0; i<rays.size(); i++){
+            javafx.geometry.Point3D d=rays.get(i).getDirection();
+            directions[3*i]=scale*(float)d.getX();
+            directions[3*i+1]=scale*(float)d.getY();
+            directions[3*i+2]=scale*(float)d.getZ();
+        }
+        return directions;
+    }
+
+    @FunctionalInterface
+    private interface RayBlock {
+        void run(int from, int to);
+    }
+
+    private static void forEachRay(int numRays, RayBlock block){
+        if(numRays<=RAYS_PER_TASK){
+            block.run(0, numRays);
+        } else {
+            ForkJoinPool.commonPool().invoke(new RayTask(block, 0, numRays));
+        }
+    }
+
+    private static class RayTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final RayBlock block;
+        private final int from, to;
+
+        RayTask(RayBlock block, int from, int to) {
+            this.block = block;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from<=RAYS_PER_TASK){
+                block.run(from, to);
+            } else {
+                int mid=(from+to)>>>1;
+                invokeAll(new RayTask(block, from, mid), new RayTask(block, mid, to));
+            }
+        }
+    }
+
+    /*
+    Nearest hit traversal, visiting the nearest child first. hit holds t (as the
+    upper bound on entry), u and v of the best hit. Returns its face index or -1.
+    With any, it returns the first face found
+    */
+    private int traverse(float ox, float oy, float oz, float dx, float dy, float dz,
+            float tMin, float[] hit, boolean any, int[] stack){
+        if(numNodes==0){
+            return -1;
+        }
+        float idx=1f/dx, idy=1f/dy, idz=1f/dz;
+        int top=0;
+        stack[top++]=0;
+        int best=-1;
+        while(top>0){
+            int node=stack[--top];
+            if(boxDistance(node, ox, oy, oz, idx, idy, idz, tMin, hit[0])==Float.MAX_VALUE){
+                continue;
+            }
+            int count=nodeCount[node];
+            if(count>0){
+                int first=nodeOffset[node];
+                int i=intersectLeaf(first, first+count, ox, oy, oz, dx, dy, dz, tMin, hit, any);
+                if(i>=0){
+                    best=faceIndex[i];
+                    if(any){
+                        return best;
+                    }
+                }
+            } else {
+                int left=node+1, right=nodeOffset[node];
+                float dl=boxDistance(left, ox, oy, oz, idx, idy, idz, tMin, hit[0]);
+                float dr=boxDistance(right, ox, oy, oz, idx, idy, idz, tMin, hit[0]);
+                if(dl<=dr){
+                    if(dr!=Float.MAX_VALUE){ stack[top++]=right; }
+                    if(dl!=Float.MAX_VALUE){ stack[top++]=left; }
+                } else {
+                    if(dl!=Float.MAX_VALUE){ stack[top++]=left; }
+                    if(dr!=Float.MAX_VALUE){ stack[top++]=right; }
+                }
+            }
+        }
+        return best;
+    }
+
+    /*
+    Möller-Trumbore over the triangles [first, last) in tree order. Returns the
+    index of the nearest one with tMin < t < hit[0], storing its t, u, v in hit,
+    or -1 if none
+    */
+    private int intersectLeaf(int first, int last, float ox, float oy, float oz,
+            float dx, float dy, float dz, float tMin, float[] hit, boolean any){
+        int best=-1;
+        for(int i=first; i<last; i++){
+            float px=dy*e2z[i]-dz*e2y[i], py=dz*e2x[i]-dx*e2z[i], pz=dx*e2y[i]-dy*e2x[i];
+            float det=e1x[i]*px+e1y[i]*py+e1z[i]*pz;
+            if(det>-EPS && det<EPS){
+                continue;
+            }
+            float invDet=1f/det;
+            float tx=ox-ax[i], ty=oy-ay[i], tz=oz-az[i];
+            float u=(tx*px+ty*py+tz*pz)*invDet;
+            if(u<0f || u>1f){
+                continue;
+            }
+            float qx=ty*e1z[i]-tz*e1y[i], qy=tz*e1x[i]-tx*e1z[i], qz=tx*e1y[i]-ty*e1x[i];
+            float v=(dx*qx+dy*qy+dz*qz)*invDet;
+            if(v<0f || u+v>1f){
+                continue;
+            }
+            float t=(e2x[i]*qx+e2y[i]*qy+e2z[i]*qz)*invDet;
+            if(t>tMin && t<hit[0]){
+                hit[0]=t;
+                hit[1]=u;
+                hit[2]=v;
+                best=i;
+                if(any){
+                    return best;
+                }
+            }
+        }
+        return best;
+    }
+
+    /*
+    Calls consumer with every face crossed by the line through origin along
+    direction, in both directions. Returns the number of faces found.
+    */
+    public int intersectAll(Point3D origin, Point3D direction, IntConsumer consumer){
+        if(numNodes==0){
+            return 0;
+        }
+        float ox=origin.x, oy=origin.y, oz=origin.z;
+        float dx=direction.x, dy=direction.y, dz=direction.z;
+        float idx=1f/dx, idy=1f/dy, idz=1f/dz;
+        int[] stack=new int[depth+1];
+        int top=0, found=0;
+        stack[top++]=0;
+        while(top>0){
+            int node=stack[--top];
+            if(boxDistance(node, ox, oy, oz, idx, idy, idz, -Float.MAX_VALUE, Float.MAX_VALUE)==Float.MAX_VALUE){
+                continue;
+            }
+            int count=nodeCount[node];
+            if(count>0){
+                int first=nodeOffset[node];
+                for(int i=first; i<first+count; i++){
+                    float px=dy*e2z[i]-dz*e2y[i], py=dz*e2x[i]-dx*e2z[i], pz=dx*e2y[i]-dy*e2x[i];
+                    float det=e1x[i]*px+e1y[i]*py+e1z[i]*pz;
+                    if(det>-EPS && det<EPS){
+                        continue;
+                    }
+                    float invDet=1f/det;
+                    float tx=ox-ax[i], ty=oy-ay[i], tz=oz-az[i];
+                    float u=(tx*px+ty*py+tz*pz)*invDet;
+                    if(u<0f || u>1f){
+                        continue;
+                    }
+                    float qx=ty*e1z[i]-tz*e1y[i], qy=tz*e1x[i]-tx*e1z[i], qz=tx*e1y[i]-ty*e1x[i];
+                    float v=(dx*qx+dy*qy+dz*qz)*invDet;
+                    if(v>=0f && u+v<=1f){
+                        consumer.accept(faceIndex[i]);
+                        found++;
+                    }
+                }
+            } else {
+                stack[top++]=nodeOffset[node];
+                stack[top++]=node+1;
+            }
+        }
+        return found;
+    }
+
+    /*
+    Slab test: returns the entry distance of the ray in the box of the node,
+    clamped to tMin, or Float.MAX_VALUE if the box is missed within (tMin, tMax).
+    A direction component of 0 has an infinite inverse, and (bound-o)*inf is NaN
+    when the origin is on a bounding plane: that axis only requires the origin
+    to be inside its slab
+    */
+    private float boxDistance(int node, float ox, float oy, float oz,
+            float idx, float idy, float idz, float tMin, float tMax){
+        int b=6*node;
+        float near=tMin, far=tMax;
+        if(Float.isInfinite(idx)){
+            if(ox<nodeBounds[b] || ox>nodeBounds[b+3]){
+                return Float.MAX_VALUE;
+            }
+        } else {
+            float t1=(nodeBounds[b]-ox)*idx, t2=(nodeBounds[b+3]-ox)*idx;
+            near=Math.max(near,Math.min(t1,t2));
+            far=Math.min(far,Math.max(t1,t2));
+        }
+        if(Float.isInfinite(idy)){
+            if(oy<nodeBounds[b+1] || oy>nodeBounds[b+4]){
+                return Float.MAX_VALUE;
+            }
+        } else {
+            float t1=(nodeBounds[b+1]-oy)*idy, t2=(nodeBounds[b+4]-oy)*idy;
+            near=Math.max(near,Math.min(t1,t2));
+            far=Math.min(far,Math.max(t1,t2));
+        }
+        if(Float.isInfinite(idz)){
+            if(oz<nodeBounds[b+2] || oz>nodeBounds[b+5]){
+                return Float.MAX_VALUE;
+            }
+        } else {
+            float t1=(nodeBounds[b+2]-oz)*idz, t2=(nodeBounds[b+5]-oz)*idz;
+            near=Math.max(near,Math.min(t1,t2));
+            far=Math.min(far,Math.max(t1,t2));
+        }
+        return near<=far?near:Float.MAX_VALUE;
+    }
+}
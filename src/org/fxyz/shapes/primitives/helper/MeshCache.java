@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fxyz.shapes.primitives.helper;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.fxyz.geometry.Point3D;
+
+/**
+ * Shared geometry of parametric primitives: meshes generated with the same 
+ * topology parameters (class, divisions, level...) reuse one MeshHelper instead
+ * of generating it again, so a scene with thousands of identical markers only
+ * pays for one generation.
+ * 
+ * Cached meshes are generated with unit size and no translation, and each 
+ * primitive applies its own scale and center with transform(). They are never 
+ * modified: points are copied by transform() and TexturedMesh.createMesh, while
+ * texture coordinates, faces and smoothing groups are shared.
+ * 
+ * The cache is bounded by the weight of its arrays in bytes, evicting the least
+ * recently used meshes first.
+ *
+ * @author jpereda
+ */
+public final class MeshCache {
+    
+    public static final long DEFAULT_MAX_WEIGHT = 64L<<20;
+    
+    // access order: the first entry is the least recently used
+    private static final Map<List<Object>, MeshHelper> ENTRIES = new LinkedHashMap<>(16, 0.75f, true);
+    private static long maxWeight = DEFAULT_MAX_WEIGHT;
+    private static long weight;
+    private static long hits, misses, evictions;
+    
+    private MeshCache(){}
+    
+    public static List<Object> key(Class<?> type, Object... parameters){
+        Object[] key = new Object[parameters.length+1];
+        key[0] = type;
+        System.arraycopy(parameters, 0, key, 1, parameters.length);
+        return Arrays.asList(key);
+    }
+    
+    /*
+    Returns the cached mesh for the key, or null if it has to be generated
+    */
+    public static synchronized MeshHelper get(List<Object> key){
+        MeshHelper mesh = ENTRIES.get(key);
+        if(mesh!=null){
+            hits++;
+        } else {
+            misses++;
+        }
+        return mesh;
+    }
+    
+    /*
+    Caches the mesh, unless it weighs more than the bound by itself
+    */
+    public static synchronized void put(List<Object> key, MeshHelper mesh){
+        long w = weigh(mesh);
+        if(w>maxWeight){
+            return;
+        }
+        MeshHelper old = ENTRIES.put(key, mesh);
+        if(old!=null){
+            weight -= weigh(old);
+        }
+        weight += w;
+        evict();
+    }
+    
+    /*
+    New mesh with the points of mesh scaled and then translated, sharing the 
+    rest of its arrays. Translation is done in double precision, like a 
+    javafx Translate transform.
+    */
+    public static MeshHelper transform(MeshHelper mesh, float scale, Point3D translate){
+        float[] points = mesh.getPoints();
+        float[] result = new float[points.length];
+        double tx = translate!=null?translate.x:0d;
+        double ty = translate!=null?translate.y:0d;
+        double tz = translate!=null?translate.z:0d;
+        for(int i=0; i<points.length; i+=3){
+            result[i] = (float)(points[i]*scale+tx);
+            result[i+1] = (float)(points[i+1]*scale+ty);
+            result[i+2] = (float)(points[i+2]*scale+tz);
+        }
+        return new MeshHelper(result, mesh.getTexCoords(), mesh.getFaces(), 
+                mesh.getFaceSmoothingGroups(), mesh.getF());
+    }
+    
+    public static synchronized void setMaxWeight(long value){
+        maxWeight = value;
+        evict();
+    }
+    
+    public static synchronized long getMaxWeight(){
+        return maxWeight;
+    }
+    
+    public static synchronized long getWeight(){
+        return weight;
+    }
+    
+    public static synchronized int size(){
+        return ENTRIES.size();
+    }
+    
+    public static synchronized long getHits(){
+        return hits;
+    }
+    
+    public static synchronized long getMisses(){
+        return misses;
+    }
+    
+    public static synchronized long getEvictions(){
+        return evictions;
+    }
+    
+    public static synchronized void clear(){
+        ENTRIES.clear();
+        weight = 0;
+    }
+    
+    public static synchronized void resetStatistics(){
+        hits = misses = evictions = 0;
+    }
+    
+    private static void evict(){
+        Iterator<MeshHelper> it = ENTRIES.values().iterator();
+        while(weight>maxWeight && it.hasNext()){
+            weight -= weigh(it.next());
+            it.remove();
+            evictions++;
+        }
+    }
+    
+    private static long weigh(MeshHelper mesh){
+        return 4L*(length(mesh.getPoints())+length(mesh.getTexCoords())+length(mesh.getFaces())+
+                length(mesh.getFaceSmoothingGroups())+length(mesh.getF()));
+    }
+    
+    private static int length(float[] a){
+        return a!=null?a.length:0;
+    }
+    
+    private static int length(int[] a){
+        return a!=null?a.length:0;
+    }
+}
@@ -0,0 +1,240 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.shapes.primitives.helper;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.IntStream;
+
+/**
+ * Splits every triangle of a mesh in four, adding one new vertex in the middle
+ * of each edge, shared by the faces at both sides of the edge.
+ * 
+ * Edges are keyed by a packed long (lower index, higher index) in an open 
+ * addressing map of primitive arrays, so no String or Integer is created per 
+ * edge. Faces are processed in parallel chunks, but the new vertices are 
+ * numbered in the order their edges are first found, face by face (edges 
+ * p0-p1, p1-p2, p2-p0), so the result is always the same, and the same as 
+ * a sequential subdivision.
+ * 
+ * Faces are given as (p0,p1,p2) triplets. Face i is replaced with faces 4i to 
+ * 4i+3: (p0,a,c), (p1,b,a), (p2,c,b), (a,b,c), where a, b and c are the 
+ * middle points of the edges p0-p1, p1-p2 and p2-p0.
+ * 
+ * @author jpereda
+ */
+public class MeshSubdivider {
+    
+    private static final int FACES_PER_TASK = 4096;
+    
+    private final int numVertices;
+    private final int numMidpoints;
+    private final int[] faces;
+    private final int[] edges;
+
+    private MeshSubdivider(int numVertices, int numMidpoints, int[] faces, int[] edges) {
+        this.numVertices = numVertices;
+        this.numMidpoints = numMidpoints;
+        this.faces = faces;
+        this.edges = edges;
+    }
+    
+    public static MeshSubdivider subdivide(int[] faces, int numFaces, int numVertices){
+        int slots=3*numFaces;
+        int tasks=(numFaces+FACES_PER_TASK-1)/FACES_PER_TASK;
+        EdgeMap map=new EdgeMap(slots);
+        
+        // 1. every edge keeps its first slot (3*face+edge)
+        IntStream.range(0, tasks).parallel().forEach(task->{
+            for(int s=3*FACES_PER_TASK*task, to=Math.min(slots, s+3*FACES_PER_TASK); s<to; s++){
+                map.putMin(edgeKey(faces, s), s);
+            }
+        });
+        
+        /*
+        2. mid keeps, for each slot, the first slot of its edge, or -1 if it is 
+        the first one. The first slots of each chunk are counted
+        */
+        int[] mid=new int[slots];
+        int[] counts=new int[tasks];
+        IntStream.range(0, tasks).parallel().forEach(task->{
+            int count=0;
+            for(int s=3*FACES_PER_TASK*task, to=Math.min(slots, s+3*FACES_PER_TASK); s<to; s++){
+                int first=map.get(edgeKey(faces, s));
+                if(first==s){
+                    mid[s]=-1;
+                    count++;
+                } else {
+                    mid[s]=first;
+                }
+            }
+            counts[task]=count;
+        });
+        int[] offsets=new int[tasks];
+        int numMidpoints=0;
+        for(int task=0; task<tasks; task++){
+            offsets[task]=numMidpoints;
+            numMidpoints+=counts[task];
+        }
+        
+        // 3. first slots get the index of the new vertex, encoded as -(index+1)
+        int[] edges=new int[2*numMidpoints];
+        IntStream.range(0, tasks).parallel().forEach(task->{
+            int m=offsets[task];
+            for(int s=3*FACES_PER_TASK*task, to=Math.min(slots, s+3*FACES_PER_TASK); s<to; s++){
+                if(mid[s]==-1){
+                    edges[2*m]=faces[s];
+                    edges[2*m+1]=faces[next(s)];
+                    mid[s]=-(numVertices+m+1);
+                    m++;
+                }
+            }
+        });
+        
+        // 4. new faces
+        int[] newFaces=new int[12*numFaces];
+        IntStream.range(0, tasks).parallel().forEach(task->{
+            for(int i=FACES_PER_TASK*task, to=Math.min(numFaces, i+FACES_PER_TASK); i<to; i++){
+                int p0=faces[3*i], p1=faces[3*i+1], p2=faces[3*i+2];
+                int a=midpoint(mid, 3*i), b=midpoint(mid, 3*i+1), c=midpoint(mid, 3*i+2);
+                int j=12*i;
+                newFaces[j]=p0;    newFaces[j+1]=a;   newFaces[j+2]=c;
+                newFaces[j+3]=p1;  newFaces[j+4]=b;   newFaces[j+5]=a;
+                newFaces[j+6]=p2;  newFaces[j+7]=c;   newFaces[j+8]=b;
+                newFaces[j+9]=a;   newFaces[j+10]=b;  newFaces[j+11]=c;
+            }
+        });
+        return new MeshSubdivider(numVertices, numMidpoints, newFaces, edges);
+    }
+    
+    // number of vertices, including the new ones
+    public int getNumVertices() { return numVertices+numMidpoints; }
+    
+    public int getNumMidpoints() { return numMidpoints; }
+    
+    public int getNumFaces() { return faces.length/3; }
+    
+    /*
+    Subdivided faces, as (p0,p1,p2) triplets
+    */
+    public int[] getFaces() { return faces; }
+    
+    /*
+    Ends of the edge split by each new vertex: vertex getNumVertices()-getNumMidpoints()+m
+    is the middle point of edges[2m] and edges[2m+1]
+    */
+    public int[] getEdges() { return edges; }
+    
+    /*
+    Returns a copy of values (stride floats per vertex: 3 for points, 2 for
+    texture coordinates...) with the new vertices added at the end, as the mean
+    of the values at both ends of their edges
+    */
+    public float[] interpolate(float[] values, int stride){
+        float[] result=Arrays.copyOf(values, stride*getNumVertices());
+        IntStream.range(0, (numMidpoints+FACES_PER_TASK-1)/FACES_PER_TASK).parallel().forEach(task->{
+            for(int m=FACES_PER_TASK*task, to=Math.min(numMidpoints, m+FACES_PER_TASK); m<to; m++){
+                int a=stride*edges[2*m], b=stride*edges[2*m+1], i=stride*(numVertices+m);
+                for(int k=0; k<stride; k++){
+                    result[i+k]=(values[a+k]+values[b+k])*0.5f;
+                }
+            }
+        });
+        return result;
+    }
+    
+    private static int next(int slot){
+        return slot%3==2?slot-2:slot+1;
+    }
+    
+    private static long edgeKey(int[] faces, int slot){
+        int v1=faces[slot], v2=faces[next(slot)];
+        return ((long)Math.min(v1,v2))<<32 | Math.max(v1,v2);
+    }
+    
+    private static int midpoint(int[] mid, int slot){
+        int m=mid[slot];
+        if(m>=0){
+            m=mid[m];
+        }
+        return -m-1;
+    }
+    
+    /*
+    Concurrent open addressing map from edge keys to the lowest slot added. 
+    Keys and slots are stored plus one, so 0 means empty
+    */
+    private static class EdgeMap {
+        
+        private final AtomicLongArray keys;
+        private final AtomicIntegerArray slots;
+        private final int mask;
+        private final int shift;
+
+        EdgeMap(int maxEdges) {
+            int bits=Math.max(4, 33-Integer.numberOfLeadingZeros(Math.max(1, maxEdges)));
+            keys=new AtomicLongArray(1<<bits);
+            slots=new AtomicIntegerArray(1<<bits);
+            mask=(1<<bits)-1;
+            shift=64-bits;
+        }
+        
+        private int hash(long key){
+            return (int)((key*0x9E3779B97F4A7C15L)>>>shift);
+        }
+        
+        void putMin(long key, int slot){
+            long k=key+1;
+            int i=hash(key);
+            while(true){
+                long current=keys.get(i);
+                if(current==0 && keys.compareAndSet(i, 0, k)){
+                    break;
+                }
+                if(keys.get(i)==k){
+                    break;
+                }
+                i=(i+1)&mask;
+            }
+            int value=slot+1;
+            while(true){
+                int current=slots.get(i);
+                if((current!=0 && current<=value) || slots.compareAndSet(i, current, value)){
+                    return;
+                }
+            }
+        }
+        
+        int get(long key){
+            long k=key+1;
+            int i=hash(key);
+            while(true){
+                long current=keys.get(i);
+                if(current==k){
+                    return slots.get(i)-1;
+                }
+                if(current==0){
+                    return -1;
+                }
+                i=(i+1)&mask;
+            }
+        }
+    }
+}
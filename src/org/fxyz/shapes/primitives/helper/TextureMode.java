@@ -19,7 +19,9 @@
 package org.fxyz.shapes.primitives.helper;
 
 import java.util.List;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
 import javafx.scene.paint.Color;
 import org.fxyz.geometry.Point3D;
 import org.fxyz.utils.Palette.ColorPalette;
@@ -42,6 +44,16 @@ public interface TextureMode {
     public void setTextureModeVertices1D(int colors, Function<Number, Number> function);
     public void setTextureModeVertices1D(ColorPalette palette, int colors, Function<Number, Number> function);
     public void setTextureModeVertices1D(int colors, Function<Number, Number> function, double min, double max);
+    /*
+    Primitive versions of the vertices modes, evaluated without boxing. They can't
+    be overloads of the former, as lambdas would be ambiguous
+    */
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens);
+    public void setTextureModeDoubleVertices3D(ColorPalette palette, int colors, ToDoubleFunction<Point3D> dens);
+    public void setTextureModeDoubleVertices3D(int colors, ToDoubleFunction<Point3D> dens, double min, double max);
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function);
+    public void setTextureModeDoubleVertices1D(ColorPalette palette, int colors, DoubleUnaryOperator function);
+    public void setTextureModeDoubleVertices1D(int colors, DoubleUnaryOperator function, double min, double max);
     public void setTextureModeFaces(int colors);
     public void setTextureModeFaces(ColorPalette palette, int colors);
     
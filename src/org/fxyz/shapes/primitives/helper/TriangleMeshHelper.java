@@ -18,23 +18,32 @@
  */
 package org.fxyz.shapes.primitives.helper;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.DoubleUnaryOperator;
 import java.util.function.Function;
-import java.util.stream.Collectors;
-import java.util.stream.IntStream;
+import java.util.function.IntToDoubleFunction;
+import java.util.function.ToDoubleFunction;
+import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
+import javafx.collections.ObservableFloatArray;
+import javafx.collections.ObservableIntegerArray;
 import javafx.scene.image.Image;
 import javafx.scene.paint.Color;
 import javafx.scene.paint.Material;
 import javafx.scene.paint.PhongMaterial;
 import org.fxyz.geometry.Face3;
+import org.fxyz.geometry.PackedFaces;
+import org.fxyz.geometry.PackedPoints;
 import org.fxyz.geometry.Point3D;
 import org.fxyz.utils.FloatCollector;
-import org.fxyz.utils.NormalMap;
 import org.fxyz.utils.Palette;
 import org.fxyz.utils.Palette.ColorPalette;
 import org.fxyz.utils.Patterns;
 import org.fxyz.utils.Patterns.CarbonPatterns;
+import org.fxyz.utils.TextureCache;
 
 /**
  *
@@ -80,7 +89,6 @@ public class TriangleMeshHelper {
     private SectionType sectionType=DEFAULT_SECTION_TYPE;
     
     public TriangleMeshHelper(){
-        material.setDiffuseColor(DEFAULT_DIFFUSE_COLOR);
     }
     
     public void setSectionType(SectionType sectionType){
@@ -109,13 +117,45 @@ public class TriangleMeshHelper {
     
     public TextureType getTextureType() { return textureType; }
     
+    /*
+    Releases the material, and the shared palette and pattern of this helper. 
+    They are acquired again if the helper is used after this
+    */
+    public void dispose(){
+        MaterialPool.release(material.get());
+        if(palette!=null){
+            TextureCache.releasePalette(palette);
+            palette=null;
+        }
+        if(patterns!=null){
+            TextureCache.releasePattern(patterns);
+            patterns=null;
+        }
+    }
+    
     /*
     Material
     */
-    private final PhongMaterial material = new PhongMaterial();
+    /*
+    Own copy of the material of its configuration, sharing its maps with all
+    the helpers with the same one (see MaterialPool): it's replaced when the
+    configuration changes, and released on dispose
+    */
+    private final ReadOnlyObjectWrapper<PhongMaterial> material = 
+            new ReadOnlyObjectWrapper<>(MaterialPool.acquire(DEFAULT_DIFFUSE_COLOR, null, (Image)null));
     
     public final PhongMaterial getMaterial() {
-        return material;
+        return material.get();
+    }
+    
+    public final ReadOnlyObjectProperty<PhongMaterial> materialProperty() {
+        return material.getReadOnlyProperty();
+    }
+    
+    private void setPooledMaterial(PhongMaterial pooled){
+        PhongMaterial old = material.get();
+        material.set(pooled);
+        MaterialPool.release(old);
     }
     /*
     Patterns
@@ -141,8 +181,15 @@ public class TriangleMeshHelper {
     public void createCarbonPattern(CarbonPatterns cp, int width, int height, boolean save){
         this.patternWidth=width;
         this.patternHeight=height;
-        patterns=new Patterns(width,height);
-        patterns.createPattern(cp, save);
+        // shared image, released when this helper changes to another one, or on dispose
+        Patterns old=patterns;
+        patterns=TextureCache.acquirePattern(cp, width, height);
+        if(old!=null){
+            TextureCache.releasePattern(old);
+        }
+        if(save){
+            new Patterns(width,height).createPattern(cp, true);
+        }
     }
     public Image getPatternImage() {
         return getPatternImage(DEFAULT_CARBON_PATTERN);
@@ -156,11 +203,11 @@ public class TriangleMeshHelper {
     }
     public void setMaterialWithPattern(Material mat, CarbonPatterns cp){
         Image img = getPatternImage(cp);  
-        clearMaterialAndSetDiffMap(material, img);
+        clearMaterialAndSetDiffMap(img);
     }
     public void getMaterialWithPattern(CarbonPatterns cp){
         Image img = getPatternImage(cp);  
-        clearMaterialAndSetDiffMap(material, img);
+        clearMaterialAndSetDiffMap(img);
     }
     
     /*
@@ -189,8 +236,15 @@ public class TriangleMeshHelper {
     }
     public void createPalette(int colors, boolean save, ColorPalette palette_colors){
         this.colors=colors;
-        palette=new Palette(colors,palette_colors);
-        palette.createPalette(save);
+        // shared image, released when this helper changes to another one, or on dispose
+        Palette old=palette;
+        palette=TextureCache.acquirePalette(colors, palette_colors);
+        if(old!=null){
+            TextureCache.releasePalette(old);
+        }
+        if(save){
+            new Palette(colors,palette_colors).createPalette(true);
+        }
     }
 
     public Image getPaletteImage() {
@@ -202,90 +256,78 @@ public class TriangleMeshHelper {
     
     public void getMaterialWithPalette(){
         Image img = getPaletteImage();
-        clearMaterialAndSetDiffMap(material, img);  
+        clearMaterialAndSetDiffMap(img);  
     }
     
     public void getMaterialWithColor(Color color){
-        clearMaterialAndSetColor(material, color);
+        clearMaterialAndSetColor(color);
     }
     
     public Material getMaterialWithColor(Color color, String image){
-        PhongMaterial mat = new PhongMaterial(color);
         if(image!=null && !image.isEmpty()){
-            Image img = new Image(image);
-            mat.setDiffuseMap(img);
-            NormalMap normal = new NormalMap(img);
-//            normal.setIntensity(10);
-//            normal.setIntensityScale(2);
-            mat.setBumpMap(normal);
+            setPooledMaterial(MaterialPool.acquireBumped(color, image));
+        } else {
+            setPooledMaterial(MaterialPool.acquire(color, Color.WHITE, (Image)null));
         }
-        mat.setSpecularPower(32);
-        mat.setSpecularColor(Color.WHITE);
-        return mat;
+        return material.get();
     }
     
     public float[] getTexturePaletteArray(){
         if(palette==null){
             createPalette();
         }
-        return IntStream.range(0,colors).boxed()
-            .flatMapToDouble(palette::getTextureLocation)
-            .collect(()->new FloatCollector(2*colors), FloatCollector::add, FloatCollector::join)
-            .toArray();
+        return palette.getTextureLocations().clone();
     }
     
-    private void clearMaterialAndSetDiffMap(PhongMaterial mat, Image diff){
-        mat.setBumpMap(null);
-        mat.setSpecularMap(null);
-        mat.setSelfIlluminationMap(null);
-        
-        mat.setDiffuseColor(DEFAULT_DIFFUSE_COLOR);
-        mat.setSpecularColor(DEFAULT_SPECULAR_COLOR);
-        
-        mat.setDiffuseMap(diff);        
+    private void clearMaterialAndSetDiffMap(Image diff){
+        setPooledMaterial(MaterialPool.acquire(DEFAULT_DIFFUSE_COLOR, DEFAULT_SPECULAR_COLOR, diff));
     }
     
-    private void clearMaterialAndSetColor(PhongMaterial mat, Color col){
-        mat.setBumpMap(null);
-        mat.setSpecularMap(null);
-        mat.setSelfIlluminationMap(null);
-        mat.setDiffuseMap(null);
-        
-        mat.setDiffuseColor(col);
+    private void clearMaterialAndSetColor(Color col){
+        setPooledMaterial(MaterialPool.acquire(col, material.get().getSpecularColor(), (Image)null));
     }
     
     /*
     density functions
+    
+    The density and function maps are kept as primitive functions, so the faces
+    builders evaluate them without boxing. Boxed functions are wrapped, unless
+    they already are primitive ones (see densityOf and functionOf)
     */
     public final static Function<Point3D,Number> DEFAULT_DENSITY_FUNCTION= p->0d;
     private Function<Point3D,Number> density;
+    private ToDoubleFunction<Point3D> densityValue;
     private double min = 0d;
     private double max = 1d;
     
     public void setDensity(Function<Point3D,Number> density){
         this.density=density;
+        this.densityValue=density==null?null:
+                density instanceof DensityFunction?(DensityFunction)density:
+                p->density.apply(p).doubleValue();
     }
     
     public int mapDensity(Point3D p){
-        int f=(int)(((density.apply(p).doubleValue()-min)/(max-min))*colors);
-        if(f<0){
-            f=0;
-        }
-        if(f>=colors){
-            f=colors-1;
-        }
-        return f;
+        return mapValue(densityValue.applyAsDouble(p));
     }
 
     public final static Function<Number,Number> DEFAULT_UNIDIM_FUNCTION= x->0d;
     private Function<Number,Number> function;
+    private DoubleUnaryOperator functionValue;
     
     public void setFunction(Function<Number,Number> function){
         this.function=function;
+        this.functionValue=function==null?null:
+                function instanceof UnidimFunction?(UnidimFunction)function:
+                x->function.apply(x).doubleValue();
     }
     
     public int mapFunction(double x){
-        int f=(int)(((function.apply(x).doubleValue()-min)/(max-min))*colors);
+        return mapValue(functionValue.applyAsDouble(x));
+    }
+    
+    private int mapValue(double value){
+        int f=(int)(((value-min)/(max-min))*colors);
         if(f<0){
             f=0;
         }
@@ -295,6 +337,56 @@ public class TriangleMeshHelper {
         return f;
     }
     
+    /*
+    Wraps a primitive density, so it can be used as a density property, while the
+    helper still evaluates it without boxing
+    */
+    public static Function<Point3D,Number> densityOf(ToDoubleFunction<Point3D> density){
+        return density instanceof DensityFunction?(DensityFunction)density:new DensityFunction(density);
+    }
+    
+    public static Function<Number,Number> functionOf(DoubleUnaryOperator function){
+        return function instanceof UnidimFunction?(UnidimFunction)function:new UnidimFunction(function);
+    }
+    
+    private static class DensityFunction implements Function<Point3D,Number>, ToDoubleFunction<Point3D> {
+        
+        private final ToDoubleFunction<Point3D> density;
+
+        DensityFunction(ToDoubleFunction<Point3D> density) {
+            this.density = density;
+        }
+
+        @Override
+        public Number apply(Point3D p) {
+            return density.applyAsDouble(p);
+        }
+
+        @Override
+        public double applyAsDouble(Point3D p) {
+            return density.applyAsDouble(p);
+        }
+    }
+    
+    private static class UnidimFunction implements Function<Number,Number>, DoubleUnaryOperator {
+        
+        private final DoubleUnaryOperator function;
+
+        UnidimFunction(DoubleUnaryOperator function) {
+            this.function = function;
+        }
+
+        @Override
+        public Number apply(Number x) {
+            return function.applyAsDouble(x.doubleValue());
+        }
+
+        @Override
+        public double applyAsDouble(double x) {
+            return function.applyAsDouble(x);
+        }
+    }
+    
     public int mapFaces(int face, int numFaces){
         int f=(int)((((double)face)/((double)numFaces)) * colors);
         if(f<0){
@@ -315,31 +407,104 @@ public class TriangleMeshHelper {
     }
     
     public void updateExtremes(List<Point3D> points){
-        max=points.parallelStream().mapToDouble(p->density.apply(p).doubleValue()).max().orElse(1.0);
-        min=points.parallelStream().mapToDouble(p->density.apply(p).doubleValue()).min().orElse(0.0);
-        max=(float)Math.round(max*1e6)/1e6;
-        min=(float)Math.round(min*1e6)/1e6;
-        if(max==min){
-            max=1.0+min;
-        }
-//        System.out.println("Min: "+min+", max: "+max);  
+        evaluate(points.size(), i->densityValue.applyAsDouble(points.get(i)));
+        setRoundedExtremes(points.isEmpty()?0d:valuesMin, points.isEmpty()?1d:valuesMax);
     }
     
     public void updateExtremesByFunction(List<Point3D> points){
-        max=points.parallelStream().mapToDouble(p->function.apply((double) p.f).doubleValue()).max().orElse(1.0);
-        min=points.parallelStream().mapToDouble(p->function.apply((double) p.f).doubleValue()).min().orElse(0.0);
-        max=(float)Math.round(max*1e6)/1e6;
-        min=(float)Math.round(min*1e6)/1e6;
-        if(max==min){
-            max=1.0+min;
+        evaluate(points.size(), i->functionValue.applyAsDouble(points.get(i).f));
+        setRoundedExtremes(points.isEmpty()?0d:valuesMin, points.isEmpty()?1d:valuesMax);
+    }
+    
+    public void updateExtremes(PackedPoints points){
+        evaluate(points.size(), i->densityValue.applyAsDouble(points.get(i)));
+        setRoundedExtremes(points.isEmpty()?0d:valuesMin, points.isEmpty()?1d:valuesMax);
+    }
+    
+    public void updateExtremesByFunction(PackedPoints points){
+        evaluate(points.size(), i->functionValue.applyAsDouble(points.getF(i)));
+        setRoundedExtremes(points.isEmpty()?0d:valuesMin, points.isEmpty()?1d:valuesMax);
+    }
+    
+    private void setRoundedExtremes(double min, double max){
+        this.max=(float)Math.round(max*1e6)/1e6;
+        this.min=(float)Math.round(min*1e6)/1e6;
+        if(this.max==this.min){
+            this.max=1.0+this.min;
+        }
+    }
+    
+    /*
+    Values cache
+    
+    The density or function is evaluated once per vertex into values, finding
+    its extremes in the same parallel pass. The faces builders then read the 
+    texture index of every corner from this array, instead of evaluating the 
+    function again for every face sharing the vertex.
+    The array is recycled between updates while the number of vertices is the same
+    */
+    private static final int VALUES_PER_TASK = 2048;
+    private double[] values = new double[0];
+    private double valuesMin, valuesMax;
+    
+    private void evaluate(int numVertices, IntToDoubleFunction value){
+        if(values.length!=numVertices){
+            values=new double[numVertices];
+        }
+        ValueTask task=new ValueTask(values, value, 0, numVertices);
+        if(numVertices<=VALUES_PER_TASK){
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+        valuesMin=task.min;
+        valuesMax=task.max;
+    }
+    
+    private int mapCachedValue(int vertex){
+        return mapValue(values[vertex]);
+    }
+    
+    private static class ValueTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final double[] values;
+        private final IntToDoubleFunction value;
+        private final int from, to;
+        private double min=Double.POSITIVE_INFINITY, max=Double.NEGATIVE_INFINITY;
+
+        ValueTask(double[] values, IntToDoubleFunction value, int from, int to) {
+            this.values = values;
+            this.value = value;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from<=VALUES_PER_TASK){
+                for(int i=from; i<to; i++){
+                    double d=value.applyAsDouble(i);
+                    values[i]=d;
+                    max=Math.max(max,d);
+                    min=Math.min(min,d);
+                }
+            } else {
+                int mid=(from+to)>>>1;
+                ValueTask left=new ValueTask(values, value, from, mid);
+                ValueTask right=new ValueTask(values, value, mid, to);
+                invokeAll(left, right);
+                min=Math.min(left.min,right.min);
+                max=Math.max(left.max,right.max);
+            }
         }
-//        System.out.println("Min: "+min+", max: "+max);  
     }
     /*
     image
     */
     public void getMaterialWithImage(String image){
-        clearMaterialAndSetDiffMap(material, new Image(image));
+        setPooledMaterial(MaterialPool.acquire(DEFAULT_DIFFUSE_COLOR, DEFAULT_SPECULAR_COLOR, image));
     }
     
     /*
@@ -359,6 +524,14 @@ public class TriangleMeshHelper {
             .toArray(); 
     }
     
+    public float[] updateVertices(PackedPoints points){
+        return points.toPoints();
+    }
+    
+    public float[] updateVertices(PackedPoints points, float factor){
+        return points.toPoints(factor);
+    }
+    
     public float[] createTexCoords(int width, int height){
         reverseTexture=false;
         int index=0;
@@ -428,63 +601,281 @@ public class TriangleMeshHelper {
         return textureCoords;
     }
     
+    /*
+    Faces builders
+    
+    Every builder writes the TriangleMesh faces array (p0,t0,p1,t1,p2,t2) directly,
+    in parallel chunks of faces, without creating any Face3 or IntStream per face.
+    
+    The overloads with a buffer reuse it if it has the exact required length 
+    (6 x number of faces), so the same array can be recycled between frames. 
+    The array returned must be used, as it will be a new one if the buffer 
+    couldn't be reused.
+    */
     public int[] updateFacesWithoutTexture(List<Face3> faces){
-        return faces.parallelStream().map(Face3::getFace).flatMapToInt(i->i).toArray();
+        return writeFaces(faces.size(), null, (buffer, i)->{
+            Face3 f=faces.get(i);
+            setFace(buffer, i, f.p0, 0, f.p1, 0, f.p2, 0);
+        });
     }
     
     public int[] updateFacesWithVertices(List<Face3> faces){
-        return faces.parallelStream().map(f->f.getFace(f)).flatMapToInt(i->i).toArray();
+        return writeFaces(faces.size(), null, (buffer, i)->{
+            Face3 f=faces.get(i);
+            setFace(buffer, i, f.p0, f.p0, f.p1, f.p1, f.p2, f.p2);
+        });
     }
     
     public int[] updateFacesWithTextures(List<Face3> faces, List<Face3> textures){
         if(faces.size()>textures.size()){
             return null;
         }
-        AtomicInteger count=new AtomicInteger();
-        return faces.stream().map(f->f.getFace(textures.get(count.getAndIncrement()))).flatMapToInt(i->i).toArray();
+        return writeFaces(faces.size(), null, (buffer, i)->{
+            Face3 f=faces.get(i);
+            Face3 t=textures.get(i);
+            setFace(buffer, i, f.p0, t.p0, f.p1, t.p1, f.p2, t.p2);
+        });
     }
     
     public int[] updateFacesWithDensityMap(List<Point3D> points, List<Face3> faces){
         updateExtremes(points);
-        return faces.parallelStream().map(f->{
-                int t0=mapDensity(points.get(f.p0));
-                int t1=mapDensity(points.get(f.p1));
-                int t2=mapDensity(points.get(f.p2));
-                return f.getFace(t0, t1, t2);
-            }).flatMapToInt(i->i).toArray();
+        return mapFacesWithValues(faces);
     }
     
     public int[] updateFacesWithDensityMap(List<Point3D> points, List<Face3> faces, double min, double max){
+        evaluate(points.size(), i->densityValue.applyAsDouble(points.get(i)));
         updateExtremes(min, max);
-        return faces.parallelStream().map(f->{
-                int t0=mapDensity(points.get(f.p0));
-                int t1=mapDensity(points.get(f.p1));
-                int t2=mapDensity(points.get(f.p2));
-                return f.getFace(t0, t1, t2);
-            }).flatMapToInt(i->i).toArray();
-    }
-       
+        return mapFacesWithValues(faces);
+    }
+
     public int[] updateFacesWithFunctionMap(List<Point3D> points, List<Face3> faces){
         updateExtremesByFunction(points);
-        return faces.parallelStream().map(f->{
-                int t0=mapFunction(points.get(f.p0).f);
-                int t1=mapFunction(points.get(f.p1).f);
-                int t2=mapFunction(points.get(f.p2).f);
-                return f.getFace(t0, t1, t2);
-            }).flatMapToInt(i->i).toArray();
+        return mapFacesWithValues(faces);
     }
+    
     public int[] updateFacesWithFunctionMap(List<Point3D> points, List<Face3> faces, double min, double max){
+        evaluate(points.size(), i->functionValue.applyAsDouble(points.get(i).f));
         updateExtremes(min, max);
-        return faces.parallelStream().map(f->{
-                int t0=mapFunction(points.get(f.p0).f);
-                int t1=mapFunction(points.get(f.p1).f);
-                int t2=mapFunction(points.get(f.p2).f);
-                return f.getFace(t0, t1, t2);
-            }).flatMapToInt(i->i).toArray();
+        return mapFacesWithValues(faces);
+    }
+    
+    // texture indices from the values cache, filled by updateExtremes or evaluate
+    private int[] mapFacesWithValues(List<Face3> faces){
+        return writeFaces(faces.size(), null, (buffer, i)->{
+            Face3 f=faces.get(i);
+            setFace(buffer, i, f.p0, mapCachedValue(f.p0), 
+                               f.p1, mapCachedValue(f.p1), 
+                               f.p2, mapCachedValue(f.p2));
+        });
     }
+    
     public int[] updateFacesWithFaces(List<Face3> faces){
-        AtomicInteger count=new AtomicInteger();
-        return faces.stream().map(f->f.getFace(mapFaces(count.getAndIncrement(),faces.size()))).flatMapToInt(i->i).toArray();
+        int numFaces=faces.size();
+        return writeFaces(numFaces, null, (buffer, i)->{
+            Face3 f=faces.get(i);
+            int t=mapFaces(i,numFaces);
+            setFace(buffer, i, f.p0, t, f.p1, t, f.p2, t);
+        });
+    }
+    
+    /*
+    Packed storage
+    */
+    public int[] updateFacesWithoutTexture(PackedFaces faces){
+        return updateFacesWithoutTexture(faces, null);
+    }
+    
+    public int[] updateFacesWithoutTexture(PackedFaces faces, int[] buffer){
+        int[] f=faces.getData();
+        return writeFaces(faces.size(), buffer, (b, i)->
+            setFace(b, i, f[3*i], 0, f[3*i+1], 0, f[3*i+2], 0));
+    }
+    
+    public int[] updateFacesWithVertices(PackedFaces faces){
+        return updateFacesWithTextures(faces, faces, null);
+    }
+    
+    public int[] updateFacesWithVertices(PackedFaces faces, int[] buffer){
+        return updateFacesWithTextures(faces, faces, buffer);
+    }
+    
+    public int[] updateFacesWithTextures(PackedFaces faces, PackedFaces textures){
+        return updateFacesWithTextures(faces, textures, null);
+    }
+    
+    public int[] updateFacesWithTextures(PackedFaces faces, PackedFaces textures, int[] buffer){
+        if(faces.size()>textures.size()){
+            return null;
+        }
+        int[] f=faces.getData();
+        int[] t=textures.getData();
+        return writeFaces(faces.size(), buffer, (b, i)->
+            setFace(b, i, f[3*i], t[3*i], f[3*i+1], t[3*i+1], f[3*i+2], t[3*i+2]));
+    }
+    
+    public int[] updateFacesWithDensityMap(PackedPoints points, PackedFaces faces){
+        return updateFacesWithDensityMap(points, faces, (int[])null);
+    }
+    
+    public int[] updateFacesWithDensityMap(PackedPoints points, PackedFaces faces, int[] buffer){
+        updateExtremes(points);
+        return mapFacesWithValues(faces, buffer);
+    }
+    
+    public int[] updateFacesWithDensityMap(PackedPoints points, PackedFaces faces, double min, double max){
+        return updateFacesWithDensityMap(points, faces, min, max, null);
+    }
+    
+    public int[] updateFacesWithDensityMap(PackedPoints points, PackedFaces faces, double min, double max, int[] buffer){
+        evaluate(points.size(), i->densityValue.applyAsDouble(points.get(i)));
+        updateExtremes(min, max);
+        return mapFacesWithValues(faces, buffer);
+    }
+    
+    public int[] updateFacesWithFunctionMap(PackedPoints points, PackedFaces faces){
+        return updateFacesWithFunctionMap(points, faces, (int[])null);
+    }
+    
+    public int[] updateFacesWithFunctionMap(PackedPoints points, PackedFaces faces, int[] buffer){
+        updateExtremesByFunction(points);
+        return mapFacesWithValues(faces, buffer);
+    }
+    
+    public int[] updateFacesWithFunctionMap(PackedPoints points, PackedFaces faces, double min, double max){
+        return updateFacesWithFunctionMap(points, faces, min, max, null);
+    }
+    
+    public int[] updateFacesWithFunctionMap(PackedPoints points, PackedFaces faces, double min, double max, int[] buffer){
+        evaluate(points.size(), i->functionValue.applyAsDouble(points.getF(i)));
+        updateExtremes(min, max);
+        return mapFacesWithValues(faces, buffer);
+    }
+    
+    private int[] mapFacesWithValues(PackedFaces faces, int[] buffer){
+        int[] f=faces.getData();
+        return writeFaces(faces.size(), buffer, (b, i)->
+            setFace(b, i, f[3*i],   mapCachedValue(f[3*i]), 
+                          f[3*i+1], mapCachedValue(f[3*i+1]), 
+                          f[3*i+2], mapCachedValue(f[3*i+2])));
+    }
+    
+    public int[] updateFacesWithFaces(PackedFaces faces){
+        return updateFacesWithFaces(faces, null);
+    }
+    
+    public int[] updateFacesWithFaces(PackedFaces faces, int[] buffer){
+        int[] f=faces.getData();
+        int numFaces=faces.size();
+        return writeFaces(numFaces, buffer, (b, i)->{
+            int t=mapFaces(i,numFaces);
+            setFace(b, i, f[3*i], t, f[3*i+1], t, f[3*i+2], t);
+        });
+    }
+    
+    /*
+    Dirty range updates
+    
+    Only the slice of the observable array that differs from the new values is 
+    written, with one single set(int, array, int, int) call, so only that range
+    has to be synchronized with the render thread. If the size changes, the 
+    whole array is replaced. Returns true if the array was modified.
+    */
+    public static boolean updateRange(ObservableFloatArray array, float[] values){
+        if(array.size()!=values.length){
+            array.setAll(values);
+            return true;
+        }
+        int from=0, to=values.length;
+        while(from<to && Float.floatToIntBits(array.get(from))==Float.floatToIntBits(values[from])){
+            from++;
+        }
+        while(to>from && Float.floatToIntBits(array.get(to-1))==Float.floatToIntBits(values[to-1])){
+            to--;
+        }
+        if(from==to){
+            return false;
+        }
+        array.set(from, values, from, to-from);
+        return true;
+    }
+    
+    public static boolean updateRange(ObservableIntegerArray array, int[] values){
+        if(array.size()!=values.length){
+            array.setAll(values);
+            return true;
+        }
+        int from=0, to=values.length;
+        while(from<to && array.get(from)==values[from]){
+            from++;
+        }
+        while(to>from && array.get(to-1)==values[to-1]){
+            to--;
+        }
+        if(from==to){
+            return false;
+        }
+        array.set(from, values, from, to-from);
+        return true;
+    }
+    
+    /*
+    Parallel writing of faces arrays
+    */
+    private static final int FACES_PER_TASK = 8192;
+    
+    @FunctionalInterface
+    private interface FaceWriter {
+        void write(int[] buffer, int face);
+    }
+    
+    private static void setFace(int[] buffer, int face, int p0, int t0, int p1, int t1, int p2, int t2){
+        int i=6*face;
+        buffer[i]=p0;
+        buffer[i+1]=t0;
+        buffer[i+2]=p1;
+        buffer[i+3]=t1;
+        buffer[i+4]=p2;
+        buffer[i+5]=t2;
+    }
+    
+    private static int[] writeFaces(int numFaces, int[] buffer, FaceWriter writer){
+        int[] newFaces = (buffer!=null && buffer.length==6*numFaces) ? buffer : new int[6*numFaces];
+        if(numFaces<=FACES_PER_TASK){
+            for(int i=0; i<numFaces; i++){
+                writer.write(newFaces, i);
+            }
+        } else {
+            ForkJoinPool.commonPool().invoke(new FaceTask(newFaces, writer, 0, numFaces));
+        }
+        return newFaces;
+    }
+    
+    private static class FaceTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final int[] buffer;
+        private final FaceWriter writer;
+        private final int from, to;
+
+        FaceTask(int[] buffer, FaceWriter writer, int from, int to) {
+            this.buffer = buffer;
+            this.writer = writer;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if(to-from<=FACES_PER_TASK){
+                for(int i=from; i<to; i++){
+                    writer.write(buffer, i);
+                }
+            } else {
+                int mid=(from+to)>>>1;
+                invokeAll(new FaceTask(buffer, writer, from, mid), new FaceTask(buffer, writer, mid, to));
+            }
+        }
     }
     
     /*
@@ -499,74 +890,55 @@ public class TriangleMeshHelper {
             }).reduce(Double::sum).getAsDouble();
     }
     
-    private final float EPS = 0.000001f;
     /*
-    Based on Fast, Minimum Storage Ray/Triangle Intersection
-    Tomas Möller & Ben Trumbore
-    http://www.graphics.cornell.edu/pubs/1997/MT97.pdf
-
-    * origin and direction of a ray, in local coordinates of the shape, 
-      to avoid transformation all the triangles to scene coordinates
-      
-    * This sets the texture of every face: 0 without intersection, 1 intersected
+    Sets the texture of every face: 0 without intersection, 6 intersected by the 
+    line through origin along direction, in local coordinates of the shape.
+    
+    They build a MeshBVH on each call: TexturedMesh.getIntersections keeps it
+    while the mesh doesn't change, and only writes the faces that change
     */
+    @Deprecated
     public int[] updateFacesWithIntersections(Point3D origin, Point3D direction,List<Point3D> points, List<Face3> faces){
-        return faces.parallelStream().map(f->{
-                Point3D a = points.get(f.p0);
-                Point3D b = points.get(f.p1);
-                Point3D c = points.get(f.p2);
-                
-                Point3D edge1 = b.substract(a);
-                Point3D edge2 = c.substract(a);
-                Point3D pvec=direction.crossProduct(edge2);
-                float det=edge1.dotProduct(pvec);
-                
-                int t0=0;
-                if(det<=-EPS || det>=EPS){
-                    float inv_det=1f/det;
-                    Point3D tvec=origin.substract(a);
-                    float u = tvec.dotProduct(pvec)*inv_det;
-                    if(u>=0f && u<=1f){
-                        Point3D qvec=tvec.crossProduct(edge1);
-                        float v = direction.dotProduct(qvec)*inv_det;
-                        if(v>=0 && u+v<=1f){
-//                            float t = c.dotProduct(qvec)*inv_det;
-                            t0=6;
-//                            System.out.println("t: "+t+", u: "+u+", v: "+v+" (a: "+a+", b: "+b+", c: "+c+")");
-                        }
-                    }
-                }
-                return f.getFace(t0);
-            }).flatMapToInt(i->i).toArray();
+        return updateFacesWithIntersections(origin, direction, packPoints(points), packFaces(faces), null);
+    }
+    
+    @Deprecated
+    public int[] updateFacesWithIntersections(Point3D origin, Point3D direction, PackedPoints points, PackedFaces faces){
+        return updateFacesWithIntersections(origin, direction, points, faces, null);
+    }
+    
+    @Deprecated
+    public int[] updateFacesWithIntersections(Point3D origin, Point3D direction, PackedPoints points, PackedFaces faces, int[] buffer){
+        int[] b=updateFacesWithoutTexture(faces, buffer);
+        MeshBVH.build(points, faces).intersectAll(origin, direction, i->b[6*i+1]=b[6*i+3]=b[6*i+5]=6);
+        return b;
     }
     
     /*
     Return a list of interesected faces (with their 3 vertices)
     */
+    @Deprecated
     public List<Face3> getListIntersections(Point3D origin, Point3D direction,List<Point3D> points, List<Face3> faces){
-        return faces.parallelStream().filter(f->{
-            Point3D a = points.get(f.p0);
-            Point3D b = points.get(f.p1);
-            Point3D c = points.get(f.p2);
-
-            Point3D edge1 = b.substract(a);
-            Point3D edge2 = c.substract(a);
-            Point3D pvec=direction.crossProduct(edge2);
-            float det=edge1.dotProduct(pvec);
-
-            if(det<=-EPS || det>=EPS){
-                float inv_det=1f/det;
-                Point3D tvec=origin.substract(a);
-                float u = tvec.dotProduct(pvec)*inv_det;
-                if(u>=0f && u<=1f){
-                    Point3D qvec=tvec.crossProduct(edge1);
-                    float v = direction.dotProduct(qvec)*inv_det;
-                    if(v>=0 && u+v<=1f){
-                        return true;
-                    }
-                }
+        boolean[] intersected=new boolean[faces.size()];
+        MeshBVH.build(packPoints(points), packFaces(faces)).intersectAll(origin, direction, i->intersected[i]=true);
+        List<Face3> list=new ArrayList<>();
+        for(int i=0; i<intersected.length; i++){
+            if(intersected[i]){
+                list.add(faces.get(i));
             }
-            return false;
-        }).collect(Collectors.toList());
+        }
+        return list;
+    }
+    
+    private static PackedPoints packPoints(List<Point3D> points){
+        PackedPoints packed=new PackedPoints(points.size());
+        points.forEach(packed::add);
+        return packed;
+    }
+    
+    private static PackedFaces packFaces(List<Face3> faces){
+        PackedFaces packed=new PackedFaces(faces.size());
+        faces.forEach(packed::add);
+        return packed;
     }
 }
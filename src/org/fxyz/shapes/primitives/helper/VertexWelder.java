@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fxyz.shapes.primitives.helper;
+
+import java.util.Arrays;
+
+/**
+ * Index of unique vertices, merging those closer than epsilon on every axis.
+ *
+ * Vertices are hashed by the cell of a grid of size 2*epsilon they fall in. A
+ * vertex within epsilon of another one can only be in the same cell or in the
+ * neighbour cell towards the nearest face, so add() checks 8 cells at most,
+ * and welding n vertices is O(n). With epsilon 0 only identical vertices are
+ * merged.
+ *
+ * Indices are given in order of first appearance.
+ *
+ * @author jpereda
+ */
+public class VertexWelder {
+
+    public static final double DEFAULT_EPSILON = 1e-6;
+
+    private final double epsilon;
+    private final double scale;
+
+    private double[] coords;
+    private int size;
+
+    // heads of the chains of vertices per bucket, and next vertex in the chain
+    private int[] buckets;
+    private int[] next;
+
+    public VertexWelder() {
+        this(DEFAULT_EPSILON, 64);
+    }
+
+    public VertexWelder(double epsilon, int expectedVertices) {
+        this.epsilon = Math.max(0d, epsilon);
+        this.scale = this.epsilon>0d?1d/(2d*this.epsilon):0d;
+        int capacity=Math.max(expectedVertices, 16);
+        coords = new double[3*capacity];
+        next = new int[capacity];
+        buckets = new int[Integer.highestOneBit(2*capacity-1)<<1];
+        Arrays.fill(buckets, -1);
+    }
+
+    public int size() { return size; }
+
+    public double getEpsilon() { return epsilon; }
+
+    public double getX(int index) { return coords[3*index]; }
+    public double getY(int index) { return coords[3*index+1]; }
+    public double getZ(int index) { return coords[3*index+2]; }
+
+    /**
+     * Returns the index of a vertex within epsilon of (x, y, z), adding it if
+     * there is none
+     * @param x
+     * @param y
+     * @param z
+     * @return index of the vertex
+     */
+    public int add(double x, double y, double z){
+        int found=find(x, y, z);
+        if(found>=0){
+            return found;
+        }
+        if(size==next.length){
+            grow();
+        }
+        int i=size++;
+        coords[3*i]=x;
+        coords[3*i+1]=y;
+        coords[3*i+2]=z;
+        link(i);
+        return i;
+    }
+
+    /**
+     * @param x
+     * @param y
+     * @param z
+     * @return index of a vertex within epsilon of (x, y, z), or -1
+     */
+    public int find(double x, double y, double z){
+        if(epsilon==0d){
+            return findIn(bucket(cellKey(x), cellKey(y), cellKey(z)), x, y, z);
+        }
+        double fx=x*scale, fy=y*scale, fz=z*scale;
+        long cx=(long)Math.floor(fx), cy=(long)Math.floor(fy), cz=(long)Math.floor(fz);
+        // neighbour cell on each axis, towards the nearest face
+        long nx=fx-cx<0.5?cx-1:cx+1, ny=fy-cy<0.5?cy-1:cy+1, nz=fz-cz<0.5?cz-1:cz+1;
+        for(int k=0; k<8; k++){
+            int found=findIn(bucket((k&1)==0?cx:nx, (k&2)==0?cy:ny, (k&4)==0?cz:nz), x, y, z);
+            if(found>=0){
+                return found;
+            }
+        }
+        return -1;
+    }
+
+    /*
+    Returns x,y,z of the vertices as floats, as required by TriangleMesh
+    */
+    public float[] getPoints(){
+        float[] points=new float[3*size];
+        for(int i=0; i<3*size; i++){
+            points[i]=(float)coords[i];
+        }
+        return points;
+    }
+
+    private int findIn(int bucket, double x, double y, double z){
+        for(int i=buckets[bucket]; i>=0; i=next[i]){
+            if(Math.abs(coords[3*i]-x)<=epsilon && Math.abs(coords[3*i+1]-y)<=epsilon
+                    && Math.abs(coords[3*i+2]-z)<=epsilon){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void link(int i){
+        double x=coords[3*i], y=coords[3*i+1], z=coords[3*i+2];
+        int b=epsilon==0d?bucket(cellKey(x), cellKey(y), cellKey(z))
+                :bucket((long)Math.floor(x*scale), (long)Math.floor(y*scale), (long)Math.floor(z*scale));
+        next[i]=buckets[b];
+        buckets[b]=i;
+    }
+
+    private void grow(){
+        int capacity=2*next.length;
+        coords=Arrays.copyOf(coords, 3*capacity);
+        next=Arrays.copyOf(next, capacity);
+        buckets=new int[2*buckets.length];
+        Arrays.fill(buckets, -1);
+        for(int i=0; i<size; i++){
+            link(i);
+        }
+    }
+
+    /*
+    with epsilon 0 the cell is the exact value (-0 and 0 are the same vertex)
+    */
+    private static long cellKey(double v){
+        return v==0d?0L:Double.doubleToLongBits(v);
+    }
+
+    private int bucket(long cx, long cy, long cz){
+        long h=cx*0x9E3779B97F4A7C15L+cy*0xC2B2AE3D27D4EB4FL+cz*0x165667B19E3779F9L;
+        h^=h>>>29;
+        return (int)h&(buckets.length-1);
+    }
+}
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.util.Random;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.scene.Group;
+import javafx.scene.Node;
+import javafx.scene.text.Text;
+import javafx.stage.Stage;
+import org.fxyz.extras.BillboardBehavior;
+import org.fxyz.extras.BillboardManager;
+
+/**
+ * Time per frame of the update of thousands of billboarded labels, with the
+ * camera moving and still.
+ *
+ * Run it as a JavaFX application, it exits when it's done
+ *
+ * @author jpereda
+ */
+public class BillboardBenchmark extends Application {
+
+    private static final int LABELS = 10000;
+    private static final int FRAMES = 300;
+    
+    private static class Label extends Text implements BillboardBehavior<Label> {
+        
+        private final Node camera;
+
+        Label(String text, Node camera) {
+            super(text);
+            this.camera = camera;
+        }
+        
+        @Override
+        public Label getBillboardNode() {
+            return this;
+        }
+
+        @Override
+        public Node getOther() {
+            return camera;
+        }
+    }
+    
+    @Override
+    public void start(Stage stage) {
+        Group camera = new Group();
+        camera.setTranslateZ(-1000);
+        Group root = new Group(camera);
+        Random r = new Random(1);
+        for (int i = 0; i < LABELS; i++) {
+            Label label = new Label("p"+i, camera);
+            label.setTranslateX(r.nextDouble() * 1000);
+            label.setTranslateY(r.nextDouble() * 1000);
+            label.setTranslateZ(r.nextDouble() * 1000);
+            root.getChildren().add(label);
+            label.startBillboardBehavior();
+        }
+        BillboardManager manager = BillboardManager.getInstance();
+        
+        long t = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            camera.setTranslateX(i);
+            manager.update();
+        }
+        System.out.println(String.format("Moving camera: %8.3f ms/frame, %d of %d labels updated", 
+                (System.nanoTime() - t) / 1e6 / FRAMES, manager.getUpdatedCount(), manager.size()));
+        t = System.nanoTime();
+        for (int i = 0; i < FRAMES; i++) {
+            manager.update();
+        }
+        System.out.println(String.format("Still camera:  %8.3f ms/frame, %d of %d labels updated", 
+                (System.nanoTime() - t) / 1e6 / FRAMES, manager.getUpdatedCount(), manager.size()));
+        
+        root.getChildren().forEach(n -> {
+            if (n instanceof Label) {
+                ((Label) n).stopBillboardBehavior();
+            }
+        });
+        Platform.exit();
+    }
+
+    public static void main(String[] args) {
+        launch(args);
+    }
+}
@@ -18,16 +18,12 @@
  */
 package org.fxyz.tests;
 
-import java.io.IOException;
 import java.net.URISyntaxException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.stream.Stream;
-import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.scene.AmbientLight;
 import javafx.scene.Group;
@@ -42,7 +38,11 @@ import javafx.stage.Stage;
 import org.fxyz.cameras.CameraTransformer;
 import org.fxyz.geometry.Point3D;
 import org.fxyz.shapes.primitives.ScatterMesh;
+import org.fxyz.utils.FrameFile;
+import org.fxyz.utils.FramePlayer;
 import org.fxyz.utils.Palette;
+import org.fxyz.utils.PointCloudLoader;
+import org.fxyz.utils.PointCloudLoader.PointCloud;
 
 /**
  *
@@ -61,7 +61,6 @@ public class CSVScatter3DTest extends Application {
     private double mouseDeltaX;
     private double mouseDeltaY;
 //    private Function<Point3D, Number> dens = p->p.magnitude();
-    private long lastEffect;
     
     @Override
     public void start(Stage primaryStage) throws Exception {
@@ -104,8 +103,7 @@ public class CSVScatter3DTest extends Application {
         // read from csv file
         Path out = getCSVFile(0);
         if(out!=null){
-            Files.lines(out).map(s->s.split(";")).forEach(s->data.add(new Point3D(Float.parseFloat(s[0]),
-                    Float.parseFloat(s[1]),Float.parseFloat(s[2]),Float.parseFloat(s[3]))));
+            data.addAll(PointCloudLoader.load(out).asList());
         }
         
         ScatterMesh scatter = new ScatterMesh(data, true, 1, 0);
@@ -172,66 +170,33 @@ public class CSVScatter3DTest extends Application {
         primaryStage.show();      
         
         final boolean constantVertices = true;
-        lastEffect = System.nanoTime();
-        AtomicInteger count=new AtomicInteger(0);
         
-        List<List<Number>> fullData=new ArrayList<>();
-        
-        if(constantVertices) {
-            // if possible we can cache all the data
-            Stream.of(0,1,2,3,4,3,2,1).forEach(i->{
+        /*
+        Write all the frames to a binary frame file, and play it: only a few 
+        frames are kept in memory at any time
+        */
+        Path frames = Files.createTempFile("fxyz", ".frames");
+        frames.toFile().deleteOnExit();
+        try(FrameFile.Writer writer = FrameFile.create(frames, data.size(), !constantVertices)){
+            for(int i : new int[]{0,1,2,3,4,3,2,1}){
                 Path out2 = getCSVFile(i);
                 if(out2 != null) {
-                    try {
-                        List<Number> data2= new ArrayList<>();
-                        Files.lines(out2).map(s->s.split(";"))
-                            .forEach(s->{
-                                float f = Float.parseFloat(s[3]);
-                                // 4 vertices tetrahedra
-                                data2.add(f);
-                                data2.add(f);
-                                data2.add(f);
-                                data2.add(f);
-                            });
-                        fullData.add(data2);
-                    } catch (IOException ex) {}
+                    PointCloud cloud = PointCloudLoader.load(out2);
+                    writer.writeFrame(cloud.getPoints(), cloud.getF());
                 }
-            });
+            }
         }
         
-        AnimationTimer timerEffect = new AnimationTimer() {
-
-            @Override
-            public void handle(long now) {
-                if (now > lastEffect + 50_000_000l) {
-                    try {
-//                        long t=System.currentTimeMillis();
-                        if(constantVertices && fullData != null){
-                            // Vertices coordinates are always the same: mesh is tha same, we only
-                            // need to update F on each element
-                            scatter.setFunctionData(fullData.get(count.get()%8));
-//                            System.out.println("t "+(System.currentTimeMillis()-t));
-                        } else {
-                            // vertices coordinates may change in time, we need to create them all over again reading the files:
-                            Path out2 = getCSVFile((int)(Stream.of(0,1,2,3,4,3,2,1).toArray()[count.get()%8]));
-                            if(out2 != null) {
-                                List<Point3D> data2= new ArrayList<>();
-                                Files.lines(out2).map(s->s.split(";")).forEach(s->data2.add(new Point3D(Float.parseFloat(s[0]),
-                                        Float.parseFloat(s[1]),Float.parseFloat(s[2]),Float.parseFloat(s[3]))));
-                                scatter.setScatterData(data2);
-                                scatter.setTextureModeVertices1D(1530,p->p);
-                            }
-//                            System.out.println("t "+(System.currentTimeMillis()-t));
-                        }
-                    } catch (IOException ex) {
-                    }
-                    
-                    count.getAndIncrement();
-                    lastEffect = now;
-                }
+        FramePlayer player = new FramePlayer(FrameFile.open(frames), frame->{
+            if(frame.getPoints()!=null){
+                // vertices coordinates may change in time
+                scatter.setPositions(frame.getPoints());
             }
-        };
-        timerEffect.start();
+            // Vertices coordinates are always the same: mesh is tha same, we only
+            // need to update F on each element
+            scatter.setF(frame.getF());
+        });
+        player.play();
         
     }
     /**
@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import org.fxyz.shapes.complex.cloth.ClothMesh;
+import org.fxyz.shapes.complex.cloth.ClothSolver;
+import org.fxyz.shapes.complex.cloth.ForceField;
+import org.fxyz.shapes.complex.cloth.ParticleSet;
+
+/**
+ * Step time of the cloth solver against the size of the grid, with the default
+ * force fields of ClothMesh plus gravity and drag.
+ *
+ * Run it as a plain java application
+ *
+ * @author jpereda
+ */
+public class ClothBenchmark {
+
+    private static final int WARMUP = 30;
+    private static final int STEPS = 100;
+    private static final double DT = 0.16;
+
+    public static void main(String[] args) {
+        System.out.println(String.format("%10s %10s %10s %8s %12s", "grid", "particles", "links", "colors", "ms/step"));
+        for(int n : new int[]{25, 50, 100, 150, 200, 300}){
+            ClothMesh cloth = new ClothMesh(n, n);
+            ClothSolver solver = cloth.getSolver();
+            solver.getForceFields().add(ForceField.gravity(ParticleSet.all(), 0f, 9.8f, 0f));
+            solver.getForceFields().add(ForceField.drag(ParticleSet.all(), 0.01f));
+            for(int i=0; i<WARMUP; i++){
+                solver.step(DT, cloth.getConstraintAccuracy());
+            }
+            long t=System.nanoTime();
+            for(int i=0; i<STEPS; i++){
+                solver.step(DT, cloth.getConstraintAccuracy());
+            }
+            double ms=(System.nanoTime()-t)/1e6/STEPS;
+            System.out.println(String.format("%10s %10d %10d %8d %12.3f", n+"x"+n,
+                    solver.getNumParticles(), solver.getNumLinks(), solver.getNumColors(), ms));
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fxyz.tests;
+
+import java.util.Random;
+import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.TetrahedraMesh;
+import org.fxyz.shapes.primitives.helper.MeshCache;
+
+/**
+ * Creation of 10.000 TetrahedraMesh markers with the same height and level at
+ * random centers, as ScatterMesh does, with an empty and a disabled cache.
+ *
+ * Run it as a plain java application
+ *
+ * @author jpereda
+ */
+public class MeshCacheBenchmark {
+
+    private static final int MARKERS = 10_000;
+    private static final int LEVEL = 2;
+
+    public static void main(String[] args) {
+        for(int r=0; r<3; r++){
+            run("cache    ", MeshCache.DEFAULT_MAX_WEIGHT);
+            run("no cache ", 0);
+        }
+        MeshCache.setMaxWeight(MeshCache.DEFAULT_MAX_WEIGHT);
+    }
+    
+    private static void run(String name, long maxWeight){
+        MeshCache.setMaxWeight(maxWeight);
+        MeshCache.clear();
+        MeshCache.resetStatistics();
+        Random random = new Random(1234);
+        long t=System.nanoTime();
+        for(int i=0; i<MARKERS; i++){
+            new TetrahedraMesh(0.1, LEVEL, new Point3D(random.nextFloat(), random.nextFloat(), random.nextFloat()));
+        }
+        System.out.println(String.format("%s: %8.2f ms, hits %d, misses %d, evictions %d, %d bytes", name, 
+                (System.nanoTime()-t)/1e6, MeshCache.getHits(), MeshCache.getMisses(), 
+                MeshCache.getEvictions(), MeshCache.getWeight()));
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import javafx.scene.shape.TriangleMesh;
+import org.fxyz.shapes.primitives.KnotMesh;
+import org.fxyz.utils.MeshWriter;
+
+/**
+ * Time and size of the export of a large mesh to OBJ, ASCII and binary STL and
+ * FXM. The writers stream the mesh arrays in chunks, so the heap needed beyond
+ * the mesh itself is a few MB: it runs with -Xmx1g, enough for the mesh alone.
+ *
+ * Run it as a plain java application
+ *
+ * @author jpereda
+ */
+public class MeshExportBenchmark {
+
+    private interface Export {
+        void write(Path path, TriangleMesh mesh) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // 4000 x 625 x 2 = 5 million triangles
+        TriangleMesh mesh = (TriangleMesh)new KnotMesh(2d, 1d, 0.4d, 2d, 3d, 4000, 625, 0, 0).getMesh();
+        System.out.println("KnotMesh: "+mesh.getPoints().size()/3+" vertices, "+mesh.getFaces().size()/6+" faces");
+        Path dir = Files.createTempDirectory("fxyz");
+        run("OBJ         ", dir.resolve("knot.obj"), mesh, (p, m)->MeshWriter.writeOBJ(p, m, null));
+        run("ASCII STL   ", dir.resolve("knot.stl"), mesh, MeshWriter::writeSTL);
+        run("binary STL  ", dir.resolve("knot.bstl"), mesh, MeshWriter::writeBinarySTL);
+        run("FXM         ", dir.resolve("knot.fxm"), mesh, MeshWriter::writeFXM);
+        Files.delete(dir);
+    }
+
+    private static void run(String name, Path path, TriangleMesh mesh, Export export) throws Exception {
+        export.write(path, mesh);
+        long t=System.nanoTime();
+        export.write(path, mesh);
+        System.out.println(String.format("  %s: %10.2f ms, %10.2f MB", name, (System.nanoTime()-t)/1e6, Files.size(path)/1e6));
+        Files.delete(path);
+    }
+}
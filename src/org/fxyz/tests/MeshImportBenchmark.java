@@ -0,0 +1,120 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import javafx.scene.shape.TriangleMesh;
+import org.fxyz.shapes.primitives.KnotMesh;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+import org.fxyz.utils.MeshReader;
+import org.fxyz.utils.MeshWriter;
+
+/**
+ * Time and throughput of the import of a large synthetic mesh from OBJ, ASCII 
+ * and binary STL, binary PLY and FXM files, written first with MeshWriter (and
+ * a minimal PLY writer here).
+ *
+ * Run it as a plain java application
+ *
+ * @author jpereda
+ */
+public class MeshImportBenchmark {
+
+    private interface Import {
+        MeshHelper read(Path path) throws Exception;
+    }
+
+    public static void main(String[] args) throws Exception {
+        // 2000 x 250 x 2 = 1 million triangles
+        TriangleMesh mesh = (TriangleMesh)new KnotMesh(2d, 1d, 0.4d, 2d, 3d, 2000, 250, 0, 0).getMesh();
+        System.out.println("KnotMesh: "+mesh.getPoints().size()/3+" vertices, "+mesh.getFaces().size()/6+" faces");
+        Path dir = Files.createTempDirectory("fxyz");
+        
+        Path obj=dir.resolve("knot.obj"), stl=dir.resolve("knot.stl"), bstl=dir.resolve("knot-binary.stl"), 
+                ply=dir.resolve("knot.ply"), fxm=dir.resolve("knot.fxm");
+        MeshWriter.writeOBJ(obj, mesh, null);
+        MeshWriter.writeSTL(stl, mesh);
+        MeshWriter.writeBinarySTL(bstl, mesh);
+        writePLY(ply, mesh);
+        MeshWriter.writeFXM(fxm, mesh);
+        
+        run("OBJ         ", obj, MeshReader::readOBJ);
+        run("ASCII STL   ", stl, MeshReader::readSTL);
+        run("binary STL  ", bstl, MeshReader::readSTL);
+        run("binary PLY  ", ply, MeshReader::readPLY);
+        run("FXM         ", fxm, MeshWriter::readFXM);
+        Files.delete(dir);
+    }
+
+    private static void run(String name, Path path, Import reader) throws Exception {
+        reader.read(path);
+        long t=System.nanoTime();
+        MeshHelper mh = reader.read(path);
+        double ms=(System.nanoTime()-t)/1e6;
+        System.out.println(String.format("  %s: %10.2f ms, %8.2f MB/s, %d vertices, %d faces", 
+                name, ms, Files.size(path)/1e3/ms, mh.getPoints().length/3, mh.getFaces().length/6));
+        Files.delete(path);
+    }
+    
+    /*
+    Binary little endian PLY, with x,y,z,value vertices and triangular faces
+    */
+    private static void writePLY(Path path, TriangleMesh mesh) throws IOException {
+        float[] points = mesh.getPoints().toArray(null);
+        int[] faces = mesh.getFaces().toArray(null);
+        int vertices=points.length/3, triangles=faces.length/6;
+        String header = "ply\nformat binary_little_endian 1.0\ncomment synthetic KnotMesh\n"
+                + "element vertex "+vertices+"\nproperty float x\nproperty float y\nproperty float z\n"
+                + "property float value\nelement face "+triangles+"\n"
+                + "property list uchar int vertex_indices\nend_header\n";
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+            ByteBuffer buffer = ByteBuffer.allocate(1<<16).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.put(header.getBytes(StandardCharsets.US_ASCII));
+            for(int i=0; i<vertices; i++){
+                if(buffer.remaining()<16){
+                    flush(channel, buffer);
+                }
+                buffer.putFloat(points[3*i]).putFloat(points[3*i+1]).putFloat(points[3*i+2]).putFloat(i%100);
+            }
+            for(int i=0; i<triangles; i++){
+                if(buffer.remaining()<13){
+                    flush(channel, buffer);
+                }
+                buffer.put((byte)3).putInt(faces[6*i]).putInt(faces[6*i+2]).putInt(faces[6*i+4]);
+            }
+            flush(channel, buffer);
+        }
+    }
+    
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
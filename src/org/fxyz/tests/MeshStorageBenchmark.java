@@ -0,0 +1,149 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+import javafx.scene.shape.TriangleMesh;
+import org.fxyz.geometry.Face3;
+import org.fxyz.geometry.PackedFaces;
+import org.fxyz.geometry.PackedPoints;
+import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.IcosahedronMesh;
+import org.fxyz.shapes.primitives.KnotMesh;
+import org.fxyz.shapes.primitives.SegmentedTorusMesh;
+import org.fxyz.shapes.primitives.SurfacePlotMesh;
+import org.fxyz.shapes.primitives.TexturedMesh;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+import org.fxyz.shapes.primitives.helper.TriangleMeshHelper;
+
+/**
+ * Compares the storage of TexturedMesh geometry as List of Point3D/Face3 with
+ * the packed primitive arrays: retained heap of the storage, and time to go
+ * from MeshHelper arrays to storage and back to TriangleMesh arrays.
+ *
+ * Run it as a plain java application, with a large heap (-Xmx4g)
+ *
+ * @author jpereda
+ */
+public class MeshStorageBenchmark {
+
+    private static final int WARMUP = 3;
+    private static final int ITERATIONS = 10;
+
+    private final TriangleMeshHelper helper = new TriangleMeshHelper();
+    private Object sink;
+
+    public static void main(String[] args) {
+        Map<String,TexturedMesh> meshes = new LinkedHashMap<>();
+        meshes.put("IcosahedronMesh(6)", new IcosahedronMesh(6, 10f));
+        meshes.put("SegmentedTorusMesh(400x400)", new SegmentedTorusMesh(400, 400, 0, 10d, 2d));
+        meshes.put("KnotMesh(4000x250)", new KnotMesh(2d, 1d, 0.4d, 2d, 3d, 4000, 250, 0, 0));
+        meshes.put("SurfacePlotMesh(1000x1000)", new SurfacePlotMesh(p->Math.sin(p.magnitude()), 10d, 10d, 1000, 1000, 1d));
+
+        MeshStorageBenchmark benchmark = new MeshStorageBenchmark();
+        meshes.forEach((name, mesh)->{
+            MeshHelper mh = new MeshHelper((TriangleMesh)mesh.getMesh());
+            System.out.println(name+": "+mh.getPoints().length/3+" vertices, "+mh.getFaces().length/6+" faces");
+            benchmark.run(mh);
+        });
+    }
+
+    private void run(MeshHelper mh){
+        System.out.println(String.format("  List  : %8.2f MB, %8.2f ms",
+                retained(()->new ListStorage(mh))/1e6, time(()->new ListStorage(mh).toMesh())));
+        System.out.println(String.format("  Packed: %8.2f MB, %8.2f ms",
+                retained(()->new PackedStorage(mh))/1e6, time(()->new PackedStorage(mh).toMesh())));
+    }
+
+    private double time(Runnable task){
+        for(int i=0; i<WARMUP; i++){
+            task.run();
+        }
+        long t=System.nanoTime();
+        for(int i=0; i<ITERATIONS; i++){
+            task.run();
+        }
+        return (System.nanoTime()-t)/1e6/ITERATIONS;
+    }
+
+    private long retained(Supplier<Object> storage){
+        long before=usedMemory();
+        sink=storage.get();
+        long after=usedMemory();
+        sink=null;
+        return after-before;
+    }
+
+    private static long usedMemory(){
+        Runtime rt = Runtime.getRuntime();
+        for(int i=0; i<3; i++){
+            System.gc();
+        }
+        return rt.totalMemory()-rt.freeMemory();
+    }
+
+    /*
+    Storage as TexturedMesh did it before: one object per vertex and per face
+    */
+    private class ListStorage {
+        private final List<Point3D> vertices;
+        private final List<Face3> faces;
+        private final List<Face3> textures;
+
+        ListStorage(MeshHelper mh){
+            float[] p=mh.getPoints();
+            float[] f=mh.getF();
+            int[] fc=mh.getFaces();
+            vertices=new ArrayList<>(p.length/3);
+            for(int i=0; i<p.length/3; i++){
+                vertices.add(new Point3D(p[3*i], p[3*i+1], p[3*i+2], f[i]));
+            }
+            faces=new ArrayList<>(fc.length/6);
+            textures=new ArrayList<>(fc.length/6);
+            for(int i=0; i<fc.length/6; i++){
+                faces.add(new Face3(fc[6*i], fc[6*i+2], fc[6*i+4]));
+                textures.add(new Face3(fc[6*i+1], fc[6*i+3], fc[6*i+5]));
+            }
+        }
+
+        int toMesh(){
+            return helper.updateVertices(vertices).length+helper.updateFacesWithTextures(faces, textures).length;
+        }
+    }
+
+    private class PackedStorage {
+        private final PackedPoints vertices=new PackedPoints();
+        private final PackedFaces faces=new PackedFaces();
+        private final PackedFaces textures=new PackedFaces();
+
+        PackedStorage(MeshHelper mh){
+            vertices.setAll(mh.getPoints(), mh.getF());
+            faces.setAll(mh.getFaces(), 0);
+            textures.setAll(mh.getFaces(), 1);
+        }
+
+        int toMesh(){
+            return helper.updateVertices(vertices).length+helper.updateFacesWithTextures(faces, textures).length;
+        }
+    }
+}
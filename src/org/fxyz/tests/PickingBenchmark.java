@@ -0,0 +1,183 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.util.Random;
+import javafx.scene.shape.TriangleMesh;
+import org.fxyz.geometry.PackedFaces;
+import org.fxyz.geometry.PackedPoints;
+import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.KnotMesh;
+import org.fxyz.shapes.primitives.SurfacePlotMesh;
+import org.fxyz.shapes.primitives.TexturedMesh;
+import org.fxyz.shapes.primitives.helper.MeshBVH;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+
+/**
+ * Compares ray picking on a large mesh with the linear scan over all the faces
+ * against the BVH: build time, and time per ray for nearest hit and for all the
+ * faces crossed by the line, and for a parallel batch of rays.
+ * 
+ * Before, it checks that rays along an axis, lying on the bounding planes of 
+ * the nodes, hit the mesh.
+ *
+ * Run it as a plain java application, with a large heap (-Xmx4g)
+ *
+ * @author jpereda
+ */
+public class PickingBenchmark {
+
+    private static final int RAYS = 200;
+    private static final int WARMUP = 20;
+    private static final int BATCH = 100000;
+
+    public static void main(String[] args) {
+        checkAxisRays();
+        
+        // 4000 x 500 x 2 = 4 million triangles
+        TexturedMesh knot = new KnotMesh(2d, 1d, 0.4d, 2d, 3d, 4000, 500, 0, 0);
+        MeshHelper mh = new MeshHelper((TriangleMesh)knot.getMesh());
+        PackedPoints points = new PackedPoints();
+        points.setAll(mh.getPoints(), mh.getF());
+        PackedFaces faces = new PackedFaces();
+        faces.setAll(mh.getFaces(), 0);
+        System.out.println("KnotMesh: "+points.size()+" vertices, "+faces.size()+" faces");
+
+        long t=System.nanoTime();
+        MeshBVH bvh = MeshBVH.build(points, faces);
+        System.out.println(String.format("  BVH build: %8.2f ms, %d nodes, depth %d",
+                (System.nanoTime()-t)/1e6, bvh.getNumNodes(), bvh.getDepth()));
+
+        Random random = new Random(42);
+        Point3D[] origins = new Point3D[RAYS];
+        Point3D[] directions = new Point3D[RAYS];
+        for(int i=0; i<RAYS; i++){
+            origins[i]=new Point3D((float)random.nextGaussian(), (float)random.nextGaussian(), -20f);
+            directions[i]=new Point3D(0.1f*(float)random.nextGaussian(), 0.1f*(float)random.nextGaussian(), 1f);
+        }
+
+        int[] found = new int[3];
+        double linear=time(i->found[0]+=linearIntersections(origins[i], directions[i], points, faces));
+        double nearest=time(i->found[1]+=bvh.intersect(origins[i], directions[i])!=null?1:0);
+        double all=time(i->found[2]+=bvh.intersectAll(origins[i], directions[i], f->{}));
+        System.out.println(String.format("  Linear, all faces: %10.4f ms/ray", linear));
+        System.out.println(String.format("  BVH, nearest     : %10.4f ms/ray", nearest));
+        System.out.println(String.format("  BVH, all faces   : %10.4f ms/ray", all));
+        System.out.println("  (hits: "+found[0]+" / "+found[1]+" / "+found[2]+")");
+
+        // batch of rays, cast in parallel
+        float[] batchOrigins = new float[3*BATCH];
+        float[] batchDirections = new float[3*BATCH];
+        for(int i=0; i<BATCH; i++){
+            batchOrigins[3*i]=(float)random.nextGaussian();
+            batchOrigins[3*i+1]=(float)random.nextGaussian();
+            batchOrigins[3*i+2]=-20f;
+            batchDirections[3*i]=0.1f*(float)random.nextGaussian();
+            batchDirections[3*i+1]=0.1f*(float)random.nextGaussian();
+            batchDirections[3*i+2]=1f;
+        }
+        int[] hitFaces = new int[BATCH];
+        float[] hitDistances = new float[BATCH];
+        for(int i=0; i<WARMUP; i++){
+            bvh.intersect(batchOrigins, batchDirections, hitFaces, hitDistances);
+        }
+        t=System.nanoTime();
+        bvh.intersect(batchOrigins, batchDirections, hitFaces, hitDistances);
+        double batch=(System.nanoTime()-t)/1e6;
+        t=System.nanoTime();
+        boolean[] occluded=bvh.occluded(batchOrigins, batchDirections, 25f);
+        double occlusion=(System.nanoTime()-t)/1e6;
+        System.out.println(String.format("  BVH batch of %d rays, nearest : %10.2f ms", BATCH, batch));
+        System.out.println(String.format("  BVH batch of %d rays, occluded: %10.2f ms", BATCH, occlusion));
+    }
+
+    /*
+    Linear scan: number of faces crossed by the line through origin along 
+    direction, with the Möller-Trumbore test on every face
+    */
+    private static int linearIntersections(Point3D origin, Point3D direction, PackedPoints points, PackedFaces faces){
+        float[] p=points.getData();
+        int[] f=faces.getData();
+        int found=0;
+        for(int i=0; i<faces.size(); i++){
+            int a=PackedPoints.STRIDE*f[3*i], b=PackedPoints.STRIDE*f[3*i+1], c=PackedPoints.STRIDE*f[3*i+2];
+            float e1x=p[b]-p[a], e1y=p[b+1]-p[a+1], e1z=p[b+2]-p[a+2];
+            float e2x=p[c]-p[a], e2y=p[c+1]-p[a+1], e2z=p[c+2]-p[a+2];
+            float px=direction.y*e2z-direction.z*e2y, py=direction.z*e2x-direction.x*e2z, pz=direction.x*e2y-direction.y*e2x;
+            float det=e1x*px+e1y*py+e1z*pz;
+            if(det>-1e-6f && det<1e-6f){
+                continue;
+            }
+            float invDet=1f/det;
+            float tx=origin.x-p[a], ty=origin.y-p[a+1], tz=origin.z-p[a+2];
+            float u=(tx*px+ty*py+tz*pz)*invDet;
+            if(u<0f || u>1f){
+                continue;
+            }
+            float qx=ty*e1z-tz*e1y, qy=tz*e1x-tx*e1z, qz=tx*e1y-ty*e1x;
+            float v=(direction.x*qx+direction.y*qy+direction.z*qz)*invDet;
+            if(v>=0f && u+v<=1f){
+                found++;
+            }
+        }
+        return found;
+    }
+
+    /*
+    Rays along +Y with x on the grid lines of a SurfacePlotMesh, so the origin
+    is on bounding planes of the BVH nodes and the direction has 0 components:
+    all of them have to hit the surface, as the ones slightly offset do
+    */
+    private static void checkAxisRays(){
+        int divisions = 8;
+        SurfacePlotMesh surface = new SurfacePlotMesh((x,y)->Math.sin(x)*Math.cos(y), 10d, 10d, divisions, divisions, 1d);
+        Point3D direction = new Point3D(0f, 1f, 0f);
+        int rays=0, missed=0, missedOffset=0;
+        for(int i=0; i<=divisions; i++){
+            float x = (float)(-5d + ((float)i/(float)divisions)*10d);
+            for(int j=0; j<divisions; j++){
+                float z = (float)(-5d + ((j+0.5f)/(float)divisions)*10d);
+                rays++;
+                if(surface.pick(new Point3D(x, -10f, z), direction)==null){
+                    missed++;
+                }
+                if(surface.pick(new Point3D(i<divisions?x+1e-4f:x-1e-4f, -10f, z), direction)==null){
+                    missedOffset++;
+                }
+            }
+        }
+        System.out.println("Axis rays on grid lines: "+missed+" of "+rays+" missed, "+
+                missedOffset+" missed with an offset of 1e-4"+(missed>0?" FAILED":""));
+    }
+
+    private interface RayTask {
+        void run(int ray);
+    }
+
+    private static double time(RayTask task){
+        for(int i=0; i<WARMUP; i++){
+            task.run(i%RAYS);
+        }
+        long t=System.nanoTime();
+        for(int i=0; i<RAYS; i++){
+            task.run(i);
+        }
+        return (System.nanoTime()-t)/1e6/RAYS;
+    }
+}
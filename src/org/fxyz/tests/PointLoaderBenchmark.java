@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.io.BufferedWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import org.fxyz.geometry.Point3D;
+import org.fxyz.utils.PointCloudLoader;
+
+/**
+ * Compares loading a x;y;z;f point file line by line with String.split and 
+ * Float.parseFloat, as the tests did, against PointCloudLoader parsing the bytes
+ * in parallel chunks, and against loading its binary copy.
+ *
+ * Run it as a plain java application, with a large heap (-Xmx4g)
+ *
+ * @author jpereda
+ */
+public class PointLoaderBenchmark {
+
+    private static final int POINTS = 1_000_000;
+    private static final int WARMUP = 2;
+    private static final int ITERATIONS = 5;
+
+    public static void main(String[] args) throws Exception {
+        Path dir = Files.createTempDirectory("fxyz");
+        Path csv = dir.resolve("points.txt");
+        Random random = new Random(42);
+        try(BufferedWriter writer = Files.newBufferedWriter(csv, StandardCharsets.UTF_8)){
+            for(int i=0; i<POINTS; i++){
+                writer.write(new Point3D((float)(100*random.nextGaussian()), (float)(100*random.nextGaussian()), 
+                        (float)(100*random.nextGaussian()), random.nextFloat()).toCSV());
+                writer.newLine();
+            }
+        }
+        Path binary = dir.resolve("points.txt"+PointCloudLoader.CACHE_EXTENSION);
+        System.out.println(String.format("%d points, text: %.2f MB", POINTS, Files.size(csv)/1e6));
+        
+        System.out.println(String.format("  lines+split : %8.2f ms", time(()->{
+            List<Point3D> data = new ArrayList<>();
+            Files.lines(csv).map(s->s.split(";")).forEach(s->data.add(new Point3D(Float.parseFloat(s[0]),
+                    Float.parseFloat(s[1]),Float.parseFloat(s[2]),Float.parseFloat(s[3]))));
+            return data.size();
+        })));
+        System.out.println(String.format("  parse       : %8.2f ms", time(()->
+            PointCloudLoader.parse(csv, PointCloudLoader.DEFAULT_DELIMITER).size())));
+        PointCloudLoader.load(csv);
+        System.out.println(String.format("  binary copy : %8.2f ms (%.2f MB)", time(()->
+            PointCloudLoader.load(csv).size()), Files.size(binary)/1e6));
+        
+        Files.delete(binary);
+        Files.delete(csv);
+        Files.delete(dir);
+    }
+
+    private static double time(Callable<Integer> task) throws Exception {
+        for(int i=0; i<WARMUP; i++){
+            task.call();
+        }
+        long t=System.nanoTime();
+        for(int i=0; i<ITERATIONS; i++){
+            task.call();
+        }
+        return (System.nanoTime()-t)/1e6/ITERATIONS;
+    }
+}
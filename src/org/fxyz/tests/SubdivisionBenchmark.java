@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.util.HashMap;
+import java.util.stream.IntStream;
+import javafx.scene.shape.TriangleMesh;
+import org.fxyz.shapes.primitives.IcosahedronMesh;
+import org.fxyz.shapes.primitives.helper.MeshSubdivider;
+
+/**
+ * Subdivision of the faces of an icosphere: assignment of the middle points 
+ * with String keys in a HashMap (as the meshes did) and with MeshSubdivider, 
+ * and the whole IcosahedronMesh creation for levels 0 to 7.
+ *
+ * Run it as a plain java application
+ *
+ * @author jpereda
+ */
+public class SubdivisionBenchmark {
+
+    private static final int LEVEL = 6;
+
+    public static void main(String[] args) {
+        TriangleMesh mesh = (TriangleMesh)new IcosahedronMesh(LEVEL-1, 1f).getMesh();
+        int[] meshFaces = mesh.getFaces().toArray(null);
+        int numFaces = meshFaces.length/6;
+        int numVertices = mesh.getPoints().size()/3;
+        int[] faces = IntStream.range(0, 3*numFaces).map(i->meshFaces[2*i]).toArray();
+        
+        for(int r=0; r<3; r++){
+            long t=System.nanoTime();
+            HashMap<String, Integer> map = new HashMap<>();
+            int index=numVertices;
+            int[] mid = new int[3*numFaces];
+            for(int i=0; i<3*numFaces; i++){
+                int v1=faces[i], v2=faces[i%3==2?i-2:i+1];
+                String key = ""+Math.min(v1,v2)+"_"+Math.max(v1,v2);
+                Integer m = map.get(key);
+                if(m==null){
+                    m=index++;
+                    map.put(key, m);
+                }
+                mid[i]=m;
+            }
+            System.out.println(String.format("String keys   : %d new vertices, %8.2f ms", index-numVertices, (System.nanoTime()-t)/1e6));
+
+            t=System.nanoTime();
+            MeshSubdivider subdivider = MeshSubdivider.subdivide(faces, numFaces, numVertices);
+            System.out.println(String.format("MeshSubdivider: %d new vertices, %8.2f ms", subdivider.getNumMidpoints(), (System.nanoTime()-t)/1e6));
+            
+            boolean same=true;
+            int[] f=subdivider.getFaces();
+            for(int i=0; i<numFaces; i++){
+                same&=f[12*i+1]==mid[3*i] && f[12*i+4]==mid[3*i+1] && f[12*i+7]==mid[3*i+2];
+            }
+            System.out.println("Same indices: "+same);
+        }
+
+        for(int level=0; level<=LEVEL+1; level++){
+            long t=System.nanoTime();
+            IcosahedronMesh ico = new IcosahedronMesh(level, 1f);
+            System.out.println(String.format("IcosahedronMesh(level %d, %d faces): %.2f ms", 
+                    level, ((TriangleMesh)ico.getMesh()).getFaces().size()/6, (System.nanoTime()-t)/1e6));
+        }
+    }
+}
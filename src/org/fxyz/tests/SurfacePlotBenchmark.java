@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+
+package org.fxyz.tests;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.DoubleBinaryOperator;
+import org.fxyz.shapes.primitives.SurfacePlotMesh;
+
+/**
+ * Creation of a 2000x2000 SurfacePlotMesh with a boxed Function of Point2D 
+ * and with a primitive (x,y) function, and update of the function and its 
+ * scale, when only the vertices of the mesh are regenerated.
+ * 
+ * Then pan and zoom of a 1000x1000 plot of an expensive function, that is 
+ * only evaluated on the nodes that were not sampled before.
+ *
+ * Run it as a plain java application
+ *
+ * @author jpereda
+ */
+public class SurfacePlotBenchmark {
+
+    private static final int DIVISIONS = 2000;
+    private static final int NAVIGATION_DIVISIONS = 1000;
+    
+    private static final AtomicLong EVALUATIONS = new AtomicLong();
+    
+    // a simulated field, some hundreds of times slower than a plain function
+    private static final DoubleBinaryOperator FIELD = (x,y)->{
+        EVALUATIONS.incrementAndGet();
+        double z=0;
+        for(int k=1; k<=200; k++){
+            z+=Math.sin(k*x)*Math.cos(k*y)/(k*k);
+        }
+        return z;
+    };
+
+    public static void main(String[] args) {
+        for(int r=0; r<3; r++){
+            long t=System.nanoTime();
+            new SurfacePlotMesh(p->Math.sin(p.magnitude())/p.magnitude(), 10d, 10d, DIVISIONS, DIVISIONS, 1d);
+            System.out.println(String.format("Boxed function    : %8.2f ms", (System.nanoTime()-t)/1e6));
+            
+            t=System.nanoTime();
+            SurfacePlotMesh surface = new SurfacePlotMesh((x,y)->{
+                double d=Math.sqrt(x*x+y*y);
+                return Math.sin(d)/d;
+            }, 10d, 10d, DIVISIONS, DIVISIONS, 1d);
+            System.out.println(String.format("Primitive function: %8.2f ms", (System.nanoTime()-t)/1e6));
+            
+            t=System.nanoTime();
+            surface.setFunction2D((x,y)->Math.cos(x)*Math.sin(y));
+            System.out.println(String.format("New function      : %8.2f ms", (System.nanoTime()-t)/1e6));
+            
+            t=System.nanoTime();
+            surface.setFunctionScale(2d);
+            System.out.println(String.format("New scale         : %8.2f ms", (System.nanoTime()-t)/1e6));
+        }
+        
+        SurfacePlotMesh field = new SurfacePlotMesh(FIELD, 10d, 10d, NAVIGATION_DIVISIONS, NAVIGATION_DIVISIONS, 1d);
+        double cell = 10d/NAVIGATION_DIVISIONS;
+        navigate("Pan 5 cells in x ", ()->field.setCenterX(field.getCenterX()+5*cell));
+        navigate("Pan 5 cells in y ", ()->field.setCenterY(field.getCenterY()+5*cell));
+        navigate("Zoom in x2       ", ()->field.setViewport(field.getCenterX(), field.getCenterY(), 
+                field.getRangeX()/2d, field.getRangeY()/2d));
+        navigate("Zoom out x2      ", ()->field.setViewport(field.getCenterX(), field.getCenterY(), 
+                field.getRangeX()*2d, field.getRangeY()*2d));
+        navigate("Resample         ", field::resample);
+    }
+    
+    private static void navigate(String name, Runnable step){
+        EVALUATIONS.set(0);
+        long t=System.nanoTime();
+        step.run();
+        System.out.println(String.format("%s: %8.2f ms, %d evaluations", name, 
+                (System.nanoTime()-t)/1e6, EVALUATIONS.get()));
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.tests;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.fxyz.geometry.Point3D;
+import org.fxyz.shapes.primitives.TriangulatedMesh;
+import org.poly2tri.Poly2Tri;
+import org.poly2tri.polygon.Polygon;
+import org.poly2tri.polygon.PolygonPoint;
+import org.poly2tri.polygon.PolygonSet;
+import org.poly2tri.triangulation.TriangulationPoint;
+import org.poly2tri.triangulation.delaunay.DelaunayTriangle;
+
+/**
+ * Triangulation of a 10k vertices polygon: mapping of the Delaunay triangles
+ * back to vertex indices by scanning all the points (as TriangulatedMesh did)
+ * and with an index map, and the whole TriangulatedMesh creation.
+ *
+ * Run it as a plain java application
+ *
+ * @author jpereda
+ */
+public class TriangulationBenchmark {
+
+    private static final int VERTICES = 10000;
+
+    public static void main(String[] args) {
+        List<Point3D> outline = star(VERTICES, 100d, 95d);
+
+        List<PolygonPoint> list = outline.stream().map(p->new PolygonPoint(p.x, p.y)).collect(Collectors.toList());
+        PolygonSet ps = new PolygonSet(new Polygon(list));
+        long t=System.nanoTime();
+        Poly2Tri.triangulate(ps);
+        System.out.println(String.format("Poly2Tri: %d triangles, %.2f ms", 
+                ps.getPolygons().get(0).getTriangles().size(), (System.nanoTime()-t)/1e6));
+        List<DelaunayTriangle> tri = ps.getPolygons().get(0).getTriangles();
+        List<TriangulationPoint> points = ps.getPolygons().get(0).getPoints();
+
+        t=System.nanoTime();
+        int[] scan = new int[3*tri.size()];
+        for(int k=0; k<tri.size(); k++){
+            for(int j=0; j<3; j++){
+                final TriangulationPoint dt = tri.get(k).points[j];
+                scan[3*k+j]=IntStream.range(0,points.size()).filter(i->points.get(i).equals(dt)).findFirst().orElse(-1);
+            }
+        }
+        System.out.println(String.format("Index by scan: %10.2f ms", (System.nanoTime()-t)/1e6));
+
+        t=System.nanoTime();
+        Map<TriangulationPoint,Integer> pointIndex = new HashMap<>(2*points.size());
+        for(int i=0; i<points.size(); i++){
+            pointIndex.putIfAbsent(points.get(i), i);
+        }
+        int[] map = new int[3*tri.size()];
+        for(int k=0; k<tri.size(); k++){
+            for(int j=0; j<3; j++){
+                map[3*k+j]=pointIndex.get(tri.get(k).points[j]);
+            }
+        }
+        System.out.println(String.format("Index by map : %10.2f ms", (System.nanoTime()-t)/1e6));
+        System.out.println("Same indices: "+java.util.Arrays.equals(scan, map));
+
+        for(int i=0; i<3; i++){
+            t=System.nanoTime();
+            new TriangulatedMesh(star(VERTICES, 100d, 95d), 0, 10d, 0d);
+            System.out.println(String.format("TriangulatedMesh(%d vertices): %.2f ms", VERTICES, (System.nanoTime()-t)/1e6));
+        }
+    }
+
+    private static List<Point3D> star(int n, double r0, double r1){
+        List<Point3D> points = new ArrayList<>(n);
+        for(int i=0; i<n; i++){
+            double r=i%2==0?r0:r1, a=2d*Math.PI*i/n;
+            points.add(new Point3D((float)(r*Math.cos(a)), (float)(r*Math.sin(a)), 0f));
+        }
+        return points;
+    }
+}
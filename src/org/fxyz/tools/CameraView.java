@@ -18,7 +18,6 @@
  */
 package org.fxyz.tools;
 
-import javafx.animation.AnimationTimer;
 import javafx.geometry.Rectangle2D;
 import javafx.scene.Group;
 import javafx.scene.PerspectiveCamera;
@@ -32,6 +31,8 @@ import javafx.scene.paint.Color;
 import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Translate;
 import org.fxyz.cameras.CameraTransformer;
+import org.fxyz.utils.FrameScheduler;
+import org.fxyz.utils.FrameScheduler.Priority;
 
 /**
  *  This class is based on "AnotherView.java" provided by: 
@@ -83,7 +84,7 @@ public final class CameraView extends ImageView {
     
     private Group worldToView;
 
-    private AnimationTimer viewTimer = null;
+    private FrameScheduler.Task viewTimer = null;
     
 
     public CameraView(SubScene scene) {
@@ -106,12 +107,8 @@ public final class CameraView extends ImageView {
         params.setDepthBuffer(true);
         params.setFill(Color.rgb(0, 0, 0, 0.5));
 
-        viewTimer = new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                redraw();
-            }
-        };
+        // the preview image can lag the scene by a few frames, so it yields to the rest
+        viewTimer = FrameScheduler.getDefault().createTask("CameraView", Priority.LOW, this::redraw);
     }
 
     public void startViewing() {
@@ -18,7 +18,6 @@
  */
 package org.fxyz.tools;
 
-import javafx.animation.AnimationTimer;
 import javafx.geometry.Insets;
 import javafx.geometry.Pos;
 import javafx.geometry.Rectangle2D;
@@ -48,6 +47,8 @@ import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Translate;
 import org.fxyz.cameras.CameraTransformer;
 import org.fxyz.events.CloseCutawayEvent;
+import org.fxyz.utils.FrameScheduler;
+import org.fxyz.utils.FrameScheduler.Priority;
 
 /**
  * Builds upon base CameraView class but provides event handling for 
@@ -86,7 +87,7 @@ public final class Cutaway extends VBox {
     
     private Group worldToView;
 
-    private AnimationTimer viewTimer = null;
+    private FrameScheduler.Task viewTimer = null;
     public ImageView imageView = new ImageView();
     
     private double controlSize = 15;
@@ -157,12 +158,7 @@ public final class Cutaway extends VBox {
         params.setDepthBuffer(true);
         params.setFill(Color.rgb(0, 0, 0, 0.5));
 
-        viewTimer = new AnimationTimer() {
-            @Override
-            public void handle(long now) {
-                redraw();
-            }
-        };
+        viewTimer = FrameScheduler.getDefault().createTask("Cutaway", Priority.LOW, this::redraw);
         setOnMouseEntered(e->{
             requestFocus();
         });        
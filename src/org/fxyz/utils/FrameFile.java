@@ -0,0 +1,227 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary file with a sequence of frames of a point cloud, to play animations 
+ * without keeping all the frames in memory.
+ * 
+ * Layout, little endian:
+ * - header, HEADER_SIZE bytes: magic, version, number of points, number of 
+ *   frames, flags and a tag chosen by the writer (0 by default), as ints
+ * - frames, each one with the coordinates x, y, z of all the points as floats,
+ *   only if the flag POINTS is set, followed by the values f of all the points
+ * 
+ * The file is memory mapped, in segments of whole frames, and frames are read
+ * straight into float arrays.
+ *
+ * @author jpereda
+ */
+public class FrameFile implements Closeable {
+
+    public static final int MAGIC = 0x46585946;
+    public static final int VERSION = 1;
+    public static final int HEADER_SIZE = 32;
+    public static final int POINTS = 1;
+    
+    private static final long MAX_SEGMENT = Integer.MAX_VALUE;
+    
+    private final FileChannel channel;
+    private final int numPoints, numFrames;
+    private final boolean hasPoints;
+    private final int tag;
+    private final long frameBytes;
+    private final int framesPerSegment;
+    private final MappedByteBuffer[] segments;
+    
+    private FrameFile(FileChannel channel) throws IOException {
+        this.channel=channel;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+        while(header.hasRemaining() && channel.read(header, header.position())>=0){}
+        header.flip();
+        if(header.remaining()<HEADER_SIZE || header.getInt()!=MAGIC){
+            throw new IOException("Not a frame file");
+        }
+        if(header.getInt()!=VERSION){
+            throw new IOException("Unsupported frame file version");
+        }
+        numPoints=header.getInt();
+        numFrames=header.getInt();
+        hasPoints=(header.getInt()&POINTS)!=0;
+        tag=header.getInt();
+        frameBytes=4L*numPoints*(hasPoints?4:1);
+        if(frameBytes>MAX_SEGMENT){
+            throw new IOException("Frames larger than "+MAX_SEGMENT+" bytes are not supported");
+        }
+        if(channel.size()<HEADER_SIZE+frameBytes*numFrames){
+            throw new IOException("Truncated frame file");
+        }
+        framesPerSegment=frameBytes==0?Math.max(numFrames,1):(int)Math.min(MAX_SEGMENT/frameBytes, Math.max(numFrames,1));
+        segments=new MappedByteBuffer[(numFrames+framesPerSegment-1)/framesPerSegment];
+        for(int i=0; i<segments.length; i++){
+            int frames=Math.min(framesPerSegment, numFrames-i*framesPerSegment);
+            segments[i]=channel.map(FileChannel.MapMode.READ_ONLY, 
+                    HEADER_SIZE+i*framesPerSegment*frameBytes, frames*frameBytes);
+        }
+    }
+    
+    public static FrameFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new FrameFile(channel);
+        } catch(IOException e){
+            channel.close();
+            throw e;
+        }
+    }
+    
+    public static Writer create(Path path, int numPoints, boolean withPoints) throws IOException {
+        return new Writer(path, numPoints, withPoints, 0);
+    }
+    
+    /*
+    The tag is kept in the header, i.e. to check how the frames were generated
+    */
+    public static Writer create(Path path, int numPoints, boolean withPoints, int tag) throws IOException {
+        return new Writer(path, numPoints, withPoints, tag);
+    }
+    
+    public int getNumPoints() {
+        return numPoints;
+    }
+
+    public int getNumFrames() {
+        return numFrames;
+    }
+
+    public boolean hasPoints() {
+        return hasPoints;
+    }
+
+    public int getTag() {
+        return tag;
+    }
+    
+    /*
+    Reads the frame into points (3*numPoints floats, may be null) and f 
+    (numPoints floats, may be null). Can be called from any thread
+    */
+    public void readFrame(int frame, float[] points, float[] f){
+        if(frame<0 || frame>=numFrames){
+            throw new IndexOutOfBoundsException("Frame: "+frame+", frames: "+numFrames);
+        }
+        ByteBuffer buffer = segments[frame/framesPerSegment].duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        buffer.position((int)((frame%framesPerSegment)*frameBytes));
+        FloatBuffer floats = buffer.asFloatBuffer();
+        if(hasPoints){
+            if(points!=null){
+                floats.get(points, 0, 3*numPoints);
+            } else {
+                floats.position(3*numPoints);
+            }
+        }
+        if(f!=null){
+            floats.get(f, 0, numPoints);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+    
+    /*
+    Appends frames to a new file. The number of frames is written on close
+    */
+    public static class Writer implements Closeable {
+        
+        private final FileChannel channel;
+        private final int numPoints;
+        private final boolean withPoints;
+        private final int tag;
+        private final ByteBuffer buffer;
+        private int numFrames;
+
+        private Writer(Path path, int numPoints, boolean withPoints, int tag) throws IOException {
+            this.numPoints=numPoints;
+            this.withPoints=withPoints;
+            this.tag=tag;
+            channel=FileChannel.open(path, StandardOpenOption.CREATE, 
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+            buffer=ByteBuffer.allocateDirect(4*numPoints*(withPoints?4:1)).order(ByteOrder.LITTLE_ENDIAN);
+            writeHeader();
+        }
+        
+        public void writeFrame(float[] f) throws IOException {
+            if(withPoints){
+                throw new IllegalStateException("Frames need the coordinates of the points");
+            }
+            writeFrame(null, f);
+        }
+        
+        public void writeFrame(float[] points, float[] f) throws IOException {
+            buffer.clear();
+            FloatBuffer floats = buffer.asFloatBuffer();
+            if(withPoints){
+                floats.put(points, 0, 3*numPoints);
+            }
+            floats.put(f, 0, numPoints);
+            write(buffer, HEADER_SIZE+(long)numFrames*buffer.capacity());
+            numFrames++;
+        }
+        
+        public int getNumFrames() {
+            return numFrames;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                writeHeader();
+            } finally {
+                channel.close();
+            }
+        }
+        
+        private void writeHeader() throws IOException {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(MAGIC).putInt(VERSION).putInt(numPoints).putInt(numFrames)
+                  .putInt(withPoints?POINTS:0).putInt(tag);
+            header.clear();
+            write(header, 0);
+        }
+        
+        private void write(ByteBuffer b, long position) throws IOException {
+            b.position(0);
+            while(b.hasRemaining()){
+                position+=channel.write(b, position);
+            }
+        }
+    }
+}
@@ -0,0 +1,269 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.utils;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.beans.property.BooleanProperty;
+import javafx.beans.property.DoubleProperty;
+import javafx.beans.property.ReadOnlyIntegerProperty;
+import javafx.beans.property.ReadOnlyIntegerWrapper;
+import javafx.beans.property.SimpleBooleanProperty;
+import javafx.beans.property.SimpleDoubleProperty;
+
+/**
+ * Plays the frames of a FrameFile at a given frame rate.
+ * 
+ * A background thread reads the next frames from the file ahead of time into a 
+ * fixed pool of prefetch+1 buffers, so the heap used doesn't depend on the number
+ * of frames. On every pulse, if it is time for a new frame and it is ready, it 
+ * is passed to the consumer on the JavaFX application thread, i.e. to update the 
+ * values of a ScatterMesh:
+ * 
+ *   new FramePlayer(file, 4, frame->scatter.setF(frame.getF()))
+ * 
+ * The buffers of the frame are reused once the consumer returns, so it must copy
+ * any data it wants to keep. If the frame is not ready yet, it is shown on the 
+ * next pulse, so a slow disk lowers the frame rate instead of blocking the UI.
+ * If a frame can't be read, the failure is logged and loading stops: the frame
+ * is read again on the next play or seek.
+ *
+ * @author jpereda
+ */
+public class FramePlayer {
+    
+    public static final int DEFAULT_PREFETCH = 4;
+    public static final double DEFAULT_FRAME_RATE = 20d;
+    
+    private static final Logger LOGGER = Logger.getLogger(FramePlayer.class.getName());
+    
+    /*
+    A frame with the coordinates of the points (or null if the file has none) 
+    and their values
+    */
+    public static class Frame {
+        private int index;
+        private long generation;
+        private final float[] points;
+        private final float[] f;
+
+        private Frame(int numPoints, boolean hasPoints){
+            points = hasPoints?new float[3*numPoints]:null;
+            f = new float[numPoints];
+        }
+
+        public int getIndex() { return index; }
+        public float[] getPoints() { return points; }
+        public float[] getF() { return f; }
+    }
+    
+    private final FrameFile file;
+    private final Consumer<Frame> consumer;
+    private final BlockingQueue<Frame> free, ready;
+    private final ExecutorService loader;
+    private final FrameScheduler.Task timer;
+    
+    // next frame to be read, and generation of the frames after the last seek
+    private int next;
+    private long generation;
+    private boolean loading;
+    private long lastFrame;
+    
+    public FramePlayer(FrameFile file, Consumer<Frame> consumer){
+        this(file, DEFAULT_PREFETCH, consumer);
+    }
+    
+    public FramePlayer(FrameFile file, int prefetch, Consumer<Frame> consumer){
+        this.file=file;
+        this.consumer=consumer;
+        free=new ArrayBlockingQueue<>(prefetch+1);
+        ready=new ArrayBlockingQueue<>(prefetch+1);
+        for(int i=0; i<=prefetch; i++){
+            free.add(new Frame(file.getNumPoints(), file.hasPoints()));
+        }
+        loader=Executors.newSingleThreadExecutor(r->{
+            Thread t = new Thread(r, "FramePlayerThread");
+            t.setDaemon(true);
+            return t;
+        });
+        timer=FrameScheduler.getDefault().createTask("FramePlayer", FrameScheduler.Priority.HIGH, this::tick);
+    }
+    
+    private final DoubleProperty frameRate = new SimpleDoubleProperty(DEFAULT_FRAME_RATE);
+
+    public double getFrameRate() {
+        return frameRate.get();
+    }
+
+    public void setFrameRate(double value) {
+        frameRate.set(value);
+    }
+
+    public DoubleProperty frameRateProperty() {
+        return frameRate;
+    }
+    
+    private final BooleanProperty loop = new SimpleBooleanProperty(true){
+        @Override
+        protected void invalidated() {
+            requestLoad();
+        }
+    };
+
+    public boolean isLoop() {
+        return loop.get();
+    }
+
+    public void setLoop(boolean value) {
+        loop.set(value);
+    }
+
+    public BooleanProperty loopProperty() {
+        return loop;
+    }
+    
+    private final ReadOnlyIntegerWrapper currentFrame = new ReadOnlyIntegerWrapper(-1);
+
+    public int getCurrentFrame() {
+        return currentFrame.get();
+    }
+
+    public ReadOnlyIntegerProperty currentFrameProperty() {
+        return currentFrame.getReadOnlyProperty();
+    }
+    
+    public void play(){
+        requestLoad();
+        timer.start();
+    }
+    
+    public void pause(){
+        timer.stop();
+    }
+    
+    /*
+    Stops playing and the background thread. The file is not closed
+    */
+    public void dispose(){
+        timer.stop();
+        loader.shutdownNow();
+    }
+    
+    /*
+    Discards the prefetched frames, and continues from frame
+    */
+    public void seek(int frame){
+        if(frame<0 || frame>=file.getNumFrames()){
+            throw new IndexOutOfBoundsException("Frame: "+frame+", frames: "+file.getNumFrames());
+        }
+        synchronized(this){
+            next=frame;
+            generation++;
+        }
+        recycle();
+        requestLoad();
+    }
+    
+    private void tick(long now){
+        if(now-lastFrame<1e9/frameRate.get()){
+            return;
+        }
+        Frame frame = ready.poll();
+        if(frame==null){
+            return;
+        }
+        try {
+            if(isCurrent(frame)){
+                lastFrame=now;
+                currentFrame.set(frame.index);
+                consumer.accept(frame);
+            }
+        } finally {
+            free.offer(frame);
+            requestLoad();
+        }
+    }
+    
+    private synchronized boolean isCurrent(Frame frame){
+        return frame.generation==generation;
+    }
+    
+    private void recycle(){
+        Frame frame;
+        while((frame=ready.poll())!=null){
+            free.offer(frame);
+        }
+    }
+    
+    /*
+    Reads frames in the background while there are free buffers
+    */
+    private synchronized void requestLoad(){
+        if(loading || loader.isShutdown() || free.isEmpty()){
+            return;
+        }
+        loading=true;
+        loader.execute(this::load);
+    }
+    
+    private void load(){
+        while(true){
+            int index;
+            long gen;
+            synchronized(this){
+                if(free.isEmpty() || next>=file.getNumFrames() && !(loop.get() && file.getNumFrames()>0)){
+                    loading=false;
+                    return;
+                }
+                if(next>=file.getNumFrames()){
+                    next=0;
+                }
+                index=next++;
+                gen=generation;
+            }
+            Frame frame = free.poll();
+            boolean read=false;
+            try {
+                file.readFrame(index, frame.points, frame.f);
+                read=true;
+            } catch(RuntimeException e){
+                LOGGER.log(Level.SEVERE, "Frame "+index+" can't be read", e);
+                return;
+            } finally {
+                if(!read){
+                    free.offer(frame);
+                    synchronized(this){
+                        if(gen==generation){
+                            next=index;
+                        }
+                        loading=false;
+                    }
+                }
+            }
+            frame.index=index;
+            frame.generation=gen;
+            ready.offer(frame);
+        }
+    }
+}
@@ -0,0 +1,335 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.function.LongConsumer;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javafx.animation.AnimationTimer;
+
+/**
+ * One single AnimationTimer shared by all the per frame updates: cameras, 
+ * billboards, skyboxes, views, players...
+ * 
+ * Every task has a priority, and they run in order of priority on each pulse. 
+ * Once the frame budget is spent, the remaining tasks are deferred to the next
+ * frame, except CRITICAL ones, and tasks already deferred maxDeferredFrames 
+ * frames in a row, so they can't starve.
+ * 
+ * Async tasks run their work on a worker pool, and their result is applied on 
+ * the JavaFX application thread in the next frame, even if the task itself is
+ * deferred: only submitting its work again waits. While the work of a task is
+ * in progress, it's not submitted again. Failures of the work are counted as
+ * failures of the task.
+ * 
+ * Each task keeps its timing stats. Tasks have to be started and stopped on 
+ * the JavaFX application thread.
+ *
+ * @author jpereda
+ */
+public final class FrameScheduler {
+    
+    public enum Priority {
+        CRITICAL, HIGH, NORMAL, LOW
+    }
+    
+    private static final Logger LOGGER = Logger.getLogger(FrameScheduler.class.getName());
+    
+    public static final double DEFAULT_FRAME_BUDGET = 8d; // ms, half a frame at 60 fps
+    public static final int DEFAULT_MAX_DEFERRED_FRAMES = 30;
+    
+    private static final FrameScheduler DEFAULT = new FrameScheduler();
+    
+    private static final ExecutorService WORKERS = Executors.newFixedThreadPool(
+            Math.max(1, Runtime.getRuntime().availableProcessors()-1), r->{
+                Thread t = new Thread(r, "FrameSchedulerWorker");
+                t.setDaemon(true);
+                return t;
+            });
+    
+    public static FrameScheduler getDefault(){
+        return DEFAULT;
+    }
+    
+    public static class Task {
+        private final FrameScheduler scheduler;
+        private final String name;
+        private final Priority priority;
+        private final LongConsumer update;
+        private boolean running;
+        private int deferredFrames;
+        
+        // stats
+        private long runs, deferred, failures;
+        private long lastNanos, totalNanos, maxNanos;
+
+        private Task(FrameScheduler scheduler, String name, Priority priority, LongConsumer update) {
+            this.scheduler = scheduler;
+            this.name = name;
+            this.priority = priority;
+            this.update = update;
+        }
+        
+        public void start(){
+            scheduler.start(this);
+        }
+        
+        public void stop(){
+            scheduler.stop(this);
+        }
+        
+        public boolean isRunning() { return running; }
+        public String getName() { return name; }
+        public Priority getPriority() { return priority; }
+        
+        public long getRunCount() { return runs; }
+        public long getDeferredCount() { return deferred; }
+        public long getFailureCount() { return failures; }
+        /*
+        Time on the JavaFX thread
+        */
+        public double getLastMillis() { return lastNanos/1e6; }
+        public double getMaxMillis() { return maxNanos/1e6; }
+        public double getAverageMillis() { return runs>0?totalNanos/1e6/runs:0d; }
+        
+        public void resetStats(){
+            runs=deferred=failures=0;
+            lastNanos=totalNanos=maxNanos=0;
+        }
+        
+        void run(long now){
+            update.accept(now);
+        }
+        
+        /*
+        Applies the result of finished async work, if any
+        */
+        void applyReady(){
+        }
+        
+        /*
+        Counts a failure of the task, logging only the first one
+        */
+        void failed(Exception e){
+            if(countFailure()==1){
+                LOGGER.log(Level.SEVERE, "Task "+name+" failed, next failures will be only counted", e);
+            }
+        }
+        
+        /*
+        Counts a failure of the task without logging it, returns the failures so far
+        */
+        long countFailure(){
+            return ++failures;
+        }
+        
+        @Override
+        public String toString() {
+            return String.format("%s [%s]: %d runs, %d deferred, %d failures, %.3f ms avg, %.3f ms max", 
+                    name, priority, runs, deferred, failures, getAverageMillis(), getMaxMillis());
+        }
+    }
+    
+    private static class AsyncTask<T> extends Task {
+        private final Supplier<T> work;
+        private final Consumer<T> apply;
+        private volatile boolean busy, ready;
+        private volatile T result;
+        private volatile RuntimeException error;
+        private volatile long workerNanos;
+
+        private AsyncTask(FrameScheduler scheduler, String name, Priority priority, Supplier<T> work, Consumer<T> apply) {
+            super(scheduler, name, priority, null);
+            this.work = work;
+            this.apply = apply;
+        }
+        
+        @Override
+        void run(long now){
+            // read before ready: if it was idle, its last result is already visible
+            boolean idle = !busy;
+            applyReady();
+            if(idle){
+                busy=true;
+                WORKERS.execute(()->{
+                    long start=System.nanoTime();
+                    try {
+                        result=work.get();
+                        ready=true;
+                    } catch(RuntimeException e){
+                        // reported on the JavaFX thread, by applyReady
+                        error=e;
+                        ready=true;
+                    } finally {
+                        workerNanos=System.nanoTime()-start;
+                        busy=false;
+                    }
+                });
+            }
+        }
+        
+        @Override
+        void applyReady(){
+            if(ready){
+                ready=false;
+                T value=result;
+                RuntimeException e=error;
+                result=null;
+                error=null;
+                if(e!=null){
+                    throw e;
+                }
+                apply.accept(value);
+            }
+        }
+    }
+    
+    private final List<Task> tasks = new ArrayList<>();
+    private Task[] frameTasks = new Task[0];
+    private boolean dirty;
+    private AnimationTimer timer;
+    private double frameBudget = DEFAULT_FRAME_BUDGET;
+    private int maxDeferredFrames = DEFAULT_MAX_DEFERRED_FRAMES;
+    private long lastFrameNanos;
+    
+    public Task createTask(String name, Priority priority, Runnable update){
+        return createTask(name, priority, now->update.run());
+    }
+    
+    public Task createTask(String name, Priority priority, LongConsumer update){
+        return new Task(this, name, priority, update);
+    }
+    
+    public <T> Task createAsyncTask(String name, Priority priority, Supplier<T> work, Consumer<T> apply){
+        return new AsyncTask<>(this, name, priority, work, apply);
+    }
+    
+    /*
+    Budget of each frame, in ms
+    */
+    public double getFrameBudget() { return frameBudget; }
+    public void setFrameBudget(double millis) { frameBudget = millis; }
+    
+    public int getMaxDeferredFrames() { return maxDeferredFrames; }
+    public void setMaxDeferredFrames(int frames) { maxDeferredFrames = frames; }
+    
+    public double getLastFrameMillis() { return lastFrameNanos/1e6; }
+    
+    /*
+    Running tasks, by priority
+    */
+    public List<Task> getTasks(){
+        return new ArrayList<>(tasks);
+    }
+    
+    /*
+    Worker time of the last result of an async task
+    */
+    public static double getWorkerMillis(Task task){
+        return task instanceof AsyncTask?((AsyncTask<?>)task).workerNanos/1e6:0d;
+    }
+    
+    private void start(Task task){
+        if(task.running){
+            return;
+        }
+        task.running=true;
+        task.deferredFrames=0;
+        // after the tasks of the same priority
+        int i=0;
+        while(i<tasks.size() && tasks.get(i).priority.compareTo(task.priority)<=0){
+            i++;
+        }
+        tasks.add(i, task);
+        dirty=true;
+        if(timer==null){
+            timer = new AnimationTimer() {
+                @Override
+                public void handle(long now) {
+                    runFrame(now);
+                }
+            };
+        }
+        if(tasks.size()==1){
+            timer.start();
+        }
+    }
+    
+    private void stop(Task task){
+        if(!task.running){
+            return;
+        }
+        task.running=false;
+        tasks.remove(task);
+        dirty=true;
+        if(tasks.isEmpty() && timer!=null){
+            timer.stop();
+        }
+    }
+    
+    /**
+     * Runs the tasks of one frame, called on each pulse
+     * @param now the timestamp of the frame, in ns
+     */
+    public void runFrame(long now){
+        if(dirty){
+            frameTasks=tasks.toArray(frameTasks.length==tasks.size()?frameTasks:new Task[tasks.size()]);
+            dirty=false;
+        }
+        final long start=System.nanoTime();
+        final long budget=(long)(frameBudget*1e6);
+        long time=start;
+        for(Task task : frameTasks){
+            // stopped during this frame
+            if(!task.running){
+                continue;
+            }
+            if(time-start>budget && task.priority!=Priority.CRITICAL && task.deferredFrames<maxDeferredFrames){
+                task.deferredFrames++;
+                task.deferred++;
+                try {
+                    task.applyReady();
+                } catch(RuntimeException e){
+                    task.failed(e);
+                }
+                time=System.nanoTime();
+                continue;
+            }
+            task.deferredFrames=0;
+            try {
+                task.run(now);
+            } catch(RuntimeException e){
+                task.failed(e);
+            }
+            long end=System.nanoTime();
+            task.lastNanos=end-time;
+            task.totalNanos+=task.lastNanos;
+            task.maxNanos=Math.max(task.maxNanos, task.lastNanos);
+            task.runs++;
+            time=end;
+        }
+        lastFrameNanos=time-start;
+    }
+}
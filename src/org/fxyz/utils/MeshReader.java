@@ -0,0 +1,607 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.stream.IntStream;
+import org.fxyz.geometry.PackedFaces;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+import org.fxyz.shapes.primitives.helper.VertexWelder;
+
+/**
+ * Import of OBJ, ASCII and binary STL, binary PLY and FXM files into a 
+ * MeshHelper, ready for a TexturedMesh (see ImportedMesh).
+ * 
+ * Files are memory mapped. Text formats are split in chunks of whole lines that 
+ * are parsed in parallel, in two passes: the first one counts the elements of 
+ * each chunk, so the second one can parse them straight into their place in the
+ * final arrays. Numbers are parsed from the bytes, without creating any String.
+ * 
+ * STL files have no indices, so their vertices are welded. PLY vertex values 
+ * (value, quality, intensity or scalar) are kept as the f values of the mesh, 
+ * to be used with the function texture mode.
+ *
+ * @author jpereda
+ */
+public class MeshReader {
+    
+    private static final int UNSET = Integer.MIN_VALUE;
+    
+    public static MeshHelper read(Path path) throws IOException {
+        String name=path.getFileName().toString().toLowerCase(Locale.ROOT);
+        if(name.endsWith(".obj")){
+            return readOBJ(path);
+        } else if(name.endsWith(".stl")){
+            return readSTL(path);
+        } else if(name.endsWith(".ply")){
+            return readPLY(path);
+        } else if(name.endsWith(".fxm")){
+            return MeshWriter.readFXM(path);
+        }
+        throw new IOException("Unknown mesh format: "+path);
+    }
+    
+    /*
+    OBJ
+    
+    Reads v, vt, f and s lines. Polygons are split in triangles as a fan, and 
+    texture coordinates are flipped vertically (v->1-v), as OBJWriter does. If 
+    there are no s lines, the mesh has no smoothing groups
+    */
+    public static MeshHelper readOBJ(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            MappedByteBuffer buffer = map(channel);
+            int[] starts = PointCloudLoader.lineChunks(buffer, 0, buffer.limit());
+            ObjChunk[] chunks = new ObjChunk[starts.length-1];
+            for(int i=0; i<chunks.length; i++){
+                chunks[i]=new ObjChunk(starts[i], starts[i+1]);
+            }
+            Arrays.stream(chunks).parallel().forEach(c->c.parse(buffer, null));
+            
+            ObjChunk total = new ObjChunk(0, 0);
+            boolean hasGroups=false;
+            for(ObjChunk c : chunks){
+                c.vertexOffset=total.vertices;
+                c.texCoordOffset=total.texCoords;
+                c.triangleOffset=total.triangles;
+                total.vertices+=c.vertices;
+                total.texCoords+=c.texCoords;
+                total.triangles+=c.triangles;
+                hasGroups|=c.hasGroups;
+            }
+            MeshHelper mh = new MeshHelper(new float[3*total.vertices], 
+                    total.texCoords>0?new float[2*total.texCoords]:new float[]{0f, 0f}, 
+                    new int[6*total.triangles], new int[total.triangles]);
+            Arrays.stream(chunks).parallel().forEach(c->c.parse(buffer, mh));
+            
+            // faces before the first s line of a chunk take the group of the previous chunks
+            int[] groups=mh.getFaceSmoothingGroups();
+            int group=0;
+            for(ObjChunk c : chunks){
+                for(int i=c.triangleOffset; i<c.triangleOffset+c.triangles && groups[i]==UNSET; i++){
+                    groups[i]=group;
+                }
+                if(c.lastGroup!=UNSET){
+                    group=c.lastGroup;
+                }
+            }
+            if(!hasGroups){
+                mh.setFaceSmoothingGroups(new int[0]);
+            }
+            return mh;
+        }
+    }
+    
+    private static class ObjChunk {
+        private final int from, to;
+        private int vertices, texCoords, triangles;
+        private int vertexOffset, texCoordOffset, triangleOffset;
+        private int lastGroup=UNSET;
+        private boolean hasGroups;
+
+        ObjChunk(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+        
+        /*
+        Counts the elements if mh is null, else parses them into mh
+        */
+        void parse(MappedByteBuffer b, MeshHelper mh){
+            int v=0, vt=0, t=0, group=UNSET;
+            float[] points = mh!=null?mh.getPoints():null;
+            float[] uvs = mh!=null?mh.getTexCoords():null;
+            int[] faces = mh!=null?mh.getFaces():null;
+            int[] groups = mh!=null?mh.getFaceSmoothingGroups():null;
+            int pos=from;
+            while(pos<to){
+                int end=pos;
+                while(end<to && b.get(end)!='\n'){
+                    end++;
+                }
+                int i=skipSpaces(b, pos, end);
+                byte k0=i<end?b.get(i):(byte)0, k1=i+1<end?b.get(i+1):(byte)' ';
+                if(k0=='v' && isSpace(k1)){
+                    if(points!=null){
+                        int j=i+1;
+                        for(int k=0; k<3; k++){
+                            j=skipSpaces(b, j, end);
+                            int e=tokenEnd(b, j, end);
+                            points[3*(vertexOffset+v)+k]=PointCloudLoader.parseFloat(b, j, e);
+                            j=e;
+                        }
+                    }
+                    v++;
+                } else if(k0=='v' && k1=='t' && (i+2>=end || isSpace(b.get(i+2)))){
+                    if(uvs!=null){
+                        int j=skipSpaces(b, i+2, end);
+                        int e=tokenEnd(b, j, end);
+                        uvs[2*(texCoordOffset+vt)]=PointCloudLoader.parseFloat(b, j, e);
+                        j=skipSpaces(b, e, end);
+                        e=tokenEnd(b, j, end);
+                        uvs[2*(texCoordOffset+vt)+1]=j<e?(float)(1d-PointCloudLoader.parseFloat(b, j, e)):1f;
+                    }
+                    vt++;
+                } else if(k0=='f' && isSpace(k1)){
+                    // fan: (first, previous, current)
+                    int n=0, p0=0, t0=0, p1=0, t1=0;
+                    for(int j=skipSpaces(b, i+1, end); j<end; j=skipSpaces(b, j, end)){
+                        int e=tokenEnd(b, j, end);
+                        if(faces!=null){
+                            int slash=j;
+                            while(slash<e && b.get(slash)!='/'){
+                                slash++;
+                            }
+                            int p=index(parseInt(b, j, slash), vertexOffset+v);
+                            int tex=0;
+                            if(slash+1<e && b.get(slash+1)!='/'){
+                                int s2=slash+1;
+                                while(s2<e && b.get(s2)!='/'){
+                                    s2++;
+                                }
+                                tex=index(parseInt(b, slash+1, s2), texCoordOffset+vt);
+                            }
+                            if(n==0){
+                                p0=p;
+                                t0=tex;
+                            } else if(n>=2){
+                                int f=6*(triangleOffset+t+n-2);
+                                faces[f]=p0;
+                                faces[f+1]=t0;
+                                faces[f+2]=p1;
+                                faces[f+3]=t1;
+                                faces[f+4]=p;
+                                faces[f+5]=tex;
+                                groups[triangleOffset+t+n-2]=group;
+                            }
+                            p1=p;
+                            t1=tex;
+                        }
+                        n++;
+                        j=e;
+                    }
+                    t+=Math.max(0, n-2);
+                } else if(k0=='s' && isSpace(k1)){
+                    hasGroups=true;
+                    int j=skipSpaces(b, i+1, end);
+                    int e=tokenEnd(b, j, end);
+                    group=j<e && isDigit(b.get(j))?parseInt(b, j, e):0;
+                }
+                pos=end+1;
+            }
+            vertices=v;
+            texCoords=vt;
+            triangles=t;
+            lastGroup=group;
+        }
+        
+        /*
+        OBJ indices start at 1, negative ones are relative to the last element
+        */
+        private static int index(int i, int count){
+            return i<0?count+i:i-1;
+        }
+    }
+    
+    /*
+    STL
+    
+    ASCII or binary, with the vertices welded when they are closer than epsilon
+    */
+    public static MeshHelper readSTL(Path path) throws IOException {
+        return readSTL(path, 0d);
+    }
+    
+    public static MeshHelper readSTL(Path path, double epsilon) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            MappedByteBuffer map = map(channel);
+            ByteBuffer buffer = map.order(ByteOrder.LITTLE_ENDIAN);
+            int size=buffer.limit();
+            float[] vertices;
+            if(size>=84 && 84L+50L*(buffer.getInt(80)&0xFFFFFFFFL)==size){
+                int n=buffer.getInt(80);
+                vertices=new float[9*n];
+                IntStream.range(0, n).parallel().forEach(t->{
+                    for(int k=0; k<9; k++){
+                        vertices[9*t+k]=buffer.getFloat(84+50*t+12+4*k);
+                    }
+                });
+            } else {
+                int[] starts = PointCloudLoader.lineChunks(map, 0, size);
+                int[] offsets = new int[starts.length];
+                IntStream.range(0, starts.length-1).parallel()
+                        .forEach(c->offsets[c+1]=parseSTLVertices(map, starts[c], starts[c+1], null, 0));
+                for(int c=0; c<starts.length-1; c++){
+                    offsets[c+1]+=offsets[c];
+                }
+                vertices=new float[3*offsets[starts.length-1]];
+                IntStream.range(0, starts.length-1).parallel()
+                        .forEach(c->parseSTLVertices(map, starts[c], starts[c+1], vertices, offsets[c]));
+            }
+            return weld(vertices, epsilon);
+        }
+    }
+    
+    /*
+    Counts the vertex lines, and parses them into vertices if not null
+    */
+    private static int parseSTLVertices(MappedByteBuffer b, int from, int to, float[] vertices, int offset){
+        int count=0;
+        int pos=from;
+        while(pos<to){
+            int end=pos;
+            while(end<to && b.get(end)!='\n'){
+                end++;
+            }
+            int i=skipSpaces(b, pos, end);
+            int e=tokenEnd(b, i, end);
+            if(e-i==6 && b.get(i)=='v' && b.get(i+1)=='e' && b.get(i+2)=='r' 
+                    && b.get(i+3)=='t' && b.get(i+4)=='e' && b.get(i+5)=='x'){
+                if(vertices!=null){
+                    int j=e;
+                    for(int k=0; k<3; k++){
+                        j=skipSpaces(b, j, end);
+                        int e2=tokenEnd(b, j, end);
+                        vertices[3*(offset+count)+k]=PointCloudLoader.parseFloat(b, j, e2);
+                        j=e2;
+                    }
+                }
+                count++;
+            }
+            pos=end+1;
+        }
+        return count;
+    }
+    
+    /*
+    Triangles given by x,y,z of their three vertices, to an indexed mesh without
+    texture coordinates
+    */
+    private static MeshHelper weld(float[] vertices, double epsilon){
+        int n=vertices.length/3;
+        VertexWelder welder = new VertexWelder(epsilon, n/4+16);
+        int[] faces=new int[2*n];
+        for(int i=0; i<n; i++){
+            faces[2*i]=welder.add(vertices[3*i], vertices[3*i+1], vertices[3*i+2]);
+        }
+        return new MeshHelper(welder.getPoints(), new float[]{0f, 0f}, faces, new int[0]);
+    }
+    
+    /*
+    PLY, binary little or big endian
+    
+    Reads x, y, z, texture coordinates (u/s, v/t) and a value per vertex, and
+    the vertex_indices list of the faces, split in triangles as a fan
+    */
+    public static MeshHelper readPLY(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            MappedByteBuffer map = map(channel);
+            List<PlyElement> elements = new ArrayList<>();
+            int pos=0;
+            ByteOrder order=null;
+            while(true){
+                int end=pos;
+                while(end<map.limit() && map.get(end)!='\n'){
+                    end++;
+                }
+                if(end>=map.limit()){
+                    throw new IOException("PLY header without end_header");
+                }
+                byte[] bytes=new byte[end-pos];
+                for(int i=pos; i<end; i++){
+                    bytes[i-pos]=map.get(i);
+                }
+                String[] line=new String(bytes, StandardCharsets.US_ASCII).trim().split("\\s+");
+                pos=end+1;
+                if(line[0].equals("end_header")){
+                    break;
+                } else if(line[0].equals("format")){
+                    if(line[1].equals("binary_little_endian")){
+                        order=ByteOrder.LITTLE_ENDIAN;
+                    } else if(line[1].equals("binary_big_endian")){
+                        order=ByteOrder.BIG_ENDIAN;
+                    } else {
+                        throw new IOException("Only binary PLY files are supported");
+                    }
+                } else if(line[0].equals("element")){
+                    elements.add(new PlyElement(line[1], Integer.parseInt(line[2])));
+                } else if(line[0].equals("property") && !elements.isEmpty()){
+                    PlyElement element=elements.get(elements.size()-1);
+                    if(line[1].equals("list")){
+                        element.add(line[4], type(line[3]), type(line[2]));
+                    } else {
+                        element.add(line[2], type(line[1]), -1);
+                    }
+                } else if(line[0].equals("ply") || line[0].equals("comment") || line[0].equals("obj_info")){
+                    // nothing to read
+                } else if(!line[0].isEmpty()){
+                    throw new IOException("Unexpected PLY header line: "+String.join(" ", line));
+                }
+            }
+            if(order==null){
+                throw new IOException("PLY header without format");
+            }
+            ByteBuffer buffer = map.order(order);
+            
+            float[] points=new float[0], uv=null, f=null;
+            PackedFaces triangles = new PackedFaces();
+            for(PlyElement element : elements){
+                if(element.name.equals("vertex")){
+                    points=new float[3*element.count];
+                    int x=element.find("x"), y=element.find("y"), z=element.find("z");
+                    int u=element.find("u", "s", "texture_u", "texture_s"), v=element.find("v", "t", "texture_v", "texture_t");
+                    int value=element.find("value", "quality", "intensity", "scalar");
+                    uv=u>=0 && v>=0?new float[2*element.count]:null;
+                    f=new float[element.count];
+                    int[] offsets=element.offsets();
+                    int stride=element.stride(), start=pos;
+                    float[] p=points, t=uv, values=f;
+                    if(stride>0){
+                        IntStream.range(0, element.count).parallel().forEach(i->
+                            readVertex(buffer, element, start+i*stride, offsets, x, y, z, u, v, value, i, p, t, values));
+                        pos+=element.count*stride;
+                    } else {
+                        for(int i=0; i<element.count; i++){
+                            int[] o=element.offsets(buffer, pos);
+                            readVertex(buffer, element, pos, o, x, y, z, u, v, value, i, p, t, values);
+                            pos+=o[o.length-1];
+                        }
+                    }
+                } else if(element.name.equals("face")){
+                    int indices=element.find("vertex_indices", "vertex_index");
+                    triangles.ensureCapacity(element.count);
+                    for(int i=0; i<element.count; i++){
+                        for(int k=0; k<element.types.size(); k++){
+                            int type=element.types.get(k), countType=element.countTypes.get(k);
+                            if(countType<0){
+                                pos+=SIZES[type];
+                                continue;
+                            }
+                            int n=(int)read(buffer, pos, countType);
+                            pos+=SIZES[countType];
+                            if(k==indices){
+                                int p0=(int)read(buffer, pos, type);
+                                for(int j=2; j<n; j++){
+                                    triangles.add(p0, (int)read(buffer, pos+(j-1)*SIZES[type], type), 
+                                            (int)read(buffer, pos+j*SIZES[type], type));
+                                }
+                            }
+                            pos+=n*SIZES[type];
+                        }
+                    }
+                } else {
+                    int stride=element.stride();
+                    if(stride>0){
+                        pos+=element.count*stride;
+                    } else {
+                        for(int i=0; i<element.count; i++){
+                            int[] o=element.offsets(buffer, pos);
+                            pos+=o[o.length-1];
+                        }
+                    }
+                }
+            }
+            
+            int[] faces=new int[6*triangles.size()];
+            int[] data=triangles.getData();
+            for(int i=0; i<3*triangles.size(); i++){
+                faces[2*i]=data[i];
+                faces[2*i+1]=uv!=null?data[i]:0;
+            }
+            return new MeshHelper(points, uv!=null?uv:new float[]{0f, 0f}, faces, new int[0], 
+                    f!=null?f:new float[points.length/3]);
+        }
+    }
+    
+    private static void readVertex(ByteBuffer b, PlyElement e, int pos, int[] offsets, 
+            int x, int y, int z, int u, int v, int value, int i, float[] points, float[] uv, float[] f){
+        if(x>=0){
+            points[3*i]=(float)read(b, pos+offsets[x], e.types.get(x));
+        }
+        if(y>=0){
+            points[3*i+1]=(float)read(b, pos+offsets[y], e.types.get(y));
+        }
+        if(z>=0){
+            points[3*i+2]=(float)read(b, pos+offsets[z], e.types.get(z));
+        }
+        if(uv!=null){
+            uv[2*i]=(float)read(b, pos+offsets[u], e.types.get(u));
+            uv[2*i+1]=(float)(1d-read(b, pos+offsets[v], e.types.get(v)));
+        }
+        if(value>=0){
+            f[i]=(float)read(b, pos+offsets[value], e.types.get(value));
+        }
+    }
+    
+    private static final String[][] TYPES = {
+        {"char", "int8"}, {"uchar", "uint8"}, {"short", "int16"}, {"ushort", "uint16"},
+        {"int", "int32"}, {"uint", "uint32"}, {"float", "float32"}, {"double", "float64"}
+    };
+    private static final int[] SIZES = {1, 1, 2, 2, 4, 4, 4, 8};
+    
+    private static int type(String name) throws IOException {
+        for(int i=0; i<TYPES.length; i++){
+            if(TYPES[i][0].equals(name) || TYPES[i][1].equals(name)){
+                return i;
+            }
+        }
+        throw new IOException("Unknown PLY type: "+name);
+    }
+    
+    private static double read(ByteBuffer b, int pos, int type){
+        switch(type){
+            case 0: return b.get(pos);
+            case 1: return b.get(pos)&0xFF;
+            case 2: return b.getShort(pos);
+            case 3: return b.getShort(pos)&0xFFFF;
+            case 4: return b.getInt(pos);
+            case 5: return b.getInt(pos)&0xFFFFFFFFL;
+            case 6: return b.getFloat(pos);
+            default: return b.getDouble(pos);
+        }
+    }
+    
+    private static class PlyElement {
+        private final String name;
+        private final int count;
+        private final List<String> names = new ArrayList<>();
+        private final List<Integer> types = new ArrayList<>();
+        // type of the count of list properties, -1 for scalar properties
+        private final List<Integer> countTypes = new ArrayList<>();
+
+        PlyElement(String name, int count) {
+            this.name = name;
+            this.count = count;
+        }
+        
+        void add(String name, int type, int countType){
+            names.add(name);
+            types.add(type);
+            countTypes.add(countType);
+        }
+        
+        int find(String... candidates){
+            for(String candidate : candidates){
+                int i=names.indexOf(candidate);
+                if(i>=0){
+                    return i;
+                }
+            }
+            return -1;
+        }
+        
+        /*
+        Bytes per element, or -1 if it has lists
+        */
+        int stride(){
+            int stride=0;
+            for(int i=0; i<types.size(); i++){
+                if(countTypes.get(i)>=0){
+                    return -1;
+                }
+                stride+=SIZES[types.get(i)];
+            }
+            return stride;
+        }
+        
+        /*
+        Offsets of the properties in elements without lists
+        */
+        int[] offsets(){
+            int[] offsets=new int[types.size()+1];
+            for(int i=0; i<types.size(); i++){
+                offsets[i+1]=offsets[i]+SIZES[types.get(i)];
+            }
+            return offsets;
+        }
+        
+        /*
+        Offsets of the properties of the element at pos, and its size as last one
+        */
+        int[] offsets(ByteBuffer b, int pos){
+            int[] offsets=new int[types.size()+1];
+            for(int i=0; i<types.size(); i++){
+                int size=SIZES[types.get(i)];
+                if(countTypes.get(i)>=0){
+                    // offset of the count, lists are not read as scalars
+                    size=SIZES[countTypes.get(i)]+(int)read(b, pos+offsets[i], countTypes.get(i))*size;
+                }
+                offsets[i+1]=offsets[i]+size;
+            }
+            return offsets;
+        }
+    }
+    
+    private static MappedByteBuffer map(FileChannel channel) throws IOException {
+        if(channel.size()>Integer.MAX_VALUE){
+            throw new IOException("Files larger than "+Integer.MAX_VALUE+" bytes are not supported");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+    
+    private static boolean isSpace(byte b){
+        return b==' ' || b=='\t' || b=='\r';
+    }
+    
+    private static boolean isDigit(byte b){
+        return b>='0' && b<='9';
+    }
+    
+    private static int skipSpaces(MappedByteBuffer b, int from, int to){
+        while(from<to && isSpace(b.get(from))){
+            from++;
+        }
+        return from;
+    }
+    
+    private static int tokenEnd(MappedByteBuffer b, int from, int to){
+        while(from<to && !isSpace(b.get(from))){
+            from++;
+        }
+        return from;
+    }
+    
+    private static int parseInt(MappedByteBuffer b, int from, int to){
+        boolean negative=from<to && b.get(from)=='-';
+        int i=negative || (from<to && b.get(from)=='+')?from+1:from;
+        if(i>=to){
+            throw new NumberFormatException("Missing index");
+        }
+        int value=0;
+        for(; i<to; i++){
+            byte c=b.get(i);
+            if(!isDigit(c)){
+                throw new NumberFormatException("Invalid index: "+(char)c);
+            }
+            value=10*value+(c-'0');
+        }
+        return negative?-value:value;
+    }
+}
@@ -22,21 +22,17 @@ import eu.mihosoft.vrl.v3d.CSG;
 import eu.mihosoft.vrl.v3d.Polygon;
 import eu.mihosoft.vrl.v3d.PropertyStorage;
 import eu.mihosoft.vrl.v3d.Vector3d;
-import java.io.BufferedWriter;
 import java.io.IOException;
-import java.nio.charset.Charset;
-import java.nio.file.Files;
 import java.nio.file.Paths;
-import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
 import javafx.collections.ObservableFloatArray;
-import javafx.geometry.Point3D;
 import javafx.scene.shape.Mesh;
 import javafx.scene.shape.MeshView;
 import javafx.scene.shape.ObservableFaceArray;
 import javafx.scene.shape.TriangleMesh;
 import org.fxyz.shapes.primitives.TexturedMesh;
+import org.fxyz.shapes.primitives.helper.VertexWelder;
 
 /**
  * Loads a CSG from TriangleMesh based on JCSG from Michael Hoffer
@@ -56,7 +52,6 @@ public class MeshUtils {
     public static CSG mesh2CSG(Mesh mesh) throws IOException {
 
         List<Polygon> polygons = new ArrayList<>();
-        List<Vector3d> vertices = new ArrayList<>();
         if(mesh instanceof TriangleMesh){
             // Get faces
             ObservableFaceArray faces = ((TriangleMesh)mesh).getFaces();
@@ -68,14 +63,24 @@ public class MeshUtils {
             float[] p = new float[points.size()];
             points.toArray(p);
 
-            // convert faces to polygons
+            // weld coincident points, so adjacent polygons share exact positions
+            VertexWelder welder = new VertexWelder(VertexWelder.DEFAULT_EPSILON, p.length/3);
+            int[] index = new int[p.length/3];
+            for(int i=0; i<index.length; i++){
+                index[i]=welder.add(p[3*i], p[3*i+1], p[3*i+2]);
+            }
+
+            // convert faces to polygons, skipping the degenerated ones
             for(int i=0; i<faces.size()/6; i++){
-                int i0=f[6*i], i1=f[6*i+2], i2=f[6*i+4];
-                vertices.add(new Vector3d(p[3*i0], p[3*i0+1], p[3*i0+2]));
-                vertices.add(new Vector3d(p[3*i1], p[3*i1+1], p[3*i1+2]));
-                vertices.add(new Vector3d(p[3*i2], p[3*i2+1], p[3*i2+2]));
+                int i0=index[f[6*i]], i1=index[f[6*i+2]], i2=index[f[6*i+4]];
+                if(i0==i1 || i1==i2 || i2==i0){
+                    continue;
+                }
+                List<Vector3d> vertices = new ArrayList<>(3);
+                vertices.add(new Vector3d(welder.getX(i0), welder.getY(i0), welder.getZ(i0)));
+                vertices.add(new Vector3d(welder.getX(i1), welder.getY(i1), welder.getZ(i1)));
+                vertices.add(new Vector3d(welder.getX(i2), welder.getY(i2), welder.getZ(i2)));
                 polygons.add(Polygon.fromPoints(vertices));
-                vertices = new ArrayList<>();
             }
         }
 
@@ -83,46 +88,20 @@ public class MeshUtils {
     }
     
     public static void mesh2STL(String fileName, Mesh mesh) throws IOException{
-
+        mesh2STL(fileName, mesh, false);
+    }
+    
+    /*
+    Streams the mesh to an ASCII or binary STL file, see MeshWriter
+    */
+    public static void mesh2STL(String fileName, Mesh mesh, boolean binary) throws IOException{
         if(!(mesh instanceof TriangleMesh)){
             return;
         }
-        // Get faces
-        ObservableFaceArray faces = ((TriangleMesh)mesh).getFaces();
-        int[] f=new int[faces.size()];
-        faces.toArray(f);
-
-        // Get vertices
-        ObservableFloatArray points = ((TriangleMesh)mesh).getPoints();
-        float[] p = new float[points.size()];
-        points.toArray(p);
-
-        StringBuilder sb = new StringBuilder();
-        sb.append("solid meshFX\n");
-
-        // convert faces to polygons
-        for(int i=0; i<faces.size()/6; i++){
-            int i0=f[6*i], i1=f[6*i+2], i2=f[6*i+4];
-            Point3D pA=new Point3D(p[3*i0], p[3*i0+1], p[3*i0+2]);
-            Point3D pB=new Point3D(p[3*i1], p[3*i1+1], p[3*i1+2]);
-            Point3D pC=new Point3D(p[3*i2], p[3*i2+1], p[3*i2+2]);
-            Point3D pN=pB.subtract(pA).crossProduct(pC.subtract(pA)).normalize();
-
-            sb.append("  facet normal ").append(pN.getX()).append(" ").append(pN.getY()).append(" ").append(pN.getZ()).append("\n");
-            sb.append("    outer loop\n");
-            sb.append("      vertex ").append(pA.getX()).append(" ").append(pA.getY()).append(" ").append(pA.getZ()).append("\n");
-            sb.append("      vertex ").append(pB.getX()).append(" ").append(pB.getY()).append(" ").append(pB.getZ()).append("\n");
-            sb.append("      vertex ").append(pC.getX()).append(" ").append(pC.getY()).append(" ").append(pC.getZ()).append("\n");
-            sb.append("    endloop\n");
-            sb.append("  endfacet\n");
-        }
-
-        sb.append("endsolid meshFX\n");
-
-        // write file
-        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(fileName), Charset.forName("UTF-8"),
-                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
-            writer.write(sb.toString());
+        if(binary){
+            MeshWriter.writeBinarySTL(Paths.get(fileName), (TriangleMesh)mesh);
+        } else {
+            MeshWriter.writeSTL(Paths.get(fileName), (TriangleMesh)mesh);
         }
     }
 }
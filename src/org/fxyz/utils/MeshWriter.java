@@ -0,0 +1,474 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.utils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import javafx.collections.ObservableFloatArray;
+import javafx.collections.ObservableIntegerArray;
+import javafx.scene.shape.TriangleMesh;
+import org.fxyz.shapes.primitives.helper.MeshHelper;
+
+/**
+ * Streaming export of a TriangleMesh to OBJ, ASCII and binary STL, and to FXM, 
+ * a compact binary format that keeps everything a TriangleMesh has.
+ * 
+ * The mesh arrays are read in place, without copying them into lists. Elements 
+ * are formatted in chunks, several of them in parallel, and the chunks are 
+ * written to the file in order, so only a few chunks are kept in memory at any 
+ * time, whatever the size of the mesh.
+ * 
+ * Floats are written with the shortest decimal of up to nine digits that reads 
+ * back as the same float.
+ *
+ * FXM layout, little endian: magic, version, number of points, texture 
+ * coordinates and faces, and flags, as ints, followed by the points, texture 
+ * coordinates and faces arrays of the TriangleMesh, and the face smoothing 
+ * groups if the flag SMOOTHING_GROUPS is set.
+ *
+ * @author jpereda
+ */
+public class MeshWriter {
+    
+    public static final int FXM_MAGIC = 0x4D585946;
+    public static final int FXM_VERSION = 1;
+    public static final int FXM_HEADER_SIZE = 24;
+    public static final int SMOOTHING_GROUPS = 1;
+    
+    private static final int CHUNK = 1<<14;
+    private static final String NEWLINE = System.getProperty("line.separator");
+    
+    private static final double[] POW10 = new double[23];
+    private static final long[] LONG_POW10 = new long[19];
+    static {
+        POW10[0]=1d;
+        LONG_POW10[0]=1L;
+        for(int i=1; i<POW10.length; i++){
+            POW10[i]=10d*POW10[i-1];
+        }
+        for(int i=1; i<LONG_POW10.length; i++){
+            LONG_POW10[i]=10L*LONG_POW10[i-1];
+        }
+    }
+    
+    /*
+    OBJ, with vertices, texture coordinates, faces and smoothing groups. If 
+    material is not null, it refers to material.mtl
+    */
+    public static void writeOBJ(Path path, TriangleMesh mesh, String material) throws IOException {
+        ObservableFloatArray points = mesh.getPoints();
+        ObservableFloatArray texCoords = mesh.getTexCoords();
+        ObservableIntegerArray faces = mesh.getFaces();
+        ObservableIntegerArray groups = mesh.getFaceSmoothingGroups();
+        int numPoints=points.size()/3, numTexCoords=texCoords.size()/2, numFaces=faces.size()/6;
+        
+        try(FileChannel channel = create(path)){
+            Block header = new Block(256);
+            if(material!=null){
+                header.put("# Material").put(NEWLINE).put("mtllib ").put(material).put(".mtl").put(NEWLINE);
+            }
+            header.put("# Vertices (").put(numPoints).put(")").put(NEWLINE).writeTo(channel);
+            writeChunks(channel, numPoints, 40, (b, from, to)->{
+                for(int i=from; i<to; i++){
+                    b.put("v ").put(points.get(3*i)).put(' ').put(points.get(3*i+1))
+                     .put(' ').put(points.get(3*i+2)).put(NEWLINE);
+                }
+            });
+            header.clear().put("# End Vertices").put(NEWLINE).put(NEWLINE)
+                  .put("# Textures Coordinates (").put(numTexCoords).put(")").put(NEWLINE).writeTo(channel);
+            writeChunks(channel, numTexCoords, 30, (b, from, to)->{
+                for(int i=from; i<to; i++){
+                    // objimporter u->u, v->(1-v)
+                    b.put("vt ").put(texCoords.get(2*i)).put(' ').put((float)(1d-texCoords.get(2*i+1))).put(NEWLINE);
+                }
+            });
+            header.clear().put("# End Texture Coordinates ").put(NEWLINE).put(NEWLINE)
+                  .put("# Faces (").put(numFaces).put(")").put(NEWLINE);
+            if(material!=null){
+                header.put("# Material").put(NEWLINE).put("usemtl ").put(material).put(NEWLINE);
+            }
+            boolean hasGroups=groups.size()==numFaces && numFaces>0;
+            if(hasGroups && groups.get(0)>0){
+                header.put("s ").put(groups.get(0)).put(NEWLINE);
+            }
+            header.writeTo(channel);
+            writeChunks(channel, numFaces, 50, (b, from, to)->{
+                for(int i=from; i<to; i++){
+                    b.put("f ").put(faces.get(6*i)+1).put('/').put(faces.get(6*i+1)+1)
+                     .put(' ').put(faces.get(6*i+2)+1).put('/').put(faces.get(6*i+3)+1)
+                     .put(' ').put(faces.get(6*i+4)+1).put('/').put(faces.get(6*i+5)+1).put(NEWLINE);
+                    if(hasGroups && i+1<numFaces && groups.get(i)!=groups.get(i+1)){
+                        b.put("s ");
+                        if(groups.get(i+1)>0){
+                            b.put(groups.get(i+1));
+                        } else {
+                            b.put("off");
+                        }
+                        b.put(NEWLINE);
+                    }
+                }
+            });
+            header.clear().put("# End Faces ").put(NEWLINE).put(NEWLINE).writeTo(channel);
+        }
+    }
+    
+    /*
+    ASCII STL
+    */
+    public static void writeSTL(Path path, TriangleMesh mesh) throws IOException {
+        ObservableFloatArray points = mesh.getPoints();
+        ObservableIntegerArray faces = mesh.getFaces();
+        try(FileChannel channel = create(path)){
+            new Block(32).put("solid meshFX\n").writeTo(channel);
+            writeChunks(channel, faces.size()/6, 260, (b, from, to)->{
+                float[] n=new float[3];
+                for(int i=from; i<to; i++){
+                    int i0=faces.get(6*i), i1=faces.get(6*i+2), i2=faces.get(6*i+4);
+                    normal(points, i0, i1, i2, n);
+                    b.put("  facet normal ").put(n[0]).put(' ').put(n[1]).put(' ').put(n[2]).put('\n');
+                    b.put("    outer loop\n");
+                    for(int p : new int[]{i0, i1, i2}){
+                        b.put("      vertex ").put(points.get(3*p)).put(' ').put(points.get(3*p+1))
+                         .put(' ').put(points.get(3*p+2)).put('\n');
+                    }
+                    b.put("    endloop\n");
+                    b.put("  endfacet\n");
+                }
+            });
+            new Block(32).put("endsolid meshFX\n").writeTo(channel);
+        }
+    }
+    
+    /*
+    Binary STL: 80 bytes header, number of triangles, and for each one its 
+    normal, three vertices and a zero attribute
+    */
+    public static void writeBinarySTL(Path path, TriangleMesh mesh) throws IOException {
+        ObservableFloatArray points = mesh.getPoints();
+        ObservableIntegerArray faces = mesh.getFaces();
+        int numFaces=faces.size()/6;
+        try(FileChannel channel = create(path)){
+            Block header = new Block(84);
+            header.put("F(X)yz binary STL");
+            while(header.size<80){
+                header.put(' ');
+            }
+            header.putInt(numFaces).writeTo(channel);
+            writeChunks(channel, numFaces, 50, (b, from, to)->{
+                float[] n=new float[3];
+                for(int i=from; i<to; i++){
+                    int i0=faces.get(6*i), i1=faces.get(6*i+2), i2=faces.get(6*i+4);
+                    normal(points, i0, i1, i2, n);
+                    b.putFloat(n[0]).putFloat(n[1]).putFloat(n[2]);
+                    for(int p : new int[]{i0, i1, i2}){
+                        b.putFloat(points.get(3*p)).putFloat(points.get(3*p+1)).putFloat(points.get(3*p+2));
+                    }
+                    b.putShort((short)0);
+                }
+            });
+        }
+    }
+    
+    /*
+    FXM, the compact binary format
+    */
+    public static void writeFXM(Path path, TriangleMesh mesh) throws IOException {
+        ObservableFloatArray points = mesh.getPoints();
+        ObservableFloatArray texCoords = mesh.getTexCoords();
+        ObservableIntegerArray faces = mesh.getFaces();
+        ObservableIntegerArray groups = mesh.getFaceSmoothingGroups();
+        int numFaces=faces.size()/6;
+        boolean hasGroups=groups.size()==numFaces && numFaces>0;
+        try(FileChannel channel = create(path)){
+            new Block(FXM_HEADER_SIZE).putInt(FXM_MAGIC).putInt(FXM_VERSION).putInt(points.size()/3)
+                    .putInt(texCoords.size()/2).putInt(numFaces).putInt(hasGroups?SMOOTHING_GROUPS:0)
+                    .writeTo(channel);
+            writeChunks(channel, points.size(), 4, (b, from, to)->{
+                for(int i=from; i<to; i++){
+                    b.putFloat(points.get(i));
+                }
+            });
+            writeChunks(channel, texCoords.size(), 4, (b, from, to)->{
+                for(int i=from; i<to; i++){
+                    b.putFloat(texCoords.get(i));
+                }
+            });
+            writeChunks(channel, faces.size(), 4, (b, from, to)->{
+                for(int i=from; i<to; i++){
+                    b.putInt(faces.get(i));
+                }
+            });
+            if(hasGroups){
+                writeChunks(channel, numFaces, 4, (b, from, to)->{
+                    for(int i=from; i<to; i++){
+                        b.putInt(groups.get(i));
+                    }
+                });
+            }
+        }
+    }
+    
+    public static MeshHelper readFXM(Path path) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size()>Integer.MAX_VALUE){
+                throw new IOException("Files larger than "+Integer.MAX_VALUE+" bytes are not supported");
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            ByteBuffer buffer = map.order(ByteOrder.LITTLE_ENDIAN);
+            if(buffer.remaining()<FXM_HEADER_SIZE || buffer.getInt()!=FXM_MAGIC){
+                throw new IOException("Not a FXM file");
+            }
+            if(buffer.getInt()!=FXM_VERSION){
+                throw new IOException("Unsupported FXM version");
+            }
+            int numPoints=buffer.getInt(), numTexCoords=buffer.getInt(), numFaces=buffer.getInt();
+            boolean hasGroups=(buffer.getInt()&SMOOTHING_GROUPS)!=0;
+            long size=FXM_HEADER_SIZE+4L*(3L*numPoints+2L*numTexCoords+6L*numFaces+(hasGroups?numFaces:0));
+            if(numPoints<0 || numTexCoords<0 || numFaces<0 || channel.size()<size){
+                throw new IOException("Truncated FXM file");
+            }
+            float[] points=new float[3*numPoints];
+            float[] texCoords=new float[2*numTexCoords];
+            int[] faces=new int[6*numFaces];
+            int[] groups=new int[hasGroups?numFaces:0];
+            FloatBuffer floats = buffer.asFloatBuffer();
+            floats.get(points).get(texCoords);
+            buffer.position(buffer.position()+4*(points.length+texCoords.length));
+            IntBuffer ints = buffer.asIntBuffer();
+            ints.get(faces);
+            ints.get(groups);
+            return new MeshHelper(points, texCoords, faces, groups);
+        }
+    }
+    
+    private static FileChannel create(Path path) throws IOException {
+        return FileChannel.open(path, StandardOpenOption.CREATE, 
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+    }
+    
+    /*
+    Same normal as Point3D: (b-a)x(c-a), normalized, in double
+    */
+    private static void normal(ObservableFloatArray p, int i0, int i1, int i2, float[] n){
+        double ax=p.get(3*i0), ay=p.get(3*i0+1), az=p.get(3*i0+2);
+        double ux=p.get(3*i1)-ax, uy=p.get(3*i1+1)-ay, uz=p.get(3*i1+2)-az;
+        double vx=p.get(3*i2)-ax, vy=p.get(3*i2+1)-ay, vz=p.get(3*i2+2)-az;
+        double nx=uy*vz-uz*vy, ny=uz*vx-ux*vz, nz=ux*vy-uy*vx;
+        double mag=Math.sqrt(nx*nx+ny*ny+nz*nz);
+        if(mag==0d){
+            n[0]=n[1]=n[2]=0f;
+        } else {
+            n[0]=(float)(nx/mag);
+            n[1]=(float)(ny/mag);
+            n[2]=(float)(nz/mag);
+        }
+    }
+    
+    private interface ChunkWriter {
+        void write(Block block, int from, int to);
+    }
+    
+    /*
+    Formats count elements in chunks of CHUNK elements, a few of them in 
+    parallel, and writes them in order. bytes is an estimate of the bytes per 
+    element
+    */
+    private static void writeChunks(FileChannel channel, int count, int bytes, ChunkWriter writer) throws IOException {
+        int numChunks=(count+CHUNK-1)/CHUNK;
+        Block[] blocks=new Block[Math.min(numChunks, 2*ForkJoinPool.getCommonPoolParallelism())];
+        for(int i=0; i<blocks.length; i++){
+            blocks[i]=new Block(CHUNK*bytes);
+        }
+        for(int start=0; start<numChunks; start+=blocks.length){
+            int first=start, end=Math.min(numChunks, start+blocks.length);
+            IntStream.range(first, end).parallel().forEach(c->{
+                Block b = blocks[c-first].clear();
+                writer.write(b, c*CHUNK, Math.min(count, (c+1)*CHUNK));
+            });
+            for(int c=first; c<end; c++){
+                blocks[c-first].writeTo(channel);
+            }
+        }
+    }
+    
+    /*
+    Growable array of bytes, with UTF-8 text and little endian binary values
+    */
+    private static final class Block {
+        private byte[] data;
+        private int size;
+        private final char[] digits=new char[20];
+
+        Block(int capacity){
+            data=new byte[Math.max(capacity,16)];
+        }
+        
+        Block clear(){
+            size=0;
+            return this;
+        }
+        
+        private void ensure(int bytes){
+            if(size+bytes>data.length){
+                data=Arrays.copyOf(data, Math.max(2*data.length, size+bytes));
+            }
+        }
+        
+        Block put(char c){
+            ensure(1);
+            data[size++]=(byte)c;
+            return this;
+        }
+        
+        Block put(String s){
+            ensure(s.length());
+            for(int i=0; i<s.length(); i++){
+                char c=s.charAt(i);
+                if(c>=0x80){
+                    // names can be non ASCII: the rest of the string is encoded
+                    byte[] utf8=s.substring(i).getBytes(StandardCharsets.UTF_8);
+                    ensure(utf8.length);
+                    System.arraycopy(utf8, 0, data, size, utf8.length);
+                    size+=utf8.length;
+                    return this;
+                }
+                data[size++]=(byte)c;
+            }
+            return this;
+        }
+        
+        Block put(int value){
+            if(value==Integer.MIN_VALUE){
+                return put(Integer.toString(value));
+            }
+            if(value<0){
+                put('-');
+                value=-value;
+            }
+            return putDigits(value, 0);
+        }
+        
+        /*
+        Writes the number with at least minDigits digits
+        */
+        private Block putDigits(long value, int minDigits){
+            int n=0;
+            do {
+                digits[n++]=(char)('0'+value%10);
+                value/=10;
+            } while(value>0 || n<minDigits);
+            ensure(n);
+            while(n>0){
+                data[size++]=(byte)digits[--n];
+            }
+            return this;
+        }
+        
+        /*
+        Shortest decimal, of 6 to 9 significant digits, that reads back as the
+        same float. Very small or large values use Float.toString
+        */
+        Block put(float value){
+            float abs=Math.abs(value);
+            if(!(abs>=1e-5f && abs<1e7f)){
+                return put(Float.toString(value));
+            }
+            double d=abs;
+            // decimal exponent, d in [10^e, 10^(e+1))
+            int e=6;
+            while(e>-5 && d<(e>=0?POW10[e]:1d/POW10[-e])){
+                e--;
+            }
+            long m=0;
+            int s=0;
+            for(int p=6; p<=9; p++){
+                s=p-1-e;
+                m=Math.round(s>=0?d*POW10[s]:d/POW10[-s]);
+                if(m>=LONG_POW10[p]){
+                    m/=10;
+                    s--;
+                }
+                if(p==9){
+                    break;
+                }
+                double back=s>=0?m/POW10[s]:m*POW10[-s];
+                long bits=Double.doubleToRawLongBits(back);
+                if((float)back==abs && (bits&0x1FFFFFFFL)!=0x10000000L){
+                    break;
+                }
+            }
+            // m*10^-s, without trailing zeros after the point
+            while(s>0 && m%10==0){
+                m/=10;
+                s--;
+            }
+            if(value<0){
+                put('-');
+            }
+            if(s<=0){
+                putDigits(m, 0);
+                for(int i=0; i<-s; i++){
+                    put('0');
+                }
+                return this;
+            }
+            putDigits(m/LONG_POW10[s], 1);
+            put('.');
+            return putDigits(m%LONG_POW10[s], s);
+        }
+        
+        Block putInt(int value){
+            ensure(4);
+            data[size++]=(byte)value;
+            data[size++]=(byte)(value>>8);
+            data[size++]=(byte)(value>>16);
+            data[size++]=(byte)(value>>24);
+            return this;
+        }
+        
+        Block putShort(short value){
+            ensure(2);
+            data[size++]=(byte)value;
+            data[size++]=(byte)(value>>8);
+            return this;
+        }
+        
+        Block putFloat(float value){
+            return putInt(Float.floatToRawIntBits(value));
+        }
+        
+        void writeTo(FileChannel channel) throws IOException {
+            ByteBuffer buffer = ByteBuffer.wrap(data, 0, size);
+            while(buffer.hasRemaining()){
+                channel.write(buffer);
+            }
+        }
+    }
+}
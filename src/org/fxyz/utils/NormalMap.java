@@ -18,14 +18,17 @@
  */
 package org.fxyz.utils;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
 import javafx.beans.property.BooleanProperty;
 import javafx.beans.property.DoubleProperty;
 import javafx.beans.property.SimpleBooleanProperty;
 import javafx.beans.property.SimpleDoubleProperty;
-import javafx.geometry.Point3D;
 import javafx.scene.image.Image;
 import javafx.scene.image.PixelFormat;
-import javafx.scene.image.PixelReader;
 import javafx.scene.image.PixelWriter;
 import javafx.scene.image.WritableImage;
 
@@ -37,6 +40,11 @@ import javafx.scene.image.WritableImage;
     Also if you recieve a lot of "Bright" pixeling viewing object from the side, 
     Apply a SMALL amount of blur to the Image PRIOR to creating this Image.
     It should help smooth things out.
+    
+    The grayscale heights of the source image are computed once and cached, so 
+    changing intensity, intensityScale or invertNormals only redoes the normal 
+    pass. Both passes run in parallel over tiles of the image, on primitive 
+    buffers.
 
  * @author Jason Pollastrini aka jdub1581
  */
@@ -45,94 +53,225 @@ public class NormalMap extends WritableImage {
     private final double DEFAULT_INTENSITY = 5.0, DEFAULT_INTENSITY_SCALE = 5.0;
     private final boolean DEFAULT_INVERTED = false; // new Random().nextBoolean();
     
-    private PixelReader pReader;
+    private static final int TILE = 64;
+    private static final int TILES_PER_TASK = 4;
+    
     private final PixelWriter pWriter;
-    private final Image srcImage;
+    private final int width, height;
+    // grayscale of the source image, one byte per pixel
+    private final byte[] heights;
+    private final int[] normals;
+    private final List<Image> mipmaps = new ArrayList<>();
     
     
     public NormalMap(Image src){
         super(src.getPixelReader(),0,0, (int)src.getWidth(), (int)src.getHeight());
-        this.srcImage = src;
-        this.pReader = getPixelReader();
         this.pWriter = getPixelWriter();
+        this.width = (int)src.getWidth();
+        this.height = (int)src.getHeight();
+        this.heights = buildHeights(src, width, height);
+        this.normals = new int[width*height];
         this.buildNormalMap(DEFAULT_INTENSITY, DEFAULT_INTENSITY_SCALE, DEFAULT_INVERTED);
     }
 
+    /*
+    Grayscale of every pixel, as Color.grayscale() written to and read back from
+    a WritableImage: translucent pixels go through its premultiplied storage
+    */
+    private static byte[] buildHeights(Image src, int w, int h){
+        final int[] argb = new int[w * h];
+        src.getPixelReader().getPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(), argb, 0, w);
+        final byte[] heightPixels = new byte[w * h];
+        final byte[] premultiplied = premultipliedGrays();
+        forEachTile(w, h, (x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
+                for (int x = x0; x < x1; x++) {
+                    final int pixel = argb[y * w + x];
+                    final int a = pixel >>> 24;
+                    // Color keeps its components as floats
+                    final float gray = (float) (0.21 * (float) (((pixel >> 16) & 0xff) / 255.0) 
+                            + 0.71 * (float) (((pixel >> 8) & 0xff) / 255.0) + 0.07 * (float) ((pixel & 0xff) / 255.0));
+                    final int g = (int) Math.round(gray * 255.0);
+                    heightPixels[y * w + x] = a == 255 ? (byte) g : premultiplied[(a << 8) | g];
+                }
+            }
+        });
+        return heightPixels;
+    }
     
-    private void buildNormalMap(double scale, double scaleFactor, boolean invert) {
-
-        pReader = srcImage.getPixelReader();
-        final int w = (int) srcImage.getWidth();
-        final int h = (int) srcImage.getHeight();
-
-        WritableImage gray = new WritableImage(w, h);
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
-                gray.getPixelWriter().setColor(x, y, pReader.getColor(x, y).grayscale());
+    private static byte[] premultipliedGrays;
+    
+    /*
+    Gray value read back from a WritableImage after writing (alpha, gray), for
+    every alpha and gray
+    */
+    private static synchronized byte[] premultipliedGrays(){
+        if (premultipliedGrays == null) {
+            final int[] argb = new int[256 * 256];
+            for (int i = 0; i < argb.length; i++) {
+                final int a = i >> 8, g = i & 0xff;
+                argb[i] = (a << 24) | (g << 16) | (g << 8) | g;
             }
-        }
-
-        final byte[] heightPixels = new byte[w * h * 4];
-        final byte[] normalPixels = new byte[w * h * 4];
-        // get pixels
-        pReader = gray.getPixelReader();
-        pReader.getPixels(0, 0, w, h, PixelFormat.getByteBgraInstance(), heightPixels, 0, w * 4);
-
-        if (invert) {
-            for (int y = 0; y < h; y++) {
-                for (int x = 0; x < w; x++) {
-                    final int pixelIndex = (y * w * 4) + (x * 4);
-                    heightPixels[pixelIndex + 0] = (byte) (255 - Byte.toUnsignedInt(heightPixels[pixelIndex]));
-                    heightPixels[pixelIndex + 1] = (byte) (255 - Byte.toUnsignedInt(heightPixels[pixelIndex + 1]));
-                    heightPixels[pixelIndex + 2] = (byte) (255 - Byte.toUnsignedInt(heightPixels[pixelIndex + 2]));
-                    heightPixels[pixelIndex + 3] = (byte) (heightPixels[pixelIndex + 3]);
-                }
+            WritableImage image = new WritableImage(256, 256);
+            image.getPixelWriter().setPixels(0, 0, 256, 256, PixelFormat.getIntArgbInstance(), argb, 0, 256);
+            final byte[] bgra = new byte[4 * argb.length];
+            image.getPixelReader().getPixels(0, 0, 256, 256, PixelFormat.getByteBgraInstance(), bgra, 0, 256 * 4);
+            premultipliedGrays = new byte[argb.length];
+            for (int i = 0; i < argb.length; i++) {
+                premultipliedGrays[i] = bgra[4 * i];
             }
         }
+        return premultipliedGrays;
+    }
+    
+    private void buildNormalMap(double scale, double scaleFactor, boolean invert) {
+        final int w = width, h = height;
+        final byte[] heightPixels = heights;
+        final int[] normalPixels = normals;
+        final int mask = invert ? 0xff : 0;
+        final double factor = Math.max(1.0, scale) / Math.min(10, scaleFactor);
+        
         // generate normal map
-        for (int y = 0; y < h; y++) {
-            for (int x = 0; x < w; x++) {
+        forEachTile(w, h, (x0, y0, x1, y1) -> {
+            for (int y = y0; y < y1; y++) {
                 final int yAbove = Math.max(0, y - 1);
                 final int yBelow = Math.min(h - 1, y + 1);
-                final int xLeft = Math.max(0, x - 1);
-                final int xRight = Math.min(w - 1, x + 1);
+                for (int x = x0; x < x1; x++) {
+                    final int xLeft = Math.max(0, x - 1);
+                    final int xRight = Math.min(w - 1, x + 1);
 
-                final int pixelIndex = (y * w * 4) + (x * 4);
+                    final int pixelAboveHeight = (heightPixels[yAbove * w + x] ^ mask) & 0xff;
+                    final int pixelBelowHeight = (heightPixels[yBelow * w + x] ^ mask) & 0xff;
+                    final int pixelLeftHeight = (heightPixels[y * w + xLeft] ^ mask) & 0xff;
+                    final int pixelRightHeight = (heightPixels[y * w + xRight] ^ mask) & 0xff;
 
-                final int pixelAboveIndex = (yAbove * w * 4) + (x * 4);
-                final int pixelBelowIndex = (yBelow * w * 4) + (x * 4);
-                final int pixelLeftIndex = (y * w * 4) + (xLeft * 4);
-                final int pixelRightIndex = (y * w * 4) + (xRight * 4);
+                    // H = left - right, V = above - below
+                    final double hx = xLeft - xRight, hy = 0, hz = pixelLeftHeight - pixelRightHeight;
+                    final double vx = 0, vy = yAbove - yBelow, vz = pixelAboveHeight - pixelBelowHeight;
 
-                final int pixelAboveHeight = Byte.toUnsignedInt(heightPixels[pixelAboveIndex]);
-                final int pixelBelowHeight = Byte.toUnsignedInt(heightPixels[pixelBelowIndex]);
-                final int pixelLeftHeight = Byte.toUnsignedInt(heightPixels[pixelLeftIndex]);
-                final int pixelRightHeight = Byte.toUnsignedInt(heightPixels[pixelRightIndex]);
+                    // normal = H x V
+                    double nx = (hy * vz - hz * vy) / w;
+                    double ny = (hz * vx - hx * vz) / h;
+                    double nz = (1 / (hx * vy - hy * vx)) / factor;
+                    final double mag = Math.sqrt(nx * nx + ny * ny + nz * nz);
+                    if (mag == 0.0) {
+                        nx = ny = nz = 0.0;
+                    } else {
+                        nx /= mag;
+                        ny /= mag;
+                        nz /= mag;
+                    }
 
-                Point3D pixelAbove = new Point3D(x, yAbove, pixelAboveHeight);
-                Point3D pixelBelow = new Point3D(x, yBelow, pixelBelowHeight);
-                Point3D pixelLeft = new Point3D(xLeft, y, pixelLeftHeight);
-                Point3D pixelRight = new Point3D(xRight, y, pixelRightHeight);
-
-                Point3D H = pixelLeft.subtract(pixelRight);
-                Point3D V = pixelAbove.subtract(pixelBelow);
-
-                Point3D normal = H.crossProduct(V);
-                normal = new Point3D(
-                        (normal.getX() / w),
-                        (normal.getY() / h),
-                        (1 / normal.getZ()) / (Math.max(1.0, scale) / Math.min(10, scaleFactor))
-                ).normalize();
+                    final int b = (byte) (255 - nz) & 0xff;              //Blue
+                    final int g = (byte) (128 + (ny * 128.0)) & 0xff;    //Green
+                    final int r = (byte) (128 + (nx * 128.0)) & 0xff;    //Red
+                    normalPixels[y * w + x] = 0xff000000 | (r << 16) | (g << 8) | b;
+                }
+            }
+        });
+        // create output image
+        pWriter.setPixels(0, 0, w, h, PixelFormat.getIntArgbPreInstance(), normalPixels, 0, w);
+        if (isGenerateMipmaps()) {
+            buildMipmaps();
+        }
+    }
+    
+    /*
+    Halved copies of the normal map, down to 1x1, averaging 2x2 blocks. On odd
+    sized levels the last column and row average 3 texels, so none is dropped
+    */
+    private void buildMipmaps() {
+        mipmaps.clear();
+        int[] level = normals;
+        int w = width, h = height;
+        while (w > 1 || h > 1) {
+            final int pw = w, ph = h, nw = Math.max(1, w / 2), nh = Math.max(1, h / 2);
+            final int[] src = level, dst = new int[nw * nh];
+            forEachTile(nw, nh, (x0, y0, x1, y1) -> {
+                for (int y = y0; y < y1; y++) {
+                    // source rows [sy0, sy1): 2, or 3 for the last one of an odd height
+                    final int sy0 = y * ph / nh, sy1 = (y + 1) * ph / nh;
+                    for (int x = x0; x < x1; x++) {
+                        final int sx0 = x * pw / nw, sx1 = (x + 1) * pw / nw;
+                        int r = 0, g = 0, b = 0;
+                        for (int sy = sy0; sy < sy1; sy++) {
+                            for (int sx = sx0; sx < sx1; sx++) {
+                                final int p = src[sy * pw + sx];
+                                r += (p >> 16) & 0xff;
+                                g += (p >> 8) & 0xff;
+                                b += p & 0xff;
+                            }
+                        }
+                        final int n = (sx1 - sx0) * (sy1 - sy0), half = n / 2;
+                        dst[y * nw + x] = 0xff000000 | (((r + half) / n) << 16) | (((g + half) / n) << 8) | ((b + half) / n);
+                    }
+                }
+            });
+            WritableImage image = new WritableImage(nw, nh);
+            image.getPixelWriter().setPixels(0, 0, nw, nh, PixelFormat.getIntArgbPreInstance(), dst, 0, nw);
+            mipmaps.add(image);
+            level = dst;
+            w = nw;
+            h = nh;
+        }
+    }
+    
+    /**
+     * Mipmap levels of the normal map, from half its size down to 1x1, if 
+     * generateMipmaps is set
+     * @return an unmodifiable list of images
+     */
+    public List<Image> getMipmaps() {
+        return Collections.unmodifiableList(mipmaps);
+    }
+    
+    /*
+    Tiled fork/join
+    */
+    @FunctionalInterface
+    private interface TilePass {
+        void compute(int x0, int y0, int x1, int y1);
+    }
+    
+    private static void forEachTile(int w, int h, TilePass pass){
+        final int columns = (w + TILE - 1) / TILE, rows = (h + TILE - 1) / TILE;
+        TileTask task = new TileTask(pass, w, h, columns, 0, columns * rows);
+        if (columns * rows <= TILES_PER_TASK) {
+            task.compute();
+        } else {
+            ForkJoinPool.commonPool().invoke(task);
+        }
+    }
+    
+    private static class TileTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final TilePass pass;
+        private final int w, h, columns;
+        private final int from, to;
 
-                normalPixels[pixelIndex + 0] = (byte) (255 - (normal.getZ()));        //Blue              
-                normalPixels[pixelIndex + 1] = (byte) (128 + (normal.getY() * 128.0));//Green                 
-                normalPixels[pixelIndex + 2] = (byte) (128 + (normal.getX() * 128.0));//Red                 
-                normalPixels[pixelIndex + 3] = (byte) (255);                          //alpha
+        TileTask(TilePass pass, int w, int h, int columns, int from, int to) {
+            this.pass = pass;
+            this.w = w;
+            this.h = h;
+            this.columns = columns;
+            this.from = from;
+            this.to = to;
+        }
 
+        @Override
+        protected void compute() {
+            if (to - from <= TILES_PER_TASK) {
+                for (int i = from; i < to; i++) {
+                    final int x0 = (i % columns) * TILE, y0 = (i / columns) * TILE;
+                    pass.compute(x0, y0, Math.min(w, x0 + TILE), Math.min(h, y0 + TILE));
+                }
+            } else {
+                int mid = (from + to) >>> 1;
+                invokeAll(new TileTask(pass, w, h, columns, from, mid), new TileTask(pass, w, h, columns, mid, to));
             }
         }
-        // create output image
-        pWriter.setPixels(0, 0, w, h, PixelFormat.getByteBgraPreInstance(), normalPixels, 0, w * 4);
     }
     
     
@@ -238,6 +377,43 @@ public class NormalMap extends WritableImage {
     public BooleanProperty invertNormalsProperty() {
         return invertNormals;
     }
+    //==========================================
+    /**
+     * 
+     */
+    private final BooleanProperty generateMipmaps = new SimpleBooleanProperty(this, "generateMipmaps" , false){
+
+        @Override
+        protected void invalidated() {
+            if (get()) {
+                buildMipmaps();
+            } else {
+                mipmaps.clear();
+            }
+        }
+        
+    };
+    /**
+     * 
+     * @return 
+     */
+    public boolean isGenerateMipmaps() {
+        return generateMipmaps.get();
+    }
+    /**
+     * 
+     * @param value
+     */
+    public void setGenerateMipmaps(boolean value) {
+        generateMipmaps.set(value);
+    }
+    /**
+     * 
+     * @return 
+     */
+    public BooleanProperty generateMipmapsProperty() {
+        return generateMipmaps;
+    }
     
     
     
@@ -22,12 +22,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.DoubleStream;
 import java.util.stream.IntStream;
 import javafx.embed.swing.SwingFXUtils;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
+import javafx.scene.image.PixelFormat;
 import javafx.scene.image.WritableImage;
 import javafx.scene.paint.Color;
 import javax.imageio.ImageIO;
@@ -50,6 +49,7 @@ public class Palette {
     private int width;
     private int height;
     private Image imgPalette;
+    private float[] textureLocations;
     
     private final static ColorPalette DEFAULT_COLOR_PALETTE = ColorPalette.HSB;
     private final static int DEFAULT_NUMCOLORS = 10000; // 100x100 palette image
@@ -75,12 +75,13 @@ public class Palette {
         width=(int)Math.sqrt(numColors);
         height=numColors/width;
         
+        // colors in one buffer, written at once
+        int[] argb = new int[width*height];
+        IntStream.range(0, argb.length).parallel().forEach(i->argb[i]=toArgb(getColor(i)));
         imgPalette = new WritableImage(width, height);
-        PixelWriter   pw  = ((WritableImage)imgPalette).getPixelWriter();
-        AtomicInteger count = new AtomicInteger();
-        IntStream.range(0, height).boxed()
-                .forEach(y->IntStream.range(0, width).boxed()
-                        .forEach(x->pw.setColor(x, y, getColor(count.getAndIncrement()))));
+        ((WritableImage)imgPalette).getPixelWriter()
+                .setPixels(0, 0, width, height, PixelFormat.getIntArgbInstance(), argb, 0, width);
+        textureLocations=null;
         if(save){
             saveImage();
         }
@@ -97,6 +98,30 @@ public class Palette {
         return DoubleStream.of((((float)x+0.5f)/((float)width)),(((float)y+0.5f)/((float)height)));
     }
     
+    /*
+    Texture coordinates of the numColors colors, as given by getTextureLocation,
+    computed once per palette
+    */
+    public synchronized float[] getTextureLocations(){
+        if(textureLocations==null){
+            float[] locations=new float[2*Math.max(0, numColors)];
+            for(int i=0; i<numColors && width>0 && height>0; i++){
+                int y = i/width; 
+                int x = i-width*y;
+                locations[2*i]=((float)x+0.5f)/((float)width);
+                locations[2*i+1]=((float)y+0.5f)/((float)height);
+            }
+            textureLocations=locations;
+        }
+        return textureLocations;
+    }
+    
+    private static int toArgb(Color c){
+        // same rounding as PixelWriter.setColor
+        return ((int)Math.round(c.getOpacity()*255d)<<24) | ((int)Math.round(c.getRed()*255d)<<16) 
+                | ((int)Math.round(c.getGreen()*255d)<<8) | (int)Math.round(c.getBlue()*255d);
+    }
+    
     private void saveImage(){
         try {
             // save
@@ -0,0 +1,339 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.utils;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.stream.IntStream;
+import org.fxyz.geometry.Point3D;
+
+/**
+ * Loads point clouds from delimited text files with one point per line: x;y;z;f
+ * (f is optional).
+ * 
+ * The file is memory mapped and split in chunks of whole lines, that are parsed 
+ * in parallel straight from the bytes into float arrays, without creating any 
+ * String or Point3D per field or line. 
+ * 
+ * The first time a file is loaded, a binary copy is written next to it, as a 
+ * FrameFile with one frame, tagged with the parse options. The next loads map 
+ * that copy instead of parsing the text again, as long as it is newer than the 
+ * text file and was parsed with the same options. An invalid copy is parsed 
+ * and written again.
+ *
+ * @author jpereda
+ */
+public class PointCloudLoader {
+    
+    public static final char DEFAULT_DELIMITER = ';';
+    public static final String CACHE_EXTENSION = ".frames";
+    
+    // layout of the lines, stored with the delimiter in the tag of the copies
+    private static final int LAYOUT = 1;
+    
+    private static final int CHUNK_SIZE = 1<<20;
+    private static final double[] POW10 = new double[23];
+    static {
+        POW10[0]=1d;
+        for(int i=1; i<POW10.length; i++){
+            POW10[i]=10d*POW10[i-1];
+        }
+    }
+    
+    /*
+    Coordinates x, y, z of the points, and their values f
+    */
+    public static class PointCloud {
+        private final float[] points;
+        private final float[] f;
+
+        public PointCloud(float[] points, float[] f) {
+            this.points = points;
+            this.f = f;
+        }
+        
+        public int size() { return f.length; }
+        public float[] getPoints() { return points; }
+        public float[] getF() { return f; }
+        
+        public Point3D get(int index){
+            return new Point3D(points[3*index], points[3*index+1], points[3*index+2], f[index]);
+        }
+        
+        /*
+        View of the points as a List of Point3D, where get(i) returns a new Point3D
+        */
+        public List<Point3D> asList(){
+            return new PointList();
+        }
+        
+        private class PointList extends AbstractList<Point3D> implements RandomAccess {
+            @Override
+            public Point3D get(int index) {
+                if(index<0 || index>=f.length){
+                    throw new IndexOutOfBoundsException("Index: "+index+", Size: "+f.length);
+                }
+                return PointCloud.this.get(index);
+            }
+
+            @Override
+            public int size() {
+                return f.length;
+            }
+        }
+    }
+    
+    public static PointCloud load(Path path) throws IOException {
+        return load(path, DEFAULT_DELIMITER, true);
+    }
+    
+    public static PointCloud load(Path path, char delimiter, boolean cache) throws IOException {
+        Path binary = path.resolveSibling(path.getFileName()+CACHE_EXTENSION);
+        if(cache && Files.exists(binary) && 
+                Files.getLastModifiedTime(binary).compareTo(Files.getLastModifiedTime(path))>=0){
+            try(FrameFile file = FrameFile.open(binary)){
+                if(file.hasPoints() && file.getNumFrames()>0 && file.getTag()==tag(delimiter)){
+                    PointCloud cloud = new PointCloud(new float[3*file.getNumPoints()], new float[file.getNumPoints()]);
+                    file.readFrame(0, cloud.points, cloud.f);
+                    return cloud;
+                }
+            } catch(IOException | RuntimeException e){
+                // invalid copy, parse the text again
+            }
+        }
+        PointCloud cloud = parse(path, delimiter);
+        if(cache){
+            try {
+                write(binary, cloud, tag(delimiter));
+            } catch(IOException e){
+                Logger.getLogger(PointCloudLoader.class.getName()).log(Level.WARNING, "Can't write "+binary, e);
+            }
+        }
+        return cloud;
+    }
+    
+    /*
+    Writes the point cloud as a FrameFile with one frame. It is written to a 
+    temporary file first, so a failed write never leaves a partial file
+    */
+    public static void write(Path path, PointCloud cloud) throws IOException {
+        write(path, cloud, 0);
+    }
+    
+    private static void write(Path path, PointCloud cloud, int tag) throws IOException {
+        Path temp = Files.createTempFile(path.toAbsolutePath().getParent(), "fxyz", ".tmp");
+        try {
+            try(FrameFile.Writer writer = FrameFile.create(temp, cloud.size(), true, tag)){
+                writer.writeFrame(cloud.points, cloud.f);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+    }
+    
+    private static int tag(char delimiter){
+        return LAYOUT<<16 | delimiter;
+    }
+    
+    /*
+    Parses the text file. Blank lines are skipped, any other line that doesn't 
+    start with three numbers throws a NumberFormatException
+    */
+    public static PointCloud parse(Path path, char delimiter) throws IOException {
+        try(FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)){
+            if(channel.size()>Integer.MAX_VALUE){
+                throw new IOException("Files larger than "+Integer.MAX_VALUE+" bytes are not supported");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int size=(int)channel.size();
+            
+            int[] starts=lineChunks(buffer, 0, size);
+            int numChunks=starts.length-1;
+            
+            // lines per chunk, to find where each chunk is stored
+            int[] offsets=new int[numChunks+1];
+            IntStream.range(0, numChunks).parallel()
+                    .forEach(i->offsets[i+1]=countLines(buffer, starts[i], starts[i+1]));
+            for(int i=0; i<numChunks; i++){
+                offsets[i+1]+=offsets[i];
+            }
+            
+            PointCloud cloud = new PointCloud(new float[3*offsets[numChunks]], new float[offsets[numChunks]]);
+            IntStream.range(0, numChunks).parallel()
+                    .forEach(i->parseLines(buffer, starts[i], starts[i+1], delimiter, cloud, offsets[i]));
+            return cloud;
+        }
+    }
+    
+    /*
+    Splits [from, to) in chunks of about CHUNK_SIZE bytes that end at a line end,
+    returning the start of each chunk and to
+    */
+    static int[] lineChunks(MappedByteBuffer buffer, int from, int to){
+        int numChunks=Math.max(1, (to-from+CHUNK_SIZE-1)/CHUNK_SIZE);
+        int[] starts=new int[numChunks+1];
+        starts[0]=from;
+        for(int i=1; i<numChunks; i++){
+            int s=Math.max(starts[i-1], from+i*CHUNK_SIZE);
+            while(s<to && buffer.get(s-1)!='\n'){
+                s++;
+            }
+            starts[i]=s;
+        }
+        starts[numChunks]=to;
+        return starts;
+    }
+    
+    private static int countLines(MappedByteBuffer buffer, int from, int to){
+        int lines=0;
+        boolean blank=true;
+        for(int i=from; i<to; i++){
+            byte b=buffer.get(i);
+            if(b=='\n'){
+                if(!blank){
+                    lines++;
+                }
+                blank=true;
+            } else if(b>' '){
+                blank=false;
+            }
+        }
+        return blank?lines:lines+1;
+    }
+    
+    private static void parseLines(MappedByteBuffer buffer, int from, int to, char delimiter, PointCloud cloud, int line){
+        int start=from;
+        while(start<to){
+            int end=start;
+            boolean blank=true;
+            while(end<to && buffer.get(end)!='\n'){
+                if(buffer.get(end)>' '){
+                    blank=false;
+                }
+                end++;
+            }
+            if(!blank){
+                // up to four fields
+                int field=0, s=start;
+                for(int i=start; i<=end && field<4; i++){
+                    if(i==end || buffer.get(i)==delimiter){
+                        float value=parseFloat(buffer, s, i);
+                        if(field<3){
+                            cloud.points[3*line+field]=value;
+                        } else {
+                            cloud.f[line]=value;
+                        }
+                        field++;
+                        s=i+1;
+                    }
+                }
+                if(field<3){
+                    throw new NumberFormatException("Missing coordinates: "+string(buffer, start, end));
+                }
+                line++;
+            }
+            start=end+1;
+        }
+    }
+    
+    /*
+    Parses a decimal number as Float.parseFloat does. Numbers with up to 15 
+    significant digits and small exponents are computed as mantissa*10^exp in 
+    double, which is correctly rounded, and then rounded to float. When that 
+    double rounding could be wrong (the double is halfway between two floats),
+    and for any other syntax, it falls back to Float.parseFloat
+    */
+    static float parseFloat(MappedByteBuffer buffer, int from, int to){
+        while(from<to && buffer.get(from)<=' '){
+            from++;
+        }
+        while(to>from && buffer.get(to-1)<=' '){
+            to--;
+        }
+        int i=from;
+        boolean negative=false;
+        if(i<to && (buffer.get(i)=='-' || buffer.get(i)=='+')){
+            negative=buffer.get(i)=='-';
+            i++;
+        }
+        long mantissa=0;
+        int digits=0, exp=0;
+        boolean any=false;
+        for(; i<to && isDigit(buffer.get(i)); i++){
+            mantissa=10*mantissa+(buffer.get(i)-'0');
+            digits+=mantissa>0?1:0;
+            any=true;
+        }
+        if(i<to && buffer.get(i)=='.'){
+            for(i++; i<to && isDigit(buffer.get(i)); i++){
+                mantissa=10*mantissa+(buffer.get(i)-'0');
+                digits+=mantissa>0?1:0;
+                exp--;
+                any=true;
+            }
+        }
+        if(any && i<to && (buffer.get(i)=='e' || buffer.get(i)=='E')){
+            int j=i+1, e=0;
+            boolean negativeExp=false;
+            if(j<to && (buffer.get(j)=='-' || buffer.get(j)=='+')){
+                negativeExp=buffer.get(j)=='-';
+                j++;
+            }
+            boolean anyExp=false;
+            for(; j<to && isDigit(buffer.get(j)) && e<1000; j++){
+                e=10*e+(buffer.get(j)-'0');
+                anyExp=true;
+            }
+            exp+=negativeExp?-e:e;
+            i=anyExp?j:-1;
+        }
+        if(any && i==to && digits<=15 && exp>=-22 && exp<=22){
+            double d=exp<0?mantissa/POW10[-exp]:mantissa*POW10[exp];
+            long bits=Double.doubleToRawLongBits(d);
+            if(d==0d || (d>=Float.MIN_NORMAL && d<=Float.MAX_VALUE && (bits&0x1FFFFFFFL)!=0x10000000L)){
+                return negative?-(float)d:(float)d;
+            }
+        }
+        return Float.parseFloat(string(buffer, from, to));
+    }
+    
+    private static boolean isDigit(byte b){
+        return b>='0' && b<='9';
+    }
+    
+    private static String string(MappedByteBuffer buffer, int from, int to){
+        byte[] bytes=new byte[to-from];
+        for(int i=from; i<to; i++){
+            bytes[i-from]=buffer.get(i);
+        }
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
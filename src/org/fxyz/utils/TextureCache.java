@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2013-2015 F(X)yz, 
+ * Sean Phillips, Jason Pollastrini and Jose Pereda
+ * All rights reserved.
+ *
+ * This program is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.fxyz.utils;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.fxyz.utils.Palette.ColorPalette;
+import org.fxyz.utils.Patterns.CarbonPatterns;
+
+/**
+ * Shared palette and pattern images, so all the meshes using the same palette 
+ * (type and number of colors) or the same pattern (type and size) use one 
+ * single image instead of building their own.
+ * 
+ * Every acquire call has to be paired with a release call once the image is 
+ * no longer used, and the entry is evicted when its last user releases it. 
+ * Meshes release theirs with TexturedMesh.dispose(). A palette that fails to 
+ * be generated is evicted right away, so it can be tried again.
+ * 
+ * Palettes are generated on a worker thread: preloadPalette can be called in 
+ * advance, and acquirePalette waits for it if it's still in progress. A 
+ * preloaded palette stays in the cache until it's acquired and released. Patterns
+ * are rendered with a snapshot, so they are generated on the calling thread, 
+ * that has to be the JavaFX application thread.
+ *
+ * @author jpereda
+ */
+public final class TextureCache {
+    
+    private static class Entry<T> {
+        private final List<Object> key;
+        private final CompletableFuture<T> value;
+        private int references;
+
+        Entry(List<Object> key, CompletableFuture<T> value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+    
+    private static final Map<List<Object>, Entry<?>> ENTRIES = new HashMap<>();
+    private static final Map<Object, Entry<?>> VALUES = new IdentityHashMap<>();
+    
+    private static final ExecutorService WORKER = Executors.newSingleThreadExecutor(r->{
+        Thread t = new Thread(r, "TextureCacheThread");
+        t.setDaemon(true);
+        return t;
+    });
+    
+    private TextureCache(){}
+    
+    /*
+    Palettes
+    */
+    public static CompletableFuture<Palette> preloadPalette(int numColors, ColorPalette colorPalette){
+        return paletteEntry(numColors, colorPalette).value;
+    }
+    
+    public static Palette acquirePalette(int numColors, ColorPalette colorPalette){
+        Entry<Palette> entry;
+        synchronized(TextureCache.class){
+            entry = paletteEntry(numColors, colorPalette);
+            entry.references++;
+        }
+        return acquired(entry);
+    }
+    
+    public static void releasePalette(Palette palette){
+        release(palette);
+    }
+    
+    @SuppressWarnings("unchecked")
+    private static synchronized Entry<Palette> paletteEntry(int numColors, ColorPalette colorPalette){
+        List<Object> key = Arrays.asList(Palette.class, numColors, colorPalette);
+        Entry<Palette> entry = (Entry<Palette>)ENTRIES.get(key);
+        if(entry==null){
+            entry = new Entry<>(key, CompletableFuture.supplyAsync(()->{
+                Palette palette = new Palette(numColors, colorPalette);
+                palette.createPalette(false);
+                palette.getTextureLocations();
+                return palette;
+            }, WORKER));
+            register(entry);
+            Entry<Palette> failed = entry;
+            // registered first: if it's already done, this runs now
+            entry.value.whenComplete((p, e)->{
+                if(e!=null){
+                    evict(failed);
+                }
+            });
+        }
+        return entry;
+    }
+    
+    /*
+    Patterns
+    */
+    @SuppressWarnings("unchecked")
+    public static Patterns acquirePattern(CarbonPatterns carbonPattern, int width, int height){
+        List<Object> key = Arrays.asList(Patterns.class, carbonPattern, width, height);
+        Entry<Patterns> entry;
+        synchronized(TextureCache.class){
+            entry = (Entry<Patterns>)ENTRIES.get(key);
+            if(entry==null){
+                Patterns patterns = new Patterns(width, height);
+                patterns.createPattern(carbonPattern, false);
+                entry = new Entry<>(key, CompletableFuture.completedFuture(patterns));
+                register(entry);
+            }
+            entry.references++;
+        }
+        return acquired(entry);
+    }
+    
+    public static void releasePattern(Patterns patterns){
+        release(patterns);
+    }
+    
+    /*
+    Number of images in the cache
+    */
+    public static synchronized int size(){
+        return ENTRIES.size();
+    }
+    
+    private static void register(Entry<?> entry){
+        ENTRIES.put(entry.key, entry);
+    }
+    
+    /*
+    Waits for the value of an entry already referenced by the caller, so it 
+    can't be evicted meanwhile
+    */
+    private static <T> T acquired(Entry<T> entry){
+        T value = entry.value.join();
+        synchronized(TextureCache.class){
+            VALUES.put(value, entry);
+        }
+        return value;
+    }
+    
+    private static synchronized void evict(Entry<?> entry){
+        if(ENTRIES.get(entry.key)==entry){
+            ENTRIES.remove(entry.key);
+        }
+    }
+    
+    private static synchronized void release(Object value){
+        Entry<?> entry = VALUES.get(value);
+        if(entry!=null && --entry.references<=0){
+            VALUES.remove(value);
+            ENTRIES.remove(entry.key);
+        }
+    }
+}
@@ -19,34 +19,65 @@
 package org.fxyz.utils;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.function.LongConsumer;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javafx.animation.AnimationTimer;
+import org.fxyz.utils.FrameScheduler.Priority;
 
 /**
+ * A set of updates run on each frame. It doesn't use its own pulse: start and
+ * stop add and remove it as a task of the shared FrameScheduler, with its 
+ * priority.
  * 
  * @author Dub
  */
 public abstract class UpdateableTimer extends AnimationTimer{
+    private static final Logger LOGGER = Logger.getLogger(UpdateableTimer.class.getName());
     private final List<Callable<Void>> updates = new ArrayList<>();
     public List<Callable<Void>> getUpdateList(){return updates;}
+    // callables that failed already, their next failures are only counted by the task
+    private final Set<Callable<Void>> failed = Collections.newSetFromMap(new IdentityHashMap<>());
     private final int maxCalls;   
+    private final FrameScheduler.Task task;
 
     public UpdateableTimer(int maxCallables) {
         this(maxCallables, false);
     }    
     
     public UpdateableTimer(int maxCallables, boolean start) {
+        this(maxCallables, start, Priority.NORMAL);
+    } 
+    
+    public UpdateableTimer(int maxCallables, boolean start, Priority priority) {
         assert maxCallables > 0;
         
         this.maxCalls = maxCallables;
+        this.task = FrameScheduler.getDefault().createTask(getClass().getSimpleName(), priority, (LongConsumer)this::handle);
         if(start){
             start();
         }
     } 
     
+    public FrameScheduler.Task getTask(){
+        return task;
+    }
+    
+    @Override
+    public void start() {
+        task.start();
+    }
+
+    @Override
+    public void stop() {
+        task.stop();
+    }
+    
     public void addUpdate(Callable<Void> c){
         if(updates.size() >= 0 && updates.size() < maxCalls){
             updates.add(c);
@@ -60,17 +91,20 @@ public abstract class UpdateableTimer extends AnimationTimer{
         if(idx != -1){
             updates.remove(idx);
         }        
+        failed.remove(c);
     }
     
     public void update(){
-        if(!updates.isEmpty()){
-            updates.forEach(u ->{ 
-                try {
-                    u.call();
-                } catch (Exception ex) {
-                    Logger.getLogger(UpdateableTimer.class.getName()).log(Level.SEVERE, null, ex);
+        for(int i = 0; i < updates.size(); i++){
+            Callable<Void> c = updates.get(i);
+            try {
+                c.call();
+            } catch (Exception ex) {
+                task.countFailure();
+                if(failed.add(c)){
+                    LOGGER.log(Level.SEVERE, "Update "+c+" failed, next failures will be only counted", ex);
                 }
-            });            
+            }
         }
     }
     